@@ -58,7 +58,12 @@ public class PlayerImp implements IPlayer {
         this.uri = uri;
         if (!hasPlayer()) {
             eventLogger = new EventLogger();
-            videoTrackSelectionFactory = new AdaptiveTrackSelection.Factory(BANDWIDTH_METER);
+            videoTrackSelectionFactory = new AdaptiveTrackSelection.Factory(BANDWIDTH_METER,
+                    AdaptiveTrackSelection.DEFAULT_MAX_INITIAL_BITRATE,
+                    AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+                    AdaptiveTrackSelection.DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+                    AdaptiveTrackSelection.DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+                    AdaptiveTrackSelection.DEFAULT_BANDWIDTH_FRACTION, true);
             trackSelector = new DefaultTrackSelector(videoTrackSelectionFactory);
             newPlayer();
             playerNeedsSource = true;
@@ -21,6 +21,7 @@ import com.google.android.exoplayer2.PlaybackParameters;
 import com.google.android.exoplayer2.audio.AudioProcessor;
 import com.google.android.exoplayer2.audio.AudioRendererEventListener;
 import com.google.android.exoplayer2.audio.SimpleDecoderAudioRenderer;
+import com.google.android.exoplayer2.audio.TimeStretchEngine;
 import com.google.android.exoplayer2.drm.ExoMediaCrypto;
 import com.google.android.exoplayer2.util.MimeTypes;
 
@@ -46,6 +47,19 @@ public class LibflacAudioRenderer extends SimpleDecoderAudioRenderer {
     super(eventHandler, eventListener, audioProcessors);
   }
 
+  /**
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param timeStretchEngineFactory A factory for the {@link TimeStretchEngine} used to change the
+   *     speed and pitch of the audio.
+   * @param audioProcessors Optional {@link AudioProcessor}s that will process audio before output.
+   */
+  public LibflacAudioRenderer(Handler eventHandler, AudioRendererEventListener eventListener,
+      TimeStretchEngine.Factory timeStretchEngineFactory, AudioProcessor... audioProcessors) {
+    super(eventHandler, eventListener, timeStretchEngineFactory, audioProcessors);
+  }
+
   @Override
   protected int supportsFormatInternal(Format format) {
     return FlacLibrary.isAvailable() && MimeTypes.AUDIO_FLAC.equalsIgnoreCase(format.sampleMimeType)
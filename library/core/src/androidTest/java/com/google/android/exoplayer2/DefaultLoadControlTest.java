@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import com.google.android.exoplayer2.LoadControl.SpeedScalingPolicy;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.StandaloneMediaClock;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DefaultLoadControl}.
+ */
+public class DefaultLoadControlTest extends TestCase {
+
+  private static final int MIN_BUFFER_MS = 15000;
+  private static final int MAX_BUFFER_MS = 30000;
+  private static final int BUFFER_FOR_PLAYBACK_MS = 2500;
+  private static final int BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS = 5000;
+
+  private static final long MIN_BUFFER_US = MIN_BUFFER_MS * 1000L;
+  private static final long MAX_BUFFER_US = MAX_BUFFER_MS * 1000L;
+
+  private static final int STEP_MS = 10;
+  private static final long LOAD_CHUNK_US = 100000;
+
+  private FakeClock clock;
+  private StandaloneMediaClock mediaClock;
+  private long minBufferedUs;
+  private long maxBufferedUs;
+
+  @Override
+  public void setUp() {
+    clock = new FakeClock(0);
+    mediaClock = new StandaloneMediaClock(clock);
+  }
+
+  public void testMediaTimePolicyIgnoresSpeed() {
+    DefaultLoadControl loadControl = createLoadControl(SpeedScalingPolicy.MEDIA_TIME);
+    loadControl.onPlaybackSpeedChanged(3f);
+    assertTrue(loadControl.shouldContinueLoading(MIN_BUFFER_US - 1));
+    assertFalse(loadControl.shouldContinueLoading(MAX_BUFFER_US + 1));
+    assertTrue(loadControl.shouldStartPlayback(BUFFER_FOR_PLAYBACK_MS * 1000L, false));
+  }
+
+  public void testRealTimePolicyScalesWatermarks() {
+    DefaultLoadControl loadControl = createLoadControl(SpeedScalingPolicy.REAL_TIME);
+    loadControl.onPlaybackSpeedChanged(2f);
+    // At normal speed this would be between the watermarks, where a fresh control doesn't load.
+    assertTrue(loadControl.shouldContinueLoading(MIN_BUFFER_US));
+    assertTrue(loadControl.shouldContinueLoading(2 * MIN_BUFFER_US - 1));
+    assertFalse(loadControl.shouldContinueLoading(2 * MAX_BUFFER_US + 1));
+
+    loadControl.onPlaybackSpeedChanged(0.5f);
+    assertFalse(loadControl.shouldContinueLoading(MAX_BUFFER_US / 2 + 1));
+    assertTrue(loadControl.shouldContinueLoading(MIN_BUFFER_US / 2 - 1));
+  }
+
+  public void testRealTimePolicyScalesStartThresholds() {
+    DefaultLoadControl loadControl = createLoadControl(SpeedScalingPolicy.REAL_TIME);
+    loadControl.onPlaybackSpeedChanged(2f);
+    assertFalse(loadControl.shouldStartPlayback(BUFFER_FOR_PLAYBACK_MS * 1000L, false));
+    assertTrue(loadControl.shouldStartPlayback(2 * BUFFER_FOR_PLAYBACK_MS * 1000L, false));
+    assertFalse(loadControl.shouldStartPlayback(
+        BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS * 1000L, true));
+    assertTrue(loadControl.shouldStartPlayback(
+        2 * BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS * 1000L, true));
+  }
+
+  public void testRealTimeBufferMaintainedAtHighSpeed() {
+    simulatePlayback(createLoadControl(SpeedScalingPolicy.REAL_TIME), 3f, 60000);
+    // Converted to real time, the buffer should never drop noticeably below the minimum buffer.
+    assertTrue(minBufferedUs / 3f >= MIN_BUFFER_US - LOAD_CHUNK_US);
+  }
+
+  public void testMediaTimeBufferDrainsAtHighSpeed() {
+    simulatePlayback(createLoadControl(SpeedScalingPolicy.MEDIA_TIME), 3f, 60000);
+    assertTrue(minBufferedUs / 3f < MIN_BUFFER_US / 2);
+  }
+
+  public void testRealTimeBufferBoundedAtLowSpeed() {
+    simulatePlayback(createLoadControl(SpeedScalingPolicy.REAL_TIME), 0.5f, 60000);
+    // At half speed we should hold no more than the real time maximum buffer worth of media.
+    assertTrue(maxBufferedUs <= MAX_BUFFER_US / 2 + LOAD_CHUNK_US);
+  }
+
+  /**
+   * Simulates playback driven by the fake clock, loading {@link #LOAD_CHUNK_US} of media per step
+   * whenever the load control allows it, and records the buffered durations observed after
+   * playback starts.
+   */
+  private void simulatePlayback(DefaultLoadControl loadControl, float speed, long durationMs) {
+    mediaClock.setPlaybackSpeed(speed);
+    loadControl.onPlaybackSpeedChanged(mediaClock.getPlaybackSpeed());
+    long loadedPositionUs = 0;
+    boolean started = false;
+    minBufferedUs = Long.MAX_VALUE;
+    maxBufferedUs = 0;
+    for (long elapsedMs = 0; elapsedMs < durationMs; elapsedMs += STEP_MS) {
+      long bufferedUs = loadedPositionUs - mediaClock.getPositionUs();
+      if (loadControl.shouldContinueLoading(bufferedUs)) {
+        loadedPositionUs += LOAD_CHUNK_US;
+        bufferedUs += LOAD_CHUNK_US;
+      }
+      if (!started && !loadControl.shouldContinueLoading(bufferedUs)) {
+        // Start once the initial load has finished, so that the minimum buffer is reached.
+        started = true;
+        mediaClock.start();
+      }
+      if (started) {
+        minBufferedUs = Math.min(minBufferedUs, bufferedUs);
+        maxBufferedUs = Math.max(maxBufferedUs, bufferedUs);
+      }
+      clock.advanceTime(STEP_MS);
+    }
+  }
+
+  private static DefaultLoadControl createLoadControl(SpeedScalingPolicy speedScalingPolicy) {
+    return new DefaultLoadControl(new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+        MIN_BUFFER_MS, MAX_BUFFER_MS, BUFFER_FOR_PLAYBACK_MS, BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+        null, speedScalingPolicy);
+  }
+
+}
@@ -37,6 +37,7 @@ import java.util.LinkedList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import junit.framework.TestCase;
 
 /**
@@ -223,6 +224,78 @@ public final class ExoPlayerTest extends TestCase {
         Pair.create(timeline, thirdSourceManifest));
   }
 
+  /**
+   * Tests that rapid playback speed changes from another thread are applied on the playback thread
+   * while it is rendering, and that the most recently requested speed wins.
+   */
+  public void testRapidPlaybackSpeedChanges() throws Exception {
+    final int speedChangeCount = 10000;
+    final float finalSpeed = 1.5f;
+    final PlayerWrapper playerWrapper = new PlayerWrapper();
+    Timeline timeline = new FakeTimeline(new TimelineWindowDefinition(false, false, 0));
+    MediaSource mediaSource = new FakeMediaSource(timeline, null, TEST_AUDIO_FORMAT);
+    final AtomicBoolean speedChangesFinished = new AtomicBoolean();
+    final AtomicBoolean speedChangedOnWrongThread = new AtomicBoolean();
+    FakeMediaClockRenderer audioRenderer = new FakeMediaClockRenderer(TEST_AUDIO_FORMAT) {
+
+      private volatile Thread renderThread;
+      private volatile float speed = 1f;
+
+      @Override
+      public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+        renderThread = Thread.currentThread();
+        super.render(positionUs, elapsedRealtimeUs);
+      }
+
+      @Override
+      public long getPositionUs() {
+        // TODO: Avoid hard-coding ExoPlayerImplInternal.RENDERER_TIMESTAMP_OFFSET_US.
+        return 60000000;
+      }
+
+      @Override
+      public void setPlaybackSpeed(float speed) {
+        // Speed changes must only ever be applied on the thread that renders. Failures are recorded
+        // rather than asserted here, as an assertion failing on the playback thread would not fail
+        // the test.
+        if (renderThread != null && renderThread != Thread.currentThread()) {
+          speedChangedOnWrongThread.set(true);
+        }
+        this.speed = speed;
+      }
+
+      @Override
+      public PlaybackParameters setPlaybackParameters(PlaybackParameters playbackParameters) {
+        return PlaybackParameters.DEFAULT;
+      }
+
+      @Override
+      public PlaybackParameters getPlaybackParameters() {
+        return PlaybackParameters.DEFAULT;
+      }
+
+      @Override
+      public boolean isEnded() {
+        // Keep rendering until all speed changes have been requested and the last one applied.
+        return speedChangesFinished.get() && speed == finalSpeed;
+      }
+
+    };
+    playerWrapper.setup(mediaSource, audioRenderer);
+    playerWrapper.blockUntilSourceInfoRefreshed(TIMEOUT_MS);
+    ExoPlayer player = playerWrapper.player;
+    for (int i = 0; i < speedChangeCount; i++) {
+      float speed = 0.5f + (i % 8) * 0.5f;
+      player.setPlaybackSpeed(speed);
+      assertEquals(speed, player.getPlaybackSpeed());
+    }
+    player.setPlaybackSpeed(finalSpeed);
+    speedChangesFinished.set(true);
+    playerWrapper.blockUntilEnded(TIMEOUT_MS);
+    assertFalse(speedChangedOnWrongThread.get());
+    assertEquals(finalSpeed, playerWrapper.player.getPlaybackSpeed());
+  }
+
   /**
    * Wraps a player with its own handler thread.
    */
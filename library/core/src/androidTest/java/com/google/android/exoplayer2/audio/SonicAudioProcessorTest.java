@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import com.google.android.exoplayer2.C;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link SonicAudioProcessor}.
+ */
+public final class SonicAudioProcessorTest extends TestCase {
+
+  private static final int SAMPLE_RATE_HZ = 44100;
+  private static final int CHANNEL_COUNT = 2;
+  private static final int BUFFER_SIZE_BYTES = 4096;
+  private static final int INPUT_SIZE_BYTES = BUFFER_SIZE_BYTES * 64;
+
+  private byte[] input;
+
+  @Override
+  public void setUp() {
+    input = new byte[INPUT_SIZE_BYTES];
+    Random random = new Random(0);
+    ByteBuffer inputBuffer = ByteBuffer.wrap(input).order(ByteOrder.nativeOrder());
+    for (int i = 0; i < INPUT_SIZE_BYTES / 2; i++) {
+      // A tone with some noise, so that the pitch period search has something to find.
+      double tone = Math.sin(2 * Math.PI * 220 * (i / CHANNEL_COUNT) / SAMPLE_RATE_HZ);
+      inputBuffer.putShort((short) (tone * 8000 + random.nextInt(512)));
+    }
+  }
+
+  public void testReusedProcessorMatchesNewProcessor() throws Exception {
+    SonicAudioProcessor reusedProcessor = createProcessor(2f);
+    process(reusedProcessor, false);
+    reusedProcessor.flush();
+    byte[] reusedOutput = process(reusedProcessor, false);
+
+    byte[] newOutput = process(createProcessor(2f), false);
+    assertTrue(Arrays.equals(newOutput, reusedOutput));
+  }
+
+  public void testReusedInputBufferMatchesNewInputBuffers() throws Exception {
+    for (float speed : new float[] {0.5f, 1.5f, 2f, 3f, 4f}) {
+      byte[] output = process(createProcessor(speed), false);
+      byte[] reusedBufferOutput = process(createProcessor(speed), true);
+      assertTrue(Arrays.equals(output, reusedBufferOutput));
+    }
+  }
+
+  public void testOutputDurationScalesWithSpeed() throws Exception {
+    int inputFrameCount = INPUT_SIZE_BYTES / (2 * CHANNEL_COUNT);
+    for (float speed : new float[] {0.5f, 2f, 4f}) {
+      byte[] output = process(createProcessor(speed), true);
+      int outputFrameCount = output.length / (2 * CHANNEL_COUNT);
+      assertEquals(inputFrameCount / speed, outputFrameCount, inputFrameCount / speed * 0.01);
+    }
+  }
+
+  public void testHighResolutionInputMatchesTruncated16BitInput() throws Exception {
+    // Widen each 16-bit sample with extra low-order bytes, which conversion must discard.
+    Random random = new Random(1);
+    byte[] input24Bit = new byte[INPUT_SIZE_BYTES / 2 * 3];
+    byte[] input32Bit = new byte[INPUT_SIZE_BYTES * 2];
+    for (int i = 0; i < INPUT_SIZE_BYTES / 2; i++) {
+      input24Bit[i * 3] = (byte) random.nextInt();
+      input24Bit[i * 3 + 1] = input[i * 2];
+      input24Bit[i * 3 + 2] = input[i * 2 + 1];
+      input32Bit[i * 4] = (byte) random.nextInt();
+      input32Bit[i * 4 + 1] = (byte) random.nextInt();
+      input32Bit[i * 4 + 2] = input[i * 2];
+      input32Bit[i * 4 + 3] = input[i * 2 + 1];
+    }
+    for (float speed : new float[] {1f, 2f}) {
+      byte[] output = process(createProcessor(speed, CHANNEL_COUNT, C.ENCODING_PCM_16BIT),
+          input, 2, true);
+      byte[] output24Bit = process(createProcessor(speed, CHANNEL_COUNT, C.ENCODING_PCM_24BIT),
+          input24Bit, 3, true);
+      byte[] output32Bit = process(createProcessor(speed, CHANNEL_COUNT, C.ENCODING_PCM_32BIT),
+          input32Bit, 4, true);
+      assertTrue(Arrays.equals(output, output24Bit));
+      assertTrue(Arrays.equals(output, output32Bit));
+    }
+  }
+
+  public void test8BitMultichannelInputMatchesEquivalent16BitInput() throws Exception {
+    int channelCount = 4;
+    byte[] input8Bit = new byte[INPUT_SIZE_BYTES / 2];
+    byte[] input16Bit = new byte[INPUT_SIZE_BYTES];
+    ByteBuffer input16BitBuffer = ByteBuffer.wrap(input16Bit).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < input8Bit.length; i++) {
+      // Unsigned 8-bit samples, offset by 128.
+      double tone = Math.sin(2 * Math.PI * 220 * (i / channelCount) / SAMPLE_RATE_HZ);
+      int value = (int) (tone * 100) + 128 + (i % channelCount);
+      input8Bit[i] = (byte) value;
+      input16BitBuffer.putShort((short) ((value - 128) << 8));
+    }
+    for (float speed : new float[] {1f, 1.5f}) {
+      byte[] output = process(createProcessor(speed, channelCount, C.ENCODING_PCM_16BIT),
+          input16Bit, 2, false);
+      byte[] output8Bit = process(createProcessor(speed, channelCount, C.ENCODING_PCM_8BIT),
+          input8Bit, 1, false);
+      assertTrue(Arrays.equals(output, output8Bit));
+    }
+  }
+
+  public void testIsActiveForNon16BitInputAtNormalSpeed() throws Exception {
+    SonicAudioProcessor processor = new SonicAudioProcessor();
+    processor.configure(SAMPLE_RATE_HZ, CHANNEL_COUNT, C.ENCODING_PCM_16BIT);
+    assertFalse(processor.isActive());
+    processor.configure(SAMPLE_RATE_HZ, CHANNEL_COUNT, C.ENCODING_PCM_24BIT);
+    assertTrue(processor.isActive());
+    assertEquals(C.ENCODING_PCM_16BIT, processor.getOutputEncoding());
+  }
+
+  private static SonicAudioProcessor createProcessor(float speed)
+      throws AudioProcessor.UnhandledFormatException {
+    return createProcessor(speed, CHANNEL_COUNT, C.ENCODING_PCM_16BIT);
+  }
+
+  private static SonicAudioProcessor createProcessor(float speed, int channelCount,
+      @C.PcmEncoding int encoding) throws AudioProcessor.UnhandledFormatException {
+    SonicAudioProcessor processor = new SonicAudioProcessor();
+    processor.setSpeed(speed);
+    processor.configure(SAMPLE_RATE_HZ, channelCount, encoding);
+    processor.flush();
+    return processor;
+  }
+
+  private byte[] process(SonicAudioProcessor processor, boolean reuseInputBuffer) {
+    return process(processor, input, 2, reuseInputBuffer);
+  }
+
+  private static byte[] process(SonicAudioProcessor processor, byte[] input, int bytesPerSample,
+      boolean reuseInputBuffer) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    // Use buffers holding the same number of samples whatever the encoding.
+    int bufferSize = BUFFER_SIZE_BYTES / 2 * bytesPerSample;
+    ByteBuffer inputBuffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+    for (int offset = 0; offset < input.length; offset += bufferSize) {
+      if (!reuseInputBuffer) {
+        inputBuffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+      }
+      inputBuffer.clear();
+      inputBuffer.put(input, offset, bufferSize);
+      inputBuffer.flip();
+      if (reuseInputBuffer) {
+        // Queue the buffer in two parts, so that input starts part way through it.
+        int limit = inputBuffer.limit();
+        inputBuffer.limit(bufferSize / 2);
+        processor.queueInput(inputBuffer);
+        drainOutput(processor, output);
+        inputBuffer.limit(limit);
+      }
+      processor.queueInput(inputBuffer);
+      assertFalse(inputBuffer.hasRemaining());
+      drainOutput(processor, output);
+    }
+    return finishProcessing(processor, output);
+  }
+
+  private static byte[] finishProcessing(SonicAudioProcessor processor,
+      ByteArrayOutputStream output) {
+    processor.queueEndOfStream();
+    processor.queueInput(AudioProcessor.EMPTY_BUFFER);
+    drainOutput(processor, output);
+    assertTrue(processor.isEnded());
+    return output.toByteArray();
+  }
+
+  private static void drainOutput(SonicAudioProcessor processor, ByteArrayOutputStream output) {
+    ByteBuffer outputBuffer = processor.getOutput();
+    while (outputBuffer.hasRemaining()) {
+      output.write(outputBuffer.get());
+    }
+  }
+
+}
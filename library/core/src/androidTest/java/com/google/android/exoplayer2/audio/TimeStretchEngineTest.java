@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import java.nio.ShortBuffer;
+import java.util.Random;
+import java.util.zip.CRC32;
+import junit.framework.TestCase;
+
+/**
+ * Golden output tests for the default {@link TimeStretchEngine}.
+ * <p>
+ * The expected checksums were produced by the reference Sonic implementation. Any optimization of
+ * the engine must keep its output bit-exact.
+ */
+public final class TimeStretchEngineTest extends TestCase {
+
+  private static final int INPUT_FRAME_COUNT = 44100 * 2;
+  private static final int INPUT_CHUNK_FRAME_COUNT = 1024;
+
+  public void testMonoGoldenOutput() {
+    assertGoldenOutput(44100, 1, 0.5f, 1f, 2532114801L);
+    assertGoldenOutput(44100, 1, 2f, 1f, 417930722L);
+    assertGoldenOutput(44100, 1, 4f, 1f, 243487283L);
+  }
+
+  public void testStereoGoldenOutput() {
+    assertGoldenOutput(44100, 2, 0.5f, 1f, 4219096070L);
+    assertGoldenOutput(44100, 2, 0.75f, 1f, 1137838234L);
+    assertGoldenOutput(44100, 2, 1.25f, 1f, 213412456L);
+    assertGoldenOutput(44100, 2, 1.5f, 1f, 3616362281L);
+    assertGoldenOutput(44100, 2, 2f, 1f, 1578150728L);
+    assertGoldenOutput(44100, 2, 3f, 1f, 3938504871L);
+    assertGoldenOutput(44100, 2, 4f, 1f, 3574321065L);
+  }
+
+  public void testOtherSampleRatesGoldenOutput() {
+    assertGoldenOutput(48000, 2, 2f, 1f, 3328241225L);
+    assertGoldenOutput(8000, 1, 2f, 1f, 1589748446L);
+  }
+
+  public void testPitchGoldenOutput() {
+    assertGoldenOutput(44100, 2, 1f, 1.5f, 1165773580L);
+    assertGoldenOutput(44100, 2, 2f, 0.5f, 4087852285L);
+  }
+
+  private static void assertGoldenOutput(int sampleRateHz, int channelCount, float speed,
+      float pitch, long expectedChecksum) {
+    TimeStretchEngine engine =
+        TimeStretchEngine.Factory.DEFAULT.createTimeStretchEngine(sampleRateHz, channelCount);
+    engine.setSpeed(speed);
+    engine.setPitch(pitch);
+    short[] input = createInput(sampleRateHz, channelCount);
+    CRC32 crc = new CRC32();
+    ShortBuffer outputBuffer = ShortBuffer.allocate(INPUT_CHUNK_FRAME_COUNT * channelCount * 8);
+    int chunkSize = INPUT_CHUNK_FRAME_COUNT * channelCount;
+    for (int offset = 0; offset < input.length; offset += chunkSize) {
+      int length = Math.min(chunkSize, input.length - offset);
+      engine.queueInput(ShortBuffer.wrap(input, offset, length));
+      drainOutput(engine, outputBuffer, crc);
+    }
+    engine.queueEndOfStream();
+    drainOutput(engine, outputBuffer, crc);
+    assertEquals("speed " + speed + ", pitch " + pitch, expectedChecksum, crc.getValue());
+  }
+
+  private static short[] createInput(int sampleRateHz, int channelCount) {
+    short[] input = new short[INPUT_FRAME_COUNT * channelCount];
+    Random random = new Random(0);
+    for (int i = 0; i < INPUT_FRAME_COUNT; i++) {
+      // A voice-like signal whose fundamental frequency drifts, with some noise. StrictMath makes
+      // the input identical on every platform.
+      double time = (double) i / sampleRateHz;
+      double frequency = 150 + 50 * StrictMath.sin(2 * Math.PI * 0.5 * time);
+      double value = StrictMath.sin(2 * Math.PI * frequency * time)
+          + 0.5 * StrictMath.sin(4 * Math.PI * frequency * time);
+      for (int j = 0; j < channelCount; j++) {
+        input[i * channelCount + j] = (short) (value * 8000 * (j + 1) + random.nextInt(256));
+      }
+    }
+    return input;
+  }
+
+  private static void drainOutput(TimeStretchEngine engine, ShortBuffer outputBuffer, CRC32 crc) {
+    while (engine.getSamplesAvailable() > 0) {
+      outputBuffer.clear();
+      engine.getOutput(outputBuffer);
+      for (int i = 0; i < outputBuffer.position(); i++) {
+        short value = outputBuffer.get(i);
+        crc.update(value & 0xFF);
+        crc.update((value >> 8) & 0xFF);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link DefaultTrackOutput}.
+ */
+public final class DefaultTrackOutputTest extends TestCase {
+
+  private static final int ALLOCATION_SIZE = 256;
+  private static final int SAMPLE_SIZE = 4;
+  private static final long SAMPLE_DURATION_US = 1000;
+  private static final Format FORMAT =
+      Format.createSampleFormat("id", MimeTypes.VIDEO_H264, Format.OFFSET_SAMPLE_RELATIVE);
+
+  private DefaultTrackOutput trackOutput;
+  private FormatHolder formatHolder;
+  private DecoderInputBuffer inputBuffer;
+
+  @Override
+  public void setUp() {
+    trackOutput = new DefaultTrackOutput(new DefaultAllocator(true, ALLOCATION_SIZE));
+    formatHolder = new FormatHolder();
+    inputBuffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+  }
+
+  public void testReadFormatThenSamples() {
+    trackOutput.format(FORMAT);
+    for (int i = 0; i < 10; i++) {
+      writeSample(trackOutput, i, i % 5 == 0);
+    }
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    assertSame(FORMAT, formatHolder.format);
+    for (int i = 0; i < 10; i++) {
+      assertSample(i);
+    }
+    assertEquals(C.RESULT_NOTHING_READ, read());
+    assertTrue(trackOutput.isEmpty());
+    assertEquals(9 * SAMPLE_DURATION_US, trackOutput.getLargestQueuedTimestampUs());
+  }
+
+  public void testSpliceDiscardsLaterSamples() {
+    trackOutput.format(FORMAT);
+    for (int i = 0; i < 10; i++) {
+      writeSample(trackOutput, i, i % 5 == 0);
+    }
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    assertSample(0);
+    trackOutput.splice();
+    // Samples 5 onwards are replaced.
+    writeSample(trackOutput, 5, true, 100);
+    assertEquals(6, trackOutput.getWriteIndex());
+    for (int i = 1; i < 5; i++) {
+      assertSample(i);
+    }
+    assertSample(5, 100);
+    assertTrue(trackOutput.isEmpty());
+  }
+
+  public void testSkipToKeyframeBefore() {
+    trackOutput.format(FORMAT);
+    for (int i = 0; i < 100; i++) {
+      writeSample(trackOutput, i, i % 10 == 0);
+    }
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    assertTrue(trackOutput.skipToKeyframeBefore(45 * SAMPLE_DURATION_US, false));
+    assertSample(40);
+    // Keyframes already passed by the read position cannot be skipped to.
+    assertFalse(trackOutput.skipToKeyframeBefore(40 * SAMPLE_DURATION_US, false));
+    assertTrue(trackOutput.skipToKeyframeBefore(50 * SAMPLE_DURATION_US, false));
+    assertSample(50);
+    assertFalse(trackOutput.skipToKeyframeBefore(200 * SAMPLE_DURATION_US, false));
+    assertTrue(trackOutput.skipToKeyframeBefore(200 * SAMPLE_DURATION_US, true));
+    assertSample(90);
+  }
+
+  public void testSkipToKeyframeBeforeAfterGrowingAndSplicing() {
+    int sampleCount = 5000;
+    trackOutput.format(FORMAT);
+    for (int i = 0; i < sampleCount; i++) {
+      writeSample(trackOutput, i, i % 3 == 0);
+    }
+    trackOutput.splice();
+    writeSample(trackOutput, sampleCount - 2, true, -1);
+    assertEquals(C.RESULT_FORMAT_READ, read());
+    for (int i = 0; i < sampleCount - 2; i += 97) {
+      assertTrue(trackOutput.skipToKeyframeBefore(i * SAMPLE_DURATION_US + 1, false));
+      assertSample(i - i % 3);
+    }
+    assertTrue(trackOutput.skipToKeyframeBefore((sampleCount - 2) * SAMPLE_DURATION_US, false));
+    assertSample(sampleCount - 2, -1);
+  }
+
+  public void testConcurrentWriteAndRead() throws InterruptedException {
+    final int sampleCount = 20000;
+    final AtomicReference<Throwable> loadingError = new AtomicReference<>();
+    trackOutput.format(FORMAT);
+    Thread loadingThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < sampleCount; i++) {
+            writeSample(trackOutput, i, i % 30 == 0);
+          }
+        } catch (Throwable e) {
+          loadingError.set(e);
+        }
+      }
+    };
+    loadingThread.start();
+    assertEquals(C.RESULT_FORMAT_READ, readBlocking());
+    for (int i = 0; i < sampleCount; i++) {
+      assertEquals(C.RESULT_BUFFER_READ, readBlocking());
+      assertBufferContents(i, i);
+    }
+    loadingThread.join();
+    assertNull(loadingError.get());
+    assertTrue(trackOutput.isEmpty());
+  }
+
+  public void testConcurrentSpliceAndRead() throws InterruptedException {
+    final int sampleCount = 20000;
+    final AtomicReference<Throwable> loadingError = new AtomicReference<>();
+    trackOutput.format(FORMAT);
+    Thread loadingThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < sampleCount; i += 10) {
+            for (int j = i; j < i + 10; j++) {
+              writeSample(trackOutput, j, j % 5 == 0);
+            }
+            // Replace the last five samples, unless the reader has already read one of them.
+            trackOutput.splice();
+            for (int j = i + 5; j < i + 10; j++) {
+              writeSample(trackOutput, j, j % 5 == 0, sampleCount + j);
+            }
+          }
+        } catch (Throwable e) {
+          loadingError.set(e);
+        }
+      }
+    };
+    loadingThread.start();
+    assertEquals(C.RESULT_FORMAT_READ, readBlocking());
+    long lastTimeUs = Long.MIN_VALUE;
+    while (true) {
+      int result = read();
+      if (result == C.RESULT_NOTHING_READ) {
+        if (!loadingThread.isAlive() && trackOutput.isEmpty()) {
+          break;
+        }
+        continue;
+      }
+      assertEquals(C.RESULT_BUFFER_READ, result);
+      // Each sample is read once, whether or not it was replaced.
+      assertTrue(inputBuffer.timeUs > lastTimeUs);
+      lastTimeUs = inputBuffer.timeUs;
+      int index = (int) (inputBuffer.timeUs / SAMPLE_DURATION_US);
+      inputBuffer.data.flip();
+      int value = inputBuffer.data.getInt();
+      assertTrue(value == index || value == sampleCount + index);
+    }
+    assertEquals((sampleCount - 1) * SAMPLE_DURATION_US, lastTimeUs);
+    assertNull(loadingError.get());
+  }
+
+  private int read() {
+    inputBuffer.clear();
+    return trackOutput.readData(formatHolder, inputBuffer, false, false, 0);
+  }
+
+  private int readBlocking() {
+    int result;
+    do {
+      result = read();
+    } while (result == C.RESULT_NOTHING_READ);
+    return result;
+  }
+
+  private void assertSample(int index) {
+    assertSample(index, index);
+  }
+
+  private void assertSample(int index, int value) {
+    assertEquals(C.RESULT_BUFFER_READ, read());
+    assertBufferContents(index, value);
+  }
+
+  private void assertBufferContents(int index, int value) {
+    assertEquals(index * SAMPLE_DURATION_US, inputBuffer.timeUs);
+    inputBuffer.data.flip();
+    assertEquals(value, inputBuffer.data.getInt());
+  }
+
+  private static void writeSample(DefaultTrackOutput trackOutput, int index, boolean keyframe) {
+    writeSample(trackOutput, index, keyframe, index);
+  }
+
+  private static void writeSample(DefaultTrackOutput trackOutput, int index, boolean keyframe,
+      int value) {
+    ParsableByteArray data = new ParsableByteArray(new byte[] {
+        (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value});
+    trackOutput.sampleData(data, SAMPLE_SIZE);
+    trackOutput.sampleMetadata(index * SAMPLE_DURATION_US,
+        keyframe ? C.BUFFER_FLAG_KEY_FRAME : 0, SAMPLE_SIZE, 0, null);
+  }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.MimeTypes;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link AdaptiveTrackSelection}.
+ */
+public class AdaptiveTrackSelectionTest extends TestCase {
+
+  private static final int MIN_DURATION_FOR_QUALITY_INCREASE_MS = 10000;
+  private static final int MAX_DURATION_FOR_QUALITY_DECREASE_MS = 25000;
+  private static final int MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS = 25000;
+
+  private static final long MIN_DURATION_FOR_QUALITY_INCREASE_US =
+      MIN_DURATION_FOR_QUALITY_INCREASE_MS * 1000L;
+  private static final long MAX_DURATION_FOR_QUALITY_DECREASE_US =
+      MAX_DURATION_FOR_QUALITY_DECREASE_MS * 1000L;
+
+  private static final Format LOW = createVideoFormat("low", 500000);
+  private static final Format MEDIUM = createVideoFormat("medium", 1000000);
+  private static final Format HIGH = createVideoFormat("high", 2000000);
+
+  private FakeBandwidthMeter bandwidthMeter;
+
+  @Override
+  public void setUp() {
+    bandwidthMeter = new FakeBandwidthMeter();
+  }
+
+  public void testSpeedRequiresProportionalBandwidth() {
+    bandwidthMeter.bitrateEstimate = 2000000;
+    AdaptiveTrackSelection selection = createSelection(true);
+    assertEquals(HIGH, selection.getSelectedFormat());
+
+    selection.onPlaybackSpeed(2f);
+    selection.updateSelectedTrack(0);
+    assertEquals(MEDIUM, selection.getSelectedFormat());
+
+    // Twice the bandwidth estimate is enough to play the same track at 2x.
+    bandwidthMeter.bitrateEstimate = 4000000;
+    selection.updateSelectedTrack(2 * MIN_DURATION_FOR_QUALITY_INCREASE_US);
+    assertEquals(HIGH, selection.getSelectedFormat());
+    bandwidthMeter.bitrateEstimate = 3999999;
+    selection.updateSelectedTrack(0);
+    assertEquals(MEDIUM, selection.getSelectedFormat());
+  }
+
+  public void testSpeedIgnoredWhenNotAdapting() {
+    bandwidthMeter.bitrateEstimate = 2000000;
+    AdaptiveTrackSelection selection = createSelection(false);
+    selection.onPlaybackSpeed(2f);
+    selection.updateSelectedTrack(0);
+    assertEquals(HIGH, selection.getSelectedFormat());
+  }
+
+  public void testSpeedScalesMinDurationForQualityIncrease() {
+    assertQualityIncrease(true, 1f, MIN_DURATION_FOR_QUALITY_INCREASE_US);
+    assertQualityIncrease(true, 2f, 2 * MIN_DURATION_FOR_QUALITY_INCREASE_US);
+    assertQualityIncrease(true, 0.5f, MIN_DURATION_FOR_QUALITY_INCREASE_US / 2);
+    assertQualityIncrease(false, 2f, MIN_DURATION_FOR_QUALITY_INCREASE_US);
+  }
+
+  public void testSpeedScalesMaxDurationForQualityDecrease() {
+    assertQualityDecrease(true, 1f, MAX_DURATION_FOR_QUALITY_DECREASE_US);
+    assertQualityDecrease(true, 2f, 2 * MAX_DURATION_FOR_QUALITY_DECREASE_US);
+    assertQualityDecrease(true, 0.5f, MAX_DURATION_FOR_QUALITY_DECREASE_US / 2);
+    assertQualityDecrease(false, 2f, MAX_DURATION_FOR_QUALITY_DECREASE_US);
+  }
+
+  /**
+   * Asserts that a switch from the lowest to the highest quality track happens with
+   * {@code thresholdUs} buffered at the given speed, but not with less.
+   */
+  private void assertQualityIncrease(boolean adaptToPlaybackSpeed, float speed,
+      long thresholdUs) {
+    bandwidthMeter.bitrateEstimate = LOW.bitrate;
+    AdaptiveTrackSelection selection = createSelection(adaptToPlaybackSpeed);
+    selection.onPlaybackSpeed(speed);
+    assertEquals(LOW, selection.getSelectedFormat());
+
+    // Enough bandwidth for the highest quality track at any of the tested speeds.
+    bandwidthMeter.bitrateEstimate = 2 * HIGH.bitrate;
+    selection.updateSelectedTrack(thresholdUs - 1);
+    assertEquals(LOW, selection.getSelectedFormat());
+    selection.updateSelectedTrack(thresholdUs);
+    assertEquals(HIGH, selection.getSelectedFormat());
+  }
+
+  /**
+   * Asserts that a switch from the highest to the lowest quality track is deferred with
+   * {@code thresholdUs} buffered at the given speed, but not with less.
+   */
+  private void assertQualityDecrease(boolean adaptToPlaybackSpeed, float speed,
+      long thresholdUs) {
+    bandwidthMeter.bitrateEstimate = 2 * HIGH.bitrate;
+    AdaptiveTrackSelection selection = createSelection(adaptToPlaybackSpeed);
+    selection.onPlaybackSpeed(speed);
+    assertEquals(HIGH, selection.getSelectedFormat());
+
+    // Only enough bandwidth for the lowest quality track at any of the tested speeds.
+    bandwidthMeter.bitrateEstimate = LOW.bitrate / 2;
+    selection.updateSelectedTrack(thresholdUs);
+    assertEquals(HIGH, selection.getSelectedFormat());
+    selection.updateSelectedTrack(thresholdUs - 1);
+    assertEquals(LOW, selection.getSelectedFormat());
+  }
+
+  private AdaptiveTrackSelection createSelection(boolean adaptToPlaybackSpeed) {
+    TrackGroup trackGroup = new TrackGroup(LOW, HIGH, MEDIUM);
+    return new AdaptiveTrackSelection(trackGroup, new int[] {0, 1, 2}, bandwidthMeter,
+        AdaptiveTrackSelection.DEFAULT_MAX_INITIAL_BITRATE, MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+        MAX_DURATION_FOR_QUALITY_DECREASE_MS, MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS, 1f,
+        adaptToPlaybackSpeed);
+  }
+
+  private static Format createVideoFormat(String id, int bitrate) {
+    return Format.createVideoSampleFormat(id, MimeTypes.VIDEO_H264, null, bitrate,
+        Format.NO_VALUE, 1280, 720, Format.NO_VALUE, null, null);
+  }
+
+  private static final class FakeBandwidthMeter implements BandwidthMeter {
+
+    public long bitrateEstimate;
+
+    @Override
+    public long getBitrateEstimate() {
+      return bitrateEstimate;
+    }
+
+  }
+
+}
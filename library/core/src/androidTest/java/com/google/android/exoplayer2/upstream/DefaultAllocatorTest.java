@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link DefaultAllocator}.
+ */
+public final class DefaultAllocatorTest extends TestCase {
+
+  private static final int ALLOCATION_SIZE = 16;
+
+  public void testAllocateReusesReleasedAllocation() {
+    DefaultAllocator allocator = new DefaultAllocator(true, ALLOCATION_SIZE);
+    Allocation allocation = allocator.allocate();
+    assertEquals(ALLOCATION_SIZE, allocator.getTotalBytesAllocated());
+    allocator.release(allocation);
+    assertEquals(0, allocator.getTotalBytesAllocated());
+    assertSame(allocation, allocator.allocate());
+  }
+
+  public void testTrimDiscardsAllocationsBeyondTarget() {
+    DefaultAllocator allocator = new DefaultAllocator(true, ALLOCATION_SIZE);
+    allocator.setTargetBufferSize(ALLOCATION_SIZE * 2);
+    Allocation[] allocations = allocate(allocator, 4);
+    allocator.release(allocations);
+    allocator.trim();
+    assertEquals(2, countReused(allocations, allocate(allocator, 4)));
+  }
+
+  public void testTrimKeepsInitialAllocations() {
+    DefaultAllocator allocator = new DefaultAllocator(true, ALLOCATION_SIZE, 8);
+    allocator.setTargetBufferSize(ALLOCATION_SIZE * 16);
+    Allocation[] initialAllocations = allocate(allocator, 8);
+    Allocation[] extraAllocations = allocate(allocator, 8);
+    allocator.release(extraAllocations);
+    allocator.release(initialAllocations);
+    allocator.reset();
+    Allocation[] allocations = allocate(allocator, 16);
+    assertEquals(8, countReused(initialAllocations, allocations));
+    assertEquals(0, countReused(extraAllocations, allocations));
+  }
+
+  public void testAllocationsFromOtherThreadsAreReused() throws InterruptedException {
+    final DefaultAllocator allocator = new DefaultAllocator(true, ALLOCATION_SIZE);
+    final Allocation[] allocations = allocate(allocator, 8);
+    Thread releasingThread = new Thread() {
+      @Override
+      public void run() {
+        allocator.release(allocations);
+      }
+    };
+    releasingThread.start();
+    releasingThread.join();
+    assertEquals(8, countReused(allocations, allocate(allocator, 8)));
+  }
+
+  public void testConcurrentAllocateAndRelease() throws InterruptedException {
+    final DefaultAllocator allocator = new DefaultAllocator(true, ALLOCATION_SIZE, 16);
+    final Set<Allocation> outstanding =
+        Collections.newSetFromMap(new IdentityHashMap<Allocation, Boolean>());
+    final AtomicReference<String> failure = new AtomicReference<>();
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            startLatch.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          for (int j = 0; j < 2000; j++) {
+            Allocation[] allocations = allocate(allocator, 1 + j % 5);
+            synchronized (outstanding) {
+              for (Allocation allocation : allocations) {
+                if (!outstanding.add(allocation)) {
+                  failure.set("Allocation handed out twice");
+                }
+              }
+            }
+            synchronized (outstanding) {
+              for (Allocation allocation : allocations) {
+                outstanding.remove(allocation);
+              }
+            }
+            if (allocations.length == 1) {
+              allocator.release(allocations[0]);
+            } else {
+              allocator.release(allocations);
+            }
+            if (j % 100 == 0) {
+              allocator.trim();
+            }
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    startLatch.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure.get());
+    assertEquals(0, allocator.getTotalBytesAllocated());
+  }
+
+  private static Allocation[] allocate(DefaultAllocator allocator, int count) {
+    Allocation[] allocations = new Allocation[count];
+    for (int i = 0; i < count; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    return allocations;
+  }
+
+  private static int countReused(Allocation[] previousAllocations, Allocation[] allocations) {
+    Set<Allocation> previous = Collections.newSetFromMap(new IdentityHashMap<Allocation, Boolean>());
+    Collections.addAll(previous, previousAllocations);
+    int count = 0;
+    for (Allocation allocation : allocations) {
+      if (previous.contains(allocation)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+}
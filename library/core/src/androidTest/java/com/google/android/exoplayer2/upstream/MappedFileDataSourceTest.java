@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+import android.test.MoreAsserts;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.FileDataSource.FileDataSourceException;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link MappedFileDataSource}.
+ */
+public class MappedFileDataSourceTest extends InstrumentationTestCase {
+
+  private static final int DATA_LENGTH = 1000;
+  private static final int MIN_MAPPED_LENGTH = 100;
+  private static final int MAX_MAPPED_LENGTH = 300;
+
+  private byte[] data;
+  private File tempFolder;
+  private Uri uri;
+
+  @Override
+  protected void setUp() throws Exception {
+    data = TestUtil.buildTestData(DATA_LENGTH);
+    tempFolder = Util.createTempDirectory(getInstrumentation().getContext(), "ExoPlayerTest");
+    File file = new File(tempFolder, "data");
+    FileOutputStream output = new FileOutputStream(file);
+    output.write(data);
+    output.close();
+    uri = Uri.fromFile(file);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Util.recursiveDelete(tempFolder);
+  }
+
+  public void testReadWholeFileAcrossWindows() throws IOException {
+    assertReadData(0, C.LENGTH_UNSET, 7);
+    assertReadData(0, C.LENGTH_UNSET, DATA_LENGTH);
+  }
+
+  public void testReadMappedRegion() throws IOException {
+    assertReadData(150, 700, 64);
+    assertReadData(650, C.LENGTH_UNSET, 1);
+  }
+
+  public void testReadShortRegionThroughFile() throws IOException {
+    assertReadData(500, 50, 7);
+    assertReadData(DATA_LENGTH - 20, C.LENGTH_UNSET, 100);
+  }
+
+  public void testReadFromEnd() throws IOException {
+    MappedFileDataSource dataSource = createDataSource();
+    assertEquals(0, dataSource.open(new DataSpec(uri, DATA_LENGTH, C.LENGTH_UNSET, null)));
+    assertEquals(C.RESULT_END_OF_INPUT, dataSource.read(new byte[1], 0, 1));
+    dataSource.close();
+  }
+
+  public void testOpenBeyondEndFails() throws IOException {
+    MappedFileDataSource dataSource = createDataSource();
+    try {
+      dataSource.open(new DataSpec(uri, DATA_LENGTH + 1, C.LENGTH_UNSET, null));
+      fail();
+    } catch (FileDataSourceException e) {
+      // Expected.
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  public void testOpenRegionLongerThanFileFails() throws IOException {
+    MappedFileDataSource dataSource = createDataSource();
+    try {
+      dataSource.open(new DataSpec(uri, 500, DATA_LENGTH, null));
+      fail();
+    } catch (FileDataSourceException e) {
+      // Expected.
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  public void testReadTruncatedFileFails() throws IOException {
+    MappedFileDataSource dataSource = createDataSource();
+    assertEquals(DATA_LENGTH, dataSource.open(new DataSpec(uri)));
+    byte[] readData = new byte[MAX_MAPPED_LENGTH];
+    assertEquals(MAX_MAPPED_LENGTH, dataSource.read(readData, 0, MAX_MAPPED_LENGTH));
+    // Truncate the file to the end of the first window.
+    RandomAccessFile file = new RandomAccessFile(uri.getPath(), "rw");
+    file.setLength(MAX_MAPPED_LENGTH);
+    file.close();
+    try {
+      dataSource.read(readData, 0, MAX_MAPPED_LENGTH);
+      fail();
+    } catch (FileDataSourceException e) {
+      // Expected.
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  private void assertReadData(long position, long length, int readLength) throws IOException {
+    MappedFileDataSource dataSource = createDataSource();
+    long expectedLength = length == C.LENGTH_UNSET ? DATA_LENGTH - position : length;
+    assertEquals(expectedLength, dataSource.open(new DataSpec(uri, position, length, null)));
+    byte[] readData = new byte[(int) expectedLength];
+    int totalRead = 0;
+    int read;
+    while ((read = dataSource.read(readData, totalRead,
+        Math.min(readLength, readData.length - totalRead))) > 0) {
+      totalRead += read;
+      if (totalRead == readData.length) {
+        assertEquals(C.RESULT_END_OF_INPUT, dataSource.read(new byte[1], 0, 1));
+        break;
+      }
+    }
+    dataSource.close();
+    assertEquals(expectedLength, totalRead);
+    MoreAsserts.assertEquals(Arrays.copyOfRange(data, (int) position,
+        (int) (position + expectedLength)), readData);
+  }
+
+  private static MappedFileDataSource createDataSource() {
+    return new MappedFileDataSource(null, MIN_MAPPED_LENGTH, MAX_MAPPED_LENGTH);
+  }
+
+}
@@ -49,6 +49,7 @@ public class CacheDataSourceTest extends InstrumentationTestCase {
 
   @Override
   protected void tearDown() throws Exception {
+    simpleCache.release();
     Util.recursiveDelete(cacheDir);
   }
 
@@ -57,8 +58,13 @@ public class CacheDataSourceTest extends InstrumentationTestCase {
     assertReadDataContentLength(cacheDataSource, false, false);
     File[] files = cacheDir.listFiles();
     for (File file : files) {
-      if (!file.getName().equals(CachedContentIndex.FILE_NAME)) {
-        assertTrue(file.length() <= MAX_CACHE_FILE_SIZE);
+      if (file.isDirectory()) {
+        for (File cacheFile : file.listFiles()) {
+          assertTrue(cacheFile.length() <= MAX_CACHE_FILE_SIZE);
+        }
+      } else {
+        // The index file, and the journal of changes to it.
+        assertTrue(file.getName().startsWith(CachedContentIndex.FILE_NAME));
       }
     }
   }
@@ -15,7 +15,6 @@
  */
 package com.google.android.exoplayer2.upstream.cache;
 
-import android.content.Context;
 import android.net.Uri;
 import android.test.AndroidTestCase;
 import android.test.MoreAsserts;
@@ -64,6 +63,22 @@ public class CacheDataSourceTest2 extends AndroidTestCase {
   private static final DataSpec START_OFF_BOUNDARY = new DataSpec(URI, OFFSET_OFF_BOUNDARY,
       DATA.length - OFFSET_OFF_BOUNDARY, KEY);
 
+  private SimpleCache cache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    File cacheDir = getContext().getExternalCacheDir();
+    cache = new SimpleCache(new File(cacheDir, EXO_CACHE_DIR), new NoOpCacheEvictor());
+    emptyCache(cache);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    cache.release();
+    super.tearDown();
+  }
+
   public void testWithoutEncryption() throws IOException {
     testReads(false);
   }
@@ -74,7 +89,7 @@ public class CacheDataSourceTest2 extends AndroidTestCase {
 
   private void testReads(boolean useEncryption) throws IOException {
     FakeDataSource upstreamSource = buildFakeUpstreamSource();
-    CacheDataSource source = buildCacheDataSource(getContext(), upstreamSource, useEncryption);
+    CacheDataSource source = buildCacheDataSource(cache, upstreamSource, useEncryption);
     // First read, should arrive from upstream.
     testRead(END_ON_BOUNDARY, source);
     assertSingleOpen(upstreamSource, 0, OFFSET_ON_BOUNDARY);
@@ -144,12 +159,8 @@ public class CacheDataSourceTest2 extends AndroidTestCase {
     return fakeDataSource;
   }
 
-  private static CacheDataSource buildCacheDataSource(Context context, DataSource upstreamSource,
-      boolean useAesEncryption) throws CacheException {
-    File cacheDir = context.getExternalCacheDir();
-    Cache cache = new SimpleCache(new File(cacheDir, EXO_CACHE_DIR), new NoOpCacheEvictor());
-    emptyCache(cache);
-
+  private static CacheDataSource buildCacheDataSource(Cache cache, DataSource upstreamSource,
+      boolean useAesEncryption) {
     // Source and cipher
     final String secretKey = "testKey:12345678";
     DataSource file = new FileDataSource();
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+import android.test.MoreAsserts;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeHttpServer;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheUtil.CachingCounters;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link CacheUtil}.
+ */
+public class CacheUtilTest extends InstrumentationTestCase {
+
+  private static final String PATH = "/media";
+  private static final int DATA_LENGTH = 100000;
+  private static final int RANGE_LENGTH = 10000;
+  private static final int THREAD_COUNT = 4;
+
+  private byte[] data;
+  private File cacheDir;
+  private SimpleCache cache;
+  private FakeHttpServer server;
+  private Uri uri;
+  private CacheDataSourceFactory dataSourceFactory;
+
+  @Override
+  protected void setUp() throws Exception {
+    data = TestUtil.buildTestData(DATA_LENGTH);
+    cacheDir = Util.createTempDirectory(getInstrumentation().getContext(), "ExoPlayerTest");
+    cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    server = new FakeHttpServer().setData(PATH, data).setResponseDelayMs(50);
+    server.start();
+    uri = server.getUri(PATH);
+    dataSourceFactory = new CacheDataSourceFactory(cache,
+        new DefaultHttpDataSourceFactory("ExoPlayerTest"), 0);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.release();
+    cache.release();
+    Util.recursiveDelete(cacheDir);
+  }
+
+  public void testParallelCacheWithKnownLength() throws Exception {
+    CachingCounters counters = CacheUtil.cache(new DataSpec(uri, 0, DATA_LENGTH, null), cache,
+        dataSourceFactory, THREAD_COUNT, RANGE_LENGTH, null, 0, null);
+
+    assertEquals(0, counters.alreadyCachedBytes);
+    assertEquals(DATA_LENGTH, counters.downloadedBytes);
+    assertCachedData();
+    assertEquals(DATA_LENGTH / RANGE_LENGTH, server.getRequests().size());
+    assertTrue(server.getMaxActiveRequestCount() > 1);
+    assertTrue(server.getMaxActiveRequestCount() <= THREAD_COUNT);
+  }
+
+  public void testParallelCacheWithUnknownLength() throws Exception {
+    CachingCounters counters = CacheUtil.cache(new DataSpec(uri), cache, dataSourceFactory,
+        THREAD_COUNT, RANGE_LENGTH, null, 0, null);
+
+    assertEquals(0, counters.alreadyCachedBytes);
+    assertEquals(DATA_LENGTH, counters.downloadedBytes);
+    assertEquals(DATA_LENGTH, cache.getContentLength(CacheUtil.generateKey(uri)));
+    assertCachedData();
+    // The length is resolved by an unbounded request for the first range.
+    assertEquals("GET " + PATH, server.getRequests().get(0));
+    assertTrue(server.getMaxActiveRequestCount() > 1);
+  }
+
+  public void testParallelCacheSkipsCachedData() throws Exception {
+    CacheUtil.cache(new DataSpec(uri, 20000, 30000, null), cache,
+        dataSourceFactory.createDataSource(), new byte[1024], null, 0, null);
+    CacheUtil.cache(new DataSpec(uri, 70000, 5000, null), cache,
+        dataSourceFactory.createDataSource(), new byte[1024], null, 0, null);
+    int requestCount = server.getRequests().size();
+
+    CachingCounters counters = CacheUtil.cache(new DataSpec(uri, 0, DATA_LENGTH, null), cache,
+        dataSourceFactory, THREAD_COUNT, RANGE_LENGTH, null, 0, null);
+
+    assertEquals(35000, counters.alreadyCachedBytes);
+    assertEquals(DATA_LENGTH - 35000, counters.downloadedBytes);
+    assertCachedData();
+    // [0, 20000) and [50000, 70000) are fetched as two ranges each, [75000, 100000) as three.
+    assertEquals(requestCount + 7, server.getRequests().size());
+  }
+
+  public void testParallelCacheWaitsForHigherPriorityTask() throws Exception {
+    final PriorityTaskManager priorityTaskManager = new PriorityTaskManager();
+    priorityTaskManager.add(C.PRIORITY_PLAYBACK);
+    final AtomicReference<Exception> exception = new AtomicReference<>();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
+        try {
+          CacheUtil.cache(new DataSpec(uri, 0, DATA_LENGTH, null), cache, dataSourceFactory,
+              THREAD_COUNT, RANGE_LENGTH, priorityTaskManager, C.PRIORITY_DOWNLOAD, null);
+        } catch (IOException | InterruptedException e) {
+          exception.set(e);
+        } finally {
+          priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
+        }
+      }
+    };
+    thread.start();
+    Thread.sleep(500);
+    assertEquals(0, server.getRequests().size());
+
+    priorityTaskManager.remove(C.PRIORITY_PLAYBACK);
+    thread.join();
+
+    assertNull(exception.get());
+    assertCachedData();
+  }
+
+  public void testParallelCachePropagatesRuntimeException() throws Exception {
+    final DataSource.Factory httpDataSourceFactory =
+        new DefaultHttpDataSourceFactory("ExoPlayerTest");
+    DataSource.Factory failingDataSourceFactory = new DataSource.Factory() {
+      @Override
+      public DataSource createDataSource() {
+        final DataSource dataSource = httpDataSourceFactory.createDataSource();
+        return new DataSource() {
+          @Override
+          public long open(DataSpec dataSpec) throws IOException {
+            if (dataSpec.position >= DATA_LENGTH / 2) {
+              throw new IllegalStateException("Failing range");
+            }
+            return dataSource.open(dataSpec);
+          }
+          @Override
+          public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            return dataSource.read(buffer, offset, readLength);
+          }
+          @Override
+          public Uri getUri() {
+            return dataSource.getUri();
+          }
+          @Override
+          public void close() throws IOException {
+            dataSource.close();
+          }
+        };
+      }
+    };
+    try {
+      CacheUtil.cache(new DataSpec(uri, 0, DATA_LENGTH, null), cache,
+          new CacheDataSourceFactory(cache, failingDataSourceFactory, 0), THREAD_COUNT,
+          RANGE_LENGTH, null, 0, null);
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Failing range", e.getMessage());
+    }
+  }
+
+  private void assertCachedData() throws IOException {
+    String key = CacheUtil.generateKey(uri);
+    assertTrue(cache.isCached(key, 0, DATA_LENGTH));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (CacheSpan span : cache.getCachedSpans(key)) {
+      FileInputStream input = new FileInputStream(span.file);
+      try {
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+          output.write(buffer, 0, read);
+        }
+      } finally {
+        input.close();
+      }
+    }
+    MoreAsserts.assertEquals(data, output.toByteArray());
+  }
+
+}
@@ -9,9 +9,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.TreeSet;
 import junit.framework.AssertionFailedError;
 
 /**
@@ -31,6 +34,34 @@ public class CachedContentIndexTest extends InstrumentationTestCase {
       0, 0, 0, 0, 0, 0, 10, 0, // original_content_length
       (byte) 0xF6, (byte) 0xFB, 0x50, 0x41 // hashcode_of_CachedContent_array
   };
+  private final byte[] testIndexV2File = {
+      0, 0, 0, 2, // version
+      0, 0, 0, 0, // flags
+      0, 0, 0, 1, // number_of_CachedContent
+      0, 0, 0, 5, // cache_id
+      0, 5, 65, 66, 67, 68, 69, // cache_key
+      0, 0, 0, 0, 0, 0, 0, 10, // original_content_length
+      0, 0, 0, 1, // number_of_spans
+      0, 0, 0, 0, 0, 0, 0, 0, // span_position
+      0, 0, 0, 0, 0, 0, 0, 10, // span_length
+      0, 0, 0, 0, 0, 0, 0, 1, // span_last_access_timestamp
+      0x72, (byte) 0xAC, (byte) 0xA0, 0x23 // hashcode_of_CachedContent_array
+  };
+  private final byte[] testIndexV4File = {
+      0, 0, 0, 4, // version
+      0, 0, 0, 0, // flags
+      0, 0, 0, 0, 0, 0, 0, 0, // journal_id (random, not compared)
+      0, 0, 0, 2, // number_of_CachedContent
+      0, 0, 0, 5, // cache_id
+      0, 5, 65, 66, 67, 68, 69, // cache_key
+      0, 0, 0, 0, 0, 0, 0, 10, // original_content_length
+      0, 0, 0, 0, // number_of_spans
+      0, 0, 0, 2, // cache_id
+      0, 5, 75, 76, 77, 78, 79, // cache_key
+      0, 0, 0, 0, 0, 0, 10, 0, // original_content_length
+      0, 0, 0, 0, // number_of_spans
+      (byte) 0xF6, (byte) 0xFB, 0x50, 0x41 // hashcode_of_CachedContent_array
+  };
   private CachedContentIndex index;
   private File cacheDir;
 
@@ -106,7 +137,7 @@ public class CachedContentIndexTest extends InstrumentationTestCase {
     fos.write(testIndexV1File);
     fos.close();
 
-    index.load();
+    assertFalse(index.load());
     assertEquals(2, index.getAll().size());
     assertEquals(5, index.assignIdForKey("ABCDE"));
     assertEquals(10, index.getContentLength("ABCDE"));
@@ -114,21 +145,192 @@ public class CachedContentIndexTest extends InstrumentationTestCase {
     assertEquals(2560, index.getContentLength("KLMNO"));
   }
 
-  public void testStoreV1() throws Exception {
+  public void testLoadV2() throws Exception {
+    FileOutputStream fos = new FileOutputStream(new File(cacheDir, CachedContentIndex.FILE_NAME));
+    fos.write(testIndexV2File);
+    fos.close();
+
+    assertTrue(index.load());
+    assertEquals(10, index.getContentLength("ABCDE"));
+    SimpleCacheSpan span = index.get("ABCDE").getSpans().iterator().next();
+    assertEquals(10, span.length);
+    assertEquals(1, span.lastAccessTimestamp);
+    // Span files used to be renamed on every access, so the file timestamp is the same.
+    assertEquals(SimpleCacheSpan.getCacheFile(SimpleCacheSpan.getCacheFileDirectory(cacheDir, 5),
+        5, 0, 1), span.file);
+
+    // The index is rewritten in the current version, with a journal.
+    index.store();
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    assertTrue(index2.load());
+    assertIndexEqual(index, index2);
+  }
+
+  public void testStoreV4() throws Exception {
     index.addNew(new CachedContent(2, "KLMNO", 2560));
     index.addNew(new CachedContent(5, "ABCDE", 10));
 
     index.store();
 
-    byte[] buffer = new byte[testIndexV1File.length];
+    byte[] buffer = new byte[testIndexV4File.length];
     FileInputStream fos = new FileInputStream(new File(cacheDir, CachedContentIndex.FILE_NAME));
-    assertEquals(testIndexV1File.length, fos.read(buffer));
+    assertEquals(testIndexV4File.length, fos.read(buffer));
     assertEquals(-1, fos.read());
     fos.close();
 
+    byte[] expected = testIndexV4File.clone();
+    System.arraycopy(buffer, 8, expected, 8, 8);
     // TODO: The order of the CachedContent stored in index file isn't defined so this test may fail
     // on a different implementation of the underlying set
-    MoreAsserts.assertEquals(testIndexV1File, buffer);
+    MoreAsserts.assertEquals(expected, buffer);
+  }
+
+  public void testStoreAndLoadSpans() throws Exception {
+    CachedContent cachedContent = index.add("key1");
+    File directory = SimpleCacheSpan.getCacheFileDirectory(cacheDir, cachedContent.id);
+    assertTrue(directory.mkdir());
+    File cacheSpanFile = SimpleCacheSpanTest.createCacheSpanFile(directory, cachedContent.id, 10,
+        20, 30);
+    SimpleCacheSpan cacheSpan = SimpleCacheSpan.createCacheEntry(cacheSpanFile, index);
+    cachedContent.addSpan(cacheSpan);
+    index.onSpanAdded(cachedContent, cacheSpan);
+    index.store();
+
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    assertTrue(index2.load());
+    SimpleCacheSpan span = index2.get("key1").getSpans().iterator().next();
+    assertEquals(10, span.position);
+    assertEquals(20, span.length);
+    assertEquals(30, span.lastAccessTimestamp);
+    assertEquals(cacheSpanFile, span.file);
+  }
+
+  public void testChangesAppendedToJournal() throws Exception {
+    CachedContent cachedContent1 = index.add("key1");
+    CachedContent cachedContent2 = index.add("key2");
+    addSpan(cachedContent1, 0, 10, 1);
+    addSpan(cachedContent2, 0, 10, 2);
+    index.store();
+    File indexFile = new File(cacheDir, CachedContentIndex.FILE_NAME);
+    long indexFileLength = indexFile.length();
+
+    // Touch, remove and add spans, and change and remove contents.
+    addSpan(cachedContent1, 0, 10, 3);
+    addSpan(cachedContent1, 10, 5, 4);
+    SimpleCacheSpan span = cachedContent2.getSpans().iterator().next();
+    cachedContent2.removeSpan(span);
+    index.onSpanRemoved(cachedContent2, span);
+    index.removeEmpty("key2");
+    index.setContentLength("key1", 15);
+    index.add("key3");
+    assertTrue(index.hasUnrecoverableChanges());
+    index.store();
+    assertFalse(index.hasUnrecoverableChanges());
+
+    // The index file wasn't rewritten.
+    assertEquals(indexFileLength, indexFile.length());
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    assertTrue(index2.load());
+    assertIndexEqual(index, index2);
+    assertEquals(3, index2.get("key1").getSpans().iterator().next().lastAccessTimestamp);
+  }
+
+  public void testTouchedSpanKeepsFile() throws Exception {
+    CachedContent cachedContent = index.add("key1");
+    addSpan(cachedContent, 0, 10, 1);
+    index.store();
+
+    SimpleCacheSpan span = cachedContent.getSpans().iterator().next();
+    SimpleCacheSpan touchedSpan = cachedContent.setLastAccessTimestamp(span, 5);
+    index.onSpanTouched(cachedContent, touchedSpan);
+    index.store();
+    assertEquals(span.file, touchedSpan.file);
+
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    assertTrue(index2.load());
+    assertIndexEqual(index, index2);
+    SimpleCacheSpan loadedSpan = index2.get("key1").getSpans().iterator().next();
+    assertEquals(5, loadedSpan.lastAccessTimestamp);
+    assertEquals(1, loadedSpan.fileTimestamp);
+  }
+
+  public void testEncryptedJournal() throws Exception {
+    byte[] key = "Bar12345Bar12345".getBytes(C.UTF8_NAME); // 128 bit key
+    index = new CachedContentIndex(cacheDir, key);
+    CachedContent cachedContent = index.add("key1");
+    index.store();
+    addSpan(cachedContent, 0, 10, 1);
+    index.add("key2");
+    index.store();
+
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir, key);
+    assertTrue(index2.load());
+    assertIndexEqual(index, index2);
+  }
+
+  public void testTornJournalRecordIgnored() throws Exception {
+    CachedContent cachedContent = index.add("key1");
+    index.store();
+    addSpan(cachedContent, 0, 10, 1);
+    index.store();
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME + ".journal");
+    long validJournalLength = journalFile.length();
+    addSpan(cachedContent, 10, 10, 1);
+    index.store();
+
+    // Simulate an append that was interrupted part way through the last record.
+    truncate(journalFile, journalFile.length() - 3);
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    assertTrue(index2.load());
+    assertEquals(1, index2.get("key1").getSpans().size());
+
+    // The next store rewrites the index file rather than appending after the partial record.
+    index2.add("key2");
+    index2.store();
+    assertTrue(journalFile.length() < validJournalLength);
+    CachedContentIndex index3 = new CachedContentIndex(cacheDir);
+    assertTrue(index3.load());
+    assertIndexEqual(index2, index3);
+  }
+
+  public void testStaleJournalIgnored() throws Exception {
+    CachedContent cachedContent = index.add("key1");
+    index.store();
+    addSpan(cachedContent, 0, 10, 1);
+    index.store();
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME + ".journal");
+    byte[] staleJournal = readFile(journalFile);
+
+    // Simulate an index file rewrite that was interrupted before the new journal was started.
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    index2.add("key2");
+    index2.store();
+    FileOutputStream fos = new FileOutputStream(journalFile);
+    fos.write(staleJournal);
+    fos.close();
+
+    CachedContentIndex index3 = new CachedContentIndex(cacheDir);
+    assertTrue(index3.load());
+    assertIndexEqual(index2, index3);
+  }
+
+  public void testIndexFileRewrittenWhenJournalGrows() throws Exception {
+    CachedContent cachedContent = index.add("key1");
+    index.store();
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME + ".journal");
+    long maxJournalLength = 0;
+    for (int i = 0; i < 10000; i++) {
+      // Touch the same span repeatedly, so that the index file stays small.
+      addSpan(cachedContent, 0, 10, i);
+      index.store();
+      maxJournalLength = Math.max(maxJournalLength, journalFile.length());
+    }
+    assertTrue(maxJournalLength < 128 * 1024);
+
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    assertTrue(index2.load());
+    assertIndexEqual(index, index2);
+    assertEquals(9999, index2.get("key1").getSpans().iterator().next().lastAccessTimestamp);
   }
 
   public void testAssignIdForKeyAndGetKeyForId() throws Exception {
@@ -213,6 +415,51 @@ public class CachedContentIndexTest extends InstrumentationTestCase {
     assertStoredAndLoadedEqual(index, new CachedContentIndex(cacheDir, key));
   }
 
+  private void addSpan(CachedContent cachedContent, long position, long length,
+      long lastAccessTimestamp) {
+    SimpleCacheSpan span = SimpleCacheSpan.createCacheEntry(cacheDir, cachedContent.id,
+        cachedContent.key, position, length, lastAccessTimestamp, lastAccessTimestamp);
+    cachedContent.addSpan(span);
+    index.onSpanAdded(cachedContent, span);
+  }
+
+  private static void assertIndexEqual(CachedContentIndex index, CachedContentIndex index2) {
+    assertEquals(index.getKeys(), index2.getKeys());
+    for (String key : index.getKeys()) {
+      CachedContent cachedContent = index.get(key);
+      CachedContent cachedContent2 = index2.get(key);
+      assertEquals(cachedContent.id, cachedContent2.id);
+      assertEquals(cachedContent.getLength(), cachedContent2.getLength());
+      assertEquals(cachedContent.getSpans().size(), cachedContent2.getSpans().size());
+      Iterator<SimpleCacheSpan> spans2 = cachedContent2.getSpans().iterator();
+      for (SimpleCacheSpan span : cachedContent.getSpans()) {
+        SimpleCacheSpan span2 = spans2.next();
+        assertEquals(span.position, span2.position);
+        assertEquals(span.length, span2.length);
+        assertEquals(span.lastAccessTimestamp, span2.lastAccessTimestamp);
+        assertEquals(span.file, span2.file);
+      }
+    }
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    FileInputStream inputStream = new FileInputStream(file);
+    try {
+      return Util.toByteArray(inputStream);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private static void truncate(File file, long length) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.setLength(length);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
   private void assertStoredAndLoadedEqual(CachedContentIndex index, CachedContentIndex index2)
       throws IOException {
     index.addNew(new CachedContent(5, "key1", 10));
@@ -225,7 +472,8 @@ public class CachedContentIndexTest extends InstrumentationTestCase {
     assertEquals(keys, keys2);
     for (String key : keys) {
       assertEquals(index.getContentLength(key), index2.getContentLength(key));
-      assertEquals(index.get(key).getSpans(), index2.get(key).getSpans());
+      assertEquals(new TreeSet<>(index.get(key).getSpans()),
+          new TreeSet<>(index2.get(key).getSpans()));
     }
   }
 
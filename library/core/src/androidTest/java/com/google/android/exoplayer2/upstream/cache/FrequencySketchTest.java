@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link FrequencySketch}.
+ */
+public final class FrequencySketchTest extends TestCase {
+
+  public void testFrequency() {
+    FrequencySketch sketch = new FrequencySketch(512);
+    for (int i = 0; i < 5; i++) {
+      sketch.increment(1);
+    }
+    sketch.increment(2);
+    assertEquals(5, sketch.frequency(1));
+    assertEquals(1, sketch.frequency(2));
+    assertEquals(0, sketch.frequency(3));
+  }
+
+  public void testFrequencySaturates() {
+    FrequencySketch sketch = new FrequencySketch(512);
+    for (int i = 0; i < 100; i++) {
+      sketch.increment(1);
+    }
+    assertEquals(15, sketch.frequency(1));
+  }
+
+  public void testFrequenciesHalvedAfterSampleSize() {
+    FrequencySketch sketch = new FrequencySketch(16);
+    for (int i = 0; i < 8; i++) {
+      sketch.increment(1);
+    }
+    // The sample size is ten times the capacity. Make up the remainder with distinct items.
+    for (int i = 0; i < 160 - 8 - 1; i++) {
+      sketch.increment(1000 + i);
+    }
+    int frequency = sketch.frequency(1);
+    assertTrue(frequency >= 8);
+    sketch.increment(2000);
+    assertEquals(frequency / 2, sketch.frequency(1));
+  }
+
+}
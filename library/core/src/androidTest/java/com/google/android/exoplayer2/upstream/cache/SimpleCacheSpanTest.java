@@ -20,9 +20,9 @@ import com.google.android.exoplayer2.util.Util;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Set;
-import java.util.TreeSet;
 
 /**
  * Unit tests for {@link SimpleCacheSpan}.
@@ -104,7 +104,7 @@ public class SimpleCacheSpanTest extends InstrumentationTestCase {
     assertEquals("There should be only one key for all files.", 1, keys.size());
     assertTrue(keys.contains(key));
 
-    TreeSet<SimpleCacheSpan> spans = index.get(key).getSpans();
+    Collection<SimpleCacheSpan> spans = index.get(key).getSpans();
     assertTrue("upgradeOldFiles() shouldn't add any spans.", spans.isEmpty());
 
     HashMap<Long, Long> cachedPositions = new HashMap<>();
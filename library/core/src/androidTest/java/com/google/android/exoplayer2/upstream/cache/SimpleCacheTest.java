@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
@@ -33,16 +34,22 @@ import java.util.Set;
 public class SimpleCacheTest extends InstrumentationTestCase {
 
   private static final String KEY_1 = "key1";
+  private static final String KEY_2 = "key2";
 
   private File cacheDir;
+  private ArrayList<SimpleCache> simpleCaches;
 
   @Override
   protected void setUp() throws Exception {
     cacheDir = Util.createTempDirectory(getInstrumentation().getContext(), "ExoPlayerTest");
+    simpleCaches = new ArrayList<>();
   }
 
   @Override
   protected void tearDown() throws Exception {
+    for (SimpleCache simpleCache : simpleCaches) {
+      simpleCache.release();
+    }
     Util.recursiveDelete(cacheDir);
   }
 
@@ -106,8 +113,10 @@ public class SimpleCacheTest extends InstrumentationTestCase {
 
     addCache(simpleCache, KEY_1, 140, 10);
 
-    // Check if values are kept after cache is reloaded.
+    // Check if values are kept after cache is reloaded. The last span may not have been written to
+    // the index yet, in which case it's only restored by the directory scan.
     SimpleCache simpleCache2 = getSimpleCache();
+    simpleCache2.blockUntilScanned();
     Set<String> keys = simpleCache.getKeys();
     Set<String> keys2 = simpleCache2.getKeys();
     assertEquals(keys, keys2);
@@ -139,6 +148,116 @@ public class SimpleCacheTest extends InstrumentationTestCase {
     assertCachedDataReadCorrect(cacheSpan2);
   }
 
+  public void testReleaseStoresPendingIndexChanges() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+
+    // Adding the key is stored immediately, but committing a second span for it only schedules a
+    // background store of the index.
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 15);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+    simpleCache.release();
+
+    CachedContentIndex index = new CachedContentIndex(cacheDir);
+    index.load();
+    assertEquals(2, index.get(KEY_1).getSpans().size());
+  }
+
+  public void testSpanFilesStoredInSubdirectories() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+
+    CacheSpan cacheSpan2 = simpleCache.startReadWrite(KEY_1, 0);
+    assertEquals(cacheDir, cacheSpan2.file.getParentFile().getParentFile());
+  }
+
+  public void testReloadCacheReconcilesIndexWithFiles() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 15);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+
+    // Delete the file of an indexed span, and add a span file that isn't indexed.
+    CacheSpan cacheSpan2 = simpleCache.startReadWrite(KEY_1, 15);
+    assertTrue(cacheSpan2.file.delete());
+    File directory = cacheSpan2.file.getParentFile();
+    int id = getIndexedId(KEY_1);
+    File unindexedFile = SimpleCacheSpan.getCacheFile(directory, id, 40, 1);
+    writeData(unindexedFile, KEY_1, 40, 10);
+    File unknownFile = new File(directory, "unknown");
+    writeData(unknownFile, KEY_1, 0, 10);
+
+    simpleCache = getSimpleCache();
+    simpleCache.blockUntilScanned();
+
+    NavigableSet<CacheSpan> cachedSpans = simpleCache.getCachedSpans(KEY_1);
+    assertEquals(2, cachedSpans.size());
+    assertEquals(0, cachedSpans.first().position);
+    assertEquals(40, cachedSpans.last().position);
+    assertEquals(25, simpleCache.getCacheSpace());
+    assertCachedDataReadCorrect(simpleCache.startReadWrite(KEY_1, 40));
+    assertFalse(unknownFile.exists());
+  }
+
+  public void testReloadCacheAfterUnrecordedAccess() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+
+    // Versions of the cache that renamed span files when they were read didn't always store the
+    // index afterwards.
+    CacheSpan cacheSpan2 = simpleCache.startReadWrite(KEY_1, 0);
+    File renamedFile = SimpleCacheSpan.getCacheFile(cacheSpan2.file.getParentFile(),
+        getIndexedId(KEY_1), 0, cacheSpan2.lastAccessTimestamp + 1000);
+    assertTrue(cacheSpan2.file.renameTo(renamedFile));
+
+    // The span is reconciled with the renamed file rather than removed.
+    simpleCache = getSimpleCache();
+    CacheSpan cacheSpan3 = simpleCache.startReadWrite(KEY_1, 0);
+    assertCachedDataReadCorrect(cacheSpan3);
+    assertEquals(15, simpleCache.getCacheSpace());
+  }
+
+  public void testReadDoesNotRenameFile() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+
+    CacheSpan cacheSpan2 = simpleCache.startReadWrite(KEY_1, 0);
+    Thread.sleep(10);
+    CacheSpan cacheSpan3 = simpleCache.startReadWrite(KEY_1, 0);
+    assertEquals(cacheSpan2.file, cacheSpan3.file);
+    assertTrue(cacheSpan3.lastAccessTimestamp > cacheSpan2.lastAccessTimestamp);
+    assertCachedDataReadCorrect(cacheSpan3);
+  }
+
+  public void testReloadCacheMovesFilesIntoSubdirectories() throws Exception {
+    CachedContentIndex index = new CachedContentIndex(cacheDir);
+    int id = index.assignIdForKey(KEY_1);
+    index.store();
+    File legacyFile = SimpleCacheSpan.getCacheFile(cacheDir, id, 0, 1);
+    writeData(legacyFile, KEY_1, 0, 15);
+
+    SimpleCache simpleCache = getSimpleCache();
+    simpleCache.blockUntilScanned();
+
+    assertFalse(legacyFile.exists());
+    CacheSpan cacheSpan = simpleCache.startReadWrite(KEY_1, 0);
+    assertEquals(SimpleCacheSpan.getCacheFileDirectory(cacheDir, id),
+        cacheSpan.file.getParentFile());
+    assertCachedDataReadCorrect(cacheSpan);
+  }
+
   public void testEncryptedIndex() throws Exception {
     byte[] key = "Bar12345Bar12345".getBytes(C.UTF8_NAME); // 128 bit key
     SimpleCache simpleCache = getEncryptedSimpleCache(key);
@@ -226,24 +345,130 @@ public class SimpleCacheTest extends InstrumentationTestCase {
     simpleCache.releaseHoleSpan(cacheSpan);
   }
 
+  public void testBlockedWriterBecomesReaderWhenSpanCommitted() throws Exception {
+    final SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0);
+
+    final CacheSpan[] readSpan = new CacheSpan[1];
+    final Exception[] readException = new Exception[1];
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        try {
+          readSpan[0] = simpleCache.startReadWrite(KEY_1, 5);
+        } catch (Exception e) {
+          readException[0] = e;
+        }
+      }
+    };
+    reader.start();
+
+    // Another key can be locked while the reader waits for the first one.
+    CacheSpan otherHoleSpan = simpleCache.startReadWriteNonBlocking(KEY_2, 0);
+    assertNotNull(otherHoleSpan);
+    simpleCache.releaseHoleSpan(otherHoleSpan);
+
+    addCache(simpleCache, KEY_1, 0, 15);
+    reader.join(1000);
+    assertFalse(reader.isAlive());
+    assertNull(readException[0]);
+    assertCachedDataReadCorrect(readSpan[0]);
+    simpleCache.releaseHoleSpan(holeSpan);
+  }
+
+  public void testLockingDisjointHoles() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+
+    CacheSpan holeSpan1 = simpleCache.startReadWrite(KEY_1, 0, 10);
+    assertEquals(0, holeSpan1.position);
+    assertEquals(10, holeSpan1.length);
+    assertNull(simpleCache.startReadWriteNonBlocking(KEY_1, 5));
+
+    CacheSpan holeSpan2 = simpleCache.startReadWriteNonBlocking(KEY_1, 20);
+    assertNotNull(holeSpan2);
+    assertTrue(holeSpan2.isOpenEnded());
+    assertNull(simpleCache.startReadWriteNonBlocking(KEY_1, 25));
+
+    // A hole locked before another locked hole is truncated to end where the other hole starts.
+    CacheSpan holeSpan3 = simpleCache.startReadWriteNonBlocking(KEY_1, 10);
+    assertNotNull(holeSpan3);
+    assertEquals(10, holeSpan3.length);
+
+    addCache(simpleCache, KEY_1, 10, 10);
+    addCache(simpleCache, KEY_1, 0, 10);
+    simpleCache.releaseHoleSpan(holeSpan1);
+    simpleCache.releaseHoleSpan(holeSpan3);
+    assertEquals(20, simpleCache.getCachedBytes(KEY_1, 0, 100));
+    assertNull(simpleCache.startReadWriteNonBlocking(KEY_1, 20));
+
+    simpleCache.releaseHoleSpan(holeSpan2);
+    assertNotNull(simpleCache.startReadWriteNonBlocking(KEY_1, 20));
+  }
+
+  public void testListenersNotifiedInOrder() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    final StringBuilder events = new StringBuilder();
+    Cache.Listener listener = new Cache.Listener() {
+      @Override
+      public void onSpanAdded(Cache cache, CacheSpan span) {
+        events.append("added ").append(span.position).append(';');
+      }
+      @Override
+      public void onSpanRemoved(Cache cache, CacheSpan span) {
+        events.append("removed ").append(span.position).append(';');
+      }
+      @Override
+      public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+        events.append("touched ").append(newSpan.position).append(';');
+      }
+    };
+    assertNull(simpleCache.addListener(KEY_1, listener));
+
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    CacheSpan cacheSpan = simpleCache.startReadWrite(KEY_1, 0);
+    simpleCache.removeSpan(cacheSpan);
+
+    simpleCache.blockUntilListenersNotified();
+    assertEquals("added 0;touched 0;removed 0;", events.toString());
+  }
+
   private SimpleCache getSimpleCache() {
-    return new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    return addSimpleCache(new SimpleCache(cacheDir, new NoOpCacheEvictor()));
   }
 
   private SimpleCache getEncryptedSimpleCache(byte[] secretKey) {
-    return new SimpleCache(cacheDir, new NoOpCacheEvictor(), secretKey);
+    return addSimpleCache(new SimpleCache(cacheDir, new NoOpCacheEvictor(), secretKey));
+  }
+
+  private SimpleCache addSimpleCache(SimpleCache simpleCache) {
+    // Released in tearDown.
+    simpleCaches.add(simpleCache);
+    return simpleCache;
+  }
+
+  private int getIndexedId(String key) {
+    CachedContentIndex index = new CachedContentIndex(cacheDir);
+    index.load();
+    return index.get(key).id;
   }
 
   private static void addCache(SimpleCache simpleCache, String key, int position, int length)
       throws IOException {
     File file = simpleCache.startFile(key, position, length);
+    writeData(file, key, position, length);
+    simpleCache.commitFile(file);
+  }
+
+  private static void writeData(File file, String key, int position, int length)
+      throws IOException {
     FileOutputStream fos = new FileOutputStream(file);
     try {
       fos.write(generateData(key, position, length));
     } finally {
       fos.close();
     }
-    simpleCache.commitFile(file);
   }
 
   private static void assertCachedDataReadCorrect(CacheSpan cacheSpan) throws IOException {
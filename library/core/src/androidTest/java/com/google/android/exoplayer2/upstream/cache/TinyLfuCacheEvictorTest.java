@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import com.google.android.exoplayer2.testutil.CacheEvictorSimulator;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link TinyLfuCacheEvictor}.
+ */
+public final class TinyLfuCacheEvictorTest extends TestCase {
+
+  private static final int SEGMENT_LENGTH = 1000;
+  private static final int MAX_BYTES = 100 * SEGMENT_LENGTH;
+
+  public void testCacheSpaceStaysWithinMaxBytes() {
+    CacheEvictorSimulator simulator =
+        new CacheEvictorSimulator(new TinyLfuCacheEvictor(MAX_BYTES));
+    Random random = new Random(0);
+    for (int i = 0; i < 10000; i++) {
+      simulator.access("key" + random.nextInt(500), 0, SEGMENT_LENGTH / 2 + random.nextInt(1000));
+      assertTrue(simulator.getCacheSpace() <= MAX_BYTES);
+    }
+  }
+
+  public void testFrequentlyReadSegmentsSurviveOneOffScan() {
+    assertEquals(20, getIntroHitCountAfterScan(new TinyLfuCacheEvictor(MAX_BYTES)));
+    assertEquals(0, getIntroHitCountAfterScan(new LeastRecentlyUsedCacheEvictor(MAX_BYTES)));
+  }
+
+  public void testHitRatioExceedsLeastRecentlyUsedForSkewedPopularity() throws IOException {
+    StringBuilder trace = new StringBuilder();
+    Random random = new Random(0);
+    for (int i = 0; i < 20000; i++) {
+      // Half of the accesses are to a small set of popular segments, the rest to segments that are
+      // rarely read again.
+      String key = random.nextBoolean() ? "popular" + random.nextInt(80)
+          : "rare" + random.nextInt(100000);
+      trace.append(key).append(" 0 ").append(SEGMENT_LENGTH).append('\n');
+    }
+    CacheEvictorSimulator lru = replay(new LeastRecentlyUsedCacheEvictor(MAX_BYTES), trace);
+    CacheEvictorSimulator tinyLfu = replay(new TinyLfuCacheEvictor(MAX_BYTES), trace);
+    assertTrue(tinyLfu.getHitRatio() > lru.getHitRatio() + 0.1);
+  }
+
+  public void testHitRatioExceedsLeastRecentlyUsedForEpisodesAndOneOffStreams()
+      throws IOException {
+    StringBuilder trace = new StringBuilder();
+    Random random = new Random(0);
+    for (int i = 0; i < 200; i++) {
+      if (random.nextInt(4) == 0) {
+        // A stream that's only watched once, and is longer than the cache.
+        appendSegments(trace, "stream" + i, 150);
+      } else {
+        // One of a few popular episodes, usually only partly watched.
+        appendSegments(trace, "episode" + random.nextInt(5), 10 + random.nextInt(20));
+      }
+    }
+    CacheEvictorSimulator lru = replay(new LeastRecentlyUsedCacheEvictor(MAX_BYTES), trace);
+    CacheEvictorSimulator tinyLfu = replay(new TinyLfuCacheEvictor(MAX_BYTES), trace);
+    assertEquals(lru.getAccessCount(), tinyLfu.getAccessCount());
+    assertTrue(tinyLfu.getByteHitRatio() > lru.getByteHitRatio() + 0.05);
+  }
+
+  public void testReplayTrace() throws IOException {
+    CacheEvictorSimulator simulator =
+        new CacheEvictorSimulator(new TinyLfuCacheEvictor(MAX_BYTES));
+    simulator.replay(new StringReader("# key position length\n"
+        + "a 0 1000\n"
+        + "\n"
+        + "a 0 1000\n"
+        + "a 1000 1000\n"
+        + "a 0 500\n"));
+    assertEquals(4, simulator.getAccessCount());
+    assertEquals(0.5, simulator.getHitRatio());
+    assertEquals(1500.0 / 3500, simulator.getByteHitRatio());
+  }
+
+  private static long getIntroHitCountAfterScan(CacheEvictor evictor) {
+    CacheEvictorSimulator simulator = new CacheEvictorSimulator(evictor);
+    // Watch the intro of a few episodes.
+    for (int i = 0; i < 3; i++) {
+      accessSegments(simulator, "intro", 20);
+      accessSegments(simulator, "episode" + i, 30);
+    }
+    // Watch a long stream through once.
+    accessSegments(simulator, "binge", 1000);
+
+    long accessCount = simulator.getAccessCount();
+    double hitRatio = simulator.getHitRatio();
+    accessSegments(simulator, "intro", 20);
+    return Math.round(simulator.getHitRatio() * simulator.getAccessCount())
+        - Math.round(hitRatio * accessCount);
+  }
+
+  private static CacheEvictorSimulator replay(CacheEvictor evictor, CharSequence trace)
+      throws IOException {
+    CacheEvictorSimulator simulator = new CacheEvictorSimulator(evictor);
+    simulator.replay(new StringReader(trace.toString()));
+    return simulator;
+  }
+
+  private static void appendSegments(StringBuilder trace, String key, int count) {
+    for (int i = 0; i < count; i++) {
+      trace.append(key).append(' ').append(i * SEGMENT_LENGTH).append(' ').append(SEGMENT_LENGTH)
+          .append('\n');
+    }
+  }
+
+  private static void accessSegments(CacheEvictorSimulator simulator, String key, int count) {
+    for (int i = 0; i < count; i++) {
+      simulator.access(key, i * SEGMENT_LENGTH, SEGMENT_LENGTH);
+    }
+  }
+
+}
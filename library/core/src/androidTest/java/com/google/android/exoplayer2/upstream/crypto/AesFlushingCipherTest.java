@@ -183,4 +183,31 @@ public class AesFlushingCipherTest extends TestCase {
     assertEquals(0, differingByteCount);
   }
 
+  // Test decryption from several random locations, repositioning a single cipher
+  public void testReset() {
+    byte[] reference = TestUtil.buildTestData(DATA_LENGTH);
+    byte[] data = reference.clone();
+    Random random = new Random(RANDOM_SEED);
+    encryptCipher.updateInPlace(data, 0, data.length);
+
+    AesFlushingCipher cipher = new AesFlushingCipher(Cipher.DECRYPT_MODE, KEY);
+    for (int i = 0; i < 20; i++) {
+      int offset = random.nextInt(data.length);
+      int length = Math.min(1 + random.nextInt(4095), data.length - offset);
+      byte[] decrypted = new byte[length];
+      cipher.reset(NONCE, offset + START_OFFSET);
+      cipher.update(data, offset, length, decrypted, 0);
+      for (int j = 0; j < length; j++) {
+        assertEquals(reference[offset + j], decrypted[j]);
+      }
+    }
+
+    // A different nonce yields a different keystream.
+    cipher.reset(NONCE + 1, START_OFFSET);
+    byte[] decrypted = new byte[data.length];
+    cipher.update(data, 0, data.length, decrypted, 0);
+    int unchangedByteCount = data.length - getDifferingByteCount(reference, decrypted);
+    assertTrue(unchangedByteCount <= getMaxUnchangedBytesAllowedPostEncryption(data.length));
+  }
+
 }
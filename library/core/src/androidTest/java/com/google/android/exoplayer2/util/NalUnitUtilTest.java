@@ -159,6 +159,28 @@ public class NalUnitUtilTest extends TestCase {
     assertDiscardToSpsMatchesExpected("FF00000001660000000167FF", "0000000167FF");
   }
 
+  public void testIsH264NonReferencePicture() {
+    assertIsH264NonReferencePicture("", false);
+    assertIsH264NonReferencePicture("00000001", false);
+    // Non-IDR slices with nal_ref_idc equal to zero.
+    assertIsH264NonReferencePicture("0000000101FF", true);
+    assertIsH264NonReferencePicture("00000101FF", true);
+    assertIsH264NonReferencePicture("0000000102FF", true);
+    // Non-IDR slices with non-zero nal_ref_idc.
+    assertIsH264NonReferencePicture("0000000121FF", false);
+    assertIsH264NonReferencePicture("0000000141FF", false);
+    assertIsH264NonReferencePicture("0000000161FF", false);
+    // IDR slice.
+    assertIsH264NonReferencePicture("0000000165FF", false);
+    // Access unit delimiter and SEI preceding a non-reference slice.
+    assertIsH264NonReferencePicture("0000000109F000000001060000000101FF", true);
+    assertIsH264NonReferencePicture("0000000109F000000001060000000121FF", false);
+    // Parameter sets preceding an IDR slice.
+    assertIsH264NonReferencePicture("0000000167FF0000000168FF0000000165FF", false);
+    // The header of the first slice is beyond the length of the buffer.
+    assertIsH264NonReferencePicture("FF00000001", false);
+  }
+
   private static byte[] buildTestData() {
     byte[] data = new byte[20];
     for (int i = 0; i < data.length; i++) {
@@ -203,4 +225,11 @@ public class NalUnitUtilTest extends TestCase {
         Arrays.copyOf(buffer.array(), buffer.position())));
   }
 
+  private static void assertIsH264NonReferencePicture(String input, boolean expected) {
+    byte[] bitstream = Util.getBytesFromHexString(input);
+    ByteBuffer buffer = ByteBuffer.allocate(bitstream.length + 4);
+    buffer.put(bitstream);
+    assertEquals(expected, NalUnitUtil.isH264NonReferencePicture(buffer));
+  }
+
 }
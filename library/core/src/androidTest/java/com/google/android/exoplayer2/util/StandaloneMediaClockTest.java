@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import com.google.android.exoplayer2.testutil.FakeClock;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link StandaloneMediaClock}.
+ */
+public class StandaloneMediaClockTest extends TestCase {
+
+  /**
+   * Speeds used by the drift test, in quarters. All are exactly representable in binary.
+   */
+  private static final int[] SPEED_QUARTERS = new int[] {2, 3, 4, 5, 6, 8, 12, 16};
+
+  private FakeClock clock;
+  private StandaloneMediaClock mediaClock;
+
+  @Override
+  public void setUp() {
+    clock = new FakeClock(1000);
+    mediaClock = new StandaloneMediaClock(clock);
+  }
+
+  public void testDoesNotAdvanceWhenStopped() {
+    mediaClock.setPositionUs(1000);
+    clock.advanceTime(1000);
+    assertEquals(1000, mediaClock.getPositionUs());
+  }
+
+  public void testAdvancesWithSpeed() {
+    mediaClock.setPlaybackSpeed(2f);
+    mediaClock.start();
+    clock.advanceTime(1000);
+    assertEquals(2000000, mediaClock.getPositionUs());
+    mediaClock.setPlaybackSpeed(0.5f);
+    clock.advanceTime(1000);
+    assertEquals(2500000, mediaClock.getPositionUs());
+    mediaClock.stop();
+    clock.advanceTime(1000);
+    assertEquals(2500000, mediaClock.getPositionUs());
+  }
+
+  public void testSetPositionWhileStarted() {
+    mediaClock.start();
+    clock.advanceTime(10);
+    mediaClock.setPositionUs(5000000);
+    clock.advanceTime(10);
+    assertEquals(5010000, mediaClock.getPositionUs());
+  }
+
+  public void testSubMicrosecondSpeedChangesDoNotDrift() {
+    mediaClock.start();
+    // Change speed every 333 nanoseconds, so that each interval covers a fraction of a microsecond.
+    long expectedQuarterNs = 0;
+    for (int i = 0; i < 30000; i++) {
+      int speedQuarters = SPEED_QUARTERS[i % SPEED_QUARTERS.length];
+      mediaClock.setPlaybackSpeed(speedQuarters / 4f);
+      clock.advanceTimeNs(333);
+      expectedQuarterNs += 333L * speedQuarters;
+    }
+    assertEquals(expectedQuarterNs / 4 / 1000, mediaClock.getPositionUs());
+  }
+
+  public void testRandomSpeedChangesDoNotDrift() {
+    Random random = new Random(0);
+    mediaClock.setPositionUs(60000000);
+    mediaClock.start();
+    long expectedQuarterNs = 60000000L * 1000 * 4;
+    int speedQuarters = 4;
+    boolean started = true;
+    for (int i = 0; i < 10000; i++) {
+      long elapsedNs = 1 + random.nextInt(20000000);
+      clock.advanceTimeNs(elapsedNs);
+      if (started) {
+        expectedQuarterNs += elapsedNs * speedQuarters;
+      }
+      switch (random.nextInt(4)) {
+        case 0:
+          mediaClock.stop();
+          started = false;
+          break;
+        case 1:
+          mediaClock.start();
+          started = true;
+          break;
+        default:
+          speedQuarters = SPEED_QUARTERS[random.nextInt(SPEED_QUARTERS.length)];
+          mediaClock.setPlaybackSpeed(speedQuarters / 4f);
+          break;
+      }
+      assertEquals(expectedQuarterNs / 4 / 1000, mediaClock.getPositionUs());
+    }
+  }
+
+  public void testPositionAtPastTimeUsesSpeedHistory() {
+    mediaClock.start();
+    long startNanoTime = clock.nanoTime();
+    clock.advanceTime(1000);
+    mediaClock.setPlaybackSpeed(3f);
+    clock.advanceTime(1000);
+    assertEquals(4000000, mediaClock.getPositionUs());
+    assertEquals(500000, mediaClock.getPositionUsAtNanoTime(startNanoTime + 500000000L));
+    assertEquals(2500000, mediaClock.getPositionUsAtNanoTime(startNanoTime + 1500000000L));
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.video;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the frame skipping that {@link MediaCodecVideoRenderer} performs at high playback
+ * speeds.
+ */
+public final class MediaCodecVideoRendererTest extends TestCase {
+
+  private static final double DISPLAY_REFRESH_RATE = 60;
+  private static final float PLAYBACK_SPEED = 4;
+  // The media duration that elapses during one vsync period at PLAYBACK_SPEED.
+  private static final long MIN_FRAME_INTERVAL_US = 66666;
+  private static final long FRAME_DURATION_US = 33333;
+
+  private static final String REFERENCE_SLICE = "0000000121FF";
+  private static final String NON_REFERENCE_SLICE = "0000000101FF";
+
+  public void testSkipsNonReferenceInputWithinFrameInterval() throws ExoPlaybackException {
+    MediaCodecVideoRenderer renderer = createRenderer(true, MimeTypes.VIDEO_H264, PLAYBACK_SPEED);
+    queueInputBuffer(renderer, 0);
+
+    assertTrue(renderer.shouldSkipInputBuffer(createInputBuffer(NON_REFERENCE_SLICE,
+        FRAME_DURATION_US)));
+    // Frames may be queued out of presentation order.
+    assertTrue(renderer.shouldSkipInputBuffer(createInputBuffer(NON_REFERENCE_SLICE,
+        -FRAME_DURATION_US)));
+  }
+
+  public void testKeepsReferenceInput() throws ExoPlaybackException {
+    MediaCodecVideoRenderer renderer = createRenderer(true, MimeTypes.VIDEO_H264, PLAYBACK_SPEED);
+    queueInputBuffer(renderer, 0);
+
+    assertFalse(renderer.shouldSkipInputBuffer(createInputBuffer(REFERENCE_SLICE,
+        FRAME_DURATION_US)));
+  }
+
+  public void testKeepsNonReferenceInputOutsideFrameInterval() throws ExoPlaybackException {
+    MediaCodecVideoRenderer renderer = createRenderer(true, MimeTypes.VIDEO_H264, PLAYBACK_SPEED);
+    // Nothing has been queued yet.
+    assertFalse(renderer.shouldSkipInputBuffer(createInputBuffer(NON_REFERENCE_SLICE, 0)));
+
+    queueInputBuffer(renderer, 0);
+    assertFalse(renderer.shouldSkipInputBuffer(createInputBuffer(NON_REFERENCE_SLICE,
+        MIN_FRAME_INTERVAL_US)));
+  }
+
+  public void testKeepsNonReferenceInputWithoutFrameRateCap() throws ExoPlaybackException {
+    MediaCodecVideoRenderer renderer = createRenderer(false, MimeTypes.VIDEO_H264, PLAYBACK_SPEED);
+    queueInputBuffer(renderer, 0);
+    assertFalse(renderer.shouldSkipInputBuffer(createInputBuffer(NON_REFERENCE_SLICE,
+        FRAME_DURATION_US)));
+
+    renderer = createRenderer(true, MimeTypes.VIDEO_H264, 1);
+    queueInputBuffer(renderer, 0);
+    assertFalse(renderer.shouldSkipInputBuffer(createInputBuffer(NON_REFERENCE_SLICE,
+        FRAME_DURATION_US)));
+  }
+
+  public void testKeepsNonH264Input() throws ExoPlaybackException {
+    MediaCodecVideoRenderer renderer = createRenderer(true, MimeTypes.VIDEO_H265, PLAYBACK_SPEED);
+    queueInputBuffer(renderer, 0);
+
+    assertFalse(renderer.shouldSkipInputBuffer(createInputBuffer(NON_REFERENCE_SLICE,
+        FRAME_DURATION_US)));
+  }
+
+  public void testCapsOutputFrameRate() throws ExoPlaybackException {
+    MediaCodecVideoRenderer renderer = createRenderer(true, MimeTypes.VIDEO_H264, PLAYBACK_SPEED);
+    // Nothing has been rendered yet.
+    assertFalse(renderer.isAboveFrameRateCap(0));
+
+    renderer.onFrameRendered(0);
+    assertTrue(renderer.isAboveFrameRateCap(FRAME_DURATION_US));
+    assertFalse(renderer.isAboveFrameRateCap(MIN_FRAME_INTERVAL_US));
+    // Frames that precede the last rendered frame are left to the late frame handling.
+    assertFalse(renderer.isAboveFrameRateCap(-FRAME_DURATION_US));
+  }
+
+  public void testDoesNotCapOutputFrameRateWhenDisplayCanKeepUp() throws ExoPlaybackException {
+    MediaCodecVideoRenderer renderer = createRenderer(true, MimeTypes.VIDEO_H264, 1);
+    renderer.onFrameRendered(0);
+    assertFalse(renderer.isAboveFrameRateCap(FRAME_DURATION_US));
+
+    // Lowering the speed again lifts the cap.
+    renderer = createRenderer(true, MimeTypes.VIDEO_H264, PLAYBACK_SPEED);
+    renderer.onFrameRendered(0);
+    renderer.handleMessage(C.MSG_SET_PLAYBACK_SPEED, 1f);
+    assertFalse(renderer.isAboveFrameRateCap(FRAME_DURATION_US));
+  }
+
+  public void testDoesNotCapOutputFrameRateWhenDisabled() throws ExoPlaybackException {
+    MediaCodecVideoRenderer renderer = createRenderer(false, MimeTypes.VIDEO_H264, PLAYBACK_SPEED);
+    renderer.onFrameRendered(0);
+
+    assertFalse(renderer.isAboveFrameRateCap(FRAME_DURATION_US));
+  }
+
+  private static MediaCodecVideoRenderer createRenderer(boolean dropFramesForPlaybackSpeed,
+      String sampleMimeType, float playbackSpeed) throws ExoPlaybackException {
+    MediaCodecVideoRenderer renderer = new MediaCodecVideoRenderer(
+        new VideoFrameReleaseTimeHelper(DISPLAY_REFRESH_RATE), MediaCodecSelector.DEFAULT, 0, null,
+        false, null, null, 0, dropFramesForPlaybackSpeed);
+    // Without a surface the renderer doesn't instantiate a codec for the format.
+    renderer.onInputFormatChanged(Format.createVideoSampleFormat(null, sampleMimeType, null,
+        Format.NO_VALUE, Format.NO_VALUE, 1280, 720, 30, null, null));
+    renderer.handleMessage(C.MSG_SET_PLAYBACK_SPEED, playbackSpeed);
+    return renderer;
+  }
+
+  private static void queueInputBuffer(MediaCodecVideoRenderer renderer, long timeUs) {
+    renderer.onQueueInputBuffer(createInputBuffer(REFERENCE_SLICE, timeUs));
+  }
+
+  private static DecoderInputBuffer createInputBuffer(String data, long timeUs) {
+    byte[] bytes = Util.getBytesFromHexString(data);
+    DecoderInputBuffer buffer =
+        new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+    buffer.ensureSpaceForWrite(bytes.length);
+    buffer.data.put(bytes);
+    buffer.timeUs = timeUs;
+    return buffer;
+  }
+
+}
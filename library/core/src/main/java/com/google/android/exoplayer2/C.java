@@ -519,6 +519,13 @@ public final class C {
    */
   public static final int MSG_SET_SCALING_MODE = 4;
 
+  /**
+   * The type of a message that the player passes to each {@link Renderer} when the rate at which
+   * media is consumed changes. The message object is a {@link Float} giving the number of
+   * microseconds of media played per microsecond of real time.
+   */
+  public static final int MSG_SET_PLAYBACK_SPEED = 5;
+
   /**
    * Applications or extensions may define custom {@code MSG_*} constants greater than or equal to
    * this value.
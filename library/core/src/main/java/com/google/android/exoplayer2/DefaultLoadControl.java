@@ -62,9 +62,15 @@ public final class DefaultLoadControl implements LoadControl {
   private final long bufferForPlaybackUs;
   private final long bufferForPlaybackAfterRebufferUs;
   private final PriorityTaskManager priorityTaskManager;
+  private final SpeedScalingPolicy speedScalingPolicy;
 
   private int targetBufferSize;
   private boolean isBuffering;
+  private float playbackSpeed;
+  private long scaledMinBufferUs;
+  private long scaledMaxBufferUs;
+  private long scaledBufferForPlaybackUs;
+  private long scaledBufferForPlaybackAfterRebufferUs;
 
   /**
    * Constructs a new instance, using the {@code DEFAULT_*} constants defined in this class.
@@ -123,12 +129,41 @@ public final class DefaultLoadControl implements LoadControl {
   public DefaultLoadControl(DefaultAllocator allocator, int minBufferMs, int maxBufferMs,
       long bufferForPlaybackMs, long bufferForPlaybackAfterRebufferMs,
       PriorityTaskManager priorityTaskManager) {
+    this(allocator, minBufferMs, maxBufferMs, bufferForPlaybackMs, bufferForPlaybackAfterRebufferMs,
+        priorityTaskManager, SpeedScalingPolicy.MEDIA_TIME);
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param allocator The {@link DefaultAllocator} used by the loader.
+   * @param minBufferMs The minimum duration of media that the player will attempt to ensure is
+   *     buffered at all times, in milliseconds.
+   * @param maxBufferMs The maximum duration of media that the player will attempt buffer, in
+   *     milliseconds.
+   * @param bufferForPlaybackMs The duration of media that must be buffered for playback to start or
+   *     resume following a user action such as a seek, in milliseconds.
+   * @param bufferForPlaybackAfterRebufferMs The default duration of media that must be buffered for
+   *     playback to resume after a rebuffer, in milliseconds. A rebuffer is defined to be caused by
+   *     buffer depletion rather than a user action.
+   * @param priorityTaskManager If not null, registers itself as a task with priority
+   *     {@link C#PRIORITY_PLAYBACK} during loading periods, and unregisters itself during draining
+   *     periods.
+   * @param speedScalingPolicy Scales the buffer durations above, which apply at normal playback
+   *     speed, for the current playback speed. The other constructors use
+   *     {@link SpeedScalingPolicy#MEDIA_TIME}, which leaves them unscaled.
+   */
+  public DefaultLoadControl(DefaultAllocator allocator, int minBufferMs, int maxBufferMs,
+      long bufferForPlaybackMs, long bufferForPlaybackAfterRebufferMs,
+      PriorityTaskManager priorityTaskManager, SpeedScalingPolicy speedScalingPolicy) {
     this.allocator = allocator;
     minBufferUs = minBufferMs * 1000L;
     maxBufferUs = maxBufferMs * 1000L;
     bufferForPlaybackUs = bufferForPlaybackMs * 1000L;
     bufferForPlaybackAfterRebufferUs = bufferForPlaybackAfterRebufferMs * 1000L;
     this.priorityTaskManager = priorityTaskManager;
+    this.speedScalingPolicy = speedScalingPolicy;
+    onPlaybackSpeedChanged(1f);
   }
 
   @Override
@@ -148,6 +183,24 @@ public final class DefaultLoadControl implements LoadControl {
     allocator.setTargetBufferSize(targetBufferSize);
   }
 
+  @Override
+  public void onPlaybackSpeedChanged(float playbackSpeed) {
+    this.playbackSpeed = playbackSpeed;
+    scaledMinBufferUs = speedScalingPolicy.scaleBufferDurationUs(minBufferUs, playbackSpeed);
+    scaledMaxBufferUs = speedScalingPolicy.scaleBufferDurationUs(maxBufferUs, playbackSpeed);
+    scaledBufferForPlaybackUs =
+        speedScalingPolicy.scaleBufferDurationUs(bufferForPlaybackUs, playbackSpeed);
+    scaledBufferForPlaybackAfterRebufferUs =
+        speedScalingPolicy.scaleBufferDurationUs(bufferForPlaybackAfterRebufferUs, playbackSpeed);
+  }
+
+  /**
+   * Returns the playback speed for which the buffer durations are currently scaled.
+   */
+  public float getPlaybackSpeed() {
+    return playbackSpeed;
+  }
+
   @Override
   public void onStopped() {
     reset(true);
@@ -165,7 +218,8 @@ public final class DefaultLoadControl implements LoadControl {
 
   @Override
   public boolean shouldStartPlayback(long bufferedDurationUs, boolean rebuffering) {
-    long minBufferDurationUs = rebuffering ? bufferForPlaybackAfterRebufferUs : bufferForPlaybackUs;
+    long minBufferDurationUs = rebuffering ? scaledBufferForPlaybackAfterRebufferUs
+        : scaledBufferForPlaybackUs;
     return minBufferDurationUs <= 0 || bufferedDurationUs >= minBufferDurationUs;
   }
 
@@ -187,8 +241,8 @@ public final class DefaultLoadControl implements LoadControl {
   }
 
   private int getBufferTimeState(long bufferedDurationUs) {
-    return bufferedDurationUs > maxBufferUs ? ABOVE_HIGH_WATERMARK
-        : (bufferedDurationUs < minBufferUs ? BELOW_LOW_WATERMARK : BETWEEN_WATERMARKS);
+    return bufferedDurationUs > scaledMaxBufferUs ? ABOVE_HIGH_WATERMARK
+        : (bufferedDurationUs < scaledMinBufferUs ? BELOW_LOW_WATERMARK : BETWEEN_WATERMARKS);
   }
 
   private void reset(boolean resetAllocator) {
@@ -24,6 +24,7 @@ import com.google.android.exoplayer2.audio.AudioCapabilities;
 import com.google.android.exoplayer2.audio.AudioProcessor;
 import com.google.android.exoplayer2.audio.AudioRendererEventListener;
 import com.google.android.exoplayer2.audio.MediaCodecAudioRenderer;
+import com.google.android.exoplayer2.audio.TimeStretchEngine;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
 import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
 import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
@@ -215,8 +216,10 @@ public class DefaultRenderersFactory implements RenderersFactory {
       AudioProcessor[] audioProcessors, Handler eventHandler,
       AudioRendererEventListener eventListener, @ExtensionRendererMode int extensionRendererMode,
       ArrayList<Renderer> out) {
+    TimeStretchEngine.Factory timeStretchEngineFactory = buildTimeStretchEngineFactory();
     out.add(new MediaCodecAudioRenderer(MediaCodecSelector.DEFAULT, drmSessionManager, true,
-        eventHandler, eventListener, AudioCapabilities.getCapabilities(context), audioProcessors));
+        eventHandler, eventListener, AudioCapabilities.getCapabilities(context),
+        timeStretchEngineFactory, audioProcessors));
 
     if (extensionRendererMode == EXTENSION_RENDERER_MODE_OFF) {
       return;
@@ -230,9 +233,10 @@ public class DefaultRenderersFactory implements RenderersFactory {
       Class<?> clazz =
           Class.forName("com.google.android.exoplayer2.ext.opus.LibopusAudioRenderer");
       Constructor<?> constructor = clazz.getConstructor(Handler.class,
-          AudioRendererEventListener.class, AudioProcessor[].class);
+          AudioRendererEventListener.class, TimeStretchEngine.Factory.class,
+          AudioProcessor[].class);
       Renderer renderer = (Renderer) constructor.newInstance(eventHandler, eventListener,
-          audioProcessors);
+          timeStretchEngineFactory, audioProcessors);
       out.add(extensionRendererIndex++, renderer);
       Log.i(TAG, "Loaded LibopusAudioRenderer.");
     } catch (ClassNotFoundException e) {
@@ -245,9 +249,10 @@ public class DefaultRenderersFactory implements RenderersFactory {
       Class<?> clazz =
           Class.forName("com.google.android.exoplayer2.ext.flac.LibflacAudioRenderer");
       Constructor<?> constructor = clazz.getConstructor(Handler.class,
-          AudioRendererEventListener.class, AudioProcessor[].class);
+          AudioRendererEventListener.class, TimeStretchEngine.Factory.class,
+          AudioProcessor[].class);
       Renderer renderer = (Renderer) constructor.newInstance(eventHandler, eventListener,
-          audioProcessors);
+          timeStretchEngineFactory, audioProcessors);
       out.add(extensionRendererIndex++, renderer);
       Log.i(TAG, "Loaded LibflacAudioRenderer.");
     } catch (ClassNotFoundException e) {
@@ -260,9 +265,10 @@ public class DefaultRenderersFactory implements RenderersFactory {
       Class<?> clazz =
           Class.forName("com.google.android.exoplayer2.ext.ffmpeg.FfmpegAudioRenderer");
       Constructor<?> constructor = clazz.getConstructor(Handler.class,
-          AudioRendererEventListener.class, AudioProcessor[].class);
+          AudioRendererEventListener.class, TimeStretchEngine.Factory.class,
+          AudioProcessor[].class);
       Renderer renderer = (Renderer) constructor.newInstance(eventHandler, eventListener,
-          audioProcessors);
+          timeStretchEngineFactory, audioProcessors);
       out.add(extensionRendererIndex++, renderer);
       Log.i(TAG, "Loaded FfmpegAudioRenderer.");
     } catch (ClassNotFoundException e) {
@@ -324,4 +330,14 @@ public class DefaultRenderersFactory implements RenderersFactory {
     return new AudioProcessor[0];
   }
 
+  /**
+   * Builds the factory for the {@link TimeStretchEngine} that audio renderers use to change the
+   * speed and pitch of audio.
+   *
+   * @return A {@link TimeStretchEngine.Factory}.
+   */
+  protected TimeStretchEngine.Factory buildTimeStretchEngineFactory() {
+    return TimeStretchEngine.Factory.DEFAULT;
+  }
+
 }
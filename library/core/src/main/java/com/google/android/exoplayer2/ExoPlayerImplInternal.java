@@ -15,8 +15,8 @@
  */
 package com.google.android.exoplayer2;
 
+import android.annotation.TargetApi;
 import android.media.PlaybackParams;
-import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
@@ -37,6 +37,7 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MediaClock;
 import com.google.android.exoplayer2.util.StandaloneMediaClock;
 import com.google.android.exoplayer2.util.TraceUtil;
+import com.google.android.exoplayer2.util.Util;
 
 import java.io.IOException;
 
@@ -46,8 +47,6 @@ import java.io.IOException;
 /* package */ final class ExoPlayerImplInternal implements Handler.Callback,
         MediaPeriod.Callback, TrackSelector.InvalidationListener, MediaSource.Listener {
 
-    private float speed;
-
     /**
      * Playback position information which is read on the application's thread by
      * {@link ExoPlayerImpl} and read/written internally on the player's thread.
@@ -118,6 +117,7 @@ import java.io.IOException;
     private static final int MSG_SOURCE_CONTINUE_LOADING_REQUESTED = 9;
     private static final int MSG_TRACK_SELECTION_INVALIDATED = 10;
     private static final int MSG_CUSTOM = 11;
+    private static final int MSG_SET_PLAYBACK_SPEED = 12;
 
     private static final int PREPARING_SOURCE_INTERVAL_MS = 10;
     private static final int RENDERING_INTERVAL_MS = 10;
@@ -150,6 +150,13 @@ import java.io.IOException;
     private final Timeline.Window window;
     private final Timeline.Period period;
 
+    /**
+     * The most recently requested playback speed, which is written on the application thread and
+     * may be read on any thread. The playback thread applies requested speeds in order through
+     * {@link #MSG_SET_PLAYBACK_SPEED}.
+     */
+    private volatile float playbackSpeed;
+
     private PlaybackInfo playbackInfo;
     private PlaybackParameters playbackParameters;
     private Renderer rendererMediaClockSource;
@@ -164,6 +171,8 @@ import java.io.IOException;
     private int customMessagesSent;
     private int customMessagesProcessed;
     private long elapsedRealtimeUs;
+    private float mediaPlaybackSpeed;
+    private float rendererPlaybackSpeed;
 
     private int pendingInitialSeekCount;
     private SeekPosition pendingSeekPosition;
@@ -198,6 +207,9 @@ import java.io.IOException;
         period = new Timeline.Period();
         trackSelector.init(this);
         playbackParameters = PlaybackParameters.DEFAULT;
+        playbackSpeed = 1f;
+        mediaPlaybackSpeed = 1f;
+        rendererPlaybackSpeed = 1f;
 
         // Note: The documentation for Process.THREAD_PRIORITY_AUDIO that states "Applications can
         // not normally change to this priority" is incorrect.
@@ -225,6 +237,18 @@ import java.io.IOException;
         handler.obtainMessage(C.MSG_SET_PLAYBACK_PARAMETERS, playbackParameters).sendToTarget();
     }
 
+    public void setPlaybackSpeed(float speed) {
+        playbackSpeed = speed;
+        // Only the latest speed matters, so drop any pending change rather than letting rapid changes
+        // queue up ahead of rendering work.
+        handler.removeMessages(MSG_SET_PLAYBACK_SPEED);
+        handler.obtainMessage(MSG_SET_PLAYBACK_SPEED, Float.floatToIntBits(speed), 0).sendToTarget();
+    }
+
+    public float getPlaybackSpeed() {
+        return playbackSpeed;
+    }
+
     public void stop() {
         handler.sendEmptyMessage(MSG_STOP);
     }
@@ -236,9 +260,6 @@ import java.io.IOException;
         }
         customMessagesSent++;
         handler.obtainMessage(MSG_CUSTOM, messages).sendToTarget();
-        for (ExoPlayerMessage message : messages) {
-            maybeUpdatePlaybackSpeed(message);
-        }
     }
 
     public synchronized void blockingSendMessages(ExoPlayerMessage... messages) {
@@ -255,9 +276,6 @@ import java.io.IOException;
                 Thread.currentThread().interrupt();
             }
         }
-        for (ExoPlayerMessage message : messages) {
-            maybeUpdatePlaybackSpeed(message);
-        }
     }
 
     public synchronized void release() {
@@ -353,6 +371,10 @@ import java.io.IOException;
                     sendMessagesInternal((ExoPlayerMessage[]) msg.obj);
                     return true;
                 }
+                case MSG_SET_PLAYBACK_SPEED: {
+                    setPlaybackSpeedInternal(Float.intBitsToFloat(msg.arg1));
+                    return true;
+                }
                 default:
                     return false;
             }
@@ -470,6 +492,8 @@ import java.io.IOException;
 
     private void doSomeWork() throws ExoPlaybackException, IOException {
         long operationStartTimeMs = SystemClock.elapsedRealtime();
+        maybeUpdateMediaPlaybackSpeed();
+        maybeNotifyRendererPlaybackSpeed();
         updatePeriods();
         if (playingPeriodHolder == null) {
             // We're still waiting for the first period to be prepared.
@@ -694,6 +718,28 @@ import java.io.IOException;
         eventHandler.obtainMessage(MSG_PLAYBACK_PARAMETERS_CHANGED, playbackParameters).sendToTarget();
     }
 
+    private void setPlaybackSpeedInternal(float speed) throws ExoPlaybackException {
+        standaloneMediaClock.setPlaybackSpeed(speed);
+        if (rendererMediaClock != null) {
+            rendererMediaClock.setPlaybackSpeed(speed);
+        }
+        if (Util.SDK_INT >= 23) {
+            setRendererPlaybackParamsV23(speed);
+        }
+        maybeUpdateMediaPlaybackSpeed();
+        if (mediaSource != null) {
+            handler.sendEmptyMessage(MSG_DO_SOME_WORK);
+        }
+    }
+
+    @TargetApi(23)
+    private void setRendererPlaybackParamsV23(float speed) throws ExoPlaybackException {
+        PlaybackParams params = new PlaybackParams().setSpeed(speed);
+        for (Renderer renderer : renderers) {
+            renderer.handleMessage(C.MSG_SET_PLAYBACK_PARAMETERS, params);
+        }
+    }
+
     private void stopInternal() {
         resetInternal(true);
         loadControl.onStopped();
@@ -746,6 +792,7 @@ import java.io.IOException;
         try {
             for (ExoPlayerMessage message : messages) {
                 message.target.handleMessage(message.messageType, message.message);
+                maybeUpdatePlaybackSpeed(message);
             }
             if (mediaSource != null) {
                 // The message may have caused something to change that now requires us to do work.
@@ -759,6 +806,17 @@ import java.io.IOException;
         }
     }
 
+    private void maybeUpdatePlaybackSpeed(ExoPlayerMessage msg) {
+        // Keep the clocks in step with platform playback params sent directly to renderers.
+        if (Util.SDK_INT >= 23 && msg.messageType == C.MSG_SET_PLAYBACK_PARAMETERS
+                && msg.message instanceof PlaybackParams) {
+            float speed = ((PlaybackParams) msg.message).allowDefaults().getSpeed();
+            playbackSpeed = speed;
+            standaloneMediaClock.setPlaybackSpeed(speed);
+            maybeUpdateMediaPlaybackSpeed();
+        }
+    }
+
     private void ensureStopped(Renderer renderer) throws ExoPlaybackException {
         if (renderer.getState() == Renderer.STATE_STARTED) {
             renderer.stop();
@@ -778,7 +836,7 @@ import java.io.IOException;
                 // The reselection did not change any prepared periods.
                 return;
             }
-            if (periodHolder.selectTracks()) {
+            if (periodHolder.selectTracks(mediaPlaybackSpeed)) {
                 // Selected tracks have changed for this period.
                 break;
             }
@@ -1316,7 +1374,7 @@ import java.io.IOException;
             // Stale event.
             return;
         }
-        loadingPeriodHolder.handlePrepared();
+        loadingPeriodHolder.handlePrepared(mediaPlaybackSpeed);
         if (playingPeriodHolder == null) {
             // This is the first prepared period, so start playing it.
             readingPeriodHolder = loadingPeriodHolder;
@@ -1342,6 +1400,7 @@ import java.io.IOException;
         } else {
             long loadingPeriodPositionUs = loadingPeriodHolder.toPeriodTime(rendererPositionUs);
             long bufferedDurationUs = nextLoadPositionUs - loadingPeriodPositionUs;
+            maybeUpdateMediaPlaybackSpeed();
             boolean continueLoading = loadControl.shouldContinueLoading(bufferedDurationUs);
             setIsLoading(continueLoading);
             if (continueLoading) {
@@ -1353,6 +1412,33 @@ import java.io.IOException;
         }
     }
 
+    private void maybeUpdateMediaPlaybackSpeed() {
+        // Media is consumed at the rate of the media clock multiplied by any speedup applied through
+        // the playback parameters.
+        float playbackSpeed = standaloneMediaClock.getPlaybackSpeed() * playbackParameters.speed;
+        if (playbackSpeed != mediaPlaybackSpeed) {
+            mediaPlaybackSpeed = playbackSpeed;
+            loadControl.onPlaybackSpeedChanged(playbackSpeed);
+            MediaPeriodHolder periodHolder = playingPeriodHolder != null ? playingPeriodHolder
+                    : loadingPeriodHolder;
+            while (periodHolder != null) {
+                if (periodHolder.trackSelectorResult != null) {
+                    periodHolder.updateTrackSelectionPlaybackSpeed(playbackSpeed);
+                }
+                periodHolder = periodHolder.next;
+            }
+        }
+    }
+
+    private void maybeNotifyRendererPlaybackSpeed() throws ExoPlaybackException {
+        if (rendererPlaybackSpeed != mediaPlaybackSpeed) {
+            rendererPlaybackSpeed = mediaPlaybackSpeed;
+            for (Renderer renderer : renderers) {
+                renderer.handleMessage(C.MSG_SET_PLAYBACK_SPEED, rendererPlaybackSpeed);
+            }
+        }
+    }
+
     private void releasePeriodHoldersFrom(MediaPeriodHolder periodHolder) {
         while (periodHolder != null) {
             periodHolder.release();
@@ -1427,7 +1513,7 @@ import java.io.IOException;
                                     new IllegalStateException("Multiple renderer media clocks enabled."));
                         }
                         rendererMediaClock = mediaClock;
-                        rendererMediaClock.setPlaybackSpeed(speed);
+                        rendererMediaClock.setPlaybackSpeed(standaloneMediaClock.getPlaybackSpeed());
                         rendererMediaClockSource = renderer;
                         rendererMediaClock.setPlaybackParameters(playbackParameters);
                     }
@@ -1510,22 +1596,31 @@ import java.io.IOException;
                     && (!hasEnabledTracks || mediaPeriod.getBufferedPositionUs() == C.TIME_END_OF_SOURCE);
         }
 
-        public void handlePrepared() throws ExoPlaybackException {
+        public void handlePrepared(float playbackSpeed) throws ExoPlaybackException {
             prepared = true;
-            selectTracks();
+            selectTracks(playbackSpeed);
             startPositionUs = updatePeriodTrackSelection(startPositionUs, false);
         }
 
-        public boolean selectTracks() throws ExoPlaybackException {
+        public boolean selectTracks(float playbackSpeed) throws ExoPlaybackException {
             TrackSelectorResult selectorResult = trackSelector.selectTracks(rendererCapabilities,
                     mediaPeriod.getTrackGroups());
             if (selectorResult.isEquivalent(periodTrackSelectorResult)) {
                 return false;
             }
             trackSelectorResult = selectorResult;
+            updateTrackSelectionPlaybackSpeed(playbackSpeed);
             return true;
         }
 
+        public void updateTrackSelectionPlaybackSpeed(float playbackSpeed) {
+            for (TrackSelection trackSelection : trackSelectorResult.selections.getAll()) {
+                if (trackSelection != null) {
+                    trackSelection.onPlaybackSpeed(playbackSpeed);
+                }
+            }
+        }
+
         public long updatePeriodTrackSelection(long positionUs, boolean forceRecreateStreams) {
             return updatePeriodTrackSelection(positionUs, forceRecreateStreams,
                     new boolean[renderers.length]);
@@ -1584,36 +1679,4 @@ import java.io.IOException;
         }
 
     }
-
-    public float getPlaybackSpeed() {
-        return standaloneMediaClock.getPlaybackSpeed();
-    }
-
-    public void setPlaybackSpeed(float speed) {
-        if (Build.VERSION.SDK_INT >= 23) {
-            PlaybackParams params = new PlaybackParams();
-            params.setSpeed(speed);
-            ExoPlayerMessage[] messages = new ExoPlayerMessage[renderers.length];
-            for (int i = 0; i < renderers.length; i++) {
-                messages[i] = new ExoPlayerMessage(renderers[i], C.MSG_SET_PLAYBACK_PARAMETERS, params);
-            }
-            try {
-                sendMessagesInternal(messages);
-            } catch (ExoPlaybackException e) {
-                e.printStackTrace();
-            }
-        } else {
-            this.speed = speed;
-            standaloneMediaClock.setPlaybackSpeed(speed);
-            if (rendererMediaClock != null) {
-                rendererMediaClock.setPlaybackSpeed(speed);
-            }
-        }
-    }
-
-    private void maybeUpdatePlaybackSpeed(ExoPlayerMessage msg) {
-        if (Build.VERSION.SDK_INT >= 23 && msg.messageType == C.MSG_SET_PLAYBACK_PARAMETERS) {
-            standaloneMediaClock.setPlaybackSpeed(((PlaybackParams) msg.message).allowDefaults().getSpeed());
-        }
-    }
 }
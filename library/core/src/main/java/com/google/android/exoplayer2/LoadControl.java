@@ -25,6 +25,46 @@ import com.google.android.exoplayer2.upstream.Allocator;
  */
 public interface LoadControl {
 
+  /**
+   * Maps buffer durations, which are expressed in media time, onto the media time that must be
+   * buffered at a given playback speed.
+   */
+  interface SpeedScalingPolicy {
+
+    /**
+     * Leaves buffer durations unchanged, so that they are always interpreted in media time.
+     */
+    SpeedScalingPolicy MEDIA_TIME = new SpeedScalingPolicy() {
+      @Override
+      public long scaleBufferDurationUs(long bufferDurationUs, float playbackSpeed) {
+        return bufferDurationUs;
+      }
+    };
+
+    /**
+     * Scales buffer durations by the playback speed, so that they are interpreted in real time. For
+     * example a 15 second buffer holds 30 seconds of media at 2x and 7.5 seconds of media at 0.5x.
+     */
+    SpeedScalingPolicy REAL_TIME = new SpeedScalingPolicy() {
+      @Override
+      public long scaleBufferDurationUs(long bufferDurationUs, float playbackSpeed) {
+        return (long) (bufferDurationUs * (double) playbackSpeed);
+      }
+    };
+
+    /**
+     * Returns the duration of media that should be buffered to satisfy a buffer duration at the
+     * given playback speed.
+     *
+     * @param bufferDurationUs The buffer duration at normal playback speed, in microseconds.
+     * @param playbackSpeed The playback speed, as the ratio of media time to real time.
+     * @return The duration of media to buffer, in microseconds.
+     */
+    long scaleBufferDurationUs(long bufferDurationUs, float playbackSpeed);
+
+  }
+
+
   /**
    * Called by the player when prepared with a new source.
    */
@@ -40,6 +80,15 @@ public interface LoadControl {
   void onTracksSelected(Renderer[] renderers, TrackGroupArray trackGroups,
       TrackSelectionArray trackSelections);
 
+  /**
+   * Called by the player when the playback speed changes. Always called on the playback thread,
+   * before the next call to {@link #shouldStartPlayback(long, boolean)} or
+   * {@link #shouldContinueLoading(long)}.
+   *
+   * @param playbackSpeed The new playback speed, as the ratio of media time to real time.
+   */
+  void onPlaybackSpeedChanged(float playbackSpeed);
+
   /**
    * Called by the player when stopped.
    */
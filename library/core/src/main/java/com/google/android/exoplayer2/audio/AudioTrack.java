@@ -286,9 +286,11 @@ public final class AudioTrack {
     public static boolean failOnSpuriousAudioTimestamp = false;
 
     private final AudioCapabilities audioCapabilities;
+    private final ResamplingAudioProcessor resamplingAudioProcessor;
     private final ChannelMappingAudioProcessor channelMappingAudioProcessor;
     private final SonicAudioProcessor sonicAudioProcessor;
     private final AudioProcessor[] availableAudioProcessors;
+    private final boolean canResampleInSonic;
     private final Listener listener;
     private final ConditionVariable releasingConditionVariable;
     private final long[] playheadOffsets;
@@ -366,6 +368,20 @@ public final class AudioTrack {
      */
     public AudioTrack(AudioCapabilities audioCapabilities, AudioProcessor[] audioProcessors,
                       Listener listener) {
+        this(audioCapabilities, audioProcessors, TimeStretchEngine.Factory.DEFAULT, listener);
+    }
+
+    /**
+     * @param audioCapabilities        The audio capabilities for playback on this device. May be null if the
+     *                                 default capabilities (no encoded audio passthrough support) should be assumed.
+     * @param audioProcessors          An array of {@link AudioProcessor}s that will process PCM audio before
+     *                                 output. May be empty.
+     * @param timeStretchEngineFactory A factory for the {@link TimeStretchEngine} that applies the speed and
+     *                                 pitch of the {@link PlaybackParameters}.
+     * @param listener                 Listener for audio track events.
+     */
+    public AudioTrack(AudioCapabilities audioCapabilities, AudioProcessor[] audioProcessors,
+                      TimeStretchEngine.Factory timeStretchEngineFactory, Listener listener) {
         this.audioCapabilities = audioCapabilities;
         this.listener = listener;
         releasingConditionVariable = new ConditionVariable(true);
@@ -384,13 +400,17 @@ public final class AudioTrack {
         } else {
             audioTrackUtil = new AudioTrackUtil();
         }
+        resamplingAudioProcessor = new ResamplingAudioProcessor();
         channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
-        sonicAudioProcessor = new SonicAudioProcessor();
+        sonicAudioProcessor = new SonicAudioProcessor(timeStretchEngineFactory);
         availableAudioProcessors = new AudioProcessor[3 + audioProcessors.length];
-        availableAudioProcessors[0] = new ResamplingAudioProcessor();
+        availableAudioProcessors[0] = resamplingAudioProcessor;
         availableAudioProcessors[1] = channelMappingAudioProcessor;
         System.arraycopy(audioProcessors, 0, availableAudioProcessors, 2, audioProcessors.length);
         availableAudioProcessors[2 + audioProcessors.length] = sonicAudioProcessor;
+        // Application processors may require 16-bit input, so only skip the resampling stage if there
+        // are none between it and the Sonic processor.
+        canResampleInSonic = audioProcessors.length == 0;
         playheadOffsets = new long[MAX_PLAYHEAD_OFFSET_COUNT];
         volume = 1.0f;
         startMediaTimeState = START_NOT_SET;
@@ -505,7 +525,15 @@ public final class AudioTrack {
         if (!passthrough) {
             pcmFrameSize = Util.getPcmFrameSize(pcmEncoding, channelCount);
             channelMappingAudioProcessor.setChannelMap(outputChannels);
+            // If the only processor that needs to see the input is the Sonic processor, let it convert
+            // the encoding while copying input into its engine, rather than running a separate pass.
+            boolean resampleInSonic = canResampleInSonic && outputChannels == null;
             for (AudioProcessor audioProcessor : availableAudioProcessors) {
+                if (resampleInSonic && audioProcessor == resamplingAudioProcessor) {
+                    flush |= resamplingAudioProcessor.isActive();
+                    resamplingAudioProcessor.reset();
+                    continue;
+                }
                 try {
                     flush |= audioProcessor.configure(sampleRate, channelCount, encoding);
                 } catch (AudioProcessor.UnhandledFormatException e) {
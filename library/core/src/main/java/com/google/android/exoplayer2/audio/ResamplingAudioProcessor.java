@@ -47,8 +47,7 @@ import java.nio.ByteOrder;
   @Override
   public boolean configure(int sampleRateHz, int channelCount, @C.Encoding int encoding)
       throws UnhandledFormatException {
-    if (encoding != C.ENCODING_PCM_8BIT && encoding != C.ENCODING_PCM_16BIT
-        && encoding != C.ENCODING_PCM_24BIT && encoding != C.ENCODING_PCM_32BIT) {
+    if (!canResample(encoding)) {
       throw new UnhandledFormatException(sampleRateHz, channelCount, encoding);
     }
     if (this.sampleRateHz == sampleRateHz && this.channelCount == channelCount
@@ -82,9 +81,64 @@ import java.nio.ByteOrder;
   @Override
   public void queueInput(ByteBuffer inputBuffer) {
     // Prepare the output buffer.
-    int position = inputBuffer.position();
-    int limit = inputBuffer.limit();
-    int size = limit - position;
+    int resampledSize = getResampledSize(inputBuffer.remaining(), encoding);
+    if (buffer.capacity() < resampledSize) {
+      buffer = ByteBuffer.allocateDirect(resampledSize).order(ByteOrder.nativeOrder());
+    } else {
+      buffer.clear();
+    }
+    resample(inputBuffer, encoding, buffer);
+    buffer.flip();
+    outputBuffer = buffer;
+  }
+
+  @Override
+  public void queueEndOfStream() {
+    inputEnded = true;
+  }
+
+  @Override
+  public ByteBuffer getOutput() {
+    ByteBuffer outputBuffer = this.outputBuffer;
+    this.outputBuffer = EMPTY_BUFFER;
+    return outputBuffer;
+  }
+
+  @SuppressWarnings("ReferenceEquality")
+  @Override
+  public boolean isEnded() {
+    return inputEnded && outputBuffer == EMPTY_BUFFER;
+  }
+
+  @Override
+  public void flush() {
+    outputBuffer = EMPTY_BUFFER;
+    inputEnded = false;
+  }
+
+  @Override
+  public void reset() {
+    flush();
+    buffer = EMPTY_BUFFER;
+    sampleRateHz = Format.NO_VALUE;
+    channelCount = Format.NO_VALUE;
+    encoding = C.ENCODING_INVALID;
+  }
+
+  /**
+   * Returns whether {@link #resample(ByteBuffer, int, ByteBuffer)} can convert audio in the
+   * specified encoding.
+   */
+  /* package */ static boolean canResample(@C.Encoding int encoding) {
+    return encoding == C.ENCODING_PCM_8BIT || encoding == C.ENCODING_PCM_16BIT
+        || encoding == C.ENCODING_PCM_24BIT || encoding == C.ENCODING_PCM_32BIT;
+  }
+
+  /**
+   * Returns the size in bytes of {@code size} bytes of audio in the specified encoding after
+   * conversion to {@link C#ENCODING_PCM_16BIT}.
+   */
+  /* package */ static int getResampledSize(int size, @C.PcmEncoding int encoding) {
     int resampledSize;
     switch (encoding) {
       case C.ENCODING_PCM_8BIT:
@@ -102,12 +156,24 @@ import java.nio.ByteOrder;
       default:
         throw new IllegalStateException();
     }
-    if (buffer.capacity() < resampledSize) {
-      buffer = ByteBuffer.allocateDirect(resampledSize).order(ByteOrder.nativeOrder());
-    } else {
-      buffer.clear();
-    }
+    return resampledSize;
+  }
 
+  /**
+   * Converts the remaining little endian audio in {@code inputBuffer} to
+   * {@link C#ENCODING_PCM_16BIT}, writing it at the position of {@code outputBuffer}. The position
+   * of {@code inputBuffer} is advanced to its limit.
+   *
+   * @param inputBuffer The input audio, in {@code encoding}.
+   * @param encoding The encoding of the input, which must not be {@link C#ENCODING_PCM_16BIT}.
+   * @param outputBuffer The buffer to write to, which must have space for
+   *     {@link #getResampledSize(int, int)} bytes.
+   */
+  /* package */ static void resample(ByteBuffer inputBuffer, @C.PcmEncoding int encoding,
+      ByteBuffer outputBuffer) {
+    int position = inputBuffer.position();
+    int limit = inputBuffer.limit();
+    ByteBuffer buffer = outputBuffer;
     // Resample the little endian input and update the input/output buffers.
     switch (encoding) {
       case C.ENCODING_PCM_8BIT:
@@ -139,41 +205,6 @@ import java.nio.ByteOrder;
         throw new IllegalStateException();
     }
     inputBuffer.position(inputBuffer.limit());
-    buffer.flip();
-    outputBuffer = buffer;
-  }
-
-  @Override
-  public void queueEndOfStream() {
-    inputEnded = true;
-  }
-
-  @Override
-  public ByteBuffer getOutput() {
-    ByteBuffer outputBuffer = this.outputBuffer;
-    this.outputBuffer = EMPTY_BUFFER;
-    return outputBuffer;
-  }
-
-  @SuppressWarnings("ReferenceEquality")
-  @Override
-  public boolean isEnded() {
-    return inputEnded && outputBuffer == EMPTY_BUFFER;
-  }
-
-  @Override
-  public void flush() {
-    outputBuffer = EMPTY_BUFFER;
-    inputEnded = false;
-  }
-
-  @Override
-  public void reset() {
-    flush();
-    buffer = EMPTY_BUFFER;
-    sampleRateHz = Format.NO_VALUE;
-    channelCount = Format.NO_VALUE;
-    encoding = C.ENCODING_INVALID;
   }
 
 }
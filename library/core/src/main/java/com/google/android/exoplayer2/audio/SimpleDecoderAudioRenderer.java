@@ -114,6 +114,20 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
         this(eventHandler, eventListener, null, null, false, audioProcessors);
     }
 
+    /**
+     * @param eventHandler             A handler to use when delivering events to {@code eventListener}. May be
+     *                                 null if delivery of events is not required.
+     * @param eventListener            A listener of events. May be null if delivery of events is not required.
+     * @param timeStretchEngineFactory A factory for the {@link TimeStretchEngine} used to change the speed
+     *                                 and pitch of the audio.
+     * @param audioProcessors          Optional {@link AudioProcessor}s that will process audio before output.
+     */
+    public SimpleDecoderAudioRenderer(Handler eventHandler,
+                                      AudioRendererEventListener eventListener, TimeStretchEngine.Factory timeStretchEngineFactory,
+                                      AudioProcessor... audioProcessors) {
+        this(eventHandler, eventListener, null, null, false, timeStretchEngineFactory, audioProcessors);
+    }
+
     /**
      * @param eventHandler      A handler to use when delivering events to {@code eventListener}. May be
      *                          null if delivery of events is not required.
@@ -145,11 +159,37 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
                                       AudioRendererEventListener eventListener, AudioCapabilities audioCapabilities,
                                       DrmSessionManager<ExoMediaCrypto> drmSessionManager, boolean playClearSamplesWithoutKeys,
                                       AudioProcessor... audioProcessors) {
+        this(eventHandler, eventListener, audioCapabilities, drmSessionManager,
+                playClearSamplesWithoutKeys, TimeStretchEngine.Factory.DEFAULT, audioProcessors);
+    }
+
+    /**
+     * @param eventHandler                A handler to use when delivering events to {@code eventListener}. May be
+     *                                    null if delivery of events is not required.
+     * @param eventListener               A listener of events. May be null if delivery of events is not required.
+     * @param audioCapabilities           The audio capabilities for playback on this device. May be null if the
+     *                                    default capabilities (no encoded audio passthrough support) should be assumed.
+     * @param drmSessionManager           For use with encrypted media. May be null if support for encrypted
+     *                                    media is not required.
+     * @param playClearSamplesWithoutKeys Encrypted media may contain clear (un-encrypted) regions.
+     *                                    For example a media file may start with a short clear region so as to allow playback to
+     *                                    begin in parallel with key acquisition. This parameter specifies whether the renderer is
+     *                                    permitted to play clear regions of encrypted media files before {@code drmSessionManager}
+     *                                    has obtained the keys necessary to decrypt encrypted regions of the media.
+     * @param timeStretchEngineFactory    A factory for the {@link TimeStretchEngine} used to change the speed
+     *                                    and pitch of the audio.
+     * @param audioProcessors             Optional {@link AudioProcessor}s that will process audio before output.
+     */
+    public SimpleDecoderAudioRenderer(Handler eventHandler,
+                                      AudioRendererEventListener eventListener, AudioCapabilities audioCapabilities,
+                                      DrmSessionManager<ExoMediaCrypto> drmSessionManager, boolean playClearSamplesWithoutKeys,
+                                      TimeStretchEngine.Factory timeStretchEngineFactory, AudioProcessor... audioProcessors) {
         super(C.TRACK_TYPE_AUDIO);
         this.drmSessionManager = drmSessionManager;
         this.playClearSamplesWithoutKeys = playClearSamplesWithoutKeys;
         eventDispatcher = new EventDispatcher(eventHandler, eventListener);
-        audioTrack = new AudioTrack(audioCapabilities, audioProcessors, new AudioTrackListener());
+        audioTrack = new AudioTrack(audioCapabilities, audioProcessors, timeStretchEngineFactory,
+                new AudioTrackListener());
         formatHolder = new FormatHolder();
         flagsOnlyBuffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DISABLED);
         decoderReinitializationState = REINITIALIZATION_STATE_NONE;
@@ -16,7 +16,9 @@
  */
 package com.google.android.exoplayer2.audio;
 
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
+import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
 import java.util.Arrays;
 
@@ -25,7 +27,7 @@ import java.util.Arrays;
  * <p>
  * Based on https://github.com/waywardgeek/sonic.
  */
-/* package */ final class Sonic {
+/* package */ final class Sonic implements TimeStretchEngine {
 
   private static final boolean USE_CHORD_PITCH = false;
   private static final int MINIMUM_PITCH = 65;
@@ -84,9 +86,45 @@ import java.util.Arrays;
     pitch = 1.0f;
   }
 
+  /**
+   * Returns the sample rate of input audio.
+   */
+  @Override
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * Returns the number of channels in the input audio.
+   */
+  @Override
+  public int getChannelCount() {
+    return numChannels;
+  }
+
+  /**
+   * Discards all queued input and pending output, returning the processor to the state it had
+   * after construction except for the speed and pitch. Buffers are retained, so a processor that
+   * is flushed and reused does not allocate again once it has reached its steady state size.
+   */
+  @Override
+  public void flush() {
+    numInputSamples = 0;
+    numOutputSamples = 0;
+    numPitchSamples = 0;
+    remainingInputToCopy = 0;
+    oldRatePosition = 0;
+    newRatePosition = 0;
+    prevPeriod = 0;
+    prevMinDiff = 0;
+    minDiff = 0;
+    maxDiff = 0;
+  }
+
   /**
    * Sets the output speed.
    */
+  @Override
   public void setSpeed(float speed) {
     this.speed = speed;
   }
@@ -101,6 +139,7 @@ import java.util.Arrays;
   /**
    * Sets the output pitch.
    */
+  @Override
   public void setPitch(float pitch) {
     this.pitch = pitch;
   }
@@ -118,6 +157,7 @@ import java.util.Arrays;
    *
    * @param buffer A {@link ShortBuffer} containing input data between its position and limit.
    */
+  @Override
   public void queueInput(ShortBuffer buffer) {
     int samplesToWrite = buffer.remaining() / numChannels;
     int bytesToWrite = samplesToWrite * numChannels * 2;
@@ -127,12 +167,76 @@ import java.util.Arrays;
     processStreamInput();
   }
 
+  /**
+   * Queues remaining data from {@code buffer}, converting it to 16-bit PCM as it is copied into the
+   * input buffer, and advances its position by the number of bytes consumed.
+   *
+   * @param buffer A {@link ByteBuffer} containing input data between its position and limit.
+   * @param encoding The encoding of the input data.
+   */
+  @Override
+  public void queueInput(ByteBuffer buffer, @C.PcmEncoding int encoding) {
+    if (encoding == C.ENCODING_PCM_16BIT) {
+      ShortBuffer shortBuffer = buffer.asShortBuffer();
+      queueInput(shortBuffer);
+      buffer.position(buffer.position() + shortBuffer.position() * 2);
+      return;
+    }
+    int bytesPerSample;
+    switch (encoding) {
+      case C.ENCODING_PCM_8BIT:
+        bytesPerSample = 1;
+        break;
+      case C.ENCODING_PCM_24BIT:
+        bytesPerSample = 3;
+        break;
+      case C.ENCODING_PCM_32BIT:
+        bytesPerSample = 4;
+        break;
+      default:
+        throw new IllegalArgumentException();
+    }
+    int samplesToWrite = buffer.remaining() / (bytesPerSample * numChannels);
+    int shortsToWrite = samplesToWrite * numChannels;
+    enlargeInputBufferIfNeeded(samplesToWrite);
+    int position = buffer.position();
+    int offset = numInputSamples * numChannels;
+    // Keep the two most significant bytes of each little endian sample, as
+    // ResamplingAudioProcessor does. 8-bit samples are unsigned, so shift them to be signed.
+    switch (encoding) {
+      case C.ENCODING_PCM_8BIT:
+        for (int i = 0; i < shortsToWrite; i++) {
+          inputBuffer[offset + i] = (short) (((buffer.get(position + i) & 0xFF) - 128) << 8);
+        }
+        break;
+      case C.ENCODING_PCM_24BIT:
+        for (int i = 0; i < shortsToWrite; i++) {
+          int index = position + i * 3;
+          inputBuffer[offset + i] =
+              (short) ((buffer.get(index + 2) << 8) | (buffer.get(index + 1) & 0xFF));
+        }
+        break;
+      case C.ENCODING_PCM_32BIT:
+      default:
+        for (int i = 0; i < shortsToWrite; i++) {
+          int index = position + i * 4;
+          inputBuffer[offset + i] =
+              (short) ((buffer.get(index + 3) << 8) | (buffer.get(index + 2) & 0xFF));
+        }
+        break;
+    }
+    buffer.position(position + shortsToWrite * bytesPerSample);
+    numInputSamples += samplesToWrite;
+    processStreamInput();
+  }
+
   /**
    * Gets available output, outputting to the start of {@code buffer}. The buffer's position will be
    * advanced by the number of bytes written.
    *
    * @param buffer A {@link ShortBuffer} into which output will be written.
    */
+  @Override
   public void getOutput(ShortBuffer buffer) {
     int samplesToRead = Math.min(buffer.remaining() / numChannels, numOutputSamples);
     buffer.put(outputBuffer, 0, samplesToRead * numChannels);
@@ -145,6 +249,7 @@ import java.util.Arrays;
    * Forces generating output using whatever data has been queued already. No extra delay will be
    * added to the output, but flushing in the middle of words could introduce distortion.
    */
+  @Override
   public void queueEndOfStream() {
     int remainingSamples = numInputSamples;
     float s = speed / pitch;
@@ -171,6 +276,7 @@ import java.util.Arrays;
   /**
    * Returns the number of output samples that can be read with {@link #getOutput(ShortBuffer)}.
    */
+  @Override
   public int getSamplesAvailable() {
     return numOutputSamples;
   }
@@ -217,14 +323,14 @@ import java.util.Arrays;
     // buffer. If numChannels is greater than one, mix the channels together as we down sample.
     int numSamples = maxRequired / skip;
     int samplesPerValue = numChannels * skip;
-    position *= numChannels;
+    int index = position * numChannels;
     for (int i = 0; i < numSamples; i++) {
       int value = 0;
       for (int j = 0; j < samplesPerValue; j++) {
-        value += samples[position + i * samplesPerValue + j];
+        value += samples[index + j];
       }
-      value /= samplesPerValue;
-      downSampleBuffer[i] = (short) value;
+      index += samplesPerValue;
+      downSampleBuffer[i] = (short) (value / samplesPerValue);
     }
   }
 
@@ -237,11 +343,12 @@ import java.util.Arrays;
     int maxDiff = 0;
     position *= numChannels;
     for (int period = minPeriod; period <= maxPeriod; period++) {
+      // A branch-free absolute difference over two contiguous runs, which the compiler can turn
+      // into a vectorized reduction.
       int diff = 0;
+      int periodPosition = position + period;
       for (int i = 0; i < period; i++) {
-        short sVal = samples[position + i];
-        short pVal = samples[position + period + i];
-        diff += sVal >= pVal ? sVal - pVal : pVal - sVal;
+        diff += Math.abs(samples[position + i] - samples[periodPosition + i]);
       }
       // Note that the highest number of samples we add into diff will be less than 256, since we
       // skip samples. Thus, diff is a 24 bit number, and we can safely multiply by numSamples
@@ -493,16 +600,26 @@ import java.util.Arrays;
 
   private static void overlapAdd(int numSamples, int numChannels, short[] out, int outPos,
       short[] rampDown, int rampDownPos, short[] rampUp, int rampUpPos) {
-    for (int i = 0; i < numChannels; i++) {
-      int o = outPos * numChannels + i;
-      int u = rampUpPos * numChannels + i;
-      int d = rampDownPos * numChannels + i;
+    // The output never overlaps the inputs, so the interleaved samples can be visited in memory
+    // order rather than one channel at a time.
+    int o = outPos * numChannels;
+    int d = rampDownPos * numChannels;
+    int u = rampUpPos * numChannels;
+    if (numChannels == 1) {
       for (int t = 0; t < numSamples; t++) {
-        out[o] = (short) ((rampDown[d] * (numSamples - t) + rampUp[u] * t) / numSamples);
-        o += numChannels;
-        d += numChannels;
-        u += numChannels;
+        out[o + t] =
+            (short) ((rampDown[d + t] * (numSamples - t) + rampUp[u + t] * t) / numSamples);
+      }
+      return;
+    }
+    for (int t = 0; t < numSamples; t++) {
+      int rampDownWeight = numSamples - t;
+      for (int i = 0; i < numChannels; i++) {
+        out[o + i] = (short) ((rampDown[d + i] * rampDownWeight + rampUp[u + i] * t) / numSamples);
       }
+      o += numChannels;
+      d += numChannels;
+      u += numChannels;
     }
   }
 
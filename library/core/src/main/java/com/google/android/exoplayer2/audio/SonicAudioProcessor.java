@@ -24,7 +24,12 @@ import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 
 /**
- * An {@link AudioProcessor} that uses the Sonic library to modify the speed/pitch of audio.
+ * An {@link AudioProcessor} that uses a {@link TimeStretchEngine}, by default based on the Sonic
+ * library, to modify the speed/pitch of audio.
+ * <p>
+ * Input may be 8, 16, 24 or 32-bit PCM with any number of channels. Output is always 16-bit PCM,
+ * so when this processor is last in a chain no separate {@link ResamplingAudioProcessor} stage is
+ * needed: other encodings are converted as they are copied into the engine.
  */
 public final class SonicAudioProcessor implements AudioProcessor {
 
@@ -50,12 +55,17 @@ public final class SonicAudioProcessor implements AudioProcessor {
    */
   private static final float CLOSE_THRESHOLD = 0.01f;
 
+  private final TimeStretchEngine.Factory timeStretchEngineFactory;
+
   private int channelCount;
   private int sampleRateHz;
+  @C.PcmEncoding
+  private int encoding;
 
-  private Sonic sonic;
+  private TimeStretchEngine sonic;
   private float speed;
   private float pitch;
+  private boolean resampleOnly;
 
   private ByteBuffer buffer;
   private ShortBuffer shortBuffer;
@@ -68,10 +78,21 @@ public final class SonicAudioProcessor implements AudioProcessor {
    * Creates a new Sonic audio processor.
    */
   public SonicAudioProcessor() {
+    this(TimeStretchEngine.Factory.DEFAULT);
+  }
+
+  /**
+   * Creates a new audio processor that changes speed/pitch using engines from the given factory.
+   *
+   * @param timeStretchEngineFactory A factory for the {@link TimeStretchEngine} to use.
+   */
+  public SonicAudioProcessor(TimeStretchEngine.Factory timeStretchEngineFactory) {
+    this.timeStretchEngineFactory = timeStretchEngineFactory;
     speed = 1f;
     pitch = 1f;
     channelCount = Format.NO_VALUE;
     sampleRateHz = Format.NO_VALUE;
+    encoding = C.ENCODING_INVALID;
     buffer = EMPTY_BUFFER;
     shortBuffer = buffer.asShortBuffer();
     outputBuffer = EMPTY_BUFFER;
@@ -100,7 +121,8 @@ public final class SonicAudioProcessor implements AudioProcessor {
   }
 
   /**
-   * Returns the number of bytes of input queued since the last call to {@link #flush()}.
+   * Returns the number of bytes of input queued since the last call to {@link #flush()}, measured
+   * after conversion to 16-bit PCM so that it is comparable with {@link #getOutputByteCount()}.
    */
   public long getInputByteCount() {
     return inputBytes;
@@ -116,20 +138,23 @@ public final class SonicAudioProcessor implements AudioProcessor {
   @Override
   public boolean configure(int sampleRateHz, int channelCount, @Encoding int encoding)
       throws UnhandledFormatException {
-    if (encoding != C.ENCODING_PCM_16BIT) {
+    if (!ResamplingAudioProcessor.canResample(encoding)) {
       throw new UnhandledFormatException(sampleRateHz, channelCount, encoding);
     }
-    if (this.sampleRateHz == sampleRateHz && this.channelCount == channelCount) {
+    if (this.sampleRateHz == sampleRateHz && this.channelCount == channelCount
+        && this.encoding == encoding) {
       return false;
     }
     this.sampleRateHz = sampleRateHz;
     this.channelCount = channelCount;
+    this.encoding = encoding;
     return true;
   }
 
   @Override
   public boolean isActive() {
-    return Math.abs(speed - 1f) >= CLOSE_THRESHOLD || Math.abs(pitch - 1f) >= CLOSE_THRESHOLD;
+    return (encoding != C.ENCODING_INVALID && encoding != C.ENCODING_PCM_16BIT)
+        || isStretchingEnabled();
   }
 
   @Override
@@ -144,12 +169,31 @@ public final class SonicAudioProcessor implements AudioProcessor {
 
   @Override
   public void queueInput(ByteBuffer inputBuffer) {
+    if (resampleOnly) {
+      // Only the encoding needs converting, which can be done directly into the output buffer.
+      if (inputBuffer.hasRemaining()) {
+        int outputSize = ResamplingAudioProcessor.getResampledSize(inputBuffer.remaining(),
+            encoding);
+        if (buffer.capacity() < outputSize) {
+          buffer = ByteBuffer.allocateDirect(outputSize).order(ByteOrder.nativeOrder());
+          shortBuffer = buffer.asShortBuffer();
+        } else {
+          buffer.clear();
+        }
+        ResamplingAudioProcessor.resample(inputBuffer, encoding, buffer);
+        buffer.flip();
+        inputBytes += outputSize;
+        outputBytes += outputSize;
+        outputBuffer = buffer;
+      }
+      return;
+    }
     if (inputBuffer.hasRemaining()) {
-      ShortBuffer shortBuffer = inputBuffer.asShortBuffer();
       int inputSize = inputBuffer.remaining();
-      inputBytes += inputSize;
-      sonic.queueInput(shortBuffer);
-      inputBuffer.position(inputBuffer.position() + inputSize);
+      inputBytes += encoding == C.ENCODING_PCM_16BIT ? inputSize
+          : ResamplingAudioProcessor.getResampledSize(inputSize, encoding);
+      sonic.queueInput(inputBuffer, encoding);
+      inputBuffer.position(inputBuffer.limit());
     }
     int outputSize = sonic.getSamplesAvailable() * channelCount * 2;
     if (outputSize > 0) {
@@ -169,7 +213,9 @@ public final class SonicAudioProcessor implements AudioProcessor {
 
   @Override
   public void queueEndOfStream() {
-    sonic.queueEndOfStream();
+    if (!resampleOnly) {
+      sonic.queueEndOfStream();
+    }
     inputEnded = true;
   }
 
@@ -180,16 +226,26 @@ public final class SonicAudioProcessor implements AudioProcessor {
     return outputBuffer;
   }
 
+  @SuppressWarnings("ReferenceEquality")
   @Override
   public boolean isEnded() {
+    if (resampleOnly) {
+      return inputEnded && outputBuffer == EMPTY_BUFFER;
+    }
     return inputEnded && (sonic == null || sonic.getSamplesAvailable() == 0);
   }
 
   @Override
   public void flush() {
-    sonic = new Sonic(sampleRateHz, channelCount);
+    if (sonic == null || sonic.getSampleRate() != sampleRateHz
+        || sonic.getChannelCount() != channelCount) {
+      sonic = timeStretchEngineFactory.createTimeStretchEngine(sampleRateHz, channelCount);
+    } else {
+      sonic.flush();
+    }
     sonic.setSpeed(speed);
     sonic.setPitch(pitch);
+    resampleOnly = isActive() && !isStretchingEnabled();
     outputBuffer = EMPTY_BUFFER;
     inputBytes = 0;
     outputBytes = 0;
@@ -204,9 +260,15 @@ public final class SonicAudioProcessor implements AudioProcessor {
     outputBuffer = EMPTY_BUFFER;
     channelCount = Format.NO_VALUE;
     sampleRateHz = Format.NO_VALUE;
+    encoding = C.ENCODING_INVALID;
+    resampleOnly = false;
     inputBytes = 0;
     outputBytes = 0;
     inputEnded = false;
   }
 
+  private boolean isStretchingEnabled() {
+    return Math.abs(speed - 1f) >= CLOSE_THRESHOLD || Math.abs(pitch - 1f) >= CLOSE_THRESHOLD;
+  }
+
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import com.google.android.exoplayer2.C;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Changes the speed and/or pitch of a stream of interleaved 16-bit PCM audio.
+ */
+public interface TimeStretchEngine {
+
+  /**
+   * Creates {@link TimeStretchEngine} instances.
+   */
+  interface Factory {
+
+    /**
+     * Default implementation of {@link Factory}, which creates engines based on the Sonic library.
+     */
+    Factory DEFAULT = new Factory() {
+
+      @Override
+      public TimeStretchEngine createTimeStretchEngine(int sampleRateHz, int channelCount) {
+        return new Sonic(sampleRateHz, channelCount);
+      }
+
+    };
+
+    /**
+     * Creates a new engine for audio in the specified format.
+     *
+     * @param sampleRateHz The sample rate of input audio, in hertz.
+     * @param channelCount The number of channels in the input audio.
+     * @return A new engine, with speed and pitch both equal to one.
+     */
+    TimeStretchEngine createTimeStretchEngine(int sampleRateHz, int channelCount);
+
+  }
+
+  /**
+   * Returns the sample rate of input audio.
+   */
+  int getSampleRate();
+
+  /**
+   * Returns the number of channels in the input audio.
+   */
+  int getChannelCount();
+
+  /**
+   * Discards all queued input and pending output, keeping the current speed and pitch.
+   */
+  void flush();
+
+  /**
+   * Sets the output speed.
+   */
+  void setSpeed(float speed);
+
+  /**
+   * Sets the output pitch.
+   */
+  void setPitch(float pitch);
+
+  /**
+   * Queues remaining data from {@code buffer}, and advances its position by the number of shorts
+   * consumed.
+   *
+   * @param buffer A {@link ShortBuffer} containing input data between its position and limit.
+   */
+  void queueInput(ShortBuffer buffer);
+
+  /**
+   * Queues remaining data from {@code buffer}, converting it to 16-bit PCM as it is copied, and
+   * advances its position by the number of bytes consumed.
+   *
+   * @param buffer A {@link ByteBuffer} containing input data between its position and limit.
+   * @param encoding The encoding of the input data. {@link C#ENCODING_PCM_16BIT} data is in the
+   *     byte order of {@code buffer}, and other encodings are little endian.
+   */
+  void queueInput(ByteBuffer buffer, @C.PcmEncoding int encoding);
+
+  /**
+   * Writes as much available output as will fit into {@code buffer}, advancing its position by the
+   * number of shorts written.
+   *
+   * @param buffer A {@link ShortBuffer} into which output will be written.
+   */
+  void getOutput(ShortBuffer buffer);
+
+  /**
+   * Forces generating output using whatever data has been queued already.
+   */
+  void queueEndOfStream();
+
+  /**
+   * Returns the number of output samples per channel that can be read with
+   * {@link #getOutput(ShortBuffer)}.
+   */
+  int getSamplesAvailable();
+
+}
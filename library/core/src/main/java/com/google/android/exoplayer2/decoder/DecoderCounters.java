@@ -36,6 +36,12 @@ public final class DecoderCounters {
    * The number of queued input buffers.
    */
   public int inputBufferCount;
+  /**
+   * The number of skipped input buffers.
+   * <p>
+   * A skipped input buffer is an input buffer that was deliberately not queued to the decoder.
+   */
+  public int skippedInputBufferCount;
   /**
    * The number of rendered output buffers.
    */
@@ -79,6 +85,7 @@ public final class DecoderCounters {
     decoderInitCount += other.decoderInitCount;
     decoderReleaseCount += other.decoderReleaseCount;
     inputBufferCount += other.inputBufferCount;
+    skippedInputBufferCount += other.skippedInputBufferCount;
     renderedOutputBufferCount += other.renderedOutputBufferCount;
     skippedOutputBufferCount += other.skippedOutputBufferCount;
     droppedOutputBufferCount += other.droppedOutputBufferCount;
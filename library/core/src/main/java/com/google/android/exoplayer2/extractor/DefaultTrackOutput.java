@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A {@link TrackOutput} that buffers extracted samples in a queue and allows for consumption from
@@ -594,54 +595,61 @@ public final class DefaultTrackOutput implements TrackOutput {
 
   /**
    * Holds information about the samples in the rolling buffer.
+   * <p>
+   * The queue has a single producer (the loading thread) and a single consumer (the playback
+   * thread), and neither ever blocks the other. Sample information is held in a ring whose capacity
+   * is a power of two, indexed by absolute sample index. The producer publishes a sample by
+   * incrementing {@link #writeIndex} after filling its slot. The consumer claims samples by
+   * compare-and-setting {@link #readState}, which packs the absolute read index together with a
+   * generation that the producer increments whenever it discards samples from the write side of the
+   * queue, so that a consumer that raced with such a discard retries rather than reading a slot that
+   * is being overwritten. The producer claims the samples to discard by setting a flag in the read
+   * state, lowers {@link #writeIndex}, and then clears the flag. While the flag is set the consumer
+   * keeps reading the retained samples, up to {@link #discardingWriteIndex}.
+   * <p>
+   * Keyframes are numbered in the order in which they are queued, and the ring also records the
+   * sample index of each keyframe, so that {@link #skipToKeyframeBefore(long, boolean)} can binary
+   * search the keyframes rather than scanning every queued sample.
    */
   private static final class InfoQueue {
 
-    private static final int SAMPLE_CAPACITY_INCREMENT = 1000;
+    private static final int INITIAL_CAPACITY = 1024;
 
-    private int capacity;
+    private static final long READ_INDEX_MASK = 0xFFFFFFFFL;
+    private static final long DISCARDING_FLAG = 1L << 32;
+    private static final long GENERATION_INCREMENT = 1L << 33;
 
-    private int[] sourceIds;
-    private long[] offsets;
-    private int[] sizes;
-    private int[] flags;
-    private long[] timesUs;
-    private byte[][] encryptionKeys;
-    private Format[] formats;
+    private final AtomicLong readState;
 
-    private int queueSize;
-    private int absoluteReadIndex;
-    private int relativeReadIndex;
-    private int relativeWriteIndex;
+    private volatile InfoRing ring;
+    private volatile int writeIndex;
+    private volatile int discardingWriteIndex;
 
-    private long largestDequeuedTimestampUs;
-    private long largestQueuedTimestampUs;
+    private volatile long largestDequeuedTimestampUs;
+    private volatile long dequeuingTimestampUs;
+    private volatile long largestQueuedTimestampUs;
     private boolean upstreamKeyframeRequired;
-    private boolean upstreamFormatRequired;
-    private Format upstreamFormat;
-    private int upstreamSourceId;
+    private int lastKeyframeNumber;
+    private volatile boolean upstreamFormatRequired;
+    private volatile Format upstreamFormat;
+    private volatile int upstreamSourceId;
 
     public InfoQueue() {
-      capacity = SAMPLE_CAPACITY_INCREMENT;
-      sourceIds = new int[capacity];
-      offsets = new long[capacity];
-      timesUs = new long[capacity];
-      flags = new int[capacity];
-      sizes = new int[capacity];
-      encryptionKeys = new byte[capacity][];
-      formats = new Format[capacity];
+      readState = new AtomicLong();
+      ring = new InfoRing(INITIAL_CAPACITY);
       largestDequeuedTimestampUs = Long.MIN_VALUE;
+      dequeuingTimestampUs = Long.MIN_VALUE;
       largestQueuedTimestampUs = Long.MIN_VALUE;
       upstreamFormatRequired = true;
       upstreamKeyframeRequired = true;
+      lastKeyframeNumber = -1;
     }
 
     public void clearSampleData() {
-      absoluteReadIndex = 0;
-      relativeReadIndex = 0;
-      relativeWriteIndex = 0;
-      queueSize = 0;
+      readState.set((readState.get() & ~READ_INDEX_MASK) + GENERATION_INCREMENT);
+      writeIndex = 0;
       upstreamKeyframeRequired = true;
+      lastKeyframeNumber = -1;
     }
 
     // Called by the consuming thread, but only when there is no loading thread.
@@ -655,7 +663,7 @@ public final class DefaultTrackOutput implements TrackOutput {
      * Returns the current absolute write index.
      */
     public int getWriteIndex() {
-      return absoluteReadIndex + queueSize;
+      return writeIndex;
     }
 
     /**
@@ -665,31 +673,23 @@ public final class DefaultTrackOutput implements TrackOutput {
      * @return The reduced total number of bytes written, after the samples have been discarded.
      */
     public long discardUpstreamSamples(int discardFromIndex) {
-      int discardCount = getWriteIndex() - discardFromIndex;
-      Assertions.checkArgument(0 <= discardCount && discardCount <= queueSize);
-
-      if (discardCount == 0) {
-        if (absoluteReadIndex == 0) {
-          // queueSize == absoluteReadIndex == 0, so nothing has been written to the queue.
-          return 0;
-        }
-        int lastWriteIndex = (relativeWriteIndex == 0 ? capacity : relativeWriteIndex) - 1;
-        return offsets[lastWriteIndex] + sizes[lastWriteIndex];
-      }
-
-      queueSize -= discardCount;
-      relativeWriteIndex = (relativeWriteIndex + capacity - discardCount) % capacity;
-      // Update the largest queued timestamp, assuming that the timestamps prior to a keyframe are
-      // always less than the timestamp of the keyframe itself, and of subsequent frames.
-      largestQueuedTimestampUs = Long.MIN_VALUE;
-      for (int i = queueSize - 1; i >= 0; i--) {
-        int sampleIndex = (relativeReadIndex + i) % capacity;
-        largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timesUs[sampleIndex]);
-        if ((flags[sampleIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-          break;
+      long readState;
+      do {
+        readState = this.readState.get();
+        int discardCount = writeIndex - discardFromIndex;
+        Assertions.checkArgument(0 <= discardCount
+            && discardCount <= writeIndex - getReadIndex(readState));
+        if (discardCount == 0) {
+          if (writeIndex == 0) {
+            // Nothing has been written to the queue.
+            return 0;
+          }
+          InfoRing ring = this.ring;
+          int lastWriteIndex = (writeIndex - 1) & ring.mask;
+          return ring.offsets[lastWriteIndex] + ring.sizes[lastWriteIndex];
         }
-      }
-      return offsets[relativeWriteIndex];
+      } while (!truncate(readState, discardFromIndex));
+      return ring.offsets[discardFromIndex & ring.mask];
     }
 
     public void sourceId(int sourceId) {
@@ -702,7 +702,7 @@ public final class DefaultTrackOutput implements TrackOutput {
      * Returns the current absolute read index.
      */
     public int getReadIndex() {
-      return absoluteReadIndex;
+      return getReadIndex(readState.get());
     }
 
     /**
@@ -710,20 +710,25 @@ public final class DefaultTrackOutput implements TrackOutput {
      * empty.
      */
     public int peekSourceId() {
-      return queueSize == 0 ? upstreamSourceId : sourceIds[relativeReadIndex];
+      long readState = this.readState.get();
+      int readIndex = getReadIndex(readState);
+      InfoRing ring = this.ring;
+      return readIndex == getWriteIndex(readState) ? upstreamSourceId
+          : ring.sourceIds[readIndex & ring.mask];
     }
 
     /**
      * Returns whether the queue is empty.
      */
-    public synchronized boolean isEmpty() {
-      return queueSize == 0;
+    public boolean isEmpty() {
+      long readState = this.readState.get();
+      return getReadIndex(readState) == getWriteIndex(readState);
     }
 
     /**
      * Returns the upstream {@link Format} in which samples are being queued.
      */
-    public synchronized Format getUpstreamFormat() {
+    public Format getUpstreamFormat() {
       return upstreamFormatRequired ? null : upstreamFormat;
     }
 
@@ -737,7 +742,7 @@ public final class DefaultTrackOutput implements TrackOutput {
      * @return The largest sample timestamp that has been queued, or {@link Long#MIN_VALUE} if no
      *     samples have been queued.
      */
-    public synchronized long getLargestQueuedTimestampUs() {
+    public long getLargestQueuedTimestampUs() {
       return Math.max(largestDequeuedTimestampUs, largestQueuedTimestampUs);
     }
 
@@ -763,49 +768,65 @@ public final class DefaultTrackOutput implements TrackOutput {
      *     or {@link C#RESULT_BUFFER_READ}.
      */
     @SuppressWarnings("ReferenceEquality")
-    public synchronized int readData(FormatHolder formatHolder, DecoderInputBuffer buffer,
+    public int readData(FormatHolder formatHolder, DecoderInputBuffer buffer,
         boolean formatRequired, boolean loadingFinished, Format downstreamFormat,
         BufferExtrasHolder extrasHolder) {
-      if (queueSize == 0) {
-        if (loadingFinished) {
-          buffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
-          return C.RESULT_BUFFER_READ;
-        } else if (upstreamFormat != null
-            && (formatRequired || upstreamFormat != downstreamFormat)) {
-          formatHolder.format = upstreamFormat;
-          return C.RESULT_FORMAT_READ;
-        } else {
-          return C.RESULT_NOTHING_READ;
+      while (true) {
+        long readState = this.readState.get();
+        int readIndex = getReadIndex(readState);
+        int writeIndex = getWriteIndex(readState);
+        InfoRing ring = this.ring;
+        if (readIndex == writeIndex) {
+          Format upstreamFormat = this.upstreamFormat;
+          if (loadingFinished) {
+            buffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
+            return C.RESULT_BUFFER_READ;
+          } else if (upstreamFormat != null
+              && (formatRequired || upstreamFormat != downstreamFormat)) {
+            formatHolder.format = upstreamFormat;
+            return C.RESULT_FORMAT_READ;
+          } else {
+            return C.RESULT_NOTHING_READ;
+          }
         }
-      }
 
-      if (formatRequired || formats[relativeReadIndex] != downstreamFormat) {
-        formatHolder.format = formats[relativeReadIndex];
-        return C.RESULT_FORMAT_READ;
-      }
+        int sampleIndex = readIndex & ring.mask;
+        Format format = ring.formats[sampleIndex];
+        if (formatRequired || format != downstreamFormat) {
+          // If the sample is concurrently discarded this format was still queued when it was read.
+          formatHolder.format = format;
+          return C.RESULT_FORMAT_READ;
+        }
 
-      if (buffer.isFlagsOnly()) {
-        return C.RESULT_NOTHING_READ;
-      }
+        if (buffer.isFlagsOnly()) {
+          return C.RESULT_NOTHING_READ;
+        }
 
-      buffer.timeUs = timesUs[relativeReadIndex];
-      buffer.setFlags(flags[relativeReadIndex]);
-      extrasHolder.size = sizes[relativeReadIndex];
-      extrasHolder.offset = offsets[relativeReadIndex];
-      extrasHolder.encryptionKeyId = encryptionKeys[relativeReadIndex];
-
-      largestDequeuedTimestampUs = Math.max(largestDequeuedTimestampUs, buffer.timeUs);
-      queueSize--;
-      relativeReadIndex++;
-      absoluteReadIndex++;
-      if (relativeReadIndex == capacity) {
-        // Wrap around.
-        relativeReadIndex = 0;
+        long timeUs = ring.timesUs[sampleIndex];
+        int flags = ring.flags[sampleIndex];
+        int size = ring.sizes[sampleIndex];
+        long offset = ring.offsets[sampleIndex];
+        byte[] encryptionKey = ring.encryptionKeys[sampleIndex];
+        long nextOffset = readIndex + 1 != writeIndex ? ring.offsets[(readIndex + 1) & ring.mask]
+            : offset + size;
+        // Exposed while the sample is claimed, so that a concurrent splice never misses it.
+        dequeuingTimestampUs = timeUs;
+        if (!this.readState.compareAndSet(readState, withReadIndex(readState, readIndex + 1))) {
+          // The producer discarded samples concurrently. Try again.
+          dequeuingTimestampUs = Long.MIN_VALUE;
+          continue;
+        }
+        largestDequeuedTimestampUs = Math.max(largestDequeuedTimestampUs, timeUs);
+        dequeuingTimestampUs = Long.MIN_VALUE;
+
+        buffer.timeUs = timeUs;
+        buffer.setFlags(flags);
+        extrasHolder.size = size;
+        extrasHolder.offset = offset;
+        extrasHolder.encryptionKeyId = encryptionKey;
+        extrasHolder.nextOffset = nextOffset;
+        return C.RESULT_BUFFER_READ;
       }
-
-      extrasHolder.nextOffset = queueSize > 0 ? offsets[relativeReadIndex]
-          : extrasHolder.offset + extrasHolder.size;
-      return C.RESULT_BUFFER_READ;
     }
 
     /**
@@ -814,16 +835,21 @@ public final class DefaultTrackOutput implements TrackOutput {
      * @return The offset up to which data should be dropped, or {@link C#POSITION_UNSET} if no
      *     dropping of data is required.
      */
-    public synchronized long skipAll() {
-      if (queueSize == 0) {
-        return C.POSITION_UNSET;
-      }
+    public long skipAll() {
+      while (true) {
+        long readState = this.readState.get();
+        int writeIndex = getWriteIndex(readState);
+        InfoRing ring = this.ring;
+        if (getReadIndex(readState) == writeIndex) {
+          return C.POSITION_UNSET;
+        }
 
-      int lastSampleIndex = (relativeReadIndex + queueSize - 1) % capacity;
-      relativeReadIndex = (relativeReadIndex + queueSize) % capacity;
-      absoluteReadIndex += queueSize;
-      queueSize = 0;
-      return offsets[lastSampleIndex] + sizes[lastSampleIndex];
+        int lastSampleIndex = (writeIndex - 1) & ring.mask;
+        long nextOffset = ring.offsets[lastSampleIndex] + ring.sizes[lastSampleIndex];
+        if (this.readState.compareAndSet(readState, withReadIndex(readState, writeIndex))) {
+          return nextOffset;
+        }
+      }
     }
 
     /**
@@ -837,46 +863,57 @@ public final class DefaultTrackOutput implements TrackOutput {
      * @return The offset of the keyframe's data if the keyframe was present.
      *     {@link C#POSITION_UNSET} otherwise.
      */
-    public synchronized long skipToKeyframeBefore(long timeUs, boolean allowTimeBeyondBuffer) {
-      if (queueSize == 0 || timeUs < timesUs[relativeReadIndex]) {
-        return C.POSITION_UNSET;
-      }
+    public long skipToKeyframeBefore(long timeUs, boolean allowTimeBeyondBuffer) {
+      while (true) {
+        long readState = this.readState.get();
+        int readIndex = getReadIndex(readState);
+        int writeIndex = getWriteIndex(readState);
+        InfoRing ring = this.ring;
+        if (readIndex == writeIndex || timeUs < ring.timesUs[readIndex & ring.mask]) {
+          return C.POSITION_UNSET;
+        }
 
-      if (timeUs > largestQueuedTimestampUs && !allowTimeBeyondBuffer) {
-        return C.POSITION_UNSET;
-      }
+        if (timeUs > largestQueuedTimestampUs && !allowTimeBeyondBuffer) {
+          return C.POSITION_UNSET;
+        }
 
-      // This could be optimized to use a binary search, however in practice callers to this method
-      // often pass times near to the start of the buffer. Hence it's unclear whether switching to
-      // a binary search would yield any real benefit.
-      int sampleCount = 0;
-      int sampleCountToKeyframe = -1;
-      int searchIndex = relativeReadIndex;
-      while (searchIndex != relativeWriteIndex) {
-        if (timesUs[searchIndex] > timeUs) {
-          // We've gone too far.
-          break;
-        } else if ((flags[searchIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-          // We've found a keyframe, and we're still before the seek position.
-          sampleCountToKeyframe = sampleCount;
+        // Binary search the queued keyframes for the last one at or before the seek position. This
+        // relies on timestamps prior to a keyframe being less than the timestamp of the keyframe
+        // itself, which means that keyframe timestamps are non-decreasing.
+        int readSampleIndex = readIndex & ring.mask;
+        int firstKeyframeNumber = ring.keyframeNumbers[readSampleIndex];
+        if ((ring.flags[readSampleIndex] & C.BUFFER_FLAG_KEY_FRAME) == 0) {
+          // The sample's keyframe number is that of the keyframe before it, which has been read.
+          firstKeyframeNumber++;
+        }
+        int low = firstKeyframeNumber;
+        int high = ring.keyframeNumbers[(writeIndex - 1) & ring.mask];
+        int keyframeIndex = -1;
+        while (low <= high) {
+          int mid = (low + high) >>> 1;
+          int midIndex = ring.keyframeIndices[mid & ring.mask];
+          if (ring.timesUs[midIndex & ring.mask] <= timeUs) {
+            keyframeIndex = midIndex;
+            low = mid + 1;
+          } else {
+            high = mid - 1;
+          }
         }
-        searchIndex = (searchIndex + 1) % capacity;
-        sampleCount++;
-      }
 
-      if (sampleCountToKeyframe == -1) {
-        return C.POSITION_UNSET;
-      }
+        if (keyframeIndex == -1) {
+          return C.POSITION_UNSET;
+        }
 
-      relativeReadIndex = (relativeReadIndex + sampleCountToKeyframe) % capacity;
-      absoluteReadIndex += sampleCountToKeyframe;
-      queueSize -= sampleCountToKeyframe;
-      return offsets[relativeReadIndex];
+        long keyframeOffset = ring.offsets[keyframeIndex & ring.mask];
+        if (this.readState.compareAndSet(readState, withReadIndex(readState, keyframeIndex))) {
+          return keyframeOffset;
+        }
+      }
     }
 
     // Called by the loading thread.
 
-    public synchronized boolean format(Format format) {
+    public boolean format(Format format) {
       if (format == null) {
         upstreamFormatRequired = true;
         return false;
@@ -891,7 +928,7 @@ public final class DefaultTrackOutput implements TrackOutput {
       }
     }
 
-    public synchronized void commitSample(long timeUs, @C.BufferFlags int sampleFlags, long offset,
+    public void commitSample(long timeUs, @C.BufferFlags int sampleFlags, long offset,
         int size, byte[] encryptionKey) {
       if (upstreamKeyframeRequired) {
         if ((sampleFlags & C.BUFFER_FLAG_KEY_FRAME) == 0) {
@@ -901,62 +938,35 @@ public final class DefaultTrackOutput implements TrackOutput {
       }
       Assertions.checkState(!upstreamFormatRequired);
       commitSampleTimestamp(timeUs);
-      timesUs[relativeWriteIndex] = timeUs;
-      offsets[relativeWriteIndex] = offset;
-      sizes[relativeWriteIndex] = size;
-      flags[relativeWriteIndex] = sampleFlags;
-      encryptionKeys[relativeWriteIndex] = encryptionKey;
-      formats[relativeWriteIndex] = upstreamFormat;
-      sourceIds[relativeWriteIndex] = upstreamSourceId;
-      // Increment the write index.
-      queueSize++;
-      if (queueSize == capacity) {
-        // Increase the capacity.
-        int newCapacity = capacity + SAMPLE_CAPACITY_INCREMENT;
-        int[] newSourceIds = new int[newCapacity];
-        long[] newOffsets = new long[newCapacity];
-        long[] newTimesUs = new long[newCapacity];
-        int[] newFlags = new int[newCapacity];
-        int[] newSizes = new int[newCapacity];
-        byte[][] newEncryptionKeys = new byte[newCapacity][];
-        Format[] newFormats = new Format[newCapacity];
-        int beforeWrap = capacity - relativeReadIndex;
-        System.arraycopy(offsets, relativeReadIndex, newOffsets, 0, beforeWrap);
-        System.arraycopy(timesUs, relativeReadIndex, newTimesUs, 0, beforeWrap);
-        System.arraycopy(flags, relativeReadIndex, newFlags, 0, beforeWrap);
-        System.arraycopy(sizes, relativeReadIndex, newSizes, 0, beforeWrap);
-        System.arraycopy(encryptionKeys, relativeReadIndex, newEncryptionKeys, 0, beforeWrap);
-        System.arraycopy(formats, relativeReadIndex, newFormats, 0, beforeWrap);
-        System.arraycopy(sourceIds, relativeReadIndex, newSourceIds, 0, beforeWrap);
-        int afterWrap = relativeReadIndex;
-        System.arraycopy(offsets, 0, newOffsets, beforeWrap, afterWrap);
-        System.arraycopy(timesUs, 0, newTimesUs, beforeWrap, afterWrap);
-        System.arraycopy(flags, 0, newFlags, beforeWrap, afterWrap);
-        System.arraycopy(sizes, 0, newSizes, beforeWrap, afterWrap);
-        System.arraycopy(encryptionKeys, 0, newEncryptionKeys, beforeWrap, afterWrap);
-        System.arraycopy(formats, 0, newFormats, beforeWrap, afterWrap);
-        System.arraycopy(sourceIds, 0, newSourceIds, beforeWrap, afterWrap);
-        offsets = newOffsets;
-        timesUs = newTimesUs;
-        flags = newFlags;
-        sizes = newSizes;
-        encryptionKeys = newEncryptionKeys;
-        formats = newFormats;
-        sourceIds = newSourceIds;
-        relativeReadIndex = 0;
-        relativeWriteIndex = capacity;
-        queueSize = capacity;
-        capacity = newCapacity;
-      } else {
-        relativeWriteIndex++;
-        if (relativeWriteIndex == capacity) {
-          // Wrap around.
-          relativeWriteIndex = 0;
-        }
+      int writeIndex = this.writeIndex;
+      InfoRing ring = this.ring;
+      if (writeIndex - getReadIndex(readState.get()) == ring.capacity) {
+        // Increase the capacity. The consumer may still be reading from the old ring, which is
+        // never written to again.
+        InfoRing newRing = new InfoRing(ring.capacity * 2);
+        newRing.copyFrom(ring, writeIndex - ring.capacity, writeIndex,
+            lastKeyframeNumber - ring.capacity + 1, lastKeyframeNumber + 1);
+        this.ring = newRing;
+        ring = newRing;
+      }
+      int sampleIndex = writeIndex & ring.mask;
+      if ((sampleFlags & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+        lastKeyframeNumber++;
+        ring.keyframeIndices[lastKeyframeNumber & ring.mask] = writeIndex;
       }
+      ring.keyframeNumbers[sampleIndex] = lastKeyframeNumber;
+      ring.timesUs[sampleIndex] = timeUs;
+      ring.offsets[sampleIndex] = offset;
+      ring.sizes[sampleIndex] = size;
+      ring.flags[sampleIndex] = sampleFlags;
+      ring.encryptionKeys[sampleIndex] = encryptionKey;
+      ring.formats[sampleIndex] = upstreamFormat;
+      ring.sourceIds[sampleIndex] = upstreamSourceId;
+      // Publish the sample.
+      this.writeIndex = writeIndex + 1;
     }
 
-    public synchronized void commitSampleTimestamp(long timeUs) {
+    public void commitSampleTimestamp(long timeUs) {
       largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timeUs);
     }
 
@@ -967,19 +977,139 @@ public final class DefaultTrackOutput implements TrackOutput {
      * @param timeUs The timestamp at which the splice occurs.
      * @return Whether the splice was successful.
      */
-    public synchronized boolean attemptSplice(long timeUs) {
-      if (largestDequeuedTimestampUs >= timeUs) {
+    public boolean attemptSplice(long timeUs) {
+      while (true) {
+        long readState = this.readState.get();
+        // The consumer exposes the timestamp of a sample before claiming it, and clears it only after
+        // updating the largest dequeued timestamp, so read them in the opposite order.
+        long dequeuingTimestampUs = this.dequeuingTimestampUs;
+        if (Math.max(dequeuingTimestampUs, largestDequeuedTimestampUs) >= timeUs) {
+          return false;
+        }
+        int readIndex = getReadIndex(readState);
+        InfoRing ring = this.ring;
+        int retainCount = writeIndex - readIndex;
+        while (retainCount > 0
+            && ring.timesUs[(readIndex + retainCount - 1) & ring.mask] >= timeUs) {
+          retainCount--;
+        }
+        if (truncate(readState, readIndex + retainCount)) {
+          return true;
+        }
+      }
+    }
+
+    /**
+     * Discards samples from {@code newWriteIndex} onwards, provided that the consumer has not
+     * advanced since {@code readState} was read.
+     *
+     * @return Whether the samples were discarded.
+     */
+    private boolean truncate(long readState, int newWriteIndex) {
+      int writeIndex = this.writeIndex;
+      if (newWriteIndex == writeIndex) {
+        return true;
+      }
+      // Until the flag is cleared, the consumer reads no further than the new write index.
+      discardingWriteIndex = newWriteIndex;
+      if (!this.readState.compareAndSet(readState, readState | DISCARDING_FLAG)) {
+        // The consumer advanced concurrently, and may have read one of the samples.
         return false;
       }
-      int retainCount = queueSize;
-      while (retainCount > 0
-          && timesUs[(relativeReadIndex + retainCount - 1) % capacity] >= timeUs) {
-        retainCount--;
+      this.writeIndex = newWriteIndex;
+      InfoRing ring = this.ring;
+      lastKeyframeNumber = newWriteIndex == 0 ? -1
+          : ring.keyframeNumbers[(newWriteIndex - 1) & ring.mask];
+      // Update the largest queued timestamp, assuming that the timestamps prior to a keyframe are
+      // always less than the timestamp of the keyframe itself, and of subsequent frames.
+      long largestQueuedTimestampUs = Long.MIN_VALUE;
+      for (int i = newWriteIndex - 1; i >= getReadIndex(readState); i--) {
+        int sampleIndex = i & ring.mask;
+        largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, ring.timesUs[sampleIndex]);
+        if ((ring.flags[sampleIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+          break;
+        }
       }
-      discardUpstreamSamples(absoluteReadIndex + retainCount);
+      this.largestQueuedTimestampUs = largestQueuedTimestampUs;
+      // Clear the flag and advance the generation, keeping any read index the consumer has set since.
+      this.readState.addAndGet(GENERATION_INCREMENT - DISCARDING_FLAG);
       return true;
     }
 
+    /**
+     * Returns the write index up to which the consumer may read, for the given read state.
+     */
+    private int getWriteIndex(long readState) {
+      return (readState & DISCARDING_FLAG) != 0 ? discardingWriteIndex : writeIndex;
+    }
+
+    private static int getReadIndex(long readState) {
+      return (int) (readState & READ_INDEX_MASK);
+    }
+
+    private static long withReadIndex(long readState, int readIndex) {
+      return (readState & ~READ_INDEX_MASK) | (readIndex & READ_INDEX_MASK);
+    }
+
+  }
+
+  /**
+   * Sample information held in parallel arrays, indexed by absolute sample index modulo capacity,
+   * together with the absolute sample index of each keyframe, indexed by keyframe number modulo
+   * capacity.
+   */
+  private static final class InfoRing {
+
+    public final int capacity;
+    public final int mask;
+    public final int[] sourceIds;
+    public final long[] offsets;
+    public final int[] sizes;
+    public final int[] flags;
+    public final long[] timesUs;
+    public final byte[][] encryptionKeys;
+    public final Format[] formats;
+    public final int[] keyframeNumbers;
+    public final int[] keyframeIndices;
+
+    public InfoRing(int capacity) {
+      this.capacity = capacity;
+      mask = capacity - 1;
+      sourceIds = new int[capacity];
+      offsets = new long[capacity];
+      sizes = new int[capacity];
+      flags = new int[capacity];
+      timesUs = new long[capacity];
+      encryptionKeys = new byte[capacity][];
+      formats = new Format[capacity];
+      keyframeNumbers = new int[capacity];
+      keyframeIndices = new int[capacity];
+    }
+
+    /**
+     * Copies the information for samples with absolute indices from {@code fromIndex} (inclusive)
+     * to {@code toIndex} (exclusive), and for keyframes numbered from {@code fromKeyframeNumber}
+     * (inclusive) to {@code toKeyframeNumber} (exclusive), from another ring.
+     */
+    public void copyFrom(InfoRing source, int fromIndex, int toIndex, int fromKeyframeNumber,
+        int toKeyframeNumber) {
+      for (int i = fromIndex; i != toIndex; i++) {
+        int sourceIndex = i & source.mask;
+        int index = i & mask;
+        sourceIds[index] = source.sourceIds[sourceIndex];
+        offsets[index] = source.offsets[sourceIndex];
+        sizes[index] = source.sizes[sourceIndex];
+        flags[index] = source.flags[sourceIndex];
+        timesUs[index] = source.timesUs[sourceIndex];
+        encryptionKeys[index] = source.encryptionKeys[sourceIndex];
+        formats[index] = source.formats[sourceIndex];
+        keyframeNumbers[index] = source.keyframeNumbers[sourceIndex];
+      }
+      for (int i = fromKeyframeNumber; i != toKeyframeNumber; i++) {
+        keyframeIndices[i & mask] = source.keyframeIndices[i & source.mask];
+      }
+    }
+
   }
 
   /**
@@ -684,6 +684,13 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       }
       codecNeedsDiscardToSpsWorkaround = false;
     }
+    if (!bufferEncrypted && !buffer.isKeyFrame()
+        && codecReconfigurationState != RECONFIGURATION_STATE_QUEUE_PENDING
+        && shouldSkipInputBuffer(buffer)) {
+      buffer.clear();
+      decoderCounters.skippedInputBufferCount++;
+      return true;
+    }
     try {
       long presentationTimeUs = buffer.timeUs;
       if (buffer.isDecodeOnly()) {
@@ -812,6 +819,21 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     // Do nothing.
   }
 
+  /**
+   * Returns whether an input buffer should be discarded rather than queued into the codec. Called
+   * only for unencrypted buffers that are not key frames and do not carry codec reconfiguration
+   * data. Implementations must only return true for buffers that no other buffer depends on.
+   * <p>
+   * The default implementation returns false.
+   *
+   * @param buffer The buffer read from the source, where {@code buffer.data.position()} is the
+   *     length of its data.
+   * @return Whether the buffer should be skipped.
+   */
+  protected boolean shouldSkipInputBuffer(DecoderInputBuffer buffer) {
+    return false;
+  }
+
   /**
    * Called immediately before an input buffer is queued into the codec.
    * <p>
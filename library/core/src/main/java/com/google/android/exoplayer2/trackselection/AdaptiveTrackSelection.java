@@ -40,6 +40,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     private final int maxDurationForQualityDecreaseMs;
     private final int minDurationToRetainAfterDiscardMs;
     private final float bandwidthFraction;
+    private final boolean adaptToPlaybackSpeed;
 
     /**
      * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
@@ -70,19 +71,47 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     public Factory(BandwidthMeter bandwidthMeter, int maxInitialBitrate,
         int minDurationForQualityIncreaseMs, int maxDurationForQualityDecreaseMs,
         int minDurationToRetainAfterDiscardMs, float bandwidthFraction) {
+      this(bandwidthMeter, maxInitialBitrate, minDurationForQualityIncreaseMs,
+          maxDurationForQualityDecreaseMs, minDurationToRetainAfterDiscardMs, bandwidthFraction,
+          false);
+    }
+
+    /**
+     * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+     * @param maxInitialBitrate The maximum bitrate in bits per second that should be assumed
+     *     when a bandwidth estimate is unavailable.
+     * @param minDurationForQualityIncreaseMs The minimum duration of buffered data required for
+     *     the selected track to switch to one of higher quality.
+     * @param maxDurationForQualityDecreaseMs The maximum duration of buffered data required for
+     *     the selected track to switch to one of lower quality.
+     * @param minDurationToRetainAfterDiscardMs When switching to a track of significantly higher
+     *     quality, the selection may indicate that media already buffered at the lower quality can
+     *     be discarded to speed up the switch. This is the minimum duration of media that must be
+     *     retained at the lower quality.
+     * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+     *     consider available for use. Setting to a value less than 1 is recommended to account
+     *     for inaccuracies in the bandwidth estimator.
+     * @param adaptToPlaybackSpeed Whether the selection should take the playback speed into
+     *     account. If true, track bitrates and buffer durations are scaled by the playback speed.
+     */
+    public Factory(BandwidthMeter bandwidthMeter, int maxInitialBitrate,
+        int minDurationForQualityIncreaseMs, int maxDurationForQualityDecreaseMs,
+        int minDurationToRetainAfterDiscardMs, float bandwidthFraction,
+        boolean adaptToPlaybackSpeed) {
       this.bandwidthMeter = bandwidthMeter;
       this.maxInitialBitrate = maxInitialBitrate;
       this.minDurationForQualityIncreaseMs = minDurationForQualityIncreaseMs;
       this.maxDurationForQualityDecreaseMs = maxDurationForQualityDecreaseMs;
       this.minDurationToRetainAfterDiscardMs = minDurationToRetainAfterDiscardMs;
       this.bandwidthFraction = bandwidthFraction;
+      this.adaptToPlaybackSpeed = adaptToPlaybackSpeed;
     }
 
     @Override
     public AdaptiveTrackSelection createTrackSelection(TrackGroup group, int... tracks) {
       return new AdaptiveTrackSelection(group, tracks, bandwidthMeter, maxInitialBitrate,
           minDurationForQualityIncreaseMs, maxDurationForQualityDecreaseMs,
-          minDurationToRetainAfterDiscardMs, bandwidthFraction);
+          minDurationToRetainAfterDiscardMs, bandwidthFraction, adaptToPlaybackSpeed);
     }
 
   }
@@ -99,7 +128,9 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
   private final long maxDurationForQualityDecreaseUs;
   private final long minDurationToRetainAfterDiscardUs;
   private final float bandwidthFraction;
+  private final boolean adaptToPlaybackSpeed;
 
+  private float playbackSpeed;
   private int selectedIndex;
   private int reason;
 
@@ -140,6 +171,37 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
       int maxInitialBitrate, long minDurationForQualityIncreaseMs,
       long maxDurationForQualityDecreaseMs, long minDurationToRetainAfterDiscardMs,
       float bandwidthFraction) {
+    this(group, tracks, bandwidthMeter, maxInitialBitrate, minDurationForQualityIncreaseMs,
+        maxDurationForQualityDecreaseMs, minDurationToRetainAfterDiscardMs, bandwidthFraction,
+        false);
+  }
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param maxInitialBitrate The maximum bitrate in bits per second that should be assumed when a
+   *     bandwidth estimate is unavailable.
+   * @param minDurationForQualityIncreaseMs The minimum duration of buffered data required for the
+   *     selected track to switch to one of higher quality.
+   * @param maxDurationForQualityDecreaseMs The maximum duration of buffered data required for the
+   *     selected track to switch to one of lower quality.
+   * @param minDurationToRetainAfterDiscardMs When switching to a track of significantly higher
+   *     quality, the selection may indicate that media already buffered at the lower quality can
+   *     be discarded to speed up the switch. This is the minimum duration of media that must be
+   *     retained at the lower quality.
+   * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+   *     consider available for use. Setting to a value less than 1 is recommended to account
+   *     for inaccuracies in the bandwidth estimator.
+   * @param adaptToPlaybackSpeed Whether the selection should take the playback speed into account.
+   *     If true, the bitrate required to play each track and the buffered durations above are
+   *     scaled by the playback speed reported through {@link #onPlaybackSpeed(float)}.
+   */
+  public AdaptiveTrackSelection(TrackGroup group, int[] tracks, BandwidthMeter bandwidthMeter,
+      int maxInitialBitrate, long minDurationForQualityIncreaseMs,
+      long maxDurationForQualityDecreaseMs, long minDurationToRetainAfterDiscardMs,
+      float bandwidthFraction, boolean adaptToPlaybackSpeed) {
     super(group, tracks);
     this.bandwidthMeter = bandwidthMeter;
     this.maxInitialBitrate = maxInitialBitrate;
@@ -147,10 +209,19 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     this.maxDurationForQualityDecreaseUs = maxDurationForQualityDecreaseMs * 1000L;
     this.minDurationToRetainAfterDiscardUs = minDurationToRetainAfterDiscardMs * 1000L;
     this.bandwidthFraction = bandwidthFraction;
+    this.adaptToPlaybackSpeed = adaptToPlaybackSpeed;
+    playbackSpeed = 1f;
     selectedIndex = determineIdealSelectedIndex(Long.MIN_VALUE);
     reason = C.SELECTION_REASON_INITIAL;
   }
 
+  @Override
+  public void onPlaybackSpeed(float playbackSpeed) {
+    if (adaptToPlaybackSpeed) {
+      this.playbackSpeed = playbackSpeed;
+    }
+  }
+
   @Override
   public void updateSelectedTrack(long bufferedDurationUs) {
     long nowMs = SystemClock.elapsedRealtime();
@@ -164,12 +235,12 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     // Revert back to the current selection if conditions are not suitable for switching.
     if (currentFormat != null && !isBlacklisted(selectedIndex, nowMs)) {
       if (idealFormat.bitrate > currentFormat.bitrate
-          && bufferedDurationUs < minDurationForQualityIncreaseUs) {
+          && bufferedDurationUs < scaleDurationUs(minDurationForQualityIncreaseUs)) {
         // The ideal track is a higher quality, but we have insufficient buffer to safely switch
         // up. Defer switching up for now.
         selectedIndex = currentSelectedIndex;
       } else if (idealFormat.bitrate < currentFormat.bitrate
-          && bufferedDurationUs >= maxDurationForQualityDecreaseUs) {
+          && bufferedDurationUs >= scaleDurationUs(maxDurationForQualityDecreaseUs)) {
         // The ideal track is a lower quality, but we have sufficient buffer to defer switching
         // down for now.
         selectedIndex = currentSelectedIndex;
@@ -203,7 +274,8 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     }
     int queueSize = queue.size();
     long bufferedDurationUs = queue.get(queueSize - 1).endTimeUs - playbackPositionUs;
-    if (bufferedDurationUs < minDurationToRetainAfterDiscardUs) {
+    long minDurationToRetainUs = scaleDurationUs(minDurationToRetainAfterDiscardUs);
+    if (bufferedDurationUs < minDurationToRetainUs) {
       return queueSize;
     }
     int idealSelectedIndex = determineIdealSelectedIndex(SystemClock.elapsedRealtime());
@@ -215,7 +287,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
       MediaChunk chunk = queue.get(i);
       Format format = chunk.trackFormat;
       long durationBeforeThisChunkUs = chunk.startTimeUs - playbackPositionUs;
-      if (durationBeforeThisChunkUs >= minDurationToRetainAfterDiscardUs
+      if (durationBeforeThisChunkUs >= minDurationToRetainUs
           && format.bitrate < idealFormat.bitrate
           && format.height != Format.NO_VALUE && format.height < 720
           && format.width != Format.NO_VALUE && format.width < 1280
@@ -240,7 +312,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     for (int i = 0; i < length; i++) {
       if (nowMs == Long.MIN_VALUE || !isBlacklisted(i, nowMs)) {
         Format format = getFormat(i);
-        if (format.bitrate <= effectiveBitrate) {
+        if (Math.round(format.bitrate * playbackSpeed) <= effectiveBitrate) {
           return i;
         } else {
           lowestBitrateNonBlacklistedIndex = i;
@@ -250,4 +322,12 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     return lowestBitrateNonBlacklistedIndex;
   }
 
+  /**
+   * Converts a buffered duration that applies at normal playback speed into the duration of media
+   * that lasts for the same amount of real time at the current playback speed.
+   */
+  private long scaleDurationUs(long durationUs) {
+    return playbackSpeed == 1f ? durationUs : (long) (durationUs * (double) playbackSpeed);
+  }
+
 }
@@ -128,6 +128,11 @@ public abstract class BaseTrackSelection implements TrackSelection {
     return tracks[getSelectedIndex()];
   }
 
+  @Override
+  public void onPlaybackSpeed(float playbackSpeed) {
+    // Do nothing.
+  }
+
   @Override
   public int evaluateQueueSize(long playbackPositionUs, List<? extends MediaChunk> queue) {
     return queue.size();
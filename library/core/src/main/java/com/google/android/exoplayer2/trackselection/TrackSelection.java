@@ -122,6 +122,14 @@ public interface TrackSelection {
 
   // Adaptation.
 
+  /**
+   * Called to notify the selection of the current playback speed. The playback speed affects the
+   * rate at which media is consumed, and so may be taken into account by adaptive selections.
+   *
+   * @param playbackSpeed The playback speed, as the ratio of media time to real time.
+   */
+  void onPlaybackSpeed(float playbackSpeed);
+
   /**
    * Updates the selected track.
    *
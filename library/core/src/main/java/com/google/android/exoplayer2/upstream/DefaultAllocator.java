@@ -18,23 +18,31 @@ package com.google.android.exoplayer2.upstream;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Default implementation of {@link Allocator}.
+ * <p>
+ * Available allocations are held in a small number of independently locked stripes, and each
+ * thread allocates from and releases to the stripe selected by its id, falling back to the other
+ * stripes when its own is empty. This keeps loader threads for different tracks, and the playback
+ * thread polling {@link #getTotalBytesAllocated()}, from contending on a single monitor.
  */
 public final class DefaultAllocator implements Allocator {
 
   private static final int AVAILABLE_EXTRA_CAPACITY = 100;
+  /**
+   * The number of stripes of available allocations. Must be a power of two.
+   */
+  private static final int STRIPE_COUNT = 4;
 
   private final boolean trimOnReset;
   private final int individualAllocationSize;
   private final byte[] initialAllocationBlock;
-  private final Allocation[] singleAllocationReleaseHolder;
+  private final Stripe[] stripes;
+  private final AtomicInteger allocatedCount;
 
-  private int targetBufferSize;
-  private int allocatedCount;
-  private int availableCount;
-  private Allocation[] availableAllocations;
+  private volatile int targetBufferSize;
 
   /**
    * Constructs an instance without creating any {@link Allocation}s up front.
@@ -63,18 +71,22 @@ public final class DefaultAllocator implements Allocator {
     Assertions.checkArgument(initialAllocationCount >= 0);
     this.trimOnReset = trimOnReset;
     this.individualAllocationSize = individualAllocationSize;
-    this.availableCount = initialAllocationCount;
-    this.availableAllocations = new Allocation[initialAllocationCount + AVAILABLE_EXTRA_CAPACITY];
+    allocatedCount = new AtomicInteger();
+    stripes = new Stripe[STRIPE_COUNT];
+    int initialStripeCapacity = Util.ceilDivide(initialAllocationCount, STRIPE_COUNT)
+        + AVAILABLE_EXTRA_CAPACITY;
+    for (int i = 0; i < STRIPE_COUNT; i++) {
+      stripes[i] = new Stripe(initialStripeCapacity);
+    }
     if (initialAllocationCount > 0) {
       initialAllocationBlock = new byte[initialAllocationCount * individualAllocationSize];
       for (int i = 0; i < initialAllocationCount; i++) {
         int allocationOffset = i * individualAllocationSize;
-        availableAllocations[i] = new Allocation(initialAllocationBlock, allocationOffset);
+        stripes[i % STRIPE_COUNT].add(new Allocation(initialAllocationBlock, allocationOffset));
       }
     } else {
       initialAllocationBlock = null;
     }
-    singleAllocationReleaseHolder = new Allocation[1];
   }
 
   public synchronized void reset() {
@@ -92,91 +104,154 @@ public final class DefaultAllocator implements Allocator {
   }
 
   @Override
-  public synchronized Allocation allocate() {
-    allocatedCount++;
-    Allocation allocation;
-    if (availableCount > 0) {
-      allocation = availableAllocations[--availableCount];
-      availableAllocations[availableCount] = null;
-    } else {
-      allocation = new Allocation(new byte[individualAllocationSize], 0);
+  public Allocation allocate() {
+    allocatedCount.incrementAndGet();
+    int stripeIndex = getStripeIndex();
+    for (int i = 0; i < STRIPE_COUNT; i++) {
+      Allocation allocation = stripes[(stripeIndex + i) & (STRIPE_COUNT - 1)].poll();
+      if (allocation != null) {
+        return allocation;
+      }
     }
-    return allocation;
+    return new Allocation(new byte[individualAllocationSize], 0);
   }
 
   @Override
-  public synchronized void release(Allocation allocation) {
-    singleAllocationReleaseHolder[0] = allocation;
-    release(singleAllocationReleaseHolder);
+  public void release(Allocation allocation) {
+    checkOrigin(allocation);
+    stripes[getStripeIndex()].add(allocation);
+    allocatedCount.decrementAndGet();
   }
 
   @Override
-  public synchronized void release(Allocation[] allocations) {
-    if (availableCount + allocations.length >= availableAllocations.length) {
-      availableAllocations = Arrays.copyOf(availableAllocations,
-          Math.max(availableAllocations.length * 2, availableCount + allocations.length));
-    }
+  public void release(Allocation[] allocations) {
     for (Allocation allocation : allocations) {
-      // Weak sanity check that the allocation probably originated from this pool.
-      Assertions.checkArgument(allocation.data == initialAllocationBlock
-          || allocation.data.length == individualAllocationSize);
-      availableAllocations[availableCount++] = allocation;
+      checkOrigin(allocation);
     }
-    allocatedCount -= allocations.length;
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
+    stripes[getStripeIndex()].addAll(allocations);
+    allocatedCount.addAndGet(-allocations.length);
   }
 
   @Override
   public synchronized void trim() {
     int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
-    int targetAvailableCount = Math.max(0, targetAllocationCount - allocatedCount);
-    if (targetAvailableCount >= availableCount) {
-      // We're already at or below the target.
-      return;
+    int targetAvailableCount = Math.max(0, targetAllocationCount - allocatedCount.get());
+    int availableCount = 0;
+    for (Stripe stripe : stripes) {
+      availableCount += stripe.getAvailableCount();
+    }
+    int excessCount = availableCount - targetAvailableCount;
+    // Stripes are trimmed one at a time so that allocating and releasing threads are only ever
+    // blocked on their own stripe. The result is approximate if they are active concurrently, which
+    // is acceptable for a best effort trim.
+    for (int i = 0; i < STRIPE_COUNT && excessCount > 0; i++) {
+      excessCount -= stripes[i].trim(excessCount, initialAllocationBlock);
     }
+  }
+
+  @Override
+  public int getTotalBytesAllocated() {
+    return allocatedCount.get() * individualAllocationSize;
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return individualAllocationSize;
+  }
+
+  private void checkOrigin(Allocation allocation) {
+    // Weak sanity check that the allocation probably originated from this pool.
+    Assertions.checkArgument(allocation.data == initialAllocationBlock
+        || allocation.data.length == individualAllocationSize);
+  }
+
+  private static int getStripeIndex() {
+    return (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+  }
+
+  /**
+   * A stack of available allocations guarded by its own monitor.
+   */
+  private static final class Stripe {
 
-    if (initialAllocationBlock != null) {
-      // Some allocations are backed by an initial block. We need to make sure that we hold onto all
-      // such allocations. Re-order the available allocations so that the ones backed by the initial
-      // block come first.
-      int lowIndex = 0;
-      int highIndex = availableCount - 1;
-      while (lowIndex <= highIndex) {
-        Allocation lowAllocation = availableAllocations[lowIndex];
-        if (lowAllocation.data == initialAllocationBlock) {
-          lowIndex++;
-        } else {
-          Allocation highAllocation = availableAllocations[highIndex];
-          if (highAllocation.data != initialAllocationBlock) {
-            highIndex--;
+    private int availableCount;
+    private Allocation[] availableAllocations;
+
+    public Stripe(int initialCapacity) {
+      availableAllocations = new Allocation[initialCapacity];
+    }
+
+    public synchronized int getAvailableCount() {
+      return availableCount;
+    }
+
+    public synchronized Allocation poll() {
+      if (availableCount == 0) {
+        return null;
+      }
+      Allocation allocation = availableAllocations[--availableCount];
+      availableAllocations[availableCount] = null;
+      return allocation;
+    }
+
+    public synchronized void add(Allocation allocation) {
+      if (availableCount == availableAllocations.length) {
+        availableAllocations = Arrays.copyOf(availableAllocations, availableAllocations.length * 2);
+      }
+      availableAllocations[availableCount++] = allocation;
+    }
+
+    public synchronized void addAll(Allocation[] allocations) {
+      if (availableCount + allocations.length >= availableAllocations.length) {
+        availableAllocations = Arrays.copyOf(availableAllocations,
+            Math.max(availableAllocations.length * 2, availableCount + allocations.length));
+      }
+      System.arraycopy(allocations, 0, availableAllocations, availableCount, allocations.length);
+      availableCount += allocations.length;
+    }
+
+    /**
+     * Discards up to {@code maxCount} available allocations, never discarding those backed by
+     * {@code initialAllocationBlock}.
+     *
+     * @return The number of allocations discarded.
+     */
+    public synchronized int trim(int maxCount, byte[] initialAllocationBlock) {
+      int targetAvailableCount = Math.max(0, availableCount - maxCount);
+      if (initialAllocationBlock != null) {
+        // Some allocations are backed by an initial block. We need to make sure that we hold onto
+        // all such allocations. Re-order the available allocations so that the ones backed by the
+        // initial block come first.
+        int lowIndex = 0;
+        int highIndex = availableCount - 1;
+        while (lowIndex <= highIndex) {
+          Allocation lowAllocation = availableAllocations[lowIndex];
+          if (lowAllocation.data == initialAllocationBlock) {
+            lowIndex++;
           } else {
-            availableAllocations[lowIndex++] = highAllocation;
-            availableAllocations[highIndex--] = lowAllocation;
+            Allocation highAllocation = availableAllocations[highIndex];
+            if (highAllocation.data != initialAllocationBlock) {
+              highIndex--;
+            } else {
+              availableAllocations[lowIndex++] = highAllocation;
+              availableAllocations[highIndex--] = lowAllocation;
+            }
           }
         }
+        // lowIndex is the index of the first allocation not backed by an initial block.
+        targetAvailableCount = Math.max(targetAvailableCount, lowIndex);
       }
-      // lowIndex is the index of the first allocation not backed by an initial block.
-      targetAvailableCount = Math.max(targetAvailableCount, lowIndex);
       if (targetAvailableCount >= availableCount) {
         // We're already at or below the target.
-        return;
+        return 0;
       }
+      // Discard allocations beyond the target.
+      int discardedCount = availableCount - targetAvailableCount;
+      Arrays.fill(availableAllocations, targetAvailableCount, availableCount, null);
+      availableCount = targetAvailableCount;
+      return discardedCount;
     }
 
-    // Discard allocations beyond the target.
-    Arrays.fill(availableAllocations, targetAvailableCount, availableCount, null);
-    availableCount = targetAvailableCount;
-  }
-
-  @Override
-  public synchronized int getTotalBytesAllocated() {
-    return allocatedCount * individualAllocationSize;
-  }
-
-  @Override
-  public int getIndividualAllocationLength() {
-    return individualAllocationSize;
   }
 
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.FileDataSource.FileDataSourceException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link DataSource} for reading local files, which maps the requested region of the file into
+ * memory rather than reading it through the file.
+ * <p>
+ * Each read then copies straight from the mapped pages into the target, without a system call, so
+ * this is considerably cheaper than {@link FileDataSource} when a region is consumed in many small
+ * reads, as extractors do. Regions that are too short for mapping to pay off are read through the
+ * file instead. Large regions are mapped a window at a time.
+ * <p>
+ * {@link com.google.android.exoplayer2.upstream.cache.CacheDataSource} reads cache files through a
+ * {@link FileDataSource} by default. To map them instead, pass a {@link MappedFileDataSource} or
+ * {@link MappedFileDataSourceFactory} as the cache read data source.
+ * <p>
+ * Opening a region that extends beyond the end of the file fails, and each window is clamped to
+ * the current length of the file when it's mapped, so a file that's shorter than expected results
+ * in a {@link FileDataSourceException}. The file must not be truncated while a window is mapped,
+ * since accessing mapped pages beyond the end of the file is not recoverable on Android.
+ */
+public final class MappedFileDataSource implements DataSource {
+
+  /**
+   * The default minimum length of a region for it to be mapped.
+   */
+  public static final int DEFAULT_MIN_MAPPED_LENGTH = 128 * 1024;
+  /**
+   * The default maximum length of each mapped window.
+   */
+  public static final int DEFAULT_MAX_MAPPED_LENGTH = 8 * 1024 * 1024;
+
+  private final TransferListener<? super MappedFileDataSource> listener;
+  private final long minMappedLength;
+  private final long maxMappedLength;
+
+  private RandomAccessFile file;
+  private MappedByteBuffer mappedBuffer;
+  private boolean mapped;
+  private Uri uri;
+  private long position;
+  private long bytesRemaining;
+  private boolean opened;
+
+  public MappedFileDataSource() {
+    this(null);
+  }
+
+  /**
+   * @param listener An optional listener.
+   */
+  public MappedFileDataSource(TransferListener<? super MappedFileDataSource> listener) {
+    this(listener, DEFAULT_MIN_MAPPED_LENGTH, DEFAULT_MAX_MAPPED_LENGTH);
+  }
+
+  /**
+   * @param listener An optional listener.
+   * @param minMappedLength The minimum length of a region for it to be mapped. Shorter regions are
+   *     read through the file.
+   * @param maxMappedLength The maximum length of each mapped window.
+   */
+  public MappedFileDataSource(TransferListener<? super MappedFileDataSource> listener,
+      long minMappedLength, long maxMappedLength) {
+    this.listener = listener;
+    this.minMappedLength = minMappedLength;
+    this.maxMappedLength = maxMappedLength;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws FileDataSourceException {
+    try {
+      uri = dataSpec.uri;
+      file = new RandomAccessFile(dataSpec.uri.getPath(), "r");
+      position = dataSpec.position;
+      long fileLength = file.length();
+      bytesRemaining = dataSpec.length == C.LENGTH_UNSET ? fileLength - dataSpec.position
+          : dataSpec.length;
+      if (bytesRemaining < 0 || position + bytesRemaining > fileLength) {
+        throw new EOFException();
+      }
+      mapped = bytesRemaining >= minMappedLength;
+      if (!mapped) {
+        file.seek(position);
+      }
+    } catch (IOException e) {
+      throw new FileDataSourceException(e);
+    }
+
+    opened = true;
+    if (listener != null) {
+      listener.onTransferStart(this, dataSpec);
+    }
+
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws FileDataSourceException {
+    if (readLength == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    } else {
+      int bytesRead;
+      try {
+        readLength = (int) Math.min(bytesRemaining, readLength);
+        if (mapped) {
+          if (mappedBuffer == null || !mappedBuffer.hasRemaining()) {
+            // Never map beyond the end of the file, in case it has been truncated since opening.
+            long mappedLength = Math.min(Math.min(bytesRemaining, maxMappedLength),
+                file.length() - position);
+            if (mappedLength <= 0) {
+              throw new EOFException();
+            }
+            mappedBuffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, position,
+                mappedLength);
+            position += mappedLength;
+          }
+          bytesRead = Math.min(readLength, mappedBuffer.remaining());
+          mappedBuffer.get(buffer, offset, bytesRead);
+        } else {
+          bytesRead = file.read(buffer, offset, readLength);
+        }
+      } catch (IOException e) {
+        throw new FileDataSourceException(e);
+      }
+
+      if (bytesRead > 0) {
+        bytesRemaining -= bytesRead;
+        if (listener != null) {
+          listener.onBytesTransferred(this, bytesRead);
+        }
+      }
+
+      return bytesRead;
+    }
+  }
+
+  @Override
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() throws FileDataSourceException {
+    uri = null;
+    // The mapping is released when the buffer is garbage collected.
+    mappedBuffer = null;
+    try {
+      if (file != null) {
+        file.close();
+      }
+    } catch (IOException e) {
+      throw new FileDataSourceException(e);
+    } finally {
+      file = null;
+      if (opened) {
+        opened = false;
+        if (listener != null) {
+          listener.onTransferEnd(this);
+        }
+      }
+    }
+  }
+
+}
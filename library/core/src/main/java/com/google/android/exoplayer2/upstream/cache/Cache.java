@@ -27,6 +27,10 @@ public interface Cache {
 
   /**
    * Listener of {@link Cache} events.
+   * <p>
+   * Implementations may deliver events asynchronously. In that case an event may still be delivered
+   * after {@link Cache#removeListener(String, Listener)} has returned, for a change that was made
+   * before the listener was removed, so listeners must tolerate late calls.
    */
   interface Listener {
 
@@ -92,6 +96,9 @@ public interface Cache {
 
   /**
    * Unregisters a listener.
+   * <p>
+   * Events that were already pending may still be delivered to the listener after this method
+   * returns. See {@link Listener}.
    *
    * @param key The key to stop listening to.
    * @param listener The listener to remove.
@@ -135,6 +142,10 @@ public interface Cache {
    * multiple files. When the caller has finished writing a file it should commit it to the cache
    * by calling {@link #commitFile(File)}. When the caller has finished writing, it must release
    * the lock by calling {@link #releaseHoleSpan}.
+   * <p>
+   * Implementations may allow several callers to lock disjoint holes for the same key at once, in
+   * which case the returned hole may end where a hole locked by another caller starts. A caller
+   * must not write beyond the end of the returned hole.
    *
    * @param key The key of the data being requested.
    * @param position The position of the data being requested.
@@ -146,6 +157,9 @@ public interface Cache {
   /**
    * Same as {@link #startReadWrite(String, long)}. However, if the cache entry is locked, then
    * instead of blocking, this method will return null as the {@link CacheSpan}.
+   * <p>
+   * Implementations may allow several callers to lock disjoint holes for the same key at once, in
+   * which case null is only returned if the position is in a hole locked by another caller.
    *
    * @param key The key of the data being requested.
    * @param position The position of the data being requested.
@@ -263,12 +263,16 @@ public final class CacheDataSource implements DataSource {
       span = null;
     } else if (blockOnCache) {
       try {
-        span = cache.startReadWrite(key, readPosition);
+        span = cache instanceof SimpleCache
+            ? ((SimpleCache) cache).startReadWrite(key, readPosition, bytesRemaining)
+            : cache.startReadWrite(key, readPosition);
       } catch (InterruptedException e) {
         throw new InterruptedIOException();
       }
     } else {
-      span = cache.startReadWriteNonBlocking(key, readPosition);
+      span = cache instanceof SimpleCache
+          ? ((SimpleCache) cache).startReadWriteNonBlocking(key, readPosition, bytesRemaining)
+          : cache.startReadWriteNonBlocking(key, readPosition);
     }
 
     if (span == null) {
@@ -23,6 +23,7 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
+import java.util.LinkedList;
 import java.util.NavigableSet;
 
 /**
@@ -30,10 +31,16 @@ import java.util.NavigableSet;
  */
 public final class CacheUtil {
 
-  /** Holds the counters used during caching. */
+  /** Default buffer size to be used while caching. */
+  public static final int DEFAULT_BUFFER_SIZE_BYTES = 128 * 1024;
+
+  /**
+   * Holds the counters used during caching. The counters are volatile, so they can be read from
+   * another thread while caching is in progress.
+   */
   public static class CachingCounters {
     /** Total number of already cached bytes. */
-    public long alreadyCachedBytes;
+    public volatile long alreadyCachedBytes;
     /**
      * Total number of downloaded bytes.
      *
@@ -41,7 +48,7 @@ public final class CacheUtil {
      * bytes or to {@link C#LENGTH_UNSET} if {@code dataSpec} is unbounded and content length isn't
      * available in the {@code cache}.
      */
-    public long downloadedBytes;
+    public volatile long downloadedBytes;
   }
 
   /**
@@ -107,6 +114,115 @@ public final class CacheUtil {
         counters);
   }
 
+  /**
+   * Caches the data defined by {@code dataSpec} while skipping already cached data, fetching
+   * several byte ranges at once.
+   * <p>
+   * The holes in the cached data are split into ranges of at most {@code rangeLength} bytes, which
+   * are fetched concurrently by up to {@code threadCount} threads, in order of position. Each
+   * thread reads through its own {@link CacheDataSource}. If neither the length of {@code
+   * dataSpec} nor the content length of its key is known, the start of the first hole is fetched
+   * on the calling thread to resolve the length first. If the length can't be resolved, the data
+   * is cached sequentially.
+   * <p>
+   * The counters are updated each time a range has been fetched, so they can be used to track
+   * progress from another thread.
+   *
+   * @param dataSpec Defines the data to be cached.
+   * @param cache A {@link Cache} to store the data. Ranges are only written at once if it allows
+   *     disjoint holes of the same key to be locked at once, as {@link SimpleCache} does.
+   * @param dataSourceFactory A factory of {@link CacheDataSource}s that work on the {@code cache}.
+   * @param threadCount The maximum number of ranges to fetch at once.
+   * @param rangeLength The maximum length of each range, in bytes.
+   * @param priorityTaskManager If not null it's used to check whether it is allowed to proceed with
+   *     caching.
+   * @param priority The priority of this task. Used with {@code priorityTaskManager}.
+   * @param counters The counters to be set during caching. If not null its values reset to
+   *     zero before using. If null a new {@link CachingCounters} is created and used.
+   * @return The used {@link CachingCounters} instance.
+   * @throws IOException If an error occurs reading from the source.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  public static CachingCounters cache(DataSpec dataSpec, Cache cache,
+      CacheDataSourceFactory dataSourceFactory, int threadCount, long rangeLength,
+      PriorityTaskManager priorityTaskManager, int priority, CachingCounters counters)
+      throws IOException, InterruptedException {
+    Assertions.checkArgument(threadCount > 0 && rangeLength > 0);
+    String key = getKey(dataSpec);
+    if (counters == null) {
+      counters = new CachingCounters();
+    } else {
+      counters.alreadyCachedBytes = 0;
+      counters.downloadedBytes = 0;
+    }
+    long position = dataSpec.position;
+    long end = dataSpec.length != C.LENGTH_UNSET ? position + dataSpec.length
+        : cache.getContentLength(key);
+
+    if (end == C.LENGTH_UNSET) {
+      // Cache up to the end of the first range of the first hole sequentially, using an unbounded
+      // request for the hole so that the content length is resolved.
+      long holeStart = getFirstHole(cache, key, position);
+      CacheDataSource dataSource = dataSourceFactory.createDataSource();
+      byte[] buffer = new byte[DEFAULT_BUFFER_SIZE_BYTES];
+      counters.alreadyCachedBytes = holeStart - position;
+      long read = readAndDiscard(new DataSpec(dataSpec.uri, holeStart, C.LENGTH_UNSET, key),
+          dataSource, buffer, priorityTaskManager, priority, rangeLength);
+      counters.downloadedBytes = read;
+      if (read < rangeLength) {
+        // Reached end of data.
+        return counters;
+      }
+      position = holeStart + read;
+      end = cache.getContentLength(key);
+      if (end == C.LENGTH_UNSET) {
+        // The length is still unknown, so the remaining data can't be split into ranges.
+        DataSpec remainingDataSpec = new DataSpec(dataSpec.uri, position, C.LENGTH_UNSET, key);
+        CachingCounters remainingCounters = internalCache(remainingDataSpec, cache, dataSource,
+            buffer, priorityTaskManager, priority, null);
+        counters.alreadyCachedBytes += remainingCounters.alreadyCachedBytes;
+        counters.downloadedBytes += remainingCounters.downloadedBytes;
+        return counters;
+      }
+    }
+
+    // Split the holes into ranges. Each range is written through a hole locked to its length, so
+    // ranges of the same hole can be fetched at once.
+    LinkedList<DataSpec> ranges = new LinkedList<>();
+    long alreadyCachedBytes = 0;
+    while (position < end) {
+      long blockLength = cache.getCachedBytes(key, position, end - position);
+      if (blockLength > 0) {
+        alreadyCachedBytes += blockLength;
+      } else {
+        blockLength = -blockLength;
+        for (long rangeStart = position; rangeStart < position + blockLength;
+            rangeStart += rangeLength) {
+          ranges.add(new DataSpec(dataSpec.uri, rangeStart,
+              Math.min(rangeLength, position + blockLength - rangeStart), key));
+        }
+      }
+      position += blockLength;
+    }
+    synchronized (counters) {
+      counters.alreadyCachedBytes += alreadyCachedBytes;
+    }
+    new ParallelCacheTask(ranges, dataSourceFactory, priorityTaskManager, priority, counters)
+        .fetch(threadCount);
+    return counters;
+  }
+
+  /**
+   * Returns the position of the first hole in the cached data of a key, starting from a position.
+   */
+  private static long getFirstHole(Cache cache, String key, long position) {
+    long blockLength;
+    while ((blockLength = cache.getCachedBytes(key, position, Long.MAX_VALUE)) > 0) {
+      position += blockLength;
+    }
+    return position;
+  }
+
   /**
    * Caches the data defined by {@code dataSpec} while skipping already cached data. If {@code
    * dataSource} or {@code buffer} is null performs a dry run.
@@ -155,7 +271,7 @@ public final class CacheUtil {
           DataSpec subDataSpec = new DataSpec(dataSpec.uri, start,
               blockLength == Long.MAX_VALUE ? C.LENGTH_UNSET : blockLength, key);
           long read = readAndDiscard(subDataSpec, dataSource, buffer, priorityTaskManager,
-              priority);
+              priority, C.LENGTH_UNSET);
           counters.downloadedBytes += read;
           if (read < blockLength) {
             // Reached end of data.
@@ -177,7 +293,8 @@ public final class CacheUtil {
   }
 
   /**
-   * Reads and discards all data specified by the {@code dataSpec}.
+   * Reads and discards all data specified by the {@code dataSpec}, or up to {@code maxLength}
+   * bytes of it.
    *
    * @param dataSpec Defines the data to be read.
    * @param dataSource The {@link DataSource} to read the data from.
@@ -185,11 +302,13 @@ public final class CacheUtil {
    * @param priorityTaskManager If not null it's used to check whether it is allowed to proceed with
    *     caching.
    * @param priority The priority of this task.
+   * @param maxLength The maximum number of bytes to read, or {@link C#LENGTH_UNSET} to read all of
+   *     the data.
    * @return Number of read bytes, or 0 if no data is available because the end of the opened range
    * has been reached.
    */
   private static long readAndDiscard(DataSpec dataSpec, DataSource dataSource, byte[] buffer,
-      PriorityTaskManager priorityTaskManager, int priority)
+      PriorityTaskManager priorityTaskManager, int priority, long maxLength)
       throws IOException, InterruptedException {
     while (true) {
       if (priorityTaskManager != null) {
@@ -203,7 +322,12 @@ public final class CacheUtil {
           if (Thread.interrupted()) {
             throw new InterruptedException();
           }
-          int read = dataSource.read(buffer, 0, buffer.length);
+          if (totalRead == maxLength) {
+            return totalRead;
+          }
+          int readLength = maxLength == C.LENGTH_UNSET ? buffer.length
+              : (int) Math.min(buffer.length, maxLength - totalRead);
+          int read = dataSource.read(buffer, 0, readLength);
           if (read == C.RESULT_END_OF_INPUT) {
             return totalRead;
           }
@@ -234,4 +358,127 @@ public final class CacheUtil {
 
   private CacheUtil() {}
 
+  /**
+   * Fetches byte ranges into a cache on a bounded number of threads.
+   */
+  private static final class ParallelCacheTask implements Runnable {
+
+    private final LinkedList<DataSpec> ranges;
+    private final CacheDataSourceFactory dataSourceFactory;
+    private final PriorityTaskManager priorityTaskManager;
+    private final int priority;
+    private final CachingCounters counters;
+
+    private int activeThreadCount;
+    private Throwable exception;
+
+    public ParallelCacheTask(LinkedList<DataSpec> ranges, CacheDataSourceFactory dataSourceFactory,
+        PriorityTaskManager priorityTaskManager, int priority, CachingCounters counters) {
+      this.ranges = ranges;
+      this.dataSourceFactory = dataSourceFactory;
+      this.priorityTaskManager = priorityTaskManager;
+      this.priority = priority;
+      this.counters = counters;
+    }
+
+    /**
+     * Fetches the ranges, blocking until all of them have been fetched.
+     *
+     * @param threadCount The maximum number of ranges to fetch at once.
+     * @throws IOException If an error occurs fetching a range.
+     * @throws InterruptedException If the thread was interrupted.
+     * @throws RuntimeException If a thread fetching a range threw one, in which case it's rethrown.
+     * @throws Error If a thread fetching a range threw one, in which case it's rethrown.
+     */
+    public void fetch(int threadCount) throws IOException, InterruptedException {
+      Thread[] threads = new Thread[Math.min(threadCount, ranges.size())];
+      activeThreadCount = threads.length;
+      for (int i = 0; i < threads.length; i++) {
+        threads[i] = new Thread(this, "CacheUtil.cache()");
+        threads[i].start();
+      }
+      try {
+        synchronized (this) {
+          while (activeThreadCount > 0 && exception == null) {
+            wait();
+          }
+          if (exception instanceof IOException) {
+            throw (IOException) exception;
+          } else if (exception instanceof RuntimeException) {
+            throw (RuntimeException) exception;
+          } else if (exception instanceof Error) {
+            throw (Error) exception;
+          } else if (exception != null) {
+            throw new IllegalStateException(exception);
+          }
+        }
+      } finally {
+        cancel(threads);
+      }
+    }
+
+    @Override
+    public void run() {
+      CacheDataSource dataSource = dataSourceFactory.createDataSource();
+      byte[] buffer = new byte[DEFAULT_BUFFER_SIZE_BYTES];
+      try {
+        while (true) {
+          DataSpec range;
+          synchronized (this) {
+            if (exception != null || ranges.isEmpty()) {
+              return;
+            }
+            range = ranges.removeFirst();
+          }
+          long read = readAndDiscard(range, dataSource, buffer, priorityTaskManager, priority,
+              C.LENGTH_UNSET);
+          synchronized (counters) {
+            counters.downloadedBytes += read;
+          }
+        }
+      } catch (InterruptedException e) {
+        // The task has been cancelled.
+      } catch (Throwable e) {
+        // Anything else is passed to the fetching thread, so that it isn't lost with this thread.
+        synchronized (this) {
+          if (exception == null) {
+            exception = e;
+          }
+        }
+      } finally {
+        synchronized (this) {
+          activeThreadCount--;
+          notifyAll();
+        }
+      }
+    }
+
+    /**
+     * Stops fetching ranges, interrupting the threads that are fetching them, and waits for the
+     * threads to finish.
+     */
+    private void cancel(Thread[] threads) {
+      synchronized (this) {
+        ranges.clear();
+      }
+      boolean interrupted = false;
+      for (Thread thread : threads) {
+        thread.interrupt();
+      }
+      for (Thread thread : threads) {
+        while (thread.isAlive()) {
+          try {
+            thread.join();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+  }
+
 }
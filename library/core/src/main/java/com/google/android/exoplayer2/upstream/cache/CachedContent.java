@@ -16,15 +16,21 @@
 package com.google.android.exoplayer2.upstream.cache;
 
 import com.google.android.exoplayer2.C;
-import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.util.TreeSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Defines the cached content for a single stream.
+ * <p>
+ * Changes must be made by one thread at a time, but spans may be looked up from any thread without
+ * synchronization. A span whose last access timestamp is updated is replaced in a single step, so
+ * concurrent lookups always find either the old or the new span.
  */
 /*package*/ final class CachedContent {
 
@@ -37,13 +43,13 @@ import java.util.TreeSet;
    */
   public final String key;
   /**
-   * The cached spans of this content.
+   * The cached spans of this content, keyed by position.
    */
-  private final TreeSet<SimpleCacheSpan> cachedSpans;
+  private final ConcurrentSkipListMap<Long, SimpleCacheSpan> cachedSpans;
   /**
    * The length of the original stream, or {@link C#LENGTH_UNSET} if the length is unknown.
    */
-  private long length;
+  private volatile long length;
 
   /**
    * Reads an instance from a {@link DataInputStream}.
@@ -66,7 +72,7 @@ import java.util.TreeSet;
     this.id = id;
     this.key = key;
     this.length = length;
-    this.cachedSpans = new TreeSet<>();
+    this.cachedSpans = new ConcurrentSkipListMap<>();
   }
 
   /**
@@ -81,6 +87,52 @@ import java.util.TreeSet;
     output.writeLong(length);
   }
 
+  /**
+   * Reads spans written by {@link #writeSpansToStream(DataOutputStream)} from a
+   * {@link DataInputStream}, and adds them to this instance.
+   *
+   * @param input Input stream containing the spans.
+   * @param cacheDir The cache directory, in which the files of the spans are located.
+   * @param hasFileTimestamps Whether the file timestamps of the spans were written. If not, the
+   *     stream was written when span files were renamed on every access, and so each file
+   *     timestamp is taken to be equal to the span's last access timestamp.
+   * @return The hash code of the spans, as returned by {@link #spansHashCode()}.
+   * @throws IOException If an error occurs during reading values.
+   */
+  public int readSpansFromStream(DataInputStream input, File cacheDir, boolean hasFileTimestamps)
+      throws IOException {
+    int count = input.readInt();
+    int hashCode = 0;
+    for (int i = 0; i < count; i++) {
+      long position = input.readLong();
+      long length = input.readLong();
+      long lastAccessTimestamp = input.readLong();
+      long fileTimestamp = hasFileTimestamps ? input.readLong() : lastAccessTimestamp;
+      addSpan(SimpleCacheSpan.createCacheEntry(cacheDir, id, key, position, length, fileTimestamp,
+          lastAccessTimestamp));
+      int spanHashCode = spanHashCode(position, length, lastAccessTimestamp);
+      hashCode += hasFileTimestamps ? 31 * spanHashCode + hashCode(fileTimestamp) : spanHashCode;
+    }
+    return hashCode;
+  }
+
+  /**
+   * Writes the position, length, last access timestamp and file timestamp of each of the spans to a
+   * {@link DataOutputStream}.
+   *
+   * @param output Output stream to store the values.
+   * @throws IOException If an error occurs during writing values to output.
+   */
+  public void writeSpansToStream(DataOutputStream output) throws IOException {
+    output.writeInt(cachedSpans.size());
+    for (SimpleCacheSpan span : cachedSpans.values()) {
+      output.writeLong(span.position);
+      output.writeLong(span.length);
+      output.writeLong(span.lastAccessTimestamp);
+      output.writeLong(span.fileTimestamp);
+    }
+  }
+
   /** Returns the length of the content. */
   public long getLength() {
     return length;
@@ -91,14 +143,20 @@ import java.util.TreeSet;
     this.length = length;
   }
 
-  /** Adds the given {@link SimpleCacheSpan} which contains a part of the content. */
+  /**
+   * Adds the given {@link SimpleCacheSpan} which contains a part of the content, replacing any span
+   * with the same position.
+   */
   public void addSpan(SimpleCacheSpan span) {
-    cachedSpans.add(span);
+    cachedSpans.put(span.position, span);
   }
 
-  /** Returns a set of all {@link SimpleCacheSpan}s. */
-  public TreeSet<SimpleCacheSpan> getSpans() {
-    return cachedSpans;
+  /**
+   * Returns a view of all {@link SimpleCacheSpan}s, in order of position. Iteration over the view
+   * never fails, but may or may not reflect changes made while it's in progress.
+   */
+  public Collection<SimpleCacheSpan> getSpans() {
+    return cachedSpans.values();
   }
 
   /**
@@ -106,14 +164,16 @@ import java.util.TreeSet;
    * which defines the maximum extents of the hole in the cache.
    */
   public SimpleCacheSpan getSpan(long position) {
-    SimpleCacheSpan lookupSpan = SimpleCacheSpan.createLookup(key, position);
-    SimpleCacheSpan floorSpan = cachedSpans.floor(lookupSpan);
-    if (floorSpan != null && floorSpan.position + floorSpan.length > position) {
-      return floorSpan;
+    Map.Entry<Long, SimpleCacheSpan> floorEntry = cachedSpans.floorEntry(position);
+    if (floorEntry != null) {
+      SimpleCacheSpan floorSpan = floorEntry.getValue();
+      if (floorSpan.position + floorSpan.length > position) {
+        return floorSpan;
+      }
     }
-    SimpleCacheSpan ceilSpan = cachedSpans.ceiling(lookupSpan);
-    return ceilSpan == null ? SimpleCacheSpan.createOpenHole(key, position)
-        : SimpleCacheSpan.createClosedHole(key, position, ceilSpan.position - position);
+    Long ceilPosition = cachedSpans.ceilingKey(position);
+    return ceilPosition == null ? SimpleCacheSpan.createOpenHole(key, position)
+        : SimpleCacheSpan.createClosedHole(key, position, ceilPosition - position);
   }
 
   /**
@@ -134,7 +194,7 @@ import java.util.TreeSet;
     long queryEndPosition = position + length;
     long currentEndPosition = span.position + span.length;
     if (currentEndPosition < queryEndPosition) {
-      for (SimpleCacheSpan next : cachedSpans.tailSet(span, false)) {
+      for (SimpleCacheSpan next : cachedSpans.tailMap(span.position, false).values()) {
         if (next.position > currentEndPosition) {
           // There's a hole in the cache within the queried region.
           break;
@@ -153,24 +213,29 @@ import java.util.TreeSet;
 
   /**
    * Copies the given span with an updated last access time. Passed span becomes invalid after this
-   * call.
+   * call. The underlying span file is not renamed, so this doesn't access the file system.
    *
    * @param cacheSpan Span to be copied and updated.
    * @return a span with the updated last access time.
-   * @throws CacheException If renaming of the underlying span file failed.
    */
-  public SimpleCacheSpan touch(SimpleCacheSpan cacheSpan) throws CacheException {
-    // Remove the old span from the in-memory representation.
-    Assertions.checkState(cachedSpans.remove(cacheSpan));
+  public SimpleCacheSpan touch(SimpleCacheSpan cacheSpan) {
+    return setLastAccessTimestamp(cacheSpan, System.currentTimeMillis());
+  }
+
+  /**
+   * Copies the given span with the given last access time. Passed span becomes invalid after this
+   * call.
+   *
+   * @param cacheSpan Span to be copied and updated.
+   * @param lastAccessTimestamp The new last access timestamp.
+   * @return a span with the given last access time.
+   */
+  public SimpleCacheSpan setLastAccessTimestamp(SimpleCacheSpan cacheSpan,
+      long lastAccessTimestamp) {
     // Obtain a new span with updated last access timestamp.
-    SimpleCacheSpan newCacheSpan = cacheSpan.copyWithUpdatedLastAccessTime(id);
-    // Rename the cache file
-    if (!cacheSpan.file.renameTo(newCacheSpan.file)) {
-      throw new CacheException("Renaming of " + cacheSpan.file + " to " + newCacheSpan.file
-          + " failed.");
-    }
-    // Add the updated span back into the in-memory representation.
-    cachedSpans.add(newCacheSpan);
+    SimpleCacheSpan newCacheSpan = cacheSpan.copyWithLastAccessTimestamp(lastAccessTimestamp);
+    // Replace the old span in the in-memory representation.
+    Assertions.checkState(cachedSpans.replace(cacheSpan.position, cacheSpan, newCacheSpan));
     return newCacheSpan;
   }
 
@@ -179,9 +244,20 @@ import java.util.TreeSet;
     return cachedSpans.isEmpty();
   }
 
-  /** Removes the given span from cache. */
+  /**
+   * Removes the span at the given position from the in-memory representation, without deleting its
+   * file.
+   *
+   * @param position The position of the span.
+   * @return Whether there was a span at the given position.
+   */
+  public boolean removeSpanEntry(long position) {
+    return cachedSpans.remove(position) != null;
+  }
+
+  /** Removes the span with the same position as the given span from cache. */
   public boolean removeSpan(CacheSpan span) {
-    if (cachedSpans.remove(span)) {
+    if (cachedSpans.remove(span.position) != null) {
       span.file.delete();
       return true;
     }
@@ -196,4 +272,25 @@ import java.util.TreeSet;
     return result;
   }
 
+  /** Calculates a hash code for the spans of this {@code CachedContent}. */
+  public int spansHashCode() {
+    int result = 0;
+    for (SimpleCacheSpan span : cachedSpans.values()) {
+      result += 31 * spanHashCode(span.position, span.length, span.lastAccessTimestamp)
+          + hashCode(span.fileTimestamp);
+    }
+    return result;
+  }
+
+  private static int spanHashCode(long position, long length, long lastAccessTimestamp) {
+    int result = hashCode(position);
+    result = 31 * result + hashCode(length);
+    result = 31 * result + hashCode(lastAccessTimestamp);
+    return result;
+  }
+
+  private static int hashCode(long value) {
+    return (int) (value ^ (value >>> 32));
+  }
+
 }
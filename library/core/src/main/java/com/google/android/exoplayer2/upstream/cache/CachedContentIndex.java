@@ -24,21 +24,27 @@ import com.google.android.exoplayer2.util.AtomicFile;
 import com.google.android.exoplayer2.util.ReusableBufferedOutputStream;
 import com.google.android.exoplayer2.util.Util;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
@@ -47,24 +53,70 @@ import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
- * This class maintains the index of cached content.
+ * This class maintains the index of cached content. Along with each {@link CachedContent}, the
+ * index file stores the position, length, last access timestamp and file timestamp of its spans,
+ * so that a cache can be restored without listing and parsing the names of all of its files. Since
+ * span files aren't renamed when they're accessed, the index is the only record of last access
+ * timestamps that have changed since a span was written.
+ * <p>
+ * Rewriting the whole index file for every change is expensive for large caches, so changes are
+ * instead appended to a journal, which is replayed on top of the index file when it's loaded. The
+ * index file is only rewritten, atomically, once the journal has grown larger than it. Each journal
+ * is tied to the index file it follows by a random id, and each of its records is checksummed, so
+ * that a journal left behind by an interrupted rewrite or a torn append is never replayed.
+ * <p>
+ * Changes to the index must be made by one thread at a time. Lookups through {@link #get(String)},
+ * {@link #getAll()}, {@link #getKeys()} and {@link #getContentLength(String)} may be made from any
+ * thread at any time, and reflect the state of the index at some point during the call.
  */
 /*package*/ final class CachedContentIndex {
 
   public static final String FILE_NAME = "cached_content_index.exi";
 
-  private static final int VERSION = 1;
+  private static final String JOURNAL_FILE_NAME = FILE_NAME + ".journal";
+
+  private static final int VERSION = 4;
+  private static final int VERSION_WITHOUT_FILE_TIMESTAMPS = 3;
+  private static final int VERSION_WITHOUT_SPANS = 1;
+  private static final int JOURNAL_VERSION = 2;
+  private static final int JOURNAL_VERSION_WITHOUT_FILE_TIMESTAMPS = 1;
+  private static final int JOURNAL_HEADER_SIZE = 16;
+  private static final int RECORD_HEADER_SIZE = 8;
 
   private static final int FLAG_ENCRYPTED_INDEX = 1;
 
+  private static final int RECORD_ADD_CONTENT = 1;
+  private static final int RECORD_REMOVE_CONTENT = 2;
+  private static final int RECORD_SET_LENGTH = 3;
+  private static final int RECORD_ADD_SPAN = 4;
+  private static final int RECORD_REMOVE_SPAN = 5;
+  private static final int RECORD_TOUCH_SPAN = 6;
+
+  /**
+   * The journal size in bytes below which the index file is never rewritten. Beyond it, the index
+   * file is rewritten once the journal is larger than the index file.
+   */
+  private static final int MIN_COMPACTION_JOURNAL_SIZE = 64 * 1024;
+
   private static final String TAG = "CachedContentIndex";
 
-  private final HashMap<String, CachedContent> keyToContent;
+  private final File cacheDir;
+  private final ConcurrentHashMap<String, CachedContent> keyToContent;
   private final SparseArray<String> idToKey;
+  private final File indexFile;
   private final AtomicFile atomicFile;
+  private final File journalFile;
   private final Cipher cipher;
   private final SecretKeySpec secretKeySpec;
+  private final ByteArrayOutputStream recordBuffer;
+  private final DataOutputStream recordOutput;
+  private final ByteArrayOutputStream pendingRecords;
+  private final DataOutputStream pendingRecordsOutput;
+  private final CRC32 crc;
   private boolean changed;
+  private boolean unrecoverableChanges;
+  private long journalId;
+  private long journalSize;
   private ReusableBufferedOutputStream bufferedOutputStream;
 
   /**
@@ -96,28 +148,104 @@ import javax.crypto.spec.SecretKeySpec;
       cipher = null;
       secretKeySpec = null;
     }
-    keyToContent = new HashMap<>();
+    this.cacheDir = cacheDir;
+    keyToContent = new ConcurrentHashMap<>();
     idToKey = new SparseArray<>();
-    atomicFile = new AtomicFile(new File(cacheDir, FILE_NAME));
+    indexFile = new File(cacheDir, FILE_NAME);
+    atomicFile = new AtomicFile(indexFile);
+    journalFile = new File(cacheDir, JOURNAL_FILE_NAME);
+    recordBuffer = new ByteArrayOutputStream();
+    recordOutput = new DataOutputStream(recordBuffer);
+    pendingRecords = new ByteArrayOutputStream();
+    pendingRecordsOutput = new DataOutputStream(pendingRecords);
+    crc = new CRC32();
+    journalSize = C.LENGTH_UNSET;
   }
 
-  /** Loads the index file. */
-  public void load() {
+  /**
+   * Loads the index file.
+   *
+   * @return Whether the spans of the loaded {@link CachedContent} instances were read from the index
+   *     file, in which case they don't need to be restored from the files in the cache directory.
+   */
+  public boolean load() {
     Assertions.checkState(!changed);
-    if (!readFile()) {
+    int version = readFile();
+    if (version == C.INDEX_UNSET) {
       atomicFile.delete();
+      journalFile.delete();
       keyToContent.clear();
       idToKey.clear();
+      return false;
+    }
+    if (version >= VERSION_WITHOUT_FILE_TIMESTAMPS) {
+      readJournal(version == VERSION ? JOURNAL_VERSION : JOURNAL_VERSION_WITHOUT_FILE_TIMESTAMPS);
+    }
+    if (version != VERSION) {
+      // The index file will be rewritten in the current version, along with a new journal.
+      journalSize = C.LENGTH_UNSET;
     }
+    return version != VERSION_WITHOUT_SPANS;
   }
 
-  /** Stores the index data to index file if there is a change. */
+  /**
+   * Stores the changes made to the index since it was last stored, if there are any. Changes are
+   * appended to the journal, unless the index file needs to be rewritten.
+   */
   public void store() throws CacheException {
     if (!changed) {
       return;
     }
-    writeFile();
+    if (journalSize == C.LENGTH_UNSET || journalSize + pendingRecords.size()
+        > Math.max(MIN_COMPACTION_JOURNAL_SIZE, indexFile.length())) {
+      writeFile();
+    } else {
+      appendJournal();
+    }
+    pendingRecords.reset();
     changed = false;
+    unrecoverableChanges = false;
+  }
+
+  /**
+   * Returns whether there are changes that haven't been stored and that couldn't be recovered from
+   * the files in the cache directory if they were lost. These are the addition of
+   * {@link CachedContent} instances, whose ids identify the content of span files, and changes to
+   * content lengths.
+   */
+  public boolean hasUnrecoverableChanges() {
+    return unrecoverableChanges;
+  }
+
+  /**
+   * Records the addition of a span to one of the {@link CachedContent} instances in the index.
+   *
+   * @param cachedContent The {@link CachedContent} to which the span was added.
+   * @param span The added span.
+   */
+  public void onSpanAdded(CachedContent cachedContent, SimpleCacheSpan span) {
+    addRecord(RECORD_ADD_SPAN, cachedContent, span);
+  }
+
+  /**
+   * Records an update to the last access timestamp of a span of one of the {@link CachedContent}
+   * instances in the index.
+   *
+   * @param cachedContent The {@link CachedContent} to which the span belongs.
+   * @param span The span, with its updated last access timestamp.
+   */
+  public void onSpanTouched(CachedContent cachedContent, SimpleCacheSpan span) {
+    addRecord(RECORD_TOUCH_SPAN, cachedContent, span);
+  }
+
+  /**
+   * Records the removal of a span from one of the {@link CachedContent} instances in the index.
+   *
+   * @param cachedContent The {@link CachedContent} from which the span was removed.
+   * @param span The removed span.
+   */
+  public void onSpanRemoved(CachedContent cachedContent, CacheSpan span) {
+    addRecord(RECORD_REMOVE_SPAN, cachedContent, span);
   }
 
   /**
@@ -142,9 +270,8 @@ import javax.crypto.spec.SecretKeySpec;
   /**
    * Returns a Collection of all CachedContent instances in the index. The collection is backed by
    * the {@code keyToContent} map, so changes to the map are reflected in the collection, and
-   * vice-versa. If the map is modified while an iteration over the collection is in progress
-   * (except through the iterator's own remove operation), the results of the iteration are
-   * undefined.
+   * vice-versa. Iteration over the collection never fails, but may or may not reflect changes made
+   * to the map while it's in progress.
    */
   public Collection<CachedContent> getAll() {
     return keyToContent.values();
@@ -170,7 +297,7 @@ import javax.crypto.spec.SecretKeySpec;
     if (cachedContent != null) {
       Assertions.checkState(cachedContent.isEmpty());
       idToKey.remove(cachedContent.id);
-      changed = true;
+      addRecord(RECORD_REMOVE_CONTENT, cachedContent, null);
     }
   }
 
@@ -189,9 +316,8 @@ import javax.crypto.spec.SecretKeySpec;
 
   /**
    * Returns a set of all content keys. The set is backed by the {@code keyToContent} map, so
-   * changes to the map are reflected in the set, and vice-versa. If the map is modified while an
-   * iteration over the set is in progress (except through the iterator's own remove operation), the
-   * results of the iteration are undefined.
+   * changes to the map are reflected in the set, and vice-versa. Iteration over the set never fails,
+   * but may or may not reflect changes made to the map while it's in progress.
    */
   public Set<String> getKeys() {
     return keyToContent.keySet();
@@ -206,7 +332,8 @@ import javax.crypto.spec.SecretKeySpec;
     if (cachedContent != null) {
       if (cachedContent.getLength() != length) {
         cachedContent.setLength(length);
-        changed = true;
+        addRecord(RECORD_SET_LENGTH, cachedContent, null);
+        unrecoverableChanges = true;
       }
     } else {
       addNew(key, length);
@@ -222,21 +349,26 @@ import javax.crypto.spec.SecretKeySpec;
     return cachedContent == null ? C.LENGTH_UNSET : cachedContent.getLength();
   }
 
-  private boolean readFile() {
+  /**
+   * Reads the index file.
+   *
+   * @return The version of the index file, or {@link C#INDEX_UNSET} if it couldn't be read.
+   */
+  private int readFile() {
     DataInputStream input = null;
+    int version;
     try {
       InputStream inputStream = new BufferedInputStream(atomicFile.openRead());
       input = new DataInputStream(inputStream);
-      int version = input.readInt();
-      if (version != VERSION) {
-        // Currently there is no other version
-        return false;
+      version = input.readInt();
+      if (version < VERSION_WITHOUT_SPANS || version > VERSION) {
+        return C.INDEX_UNSET;
       }
 
       int flags = input.readInt();
       if ((flags & FLAG_ENCRYPTED_INDEX) != 0) {
         if (cipher == null) {
-          return false;
+          return C.INDEX_UNSET;
         }
         byte[] initializationVector = new byte[16];
         input.readFully(initializationVector);
@@ -253,30 +385,42 @@ import javax.crypto.spec.SecretKeySpec;
         }
       }
 
+      if (version >= VERSION_WITHOUT_FILE_TIMESTAMPS) {
+        journalId = input.readLong();
+      }
       int count = input.readInt();
       int hashCode = 0;
       for (int i = 0; i < count; i++) {
         CachedContent cachedContent = new CachedContent(input);
         add(cachedContent);
         hashCode += cachedContent.headerHashCode();
+        if (version != VERSION_WITHOUT_SPANS) {
+          hashCode += cachedContent.readSpansFromStream(input, cacheDir, version == VERSION);
+        }
       }
       if (input.readInt() != hashCode) {
-        return false;
+        return C.INDEX_UNSET;
+      }
+      if (version != VERSION) {
+        changed = true; // Force index to be rewritten in the current version.
       }
     } catch (FileNotFoundException e) {
-      return false;
+      return C.INDEX_UNSET;
     } catch (IOException e) {
       Log.e(TAG, "Error reading cache content index file.", e);
-      return false;
+      return C.INDEX_UNSET;
     } finally {
       if (input != null) {
         Util.closeQuietly(input);
       }
     }
-    return true;
+    return version;
   }
 
   private void writeFile() throws CacheException {
+    // Until a journal for the new index file has been started, changes can't be appended.
+    journalSize = C.LENGTH_UNSET;
+    journalId = new Random().nextLong();
     DataOutputStream output = null;
     try {
       OutputStream outputStream = atomicFile.startWrite();
@@ -305,11 +449,13 @@ import javax.crypto.spec.SecretKeySpec;
         output = new DataOutputStream(new CipherOutputStream(bufferedOutputStream, cipher));
       }
 
+      output.writeLong(journalId);
       output.writeInt(keyToContent.size());
       int hashCode = 0;
       for (CachedContent cachedContent : keyToContent.values()) {
         cachedContent.writeToStream(output);
-        hashCode += cachedContent.headerHashCode();
+        cachedContent.writeSpansToStream(output);
+        hashCode += cachedContent.headerHashCode() + cachedContent.spansHashCode();
       }
       output.writeInt(hashCode);
       atomicFile.endWrite(output);
@@ -321,6 +467,224 @@ import javax.crypto.spec.SecretKeySpec;
     } finally {
       Util.closeQuietly(output);
     }
+    startJournal();
+  }
+
+  private void startJournal() throws CacheException {
+    FileOutputStream outputStream = null;
+    try {
+      outputStream = new FileOutputStream(journalFile);
+      DataOutputStream output = new DataOutputStream(outputStream);
+      output.writeInt(JOURNAL_VERSION);
+      output.writeInt(cipher != null ? FLAG_ENCRYPTED_INDEX : 0);
+      output.writeLong(journalId);
+      output.flush();
+      outputStream.getFD().sync();
+    } catch (IOException e) {
+      throw new CacheException(e);
+    } finally {
+      Util.closeQuietly(outputStream);
+    }
+    journalSize = 0;
+  }
+
+  private void appendJournal() throws CacheException {
+    FileOutputStream outputStream = null;
+    try {
+      outputStream = new FileOutputStream(journalFile, true);
+      pendingRecords.writeTo(outputStream);
+      outputStream.getFD().sync();
+    } catch (IOException e) {
+      // The journal may now end with a partial record, so it mustn't be appended to.
+      journalSize = C.LENGTH_UNSET;
+      throw new CacheException(e);
+    } finally {
+      Util.closeQuietly(outputStream);
+    }
+    journalSize += pendingRecords.size();
+  }
+
+  /**
+   * Replays the journal that follows the index file that has been read. Replay stops at the first
+   * record that is incomplete or fails its checksum. Unless the whole journal could be replayed,
+   * {@link #journalSize} is left unset so that the next {@link #store()} rewrites the index file.
+   *
+   * @param journalVersion The version of journal that follows the version of the index file.
+   */
+  private void readJournal(int journalVersion) {
+    long size = journalFile.length() - JOURNAL_HEADER_SIZE;
+    if (size < 0) {
+      return;
+    }
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+      if (input.readInt() != journalVersion) {
+        return;
+      }
+      boolean encrypted = (input.readInt() & FLAG_ENCRYPTED_INDEX) != 0;
+      if (input.readLong() != journalId || (encrypted && cipher == null)) {
+        return;
+      }
+      long position = 0;
+      while (position < size) {
+        if (size - position < RECORD_HEADER_SIZE) {
+          return;
+        }
+        int length = input.readInt();
+        int checksum = input.readInt();
+        if (length <= 0 || length > size - position - RECORD_HEADER_SIZE) {
+          return;
+        }
+        byte[] record = new byte[length];
+        input.readFully(record);
+        crc.reset();
+        crc.update(record, 0, length);
+        if ((int) crc.getValue() != checksum) {
+          return;
+        }
+        if (encrypted) {
+          record = decryptRecord(record);
+        }
+        applyRecord(new DataInputStream(new ByteArrayInputStream(record)), journalVersion);
+        position += RECORD_HEADER_SIZE + length;
+      }
+      journalSize = size;
+    } catch (IOException | GeneralSecurityException e) {
+      Log.e(TAG, "Error reading cache content index journal.", e);
+    } finally {
+      Util.closeQuietly(input);
+    }
+  }
+
+  private void applyRecord(DataInputStream input, int journalVersion) throws IOException {
+    int type = input.readByte();
+    int id = input.readInt();
+    if (type == RECORD_ADD_CONTENT) {
+      String key = input.readUTF();
+      long length = input.readLong();
+      CachedContent existingContent = keyToContent.get(key);
+      if (existingContent != null) {
+        idToKey.remove(existingContent.id);
+      }
+      String existingKey = idToKey.get(id);
+      if (existingKey != null) {
+        keyToContent.remove(existingKey);
+      }
+      add(new CachedContent(id, key, length));
+      return;
+    }
+    String key = idToKey.get(id);
+    CachedContent cachedContent = key == null ? null : keyToContent.get(key);
+    if (cachedContent == null) {
+      throw new IOException("Record for unknown content id " + id);
+    }
+    switch (type) {
+      case RECORD_REMOVE_CONTENT:
+        keyToContent.remove(key);
+        idToKey.remove(id);
+        break;
+      case RECORD_SET_LENGTH:
+        cachedContent.setLength(input.readLong());
+        break;
+      case RECORD_ADD_SPAN:
+        long position = input.readLong();
+        long length = input.readLong();
+        long lastAccessTimestamp = input.readLong();
+        long fileTimestamp = journalVersion == JOURNAL_VERSION ? input.readLong()
+            : lastAccessTimestamp;
+        cachedContent.addSpan(SimpleCacheSpan.createCacheEntry(cacheDir, id, key, position, length,
+            fileTimestamp, lastAccessTimestamp));
+        break;
+      case RECORD_REMOVE_SPAN:
+        cachedContent.removeSpanEntry(input.readLong());
+        break;
+      case RECORD_TOUCH_SPAN:
+        long touchedPosition = input.readLong();
+        SimpleCacheSpan span = cachedContent.getSpan(touchedPosition);
+        if (!span.isCached || span.position != touchedPosition) {
+          throw new IOException("Record for unknown span of content id " + id);
+        }
+        cachedContent.setLastAccessTimestamp(span, input.readLong());
+        break;
+      default:
+        throw new IOException("Unexpected record type " + type);
+    }
+  }
+
+  /**
+   * Adds a record of a change to the pending changes, which are written to the journal by the next
+   * {@link #store()}.
+   *
+   * @param type The type of the record.
+   * @param cachedContent The changed {@link CachedContent}.
+   * @param span The added or removed span, for span records.
+   */
+  private void addRecord(int type, CachedContent cachedContent, CacheSpan span) {
+    changed = true;
+    recordBuffer.reset();
+    try {
+      recordOutput.writeByte(type);
+      recordOutput.writeInt(cachedContent.id);
+      switch (type) {
+        case RECORD_ADD_CONTENT:
+          recordOutput.writeUTF(cachedContent.key);
+          recordOutput.writeLong(cachedContent.getLength());
+          break;
+        case RECORD_SET_LENGTH:
+          recordOutput.writeLong(cachedContent.getLength());
+          break;
+        case RECORD_ADD_SPAN:
+          recordOutput.writeLong(span.position);
+          recordOutput.writeLong(span.length);
+          recordOutput.writeLong(span.lastAccessTimestamp);
+          recordOutput.writeLong(((SimpleCacheSpan) span).fileTimestamp);
+          break;
+        case RECORD_TOUCH_SPAN:
+          recordOutput.writeLong(span.position);
+          recordOutput.writeLong(span.lastAccessTimestamp);
+          break;
+        case RECORD_REMOVE_SPAN:
+          recordOutput.writeLong(span.position);
+          break;
+        default:
+          break;
+      }
+      byte[] record = recordBuffer.toByteArray();
+      if (cipher != null) {
+        record = encryptRecord(record);
+      }
+      crc.reset();
+      crc.update(record, 0, record.length);
+      pendingRecordsOutput.writeInt(record.length);
+      pendingRecordsOutput.writeInt((int) crc.getValue());
+      pendingRecordsOutput.write(record);
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // Should never happen.
+    }
+  }
+
+  private byte[] encryptRecord(byte[] record) {
+    byte[] initializationVector = new byte[16];
+    new Random().nextBytes(initializationVector);
+    byte[] encryptedRecord;
+    try {
+      cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec, new IvParameterSpec(initializationVector));
+      encryptedRecord = cipher.doFinal(record);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e); // Should never happen.
+    }
+    byte[] output = new byte[initializationVector.length + encryptedRecord.length];
+    System.arraycopy(initializationVector, 0, output, 0, initializationVector.length);
+    System.arraycopy(encryptedRecord, 0, output, initializationVector.length,
+        encryptedRecord.length);
+    return output;
+  }
+
+  private byte[] decryptRecord(byte[] record) throws GeneralSecurityException {
+    IvParameterSpec ivParameterSpec = new IvParameterSpec(record, 0, 16);
+    cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, ivParameterSpec);
+    return cipher.doFinal(record, 16, record.length - 16);
   }
 
   private void add(CachedContent cachedContent) {
@@ -331,7 +695,8 @@ import javax.crypto.spec.SecretKeySpec;
   /** Adds the given CachedContent to the index. */
   /*package*/ void addNew(CachedContent cachedContent) {
     add(cachedContent);
-    changed = true;
+    addRecord(RECORD_ADD_CONTENT, cachedContent, null);
+    unrecoverableChanges = true;
   }
 
   private CachedContent addNew(String key, long length) {
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ * Copyright 2015 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+/**
+ * A count-min sketch that estimates how frequently items have been seen, using four 4-bit counters
+ * per item. Estimates never undercount, saturate at 15, and are halved once the number of recorded
+ * occurrences reaches ten times the capacity, so that items that are no longer popular are
+ * forgotten.
+ * <p>
+ * Items are identified only by their hash codes.
+ * <p>
+ * Ported from {@code com.github.benmanes.caffeine.cache.FrequencySketch} in Caffeine
+ * (https://github.com/ben-manes/caffeine), by Ben Manes, which is licensed under the Apache
+ * License, Version 2.0.
+ */
+/*package*/ final class FrequencySketch {
+
+  private static final long[] SEEDS = new long[] {0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L,
+      0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+  private static final int MAX_COUNT = 15;
+
+  private long[] table;
+  private int sampleSize;
+  private int size;
+
+  /**
+   * @param capacity The number of distinct items that the sketch should be able to tell apart.
+   */
+  public FrequencySketch(int capacity) {
+    table = new long[0];
+    ensureCapacity(capacity);
+  }
+
+  /**
+   * Grows the sketch to be able to tell apart at least the given number of distinct items. The
+   * recorded frequencies are forgotten if the sketch grows.
+   *
+   * @param capacity The number of distinct items that the sketch should be able to tell apart.
+   */
+  public void ensureCapacity(int capacity) {
+    // Each element of the table holds sixteen counters, four for each of four items.
+    int tableSize = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+    if (tableSize <= table.length) {
+      return;
+    }
+    table = new long[tableSize];
+    sampleSize = 10 * tableSize;
+    size = 0;
+  }
+
+  /**
+   * Returns the estimated number of occurrences of an item, capped at 15.
+   *
+   * @param hashCode The hash code of the item.
+   */
+  public int frequency(int hashCode) {
+    int hash = spread(hashCode);
+    int start = (hash & 3) << 2;
+    int frequency = MAX_COUNT;
+    for (int i = 0; i < 4; i++) {
+      int shift = (start + i) << 2;
+      frequency = Math.min(frequency, (int) ((table[indexOf(hash, i)] >>> shift) & 0xF));
+    }
+    return frequency;
+  }
+
+  /**
+   * Records an occurrence of an item.
+   *
+   * @param hashCode The hash code of the item.
+   */
+  public void increment(int hashCode) {
+    int hash = spread(hashCode);
+    int start = (hash & 3) << 2;
+    boolean incremented = false;
+    for (int i = 0; i < 4; i++) {
+      incremented |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (incremented && ++size == sampleSize) {
+      reset();
+    }
+  }
+
+  private boolean incrementAt(int index, int counter) {
+    int shift = counter << 2;
+    long mask = 0xFL << shift;
+    if ((table[index] & mask) == mask) {
+      return false;
+    }
+    table[index] += 1L << shift;
+    return true;
+  }
+
+  /**
+   * Halves every counter, and the number of recorded occurrences accordingly.
+   */
+  private void reset() {
+    int oddCount = 0;
+    for (int i = 0; i < table.length; i++) {
+      oddCount += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    // Each item has four counters, so truncating odd counters loses a quarter of an occurrence.
+    size = (size >>> 1) - (oddCount >>> 2);
+  }
+
+  private int indexOf(int hash, int i) {
+    long index = (hash + SEEDS[i]) * SEEDS[i];
+    index += index >>> 32;
+    return (int) index & (table.length - 1);
+  }
+
+  /**
+   * Applies a supplemental hash function, to defend against poor quality hash codes.
+   */
+  private static int spread(int hashCode) {
+    int hash = ((hashCode >>> 16) ^ hashCode) * 0x45D9F3B;
+    hash = ((hash >>> 16) ^ hash) * 0x45D9F3B;
+    return (hash >>> 16) ^ hash;
+  }
+
+}
@@ -23,27 +23,69 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A {@link Cache} implementation that maintains an in-memory representation.
+ * <p>
+ * The in-memory representation is restored from the {@link CachedContentIndex} when the cache is
+ * constructed. The cache directory is then scanned on a background thread, one subdirectory at a
+ * time, to reconcile the index with the files actually present. Lookups are served while the scan
+ * is in progress.
+ * <p>
+ * Because the scan recovers spans that the index doesn't record, changes to spans are stored
+ * lazily: changes made within {@link #INDEX_STORE_DELAY_MS} of each other are coalesced and written
+ * to the index on a background thread. Changes that the scan couldn't recover are stored
+ * immediately.
+ * <p>
+ * Reading a span updates its last access timestamp in memory and in the index only. Span files are
+ * never renamed when they're read, so a cache hit makes no synchronous file system writes.
+ * <p>
+ * The cache may be shared by many threads. Queries such as {@link #isCached(String, long, long)}
+ * and span lookups don't take the cache's lock, which is only held briefly to change the in-memory
+ * representation. Writers may lock disjoint holes of the same key at once. A writer that wants to
+ * write into a hole locked by another waits for that hole's lock only. {@link Listener}s are
+ * notified on a dedicated thread, so that they never run while the lock is held.
+ * <p>
+ * {@link #release()} must be called when the cache is no longer required, to store any pending
+ * changes to the index and stop these background threads. The threads are daemon threads, so an
+ * unreleased cache doesn't keep the process alive, but changes whose background store is still
+ * pending are then lost.
  */
 public final class SimpleCache implements Cache {
 
+  /**
+   * The delay between a change to spans and the background store of the index that includes it.
+   */
+  private static final long INDEX_STORE_DELAY_MS = 1000;
+
   private final File cacheDir;
   private final CacheEvictor evictor;
-  private final HashMap<String, CacheSpan> lockedSpans;
+  private final HashMap<String, TreeMap<Long, WriteLock>> writeLocks;
   private final CachedContentIndex index;
   private final HashMap<String, ArrayList<Listener>> listeners;
-  private long totalSpace = 0;
-  private CacheException initializationException;
+  private volatile long totalSpace = 0;
+  private volatile boolean initialized;
+  private boolean scanned;
+  private boolean indexStoreScheduled;
+  private volatile CacheException initializationException;
+  private CacheException indexStoreException;
+  private ExecutorService listenerExecutor;
+  private ExecutorService indexStoreExecutor;
 
   /**
    * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
    * the directory cannot be used to store other files.
    *
+   * {@link #release()} must be called when the cache is no longer required.
+   *
    * @param cacheDir A dedicated cache directory.
    * @param evictor The evictor to be used.
    */
@@ -55,6 +97,8 @@ public final class SimpleCache implements Cache {
    * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
    * the directory cannot be used to store other files.
    *
+   * {@link #release()} must be called when the cache is no longer required.
+   *
    * @param cacheDir A dedicated cache directory.
    * @param evictor The evictor to be used.
    * @param secretKey If not null, cache keys will be stored encrypted on filesystem using AES/CBC.
@@ -63,7 +107,7 @@ public final class SimpleCache implements Cache {
   public SimpleCache(File cacheDir, CacheEvictor evictor, byte[] secretKey) {
     this.cacheDir = cacheDir;
     this.evictor = evictor;
-    this.lockedSpans = new HashMap<>();
+    this.writeLocks = new HashMap<>();
     this.index = new CachedContentIndex(cacheDir, secretKey);
     this.listeners = new HashMap<>();
     // Start cache initialization.
@@ -71,14 +115,22 @@ public final class SimpleCache implements Cache {
     new Thread("SimpleCache.initialize()") {
       @Override
       public void run() {
+        boolean scanRequired = false;
         synchronized (SimpleCache.this) {
           conditionVariable.open();
           try {
-            initialize();
+            scanRequired = initialize();
           } catch (CacheException e) {
             initializationException = e;
           }
+          if (!scanRequired) {
+            scanned = true;
+          }
           SimpleCache.this.evictor.onCacheInitialized();
+          initialized = true;
+        }
+        if (scanRequired) {
+          scanCacheDirectory();
         }
       }
     }.start();
@@ -87,12 +139,16 @@ public final class SimpleCache implements Cache {
 
   @Override
   public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey == null) {
-      listenersForKey = new ArrayList<>();
-      listeners.put(key, listenersForKey);
+    if (listenerExecutor == null) {
+      listenerExecutor = newDaemonExecutor("SimpleCache.notifyListeners()");
     }
+    // Lists of listeners are copied on write, so that a notification can use the list of listeners
+    // at the time of the event after it has changed.
+    ArrayList<Listener> listenersForKey = listeners.get(key);
+    listenersForKey = listenersForKey == null ? new ArrayList<Listener>()
+        : new ArrayList<>(listenersForKey);
     listenersForKey.add(listener);
+    listeners.put(key, listenersForKey);
     return getCachedSpans(key);
   }
 
@@ -100,92 +156,189 @@ public final class SimpleCache implements Cache {
   public synchronized void removeListener(String key, Listener listener) {
     ArrayList<Listener> listenersForKey = listeners.get(key);
     if (listenersForKey != null) {
+      listenersForKey = new ArrayList<>(listenersForKey);
       listenersForKey.remove(listener);
       if (listenersForKey.isEmpty()) {
         listeners.remove(key);
+      } else {
+        listeners.put(key, listenersForKey);
       }
     }
   }
 
+  /**
+   * Releases the cache. Any background store of the index that is pending is performed
+   * immediately, and the threads used for storing the index and notifying listeners are stopped
+   * once any notifications that are already pending have been delivered. The cache must not be
+   * used after it has been released.
+   *
+   * @throws CacheException If storing the index failed, either now or in a background store since
+   *     the last change.
+   */
+  public synchronized void release() throws CacheException {
+    listeners.clear();
+    if (listenerExecutor != null) {
+      listenerExecutor.shutdown();
+      listenerExecutor = null;
+    }
+    if (indexStoreExecutor != null) {
+      indexStoreExecutor.shutdownNow();
+      indexStoreExecutor = null;
+    }
+    if (indexStoreScheduled) {
+      indexStoreScheduled = false;
+      index.store();
+    }
+    if (indexStoreException != null) {
+      CacheException exception = indexStoreException;
+      indexStoreException = null;
+      throw exception;
+    }
+  }
+
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    blockUntilInitialized();
     CachedContent cachedContent = index.get(key);
     return cachedContent == null ? null : new TreeSet<CacheSpan>(cachedContent.getSpans());
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
+  public Set<String> getKeys() {
+    blockUntilInitialized();
     return new HashSet<>(index.getKeys());
   }
 
   @Override
-  public synchronized long getCacheSpace() {
+  public long getCacheSpace() {
+    blockUntilInitialized();
     return totalSpace;
   }
 
   @Override
-  public synchronized SimpleCacheSpan startReadWrite(String key, long position)
+  public SimpleCacheSpan startReadWrite(String key, long position)
       throws InterruptedException, CacheException {
-    while (true) {
-      SimpleCacheSpan span = startReadWriteNonBlocking(key, position);
-      if (span != null) {
-        return span;
-      } else {
-        // Write case, lock not available. We'll be woken up when a locked span is released (if the
-        // released lock is for the requested key then we'll be able to make progress) or when a
-        // span is added to the cache (if the span is for the requested key and covers the requested
-        // position, then we'll become a read and be able to make progress).
-        wait();
-      }
-    }
+    return startReadWrite(key, position, C.LENGTH_UNSET, true);
+  }
+
+  /**
+   * Same as {@link #startReadWrite(String, long)}, for a caller that won't write more than {@code
+   * length} bytes. A returned hole is no longer than {@code length}, so that other callers can lock
+   * the data after it at the same time.
+   *
+   * @param key The key of the data being requested.
+   * @param position The position of the data being requested.
+   * @param length The maximum length of the data that will be written, or {@link C#LENGTH_UNSET}
+   *     if unbounded.
+   * @return The {@link CacheSpan}.
+   * @throws InterruptedException
+   */
+  public SimpleCacheSpan startReadWrite(String key, long position, long length)
+      throws InterruptedException, CacheException {
+    return startReadWrite(key, position, length, true);
   }
 
   @Override
-  public synchronized SimpleCacheSpan startReadWriteNonBlocking(String key, long position)
+  public SimpleCacheSpan startReadWriteNonBlocking(String key, long position)
       throws CacheException {
-    if (initializationException != null) {
-      throw initializationException;
+    return startReadWriteNonBlocking(key, position, C.LENGTH_UNSET);
+  }
+
+  /**
+   * Same as {@link #startReadWrite(String, long, long)}. However, if the position is in a hole
+   * locked by another caller, then instead of blocking, this method will return null as the
+   * {@link CacheSpan}.
+   *
+   * @param key The key of the data being requested.
+   * @param position The position of the data being requested.
+   * @param length The maximum length of the data that will be written, or {@link C#LENGTH_UNSET}
+   *     if unbounded.
+   * @return The {@link CacheSpan}. Or null if the cache entry is locked.
+   */
+  public SimpleCacheSpan startReadWriteNonBlocking(String key, long position, long length)
+      throws CacheException {
+    try {
+      return startReadWrite(key, position, length, false);
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e); // Should never happen.
     }
+  }
 
-    SimpleCacheSpan cacheSpan = getSpan(key, position);
+  private SimpleCacheSpan startReadWrite(String key, long position, long length, boolean block)
+      throws InterruptedException, CacheException {
+    blockUntilInitialized();
+    while (true) {
+      if (initializationException != null) {
+        throw initializationException;
+      }
 
-    // Read case.
-    if (cacheSpan.isCached) {
-      // Obtain a new span with updated last access timestamp.
-      SimpleCacheSpan newCacheSpan = index.get(key).touch(cacheSpan);
-      notifySpanTouched(cacheSpan, newCacheSpan);
-      return newCacheSpan;
-    }
+      // Look up the span without holding the lock, then check that it's still current once the lock
+      // is held.
+      SimpleCacheSpan cacheSpan = getSpan(key, position);
+      WriteLock writeLock;
+      int changeCount;
+      synchronized (this) {
+        CachedContent cachedContent = index.get(key);
+        SimpleCacheSpan currentSpan = cachedContent == null
+            ? SimpleCacheSpan.createOpenHole(key, position) : cachedContent.getSpan(position);
+
+        // Read case.
+        if (cacheSpan.isCached || currentSpan.isCached) {
+          if (currentSpan != cacheSpan) {
+            // The span was added, touched or removed since it was looked up.
+            continue;
+          }
+          // Obtain a new span with updated last access timestamp.
+          SimpleCacheSpan newCacheSpan = cachedContent.touch(cacheSpan);
+          index.onSpanTouched(cachedContent, newCacheSpan);
+          notifySpanTouched(cacheSpan, newCacheSpan);
+          storeIndex();
+          return newCacheSpan;
+        }
 
-    // Write case, lock available.
-    if (!lockedSpans.containsKey(key)) {
-      lockedSpans.put(key, cacheSpan);
-      return cacheSpan;
-    }
+        // Write case, lock available.
+        writeLock = getWriteLock(key, position);
+        if (writeLock == null) {
+          return lockHole(currentSpan, length);
+        }
 
-    // Write case, lock not available.
-    return null;
+        // Write case, lock not available.
+        if (!block) {
+          return null;
+        }
+        changeCount = writeLock.getChangeCount();
+      }
+      // We'll be woken up when the lock of the hole is released, or when its holder adds a span to
+      // the cache (if the span covers the requested position, then we'll become a read and be able
+      // to make progress).
+      writeLock.blockUntilChanged(changeCount);
+    }
   }
 
   @Override
   public synchronized File startFile(String key, long position, long maxLength)
       throws CacheException {
-    Assertions.checkState(lockedSpans.containsKey(key));
+    Assertions.checkState(getWriteLock(key, position) != null);
     if (!cacheDir.exists()) {
       // For some reason the cache directory doesn't exist. Make a best effort to create it.
       removeStaleSpansAndCachedContents();
       cacheDir.mkdirs();
     }
     evictor.onStartFile(this, key, position, maxLength);
-    return SimpleCacheSpan.getCacheFile(cacheDir, index.assignIdForKey(key), position,
-        System.currentTimeMillis());
+    int id = index.assignIdForKey(key);
+    File directory = SimpleCacheSpan.getCacheFileDirectory(cacheDir, id);
+    if (!directory.exists()) {
+      directory.mkdir();
+    }
+    return SimpleCacheSpan.getCacheFile(directory, id, position, System.currentTimeMillis());
   }
 
   @Override
   public synchronized void commitFile(File file) throws CacheException {
     SimpleCacheSpan span = SimpleCacheSpan.createCacheEntry(file, index);
     Assertions.checkState(span != null);
-    Assertions.checkState(lockedSpans.containsKey(span.key));
+    WriteLock writeLock = getWriteLock(span.key, span.position);
+    Assertions.checkState(writeLock != null);
     // If the file doesn't exist, don't add it to the in-memory representation.
     if (!file.exists()) {
       return;
@@ -201,14 +354,70 @@ public final class SimpleCache implements Cache {
       Assertions.checkState((span.position + span.length) <= length);
     }
     addSpan(span);
-    index.store();
-    notifyAll();
+    storeIndex();
+    writeLock.onChanged();
   }
 
   @Override
   public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
-    Assertions.checkState(holeSpan == lockedSpans.remove(holeSpan.key));
-    notifyAll();
+    TreeMap<Long, WriteLock> keyWriteLocks = writeLocks.get(holeSpan.key);
+    WriteLock writeLock = keyWriteLocks == null ? null : keyWriteLocks.get(holeSpan.position);
+    Assertions.checkState(writeLock != null && writeLock.holeSpan == holeSpan);
+    keyWriteLocks.remove(holeSpan.position);
+    if (keyWriteLocks.isEmpty()) {
+      writeLocks.remove(holeSpan.key);
+    }
+    writeLock.onChanged();
+  }
+
+  /**
+   * Returns the lock of the locked hole containing a position, or null if the position isn't in a
+   * locked hole.
+   */
+  private WriteLock getWriteLock(String key, long position) {
+    TreeMap<Long, WriteLock> keyWriteLocks = writeLocks.get(key);
+    if (keyWriteLocks == null) {
+      return null;
+    }
+    Map.Entry<Long, WriteLock> floorEntry = keyWriteLocks.floorEntry(position);
+    if (floorEntry == null) {
+      return null;
+    }
+    CacheSpan holeSpan = floorEntry.getValue().holeSpan;
+    return holeSpan.isOpenEnded() || position < holeSpan.position + holeSpan.length
+        ? floorEntry.getValue() : null;
+  }
+
+  /**
+   * Locks a hole for writing. The hole is truncated to the given length, and to end where the next
+   * locked hole in the same content starts.
+   *
+   * @param holeSpan The hole, which must not start in a locked hole.
+   * @param length The maximum length of the locked hole, or {@link C#LENGTH_UNSET} if unbounded.
+   * @return The locked hole.
+   */
+  private SimpleCacheSpan lockHole(SimpleCacheSpan holeSpan, long length) {
+    long end = holeSpan.isOpenEnded() ? Long.MAX_VALUE : holeSpan.position + holeSpan.length;
+    if (length != C.LENGTH_UNSET) {
+      end = Math.min(end, holeSpan.position + length);
+    }
+    TreeMap<Long, WriteLock> keyWriteLocks = writeLocks.get(holeSpan.key);
+    if (keyWriteLocks == null) {
+      keyWriteLocks = new TreeMap<>();
+      writeLocks.put(holeSpan.key, keyWriteLocks);
+    } else {
+      Long nextLockedPosition = keyWriteLocks.higherKey(holeSpan.position);
+      if (nextLockedPosition != null) {
+        end = Math.min(end, nextLockedPosition);
+      }
+    }
+    if (end != Long.MAX_VALUE
+        && (holeSpan.isOpenEnded() || end < holeSpan.position + holeSpan.length)) {
+      holeSpan = SimpleCacheSpan.createClosedHole(holeSpan.key, holeSpan.position,
+          end - holeSpan.position);
+    }
+    keyWriteLocks.put(holeSpan.position, new WriteLock(holeSpan));
+    return holeSpan;
   }
 
   /**
@@ -220,57 +429,244 @@ public final class SimpleCache implements Cache {
    * not contained by an existing entry, then the returned {@link SimpleCacheSpan} defines the
    * maximum extents of the hole in the cache.
    *
+   * <p>The lookup is made without holding the lock, which is only taken if the file of the span has
+   * gone missing. The span may therefore be out of date by the time it's returned.
+   *
    * @param key The key of the span being requested.
    * @param position The position of the span being requested.
    * @return The corresponding cache {@link SimpleCacheSpan}.
    */
   private SimpleCacheSpan getSpan(String key, long position) throws CacheException {
-    CachedContent cachedContent = index.get(key);
-    if (cachedContent == null) {
-      return SimpleCacheSpan.createOpenHole(key, position);
-    }
     while (true) {
+      CachedContent cachedContent = index.get(key);
+      if (cachedContent == null) {
+        return SimpleCacheSpan.createOpenHole(key, position);
+      }
       SimpleCacheSpan span = cachedContent.getSpan(position);
-      if (span.isCached && !span.file.exists()) {
+      if (!span.isCached || span.file.exists()) {
+        return span;
+      }
+      synchronized (this) {
+        if (index.get(key) != cachedContent || cachedContent.getSpan(position) != span) {
+          // The span was touched or removed since it was looked up.
+          continue;
+        }
+        if (!scanned && !Thread.currentThread().isInterrupted()) {
+          // The file may have been renamed by an access that the index didn't record, in a version
+          // of the cache that renamed span files when they were read. Wait for the scan of the
+          // cache directory to reconcile them.
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          continue;
+        }
         // The file has been deleted from under us. It's likely that other files will have been
         // deleted too, so scan the whole in-memory representation.
         removeStaleSpansAndCachedContents();
-        continue;
       }
-      return span;
     }
   }
 
   /**
    * Ensures that the cache's in-memory representation has been initialized.
+   *
+   * @return Whether the in-memory representation was restored from the index alone, in which case
+   *     the cache directory still needs to be scanned by {@link #scanCacheDirectory()}.
    */
-  private void initialize() throws CacheException {
+  private boolean initialize() throws CacheException {
     if (!cacheDir.exists()) {
       cacheDir.mkdirs();
-      return;
+      return false;
     }
 
-    index.load();
+    if (index.load()) {
+      ArrayList<SimpleCacheSpan> spans = new ArrayList<>();
+      for (CachedContent cachedContent : index.getAll()) {
+        spans.addAll(cachedContent.getSpans());
+        cachedContent.getSpans().clear();
+      }
+      for (SimpleCacheSpan span : spans) {
+        CachedContent cachedContent = index.get(span.key);
+        // The evictor may have removed the content while earlier spans were being added.
+        if (cachedContent != null) {
+          cachedContent.addSpan(span);
+          totalSpace += span.length;
+          notifySpanAdded(span);
+        }
+      }
+      return true;
+    }
 
-    File[] files = cacheDir.listFiles();
-    if (files == null) {
-      return;
+    // The index doesn't describe the spans, so they must be restored from the files.
+    HashSet<File> scannedFiles = new HashSet<>();
+    for (int i = 0; i <= SimpleCacheSpan.SUBDIRECTORY_COUNT; i++) {
+      File directory = getScanDirectory(i);
+      File[] files = directory.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          scanFile(file, directory == cacheDir, scannedFiles);
+        }
+      }
+    }
+    finishScan(scannedFiles);
+    return false;
+  }
+
+  /**
+   * Reconciles the in-memory representation restored from the index with the files in the cache
+   * directory. Each directory is listed without holding the lock, which is then only held while
+   * the listed files are matched against the in-memory representation.
+   */
+  private void scanCacheDirectory() {
+    HashSet<File> scannedFiles = new HashSet<>();
+    // Files of spans that are added while the scan is in progress are missing from this
+    // set, but are still recognized by scanFile.
+    HashSet<File> indexedFiles = new HashSet<>();
+    synchronized (this) {
+      for (CachedContent cachedContent : index.getAll()) {
+        for (SimpleCacheSpan span : cachedContent.getSpans()) {
+          indexedFiles.add(span.file);
+        }
+      }
     }
-    for (File file : files) {
-      if (file.getName().equals(CachedContentIndex.FILE_NAME)) {
-        continue;
+    try {
+      for (int i = 0; i <= SimpleCacheSpan.SUBDIRECTORY_COUNT; i++) {
+        File directory = getScanDirectory(i);
+        File[] files = directory.listFiles();
+        if (files == null) {
+          continue;
+        }
+        synchronized (this) {
+          for (File file : files) {
+            if (indexedFiles.contains(file)) {
+              scannedFiles.add(file);
+            } else {
+              scanFile(file, directory == cacheDir, scannedFiles);
+            }
+          }
+        }
+      }
+      synchronized (this) {
+        finishScan(scannedFiles);
       }
-      SimpleCacheSpan span = file.length() > 0
-          ? SimpleCacheSpan.createCacheEntry(file, index) : null;
-      if (span != null) {
-        addSpan(span);
+    } catch (CacheException e) {
+      synchronized (this) {
+        initializationException = e;
+      }
+    } finally {
+      synchronized (this) {
+        scanned = true;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Returns the directory to scan at the given index, where the subdirectories in which span files
+   * are stored come first and the cache directory itself last.
+   */
+  private File getScanDirectory(int index) {
+    return index < SimpleCacheSpan.SUBDIRECTORY_COUNT
+        ? SimpleCacheSpan.getCacheFileDirectory(cacheDir, index) : cacheDir;
+  }
+
+  /**
+   * Adds a file found in the cache directory that isn't known to the in-memory representation, if
+   * it's a valid span file that doesn't overlap an existing span. Other files are deleted. Span
+   * files found directly in the cache directory, as written by earlier versions, are moved to the
+   * subdirectory for their content.
+   *
+   * @param file The file.
+   * @param inCacheDir Whether the file is directly in the cache directory.
+   * @param scannedFiles The files of the spans in the in-memory representation that have been found
+   *     so far, to which the file is added if it's a span file.
+   */
+  private void scanFile(File file, boolean inCacheDir, HashSet<File> scannedFiles) {
+    if (inCacheDir
+        && (file.getName().startsWith(CachedContentIndex.FILE_NAME) || file.isDirectory())) {
+      return;
+    }
+    SimpleCacheSpan span = SimpleCacheSpan.createCacheEntry(file, index);
+    if (span == null) {
+      file.delete();
+      return;
+    }
+    if (writeLocks.containsKey(span.key)) {
+      // The file may be being written.
+      return;
+    }
+    if (span.length == 0) {
+      span.file.delete();
+      return;
+    }
+    CachedContent cachedContent = index.get(span.key);
+    SimpleCacheSpan existingSpan = cachedContent.getSpan(span.position);
+    if (existingSpan.isCached) {
+      if (existingSpan.file.equals(span.file)) {
+        scannedFiles.add(span.file);
+      } else if (existingSpan.position == span.position && existingSpan.length == span.length
+          && !existingSpan.file.exists()) {
+        // The file was renamed by an access that the index didn't record, in a version of the
+        // cache that renamed span files when they were read.
+        cachedContent.addSpan(span);
+        index.onSpanAdded(cachedContent, span);
+        scannedFiles.add(span.file);
+        notifySpanTouched(existingSpan, span);
       } else {
-        file.delete();
+        span.file.delete();
       }
+      return;
+    }
+    if (!existingSpan.isOpenEnded() && existingSpan.length < span.length) {
+      // The span overlaps an existing span.
+      span.file.delete();
+      return;
     }
+    if (inCacheDir) {
+      File directory = SimpleCacheSpan.getCacheFileDirectory(cacheDir, cachedContent.id);
+      File newFile = SimpleCacheSpan.getCacheFile(directory, cachedContent.id, span.position,
+          span.fileTimestamp);
+      directory.mkdir();
+      if (!span.file.renameTo(newFile)) {
+        span.file.delete();
+        return;
+      }
+      span = SimpleCacheSpan.createCacheEntry(newFile, index);
+    }
+    addSpan(span);
+    scannedFiles.add(span.file);
+  }
 
+  /**
+   * Completes a scan of the cache directory, removing spans whose files weren't found and no longer
+   * exist, and storing the index.
+   *
+   * @param scannedFiles The files of the spans in the in-memory representation that were found by
+   *     the scan.
+   */
+  private void finishScan(HashSet<File> scannedFiles) throws CacheException {
+    ArrayList<CacheSpan> spansToBeRemoved = new ArrayList<>();
+    for (CachedContent cachedContent : index.getAll()) {
+      for (CacheSpan span : cachedContent.getSpans()) {
+        if (!scannedFiles.contains(span.file) && !span.file.exists()) {
+          spansToBeRemoved.add(span);
+        }
+      }
+    }
+    for (CacheSpan span : spansToBeRemoved) {
+      removeSpan(span, false);
+    }
     index.removeEmpty();
-    index.store();
+    storeIndex();
+    if (writeLocks.isEmpty()) {
+      // Remove subdirectories that no longer contain any files. Deleting a non-empty directory
+      // fails, leaving it in place.
+      for (int i = 0; i < SimpleCacheSpan.SUBDIRECTORY_COUNT; i++) {
+        SimpleCacheSpan.getCacheFileDirectory(cacheDir, i).delete();
+      }
+    }
   }
 
   /**
@@ -279,25 +675,79 @@ public final class SimpleCache implements Cache {
    * @param span The span to be added.
    */
   private void addSpan(SimpleCacheSpan span) {
-    index.add(span.key).addSpan(span);
+    CachedContent cachedContent = index.add(span.key);
+    cachedContent.addSpan(span);
+    index.onSpanAdded(cachedContent, span);
     totalSpace += span.length;
     notifySpanAdded(span);
   }
 
   private void removeSpan(CacheSpan span, boolean removeEmptyCachedContent) throws CacheException {
     CachedContent cachedContent = index.get(span.key);
-    Assertions.checkState(cachedContent.removeSpan(span));
-    totalSpace -= span.length;
+    // Spans can be obtained without holding the lock, so the given span may have been replaced by a
+    // touch since. The evictor and listeners know the span by its current instance.
+    SimpleCacheSpan currentSpan = cachedContent.getSpan(span.position);
+    Assertions.checkState(currentSpan.isCached && currentSpan.position == span.position);
+    cachedContent.removeSpan(currentSpan);
+    index.onSpanRemoved(cachedContent, currentSpan);
+    totalSpace -= currentSpan.length;
     if (removeEmptyCachedContent && cachedContent.isEmpty()) {
       index.removeEmpty(cachedContent.key);
-      index.store();
     }
-    notifySpanRemoved(span);
+    notifySpanRemoved(currentSpan);
   }
 
   @Override
   public synchronized void removeSpan(CacheSpan span) throws CacheException {
     removeSpan(span, true);
+    storeIndex();
+  }
+
+  /**
+   * Stores the changes made to the index. Changes that couldn't be recovered by scanning the cache
+   * directory are stored immediately. Otherwise a background store is scheduled, if there isn't one
+   * pending already, so that bursts of changes such as evictions are written together.
+   *
+   * @throws CacheException If storing the index failed, either now or in a background store since
+   *     the last call.
+   */
+  private void storeIndex() throws CacheException {
+    if (indexStoreException != null) {
+      CacheException exception = indexStoreException;
+      indexStoreException = null;
+      throw exception;
+    }
+    if (index.hasUnrecoverableChanges()) {
+      index.store();
+    } else if (!indexStoreScheduled) {
+      indexStoreScheduled = true;
+      if (indexStoreExecutor == null) {
+        indexStoreExecutor = newDaemonExecutor("SimpleCache.storeIndex()");
+      }
+      indexStoreExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Thread.sleep(INDEX_STORE_DELAY_MS);
+          } catch (InterruptedException e) {
+            // The cache has been released, which stores the index itself.
+            return;
+          }
+          synchronized (SimpleCache.this) {
+            if (!indexStoreScheduled) {
+              // The cache has been released since the store was scheduled.
+              return;
+            }
+            indexStoreScheduled = false;
+            try {
+              index.store();
+            } catch (CacheException e) {
+              indexStoreException = e;
+            }
+          }
+        }
+      });
+    }
   }
 
   /**
@@ -314,51 +764,68 @@ public final class SimpleCache implements Cache {
       }
     }
     for (CacheSpan span : spansToBeRemoved) {
-      // Remove span but not CachedContent to prevent multiple index.store() calls.
+      // Remove span but not CachedContent, so that empty CachedContents are removed together.
       removeSpan(span, false);
     }
     index.removeEmpty();
-    index.store();
+    storeIndex();
   }
 
-  private void notifySpanRemoved(CacheSpan span) {
-    ArrayList<Listener> keyListeners = listeners.get(span.key);
+  private void notifySpanRemoved(final CacheSpan span) {
+    final ArrayList<Listener> keyListeners = listeners.get(span.key);
     if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanRemoved(this, span);
-      }
+      listenerExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = keyListeners.size() - 1; i >= 0; i--) {
+            keyListeners.get(i).onSpanRemoved(SimpleCache.this, span);
+          }
+        }
+      });
     }
     evictor.onSpanRemoved(this, span);
   }
 
-  private void notifySpanAdded(SimpleCacheSpan span) {
-    ArrayList<Listener> keyListeners = listeners.get(span.key);
+  private void notifySpanAdded(final SimpleCacheSpan span) {
+    final ArrayList<Listener> keyListeners = listeners.get(span.key);
     if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanAdded(this, span);
-      }
+      listenerExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = keyListeners.size() - 1; i >= 0; i--) {
+            keyListeners.get(i).onSpanAdded(SimpleCache.this, span);
+          }
+        }
+      });
     }
     evictor.onSpanAdded(this, span);
   }
 
-  private void notifySpanTouched(SimpleCacheSpan oldSpan, CacheSpan newSpan) {
-    ArrayList<Listener> keyListeners = listeners.get(oldSpan.key);
+  private void notifySpanTouched(final SimpleCacheSpan oldSpan, final CacheSpan newSpan) {
+    final ArrayList<Listener> keyListeners = listeners.get(oldSpan.key);
     if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanTouched(this, oldSpan, newSpan);
-      }
+      listenerExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = keyListeners.size() - 1; i >= 0; i--) {
+            keyListeners.get(i).onSpanTouched(SimpleCache.this, oldSpan, newSpan);
+          }
+        }
+      });
     }
     evictor.onSpanTouched(this, oldSpan, newSpan);
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
+  public boolean isCached(String key, long position, long length) {
+    blockUntilInitialized();
     CachedContent cachedContent = index.get(key);
     return cachedContent != null && cachedContent.getCachedBytes(position, length) >= length;
   }
 
   @Override
-  public synchronized long getCachedBytes(String key, long position, long length) {
+  public long getCachedBytes(String key, long position, long length) {
+    blockUntilInitialized();
     CachedContent cachedContent = index.get(key);
     return cachedContent != null ? cachedContent.getCachedBytes(position, length) : -length;
   }
@@ -366,12 +833,113 @@ public final class SimpleCache implements Cache {
   @Override
   public synchronized void setContentLength(String key, long length) throws CacheException {
     index.setContentLength(key, length);
-    index.store();
+    storeIndex();
   }
 
   @Override
-  public synchronized long getContentLength(String key) {
+  public long getContentLength(String key) {
+    blockUntilInitialized();
     return index.getContentLength(key);
   }
 
+  /**
+   * Blocks until the in-memory representation has been initialized. Initialization holds the lock
+   * throughout, so only methods that read the in-memory representation without holding the lock
+   * need to call this.
+   */
+  private void blockUntilInitialized() {
+    if (!initialized) {
+      synchronized (this) {
+        Assertions.checkState(initialized);
+      }
+    }
+  }
+
+  /**
+   * Blocks until the listeners have been notified of all events that have occurred so far.
+   */
+  //@VisibleForTesting
+  /*package*/ void blockUntilListenersNotified() throws InterruptedException {
+    ExecutorService listenerExecutor;
+    synchronized (this) {
+      listenerExecutor = this.listenerExecutor;
+    }
+    if (listenerExecutor != null) {
+      final ConditionVariable conditionVariable = new ConditionVariable();
+      listenerExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          conditionVariable.open();
+        }
+      });
+      conditionVariable.block();
+    }
+  }
+
+  /**
+   * Blocks until the scan of the cache directory that follows initialization has completed.
+   */
+  //@VisibleForTesting
+  /*package*/ synchronized void blockUntilScanned() throws InterruptedException {
+    while (!scanned) {
+      wait();
+    }
+  }
+
+  /**
+   * Instantiates a new single threaded executor whose daemon thread has the specified name.
+   */
+  private static ExecutorService newDaemonExecutor(final String threadName) {
+    return Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, threadName);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * The lock held by the writer of a hole. Other writers of the hole wait on it, rather than on the
+   * cache, until its holder adds a span to the cache or releases it.
+   */
+  private static final class WriteLock {
+
+    public final CacheSpan holeSpan;
+
+    private int changeCount;
+
+    public WriteLock(CacheSpan holeSpan) {
+      this.holeSpan = holeSpan;
+    }
+
+    /**
+     * Returns a count of the changes that waiting writers have been woken up for.
+     */
+    public synchronized int getChangeCount() {
+      return changeCount;
+    }
+
+    /**
+     * Wakes up waiting writers, after the holder has added a span or released the lock.
+     */
+    public synchronized void onChanged() {
+      changeCount++;
+      notifyAll();
+    }
+
+    /**
+     * Blocks until the change count differs from the given count.
+     *
+     * @param changeCount A change count previously returned by {@link #getChangeCount()}.
+     */
+    public synchronized void blockUntilChanged(int changeCount) throws InterruptedException {
+      while (this.changeCount == changeCount) {
+        wait();
+      }
+    }
+
+  }
+
 }
@@ -24,9 +24,28 @@ import java.util.regex.Pattern;
 
 /**
  * This class stores span metadata in filename.
+ * <p>
+ * The timestamp in the name of a span file is the time at which the file was written. The last
+ * access timestamp of a span starts out equal to it, but later accesses only update the copy held
+ * in memory and in the {@link CachedContentIndex}, so that reading from the cache never requires
+ * the file to be renamed.
+ * <p>
+ * Span files are spread over {@link #SUBDIRECTORY_COUNT} subdirectories of the cache directory
+ * according to the id of their content, so that no single directory grows too large to list.
  */
 /*package*/ final class SimpleCacheSpan extends CacheSpan {
 
+  /**
+   * The number of subdirectories of the cache directory in which span files are stored.
+   */
+  public static final int SUBDIRECTORY_COUNT = 10;
+
+  /**
+   * The timestamp in the name of the span's file, or {@link C#TIME_UNSET} if {@link #isCached} is
+   * false.
+   */
+  public final long fileTimestamp;
+
   private static final String SUFFIX = ".v3.exo";
   private static final Pattern CACHE_FILE_PATTERN_V1 = Pattern.compile(
       "^(.+)\\.(\\d+)\\.(\\d+)\\.v1\\.exo$", Pattern.DOTALL);
@@ -40,16 +59,24 @@ import java.util.regex.Pattern;
     return new File(cacheDir, id + "." + position + "." + lastAccessTimestamp + SUFFIX);
   }
 
+  /**
+   * Returns the subdirectory of {@code cacheDir} in which span files for the content with the given
+   * id are stored.
+   */
+  public static File getCacheFileDirectory(File cacheDir, int id) {
+    return new File(cacheDir, Integer.toString(id % SUBDIRECTORY_COUNT));
+  }
+
   public static SimpleCacheSpan createLookup(String key, long position) {
-    return new SimpleCacheSpan(key, position, C.LENGTH_UNSET, C.TIME_UNSET, null);
+    return new SimpleCacheSpan(key, position, C.LENGTH_UNSET, C.TIME_UNSET, C.TIME_UNSET, null);
   }
 
   public static SimpleCacheSpan createOpenHole(String key, long position) {
-    return new SimpleCacheSpan(key, position, C.LENGTH_UNSET, C.TIME_UNSET, null);
+    return new SimpleCacheSpan(key, position, C.LENGTH_UNSET, C.TIME_UNSET, C.TIME_UNSET, null);
   }
 
   public static SimpleCacheSpan createClosedHole(String key, long position, long length) {
-    return new SimpleCacheSpan(key, position, length, C.TIME_UNSET, null);
+    return new SimpleCacheSpan(key, position, length, C.TIME_UNSET, C.TIME_UNSET, null);
   }
 
   /**
@@ -77,8 +104,31 @@ import java.util.regex.Pattern;
     long length = file.length();
     int id = Integer.parseInt(matcher.group(1));
     String key = index.getKeyForId(id);
-    return key == null ? null : new SimpleCacheSpan(key, Long.parseLong(matcher.group(2)), length,
-        Long.parseLong(matcher.group(3)), file);
+    if (key == null) {
+      return null;
+    }
+    long fileTimestamp = Long.parseLong(matcher.group(3));
+    return new SimpleCacheSpan(key, Long.parseLong(matcher.group(2)), length, fileTimestamp,
+        fileTimestamp, file);
+  }
+
+  /**
+   * Creates a cache span for a file whose metadata was stored in the {@link CachedContentIndex}.
+   * The file is not accessed.
+   *
+   * @param cacheDir The cache directory.
+   * @param id The id of the content.
+   * @param key The key of the content.
+   * @param position The position of the span in the content.
+   * @param length The length of the span.
+   * @param fileTimestamp The timestamp in the name of the span's file.
+   * @param lastAccessTimestamp The last access timestamp of the span.
+   * @return The span.
+   */
+  public static SimpleCacheSpan createCacheEntry(File cacheDir, int id, String key, long position,
+      long length, long fileTimestamp, long lastAccessTimestamp) {
+    File file = getCacheFile(getCacheFileDirectory(cacheDir, id), id, position, fileTimestamp);
+    return new SimpleCacheSpan(key, position, length, fileTimestamp, lastAccessTimestamp, file);
   }
 
   private static File upgradeFile(File file, CachedContentIndex index) {
@@ -106,24 +156,23 @@ import java.util.regex.Pattern;
     return newCacheFile;
   }
 
-  private SimpleCacheSpan(String key, long position, long length, long lastAccessTimestamp,
-      File file) {
+  private SimpleCacheSpan(String key, long position, long length, long fileTimestamp,
+      long lastAccessTimestamp, File file) {
     super(key, position, length, lastAccessTimestamp, file);
+    this.fileTimestamp = fileTimestamp;
   }
 
   /**
-   * Returns a copy of this CacheSpan whose last access time stamp is set to current time. This
-   * doesn't copy or change the underlying cache file.
+   * Returns a copy of this CacheSpan with the given last access time stamp. This doesn't copy or
+   * change the underlying cache file, which the copy shares.
    *
-   * @param id The cache file id.
+   * @param lastAccessTimestamp The last access time stamp of the copy.
    * @return A {@link SimpleCacheSpan} with updated last access time stamp.
    * @throws IllegalStateException If called on a non-cached span (i.e. {@link #isCached} is false).
    */
-  public SimpleCacheSpan copyWithUpdatedLastAccessTime(int id) {
+  public SimpleCacheSpan copyWithLastAccessTimestamp(long lastAccessTimestamp) {
     Assertions.checkState(isCached);
-    long now = System.currentTimeMillis();
-    File newCacheFile = getCacheFile(file.getParentFile(), id, position, now);
-    return new SimpleCacheSpan(key, position, length, now, newCacheFile);
+    return new SimpleCacheSpan(key, position, length, fileTimestamp, lastAccessTimestamp, file);
   }
 
 }
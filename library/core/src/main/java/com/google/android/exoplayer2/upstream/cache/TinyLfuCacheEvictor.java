@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Evicts cache files based on how recently and how frequently they're used, so that data that's
+ * read once, such as a long stream that's watched through once, doesn't flush out data that's read
+ * repeatedly.
+ * <p>
+ * New spans enter a small least recently used window. Spans pushed out of the window are only
+ * admitted to the main part of the cache if they've been used more frequently than the spans they
+ * would replace, and are evicted otherwise. The main part of the cache is split into a probationary
+ * segment, and a protected segment that holds spans that were read again while probationary.
+ * Spans are evicted from the probationary segment first, and spans pushed out of the protected
+ * segment become probationary again.
+ * <p>
+ * Use frequencies are estimated per span, using a compact {@link FrequencySketch} that decays
+ * over time. Frequencies aren't persisted, so spans restored when the cache is initialized start
+ * out as probationary in order of their last access timestamps.
+ */
+public final class TinyLfuCacheEvictor implements CacheEvictor {
+
+  /**
+   * The default fraction of the maximum size used by the window.
+   */
+  public static final float DEFAULT_WINDOW_FRACTION = 0.1f;
+  /**
+   * The default fraction of the main part of the cache used by the protected segment.
+   */
+  public static final float DEFAULT_PROTECTED_FRACTION = 0.8f;
+
+  private static final int INITIAL_SKETCH_CAPACITY = 256;
+
+  private final long maxBytes;
+  private final long maxWindowBytes;
+  private final long maxProtectedBytes;
+  private final FrequencySketch sketch;
+  // Each segment holds its spans in order of last use, least recently used first.
+  private final LinkedHashSet<CacheSpan> window;
+  private final LinkedHashSet<CacheSpan> probation;
+  private final LinkedHashSet<CacheSpan> protectedSpans;
+  // Spans pushed out of the window that have yet to be admitted to the main part of the cache. They
+  // are at the end of the probationary segment, in the same order.
+  private final ArrayDeque<CacheSpan> candidates;
+
+  private boolean initialized;
+  private long currentSize;
+  private long windowSize;
+  private long protectedSize;
+
+  /**
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public TinyLfuCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_WINDOW_FRACTION, DEFAULT_PROTECTED_FRACTION);
+  }
+
+  /**
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param windowFraction The fraction of the maximum size used by the window.
+   * @param protectedFraction The fraction of the main part of the cache used by the protected
+   *     segment.
+   */
+  public TinyLfuCacheEvictor(long maxBytes, float windowFraction, float protectedFraction) {
+    this.maxBytes = maxBytes;
+    maxWindowBytes = (long) (maxBytes * windowFraction);
+    maxProtectedBytes = (long) ((maxBytes - maxWindowBytes) * protectedFraction);
+    sketch = new FrequencySketch(INITIAL_SKETCH_CAPACITY);
+    window = new LinkedHashSet<>();
+    probation = new LinkedHashSet<>();
+    protectedSpans = new LinkedHashSet<>();
+    candidates = new ArrayDeque<>();
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Spans restored by the cache were added to the probationary segment in no particular order.
+    ArrayList<CacheSpan> restoredSpans = new ArrayList<>(probation);
+    Collections.sort(restoredSpans, new Comparator<CacheSpan>() {
+      @Override
+      public int compare(CacheSpan lhs, CacheSpan rhs) {
+        if (lhs.lastAccessTimestamp != rhs.lastAccessTimestamp) {
+          return lhs.lastAccessTimestamp < rhs.lastAccessTimestamp ? -1 : 1;
+        }
+        return lhs.compareTo(rhs);
+      }
+    });
+    probation.clear();
+    probation.addAll(restoredSpans);
+    // Any excess is evicted when the cache is next written to.
+    initialized = true;
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long maxLength) {
+    evictCache(cache, maxLength);
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    currentSize += span.length;
+    if (!initialized) {
+      probation.add(span);
+      return;
+    }
+    sketch.ensureCapacity(window.size() + probation.size() + protectedSpans.size() + 1);
+    sketch.increment(hashCode(span));
+    window.add(span);
+    windowSize += span.length;
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    currentSize -= span.length;
+    if (window.remove(span)) {
+      windowSize -= span.length;
+    } else if (protectedSpans.remove(span)) {
+      protectedSize -= span.length;
+    } else if (probation.remove(span) && !candidates.isEmpty()) {
+      candidates.remove(span);
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    sketch.increment(hashCode(newSpan));
+    if (window.remove(oldSpan)) {
+      window.add(newSpan);
+    } else if (protectedSpans.remove(oldSpan)) {
+      protectedSpans.add(newSpan);
+    } else if (probation.remove(oldSpan)) {
+      // The span has been read again, so promote it to the protected segment, making room by
+      // demoting the least recently used protected spans.
+      protectedSpans.add(newSpan);
+      protectedSize += newSpan.length;
+      while (protectedSize > maxProtectedBytes && protectedSpans.size() > 1) {
+        CacheSpan demotedSpan = removeFirst(protectedSpans);
+        protectedSize -= demotedSpan.length;
+        probation.add(demotedSpan);
+      }
+    }
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    if (!initialized) {
+      return;
+    }
+    while (windowSize > maxWindowBytes) {
+      CacheSpan candidate = removeFirst(window);
+      windowSize -= candidate.length;
+      probation.add(candidate);
+      candidates.add(candidate);
+    }
+    while (currentSize + requiredSpace > maxBytes && currentSize > 0) {
+      CacheSpan candidate = candidates.peekFirst();
+      CacheSpan victim = getVictim(candidate);
+      CacheSpan spanToRemove;
+      if (candidate == null) {
+        spanToRemove = victim;
+      } else if (victim == null) {
+        spanToRemove = candidate;
+      } else {
+        // Admit the candidate only if it's more likely to be used than the victim.
+        spanToRemove = sketch.frequency(hashCode(candidate)) > sketch.frequency(hashCode(victim))
+            ? victim : candidate;
+      }
+      try {
+        cache.removeSpan(spanToRemove);
+      } catch (CacheException e) {
+        // do nothing.
+      }
+    }
+    // Candidates that weren't evicted have been admitted.
+    candidates.clear();
+  }
+
+  /**
+   * Returns the span that should be evicted to make room for a candidate, or null if there's no
+   * span other than candidates.
+   */
+  private CacheSpan getVictim(CacheSpan candidate) {
+    if (!probation.isEmpty()) {
+      CacheSpan span = probation.iterator().next();
+      if (span != candidate) {
+        return span;
+      }
+    }
+    if (!protectedSpans.isEmpty()) {
+      return protectedSpans.iterator().next();
+    }
+    return window.isEmpty() ? null : window.iterator().next();
+  }
+
+  private static CacheSpan removeFirst(LinkedHashSet<CacheSpan> spans) {
+    Iterator<CacheSpan> iterator = spans.iterator();
+    CacheSpan span = iterator.next();
+    iterator.remove();
+    return span;
+  }
+
+  private static int hashCode(CacheSpan span) {
+    return 31 * span.key.hashCode() + (int) (span.position ^ (span.position >>> 32));
+  }
+
+}
@@ -22,6 +22,8 @@ import javax.crypto.Cipher;
 
 /**
  * A wrapping {@link DataSink} that encrypts the data being consumed.
+ * <p>
+ * The cipher is created on the first call to {@link #open(DataSpec)} and reused by later calls.
  */
 public final class AesCipherDataSink implements DataSink {
 
@@ -64,8 +66,10 @@ public final class AesCipherDataSink implements DataSink {
   public void open(DataSpec dataSpec) throws IOException {
     wrappedDataSink.open(dataSpec);
     long nonce = CryptoUtil.getFNV64Hash(dataSpec.key);
-    cipher = new AesFlushingCipher(Cipher.ENCRYPT_MODE, secretKey, nonce,
-        dataSpec.absoluteStreamPosition);
+    if (cipher == null) {
+      cipher = new AesFlushingCipher(Cipher.ENCRYPT_MODE, secretKey);
+    }
+    cipher.reset(nonce, dataSpec.absoluteStreamPosition);
   }
 
   @Override
@@ -88,7 +92,6 @@ public final class AesCipherDataSink implements DataSink {
 
   @Override
   public void close() throws IOException {
-    cipher = null;
     wrappedDataSink.close();
   }
 
@@ -24,6 +24,8 @@ import javax.crypto.Cipher;
 
 /**
  * A {@link DataSource} that decrypts the data read from an upstream source.
+ * <p>
+ * The cipher is created on the first call to {@link #open(DataSpec)} and reused by later calls.
  */
 public final class AesCipherDataSource implements DataSource {
 
@@ -41,8 +43,10 @@ public final class AesCipherDataSource implements DataSource {
   public long open(DataSpec dataSpec) throws IOException {
     long dataLength = upstream.open(dataSpec);
     long nonce = CryptoUtil.getFNV64Hash(dataSpec.key);
-    cipher = new AesFlushingCipher(Cipher.DECRYPT_MODE, secretKey, nonce,
-        dataSpec.absoluteStreamPosition);
+    if (cipher == null) {
+      cipher = new AesFlushingCipher(Cipher.DECRYPT_MODE, secretKey);
+    }
+    cipher.reset(nonce, dataSpec.absoluteStreamPosition);
     return dataLength;
   }
 
@@ -61,7 +65,6 @@ public final class AesCipherDataSource implements DataSource {
 
   @Override
   public void close() throws IOException {
-    cipher = null;
     upstream.close();
   }
 
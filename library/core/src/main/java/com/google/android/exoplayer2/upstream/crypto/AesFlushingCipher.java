@@ -31,34 +31,81 @@ import javax.crypto.spec.SecretKeySpec;
  *
  * Unlike a regular {@link Cipher}, the update methods of this class are guaranteed to process all
  * of the bytes input (and hence output the same number of bytes).
+ * <p>
+ * An instance can be repositioned to any offset in any stream by calling {@link #reset(long,
+ * long)}, which reuses the underlying {@link Cipher} and computes the counter for the offset
+ * directly, so that random access neither creates a new {@link Cipher} nor replays the keystream.
+ * The update methods don't allocate.
  */
 public final class AesFlushingCipher {
 
+  private final int mode;
   private final Cipher cipher;
+  private final SecretKeySpec secretKeySpec;
   private final int blockSize;
   private final byte[] zerosBlock;
   private final byte[] flushedBlock;
+  private final byte[] initializationVector;
 
   private int pendingXorBytes;
 
+  /**
+   * Creates an instance positioned at an offset in a stream.
+   *
+   * @param mode The mode, either {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+   * @param secretKey The key data.
+   * @param nonce The nonce of the stream.
+   * @param offset The offset in the stream.
+   */
   public AesFlushingCipher(int mode, byte[] secretKey, long nonce, long offset) {
+    this(mode, secretKey);
+    reset(nonce, offset);
+  }
+
+  /**
+   * Creates an instance that must be positioned by calling {@link #reset(long, long)} before it's
+   * updated.
+   *
+   * @param mode The mode, either {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+   * @param secretKey The key data.
+   */
+  public AesFlushingCipher(int mode, byte[] secretKey) {
+    this.mode = mode;
     try {
       cipher = Cipher.getInstance("AES/CTR/NoPadding");
-      blockSize = cipher.getBlockSize();
-      zerosBlock = new byte[blockSize];
-      flushedBlock = new byte[blockSize];
-      long counter = offset / blockSize;
-      int startPadding = (int) (offset % blockSize);
-      cipher.init(mode, new SecretKeySpec(secretKey, cipher.getAlgorithm().split("/")[0]),
-          new IvParameterSpec(getInitializationVector(nonce, counter)));
-      if (startPadding != 0) {
-        updateInPlace(new byte[startPadding], 0, startPadding);
-      }
-    } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException
-        | InvalidAlgorithmParameterException e) {
+    } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+      // Should never happen.
+      throw new RuntimeException(e);
+    }
+    secretKeySpec = new SecretKeySpec(secretKey, cipher.getAlgorithm().split("/")[0]);
+    blockSize = cipher.getBlockSize();
+    zerosBlock = new byte[blockSize];
+    flushedBlock = new byte[blockSize];
+    initializationVector = new byte[16];
+  }
+
+  /**
+   * Positions the cipher at an offset in a stream.
+   *
+   * @param nonce The nonce of the stream.
+   * @param offset The offset in the stream.
+   */
+  public void reset(long nonce, long offset) {
+    long counter = offset / blockSize;
+    int startPadding = (int) (offset % blockSize);
+    ByteBuffer.wrap(initializationVector).putLong(nonce).putLong(counter);
+    try {
+      cipher.init(mode, secretKeySpec, new IvParameterSpec(initializationVector));
+    } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
       // Should never happen.
       throw new RuntimeException(e);
     }
+    pendingXorBytes = 0;
+    if (startPadding != 0) {
+      // Skip to the offset within the first block. The output is discarded, so flushedBlock can
+      // receive it, even if the cipher has to be flushed into flushedBlock to process the input.
+      update(zerosBlock, 0, startPadding, flushedBlock, 0);
+    }
   }
 
   public void updateInPlace(byte[] data, int offset, int length) {
@@ -113,8 +160,4 @@ public final class AesFlushingCipher {
     }
   }
 
-  private byte[] getInitializationVector(long nonce, long counter) {
-    return ByteBuffer.allocate(16).putLong(nonce).putLong(counter).array();
-  }
-
 }
@@ -28,4 +28,11 @@ public interface Clock {
    */
   long elapsedRealtime();
 
+  /**
+   * Returns {@link System#nanoTime()}.
+   *
+   * @return The current value of a monotonic time source, in nanoseconds.
+   */
+  long nanoTime();
+
 }
@@ -103,6 +103,9 @@ public final class NalUnitUtil {
     2f
   };
 
+  private static final int H264_NAL_UNIT_TYPE_NON_IDR = 1; // Coded slice of a non-IDR picture
+  private static final int H264_NAL_UNIT_TYPE_PARTITION_A = 2; // Coded slice data partition A
+  private static final int H264_NAL_UNIT_TYPE_IDR = 5; // Coded slice of an IDR picture
   private static final int H264_NAL_UNIT_TYPE_SEI = 6; // Supplemental enhancement information
   private static final int H264_NAL_UNIT_TYPE_SPS = 7; // Sequence parameter set
   private static final int H265_NAL_UNIT_TYPE_PREFIX_SEI = 39;
@@ -199,6 +202,36 @@ public final class NalUnitUtil {
     data.clear();
   }
 
+  /**
+   * Returns whether the H.264 access unit in the buffer is a non-reference picture, where
+   * {@code data.position()} is interpreted as the length of the buffer. A non-reference picture is
+   * one whose first coded slice NAL unit has {@code nal_ref_idc} equal to zero. No other picture
+   * uses it for inter prediction, so it can be discarded without affecting decoding of the rest of
+   * the stream.
+   *
+   * @param data Buffer containing start code delimited NAL units.
+   * @return Whether the access unit is a non-reference picture. False if it contains no coded slice.
+   */
+  public static boolean isH264NonReferencePicture(ByteBuffer data) {
+    int length = data.position();
+    int consecutiveZeros = 0;
+    for (int offset = 0; offset + 1 < length; offset++) {
+      int value = data.get(offset) & 0xFF;
+      if (consecutiveZeros >= 2 && value == 1) {
+        int nalUnitHeader = data.get(offset + 1) & 0xFF;
+        int nalUnitType = nalUnitHeader & 0x1F;
+        if (nalUnitType == H264_NAL_UNIT_TYPE_IDR) {
+          return false;
+        } else if (nalUnitType == H264_NAL_UNIT_TYPE_NON_IDR
+            || nalUnitType == H264_NAL_UNIT_TYPE_PARTITION_A) {
+          return (nalUnitHeader & 0x60) == 0;
+        }
+      }
+      consecutiveZeros = value == 0 ? consecutiveZeros + 1 : 0;
+    }
+    return false;
+  }
+
   /**
    * Returns whether the NAL unit with the specified header contains supplemental enhancement
    * information.
@@ -15,35 +15,58 @@
  */
 package com.google.android.exoplayer2.util;
 
-import android.os.SystemClock;
-
-import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.PlaybackParameters;
 
+import java.util.Iterator;
+import java.util.LinkedList;
+
 /**
- * A {@link MediaClock} whose position advances with real time based on the playback parameters when
+ * A {@link MediaClock} whose position advances with real time multiplied by the playback speed when
  * started.
+ * <p>
+ * Media time is integrated from {@link Clock#nanoTime()} using a fixed-point speed, and is held
+ * exactly (including the sub-nanosecond remainder) at each checkpoint. Changing the speed, starting
+ * or stopping the clock therefore never accumulates rounding error, however often it happens.
  */
 public final class StandaloneMediaClock implements MediaClock {
 
-    private boolean started;
+    /**
+     * The number of fractional bits in the fixed-point representation of the speed.
+     */
+    private static final int SPEED_SHIFT = 20;
+    private static final long SPEED_FRACTION_MASK = (1L << SPEED_SHIFT) - 1;
 
     /**
-     * The media time(ms) on last sync.
+     * The maximum number of checkpoints retained for {@link #getPositionUsAtNanoTime(long)}.
      */
-    private double lastMediaTime;
+    private static final int MAX_CHECKPOINT_COUNT = 10;
+
+    private final Clock clock;
+    private final LinkedList<SpeedCheckpoint> checkpoints;
+
+    private boolean started;
     private PlaybackParameters playbackParameters;
+
     /**
-     * The {@link SystemClock#elapsedRealtime()} (ms) on last sync.
+     * Speed ratio between media time and real time.
      */
-    private long lastRealTime;
+    private float speed;
+    private long scaledSpeed;
 
-    /*
-     * speed ratio between media time and real time
-     */
-    private float speed = 1.0f;
     public StandaloneMediaClock() {
+        this(new SystemClock());
+    }
+
+    /**
+     * @param clock The {@link Clock} from which real time is read.
+     */
+    public StandaloneMediaClock(Clock clock) {
+        this.clock = clock;
+        checkpoints = new LinkedList<>();
         playbackParameters = PlaybackParameters.DEFAULT;
+        speed = 1.0f;
+        scaledSpeed = scaleSpeed(speed);
+        checkpoints.add(new SpeedCheckpoint(clock.nanoTime(), 0, 0, 0));
     }
 
     /**
@@ -52,7 +75,7 @@ public final class StandaloneMediaClock implements MediaClock {
     public void start() {
         if (!started) {
             started = true;
-            lastRealTime = SystemClock.elapsedRealtime();
+            addCheckpoint(scaledSpeed);
         }
     }
 
@@ -61,7 +84,7 @@ public final class StandaloneMediaClock implements MediaClock {
      */
     public void stop() {
         if (started) {
-            updateMediaTime();
+            addCheckpoint(0);
             started = false;
         }
     }
@@ -70,9 +93,13 @@ public final class StandaloneMediaClock implements MediaClock {
         return speed;
     }
 
+    @Override
     public void setPlaybackSpeed(float newSpeed) {
-        updateMediaTime();
         speed = newSpeed;
+        scaledSpeed = scaleSpeed(newSpeed);
+        if (started) {
+            addCheckpoint(scaledSpeed);
+        }
     }
 
     /**
@@ -89,22 +116,35 @@ public final class StandaloneMediaClock implements MediaClock {
      * @param timeUs The position to set in microseconds.
      */
     public void setPositionUs(long timeUs) {
-        lastRealTime = SystemClock.elapsedRealtime();
-        lastMediaTime = timeUs / 1000.0;
+        checkpoints.clear();
+        checkpoints.add(new SpeedCheckpoint(clock.nanoTime(), timeUs * 1000, 0,
+                started ? scaledSpeed : 0));
     }
 
     @Override
     public long getPositionUs() {
-        updateMediaTime();
-        return (long) (lastMediaTime * 1000);
+        return checkpoints.getLast().getMediaTimeNs(clock.nanoTime()) / 1000;
+    }
+
+    /**
+     * Returns the position of the clock at a given time, which may precede recent speed changes.
+     * Times before the oldest retained checkpoint, or before the position was last set, are
+     * treated as the time of that checkpoint.
+     *
+     * @param nanoTime A time in the timebase of {@link Clock#nanoTime()}.
+     * @return The position at {@code nanoTime}, in microseconds.
+     */
+    public long getPositionUsAtNanoTime(long nanoTime) {
+        Iterator<SpeedCheckpoint> iterator = checkpoints.descendingIterator();
+        SpeedCheckpoint checkpoint = iterator.next();
+        while (checkpoint.nanoTime > nanoTime && iterator.hasNext()) {
+            checkpoint = iterator.next();
+        }
+        return checkpoint.getMediaTimeNs(nanoTime) / 1000;
     }
 
     @Override
     public PlaybackParameters setPlaybackParameters(PlaybackParameters playbackParameters) {
-        // Store the current position as the new base, in case the playback speed has changed.
-        if (started) {
-            setPositionUs(getPositionUs());
-        }
         this.playbackParameters = playbackParameters;
         return playbackParameters;
     }
@@ -114,10 +154,59 @@ public final class StandaloneMediaClock implements MediaClock {
         return playbackParameters;
     }
 
-    private void updateMediaTime() {
-        if (!started) return;
-        long realTime = SystemClock.elapsedRealtime();
-        lastMediaTime = lastMediaTime + (realTime - lastRealTime) * speed;
-        lastRealTime = realTime;
+    private void addCheckpoint(long newScaledSpeed) {
+        long nanoTime = clock.nanoTime();
+        SpeedCheckpoint lastCheckpoint = checkpoints.getLast();
+        checkpoints.add(new SpeedCheckpoint(nanoTime, lastCheckpoint.getMediaTimeNs(nanoTime),
+                lastCheckpoint.getMediaTimeFraction(nanoTime), newScaledSpeed));
+        if (checkpoints.size() > MAX_CHECKPOINT_COUNT) {
+            checkpoints.removeFirst();
+        }
+    }
+
+    private static long scaleSpeed(float speed) {
+        return Math.round((double) speed * (1L << SPEED_SHIFT));
     }
+
+    /**
+     * Stores the exact media time at which a fixed-point speed started to apply.
+     */
+    private static final class SpeedCheckpoint {
+
+        private final long nanoTime;
+        private final long mediaTimeNs;
+        /**
+         * The fractional part of the media time, in units of 2^-SPEED_SHIFT nanoseconds.
+         */
+        private final long mediaTimeFraction;
+        /**
+         * The speed, in units of 2^-SPEED_SHIFT, or 0 if the clock is stopped.
+         */
+        private final long scaledSpeed;
+
+        private SpeedCheckpoint(long nanoTime, long mediaTimeNs, long mediaTimeFraction,
+                                long scaledSpeed) {
+            this.nanoTime = nanoTime;
+            this.mediaTimeNs = mediaTimeNs;
+            this.mediaTimeFraction = mediaTimeFraction;
+            this.scaledSpeed = scaledSpeed;
+        }
+
+        public long getMediaTimeNs(long nanoTime) {
+            long elapsedNs = Math.max(0, nanoTime - this.nanoTime);
+            // The whole multiples of 2^SPEED_SHIFT nanoseconds advance by an exact number of
+            // nanoseconds, so only the remainder contributes to the fractional part.
+            return mediaTimeNs + (elapsedNs >> SPEED_SHIFT) * scaledSpeed
+                    + (((elapsedNs & SPEED_FRACTION_MASK) * scaledSpeed + mediaTimeFraction)
+                    >> SPEED_SHIFT);
+        }
+
+        public long getMediaTimeFraction(long nanoTime) {
+            long elapsedNs = Math.max(0, nanoTime - this.nanoTime);
+            return ((elapsedNs & SPEED_FRACTION_MASK) * scaledSpeed + mediaTimeFraction)
+                    & SPEED_FRACTION_MASK;
+        }
+
+    }
+
 }
@@ -25,4 +25,9 @@ public final class SystemClock implements Clock {
     return android.os.SystemClock.elapsedRealtime();
   }
 
+  @Override
+  public long nanoTime() {
+    return System.nanoTime();
+  }
+
 }
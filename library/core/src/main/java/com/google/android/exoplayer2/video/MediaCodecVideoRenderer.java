@@ -42,6 +42,7 @@ import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
 import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
 import com.google.android.exoplayer2.mediacodec.MediaCodecUtil.DecoderQueryException;
 import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.NalUnitUtil;
 import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import com.google.android.exoplayer2.video.VideoRendererEventListener.EventDispatcher;
@@ -69,6 +70,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     private final long allowedJoiningTimeMs;
     private final int maxDroppedFramesToNotify;
     private final boolean deviceNeedsAutoFrcWorkaround;
+    private final boolean dropFramesForPlaybackSpeed;
 
     private Format[] streamFormats;
     private CodecMaxValues codecMaxValues;
@@ -82,6 +84,12 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     private int droppedFrames;
     private int consecutiveDroppedFrameCount;
 
+    private float playbackSpeed;
+    private long minFrameIntervalUs;
+    private boolean inputIsH264;
+    private long lastQueuedInputTimeUs;
+    private long lastRenderedOutputTimeUs;
+
     private int pendingRotationDegrees;
     private float pendingPixelWidthHeightRatio;
     private int currentWidth;
@@ -156,10 +164,53 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
                                    long allowedJoiningTimeMs, DrmSessionManager<FrameworkMediaCrypto> drmSessionManager,
                                    boolean playClearSamplesWithoutKeys, Handler eventHandler,
                                    VideoRendererEventListener eventListener, int maxDroppedFramesToNotify) {
+        this(context, mediaCodecSelector, allowedJoiningTimeMs, drmSessionManager,
+                playClearSamplesWithoutKeys, eventHandler, eventListener, maxDroppedFramesToNotify, false);
+    }
+
+    /**
+     * @param context                     A context.
+     * @param mediaCodecSelector          A decoder selector.
+     * @param allowedJoiningTimeMs        The maximum duration in milliseconds for which this video renderer
+     *                                    can attempt to seamlessly join an ongoing playback.
+     * @param drmSessionManager           For use with encrypted content. May be null if support for encrypted
+     *                                    content is not required.
+     * @param playClearSamplesWithoutKeys Encrypted media may contain clear (un-encrypted) regions.
+     *                                    For example a media file may start with a short clear region so as to allow playback to
+     *                                    begin in parallel with key acquisition. This parameter specifies whether the renderer is
+     *                                    permitted to play clear regions of encrypted media files before {@code drmSessionManager}
+     *                                    has obtained the keys necessary to decrypt encrypted regions of the media.
+     * @param eventHandler                A handler to use when delivering events to {@code eventListener}. May be
+     *                                    null if delivery of events is not required.
+     * @param eventListener               A listener of events. May be null if delivery of events is not required.
+     * @param maxDroppedFramesToNotify    The maximum number of frames that can be dropped between
+     *                                    invocations of {@link VideoRendererEventListener#onDroppedFrames(int, long)}.
+     * @param dropFramesForPlaybackSpeed  Whether to limit the rendered frame rate to the refresh rate of the
+     *                                    default display when the playback speed is high enough to exceed it.
+     *                                    Output frames that could not be displayed are skipped, and H.264
+     *                                    non-reference frames that would be skipped are not decoded at all.
+     */
+    public MediaCodecVideoRenderer(Context context, MediaCodecSelector mediaCodecSelector,
+                                   long allowedJoiningTimeMs, DrmSessionManager<FrameworkMediaCrypto> drmSessionManager,
+                                   boolean playClearSamplesWithoutKeys, Handler eventHandler,
+                                   VideoRendererEventListener eventListener, int maxDroppedFramesToNotify,
+                                   boolean dropFramesForPlaybackSpeed) {
+        this(new VideoFrameReleaseTimeHelper(context), mediaCodecSelector, allowedJoiningTimeMs,
+                drmSessionManager, playClearSamplesWithoutKeys, eventHandler, eventListener,
+                maxDroppedFramesToNotify, dropFramesForPlaybackSpeed);
+    }
+
+    /* package */ MediaCodecVideoRenderer(VideoFrameReleaseTimeHelper frameReleaseTimeHelper,
+                                          MediaCodecSelector mediaCodecSelector, long allowedJoiningTimeMs,
+                                          DrmSessionManager<FrameworkMediaCrypto> drmSessionManager,
+                                          boolean playClearSamplesWithoutKeys, Handler eventHandler,
+                                          VideoRendererEventListener eventListener, int maxDroppedFramesToNotify,
+                                          boolean dropFramesForPlaybackSpeed) {
         super(C.TRACK_TYPE_VIDEO, mediaCodecSelector, drmSessionManager, playClearSamplesWithoutKeys);
+        this.frameReleaseTimeHelper = frameReleaseTimeHelper;
         this.allowedJoiningTimeMs = allowedJoiningTimeMs;
         this.maxDroppedFramesToNotify = maxDroppedFramesToNotify;
-        frameReleaseTimeHelper = new VideoFrameReleaseTimeHelper(context);
+        this.dropFramesForPlaybackSpeed = dropFramesForPlaybackSpeed;
         eventDispatcher = new EventDispatcher(eventHandler, eventListener);
         deviceNeedsAutoFrcWorkaround = deviceNeedsAutoFrcWorkaround();
         joiningDeadlineMs = C.TIME_UNSET;
@@ -168,6 +219,9 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
         currentPixelWidthHeightRatio = Format.NO_VALUE;
         pendingPixelWidthHeightRatio = Format.NO_VALUE;
         scalingMode = C.VIDEO_SCALING_MODE_DEFAULT;
+        playbackSpeed = 1f;
+        lastQueuedInputTimeUs = C.TIME_UNSET;
+        lastRenderedOutputTimeUs = C.TIME_UNSET;
         clearReportedVideoSize();
     }
 
@@ -218,6 +272,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
         tunneling = tunnelingAudioSessionId != C.AUDIO_SESSION_ID_UNSET;
         eventDispatcher.enabled(decoderCounters);
         frameReleaseTimeHelper.enable();
+        updateMinFrameInterval();
     }
 
     @Override
@@ -231,6 +286,8 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
         super.onPositionReset(positionUs, joining);
         clearRenderedFirstFrame();
         consecutiveDroppedFrameCount = 0;
+        lastQueuedInputTimeUs = C.TIME_UNSET;
+        lastRenderedOutputTimeUs = C.TIME_UNSET;
         if (joining) {
             setJoiningDeadlineMs();
         } else {
@@ -299,6 +356,9 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
             if (codec != null) {
                 setVideoScalingMode(codec, scalingMode);
             }
+        } else if (messageType == C.MSG_SET_PLAYBACK_SPEED) {
+            playbackSpeed = (Float) message;
+            updateMinFrameInterval();
         } else {
             super.handleMessage(messageType, message);
         }
@@ -368,10 +428,21 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
         eventDispatcher.inputFormatChanged(newFormat);
         pendingPixelWidthHeightRatio = getPixelWidthHeightRatio(newFormat);
         pendingRotationDegrees = getRotationDegrees(newFormat);
+        inputIsH264 = MimeTypes.VIDEO_H264.equals(newFormat.sampleMimeType);
+    }
+
+    @Override
+    protected boolean shouldSkipInputBuffer(DecoderInputBuffer buffer) {
+        // Frames may be queued out of presentation order, so compare against the most recently queued
+        // frame in either direction. A non-reference frame this close to it would be skipped on output.
+        return inputIsH264 && minFrameIntervalUs != 0 && lastQueuedInputTimeUs != C.TIME_UNSET
+                && Math.abs(buffer.timeUs - lastQueuedInputTimeUs) < minFrameIntervalUs
+                && NalUnitUtil.isH264NonReferencePicture(buffer.data);
     }
 
     @Override
     protected void onQueueInputBuffer(DecoderInputBuffer buffer) {
+        lastQueuedInputTimeUs = buffer.timeUs;
         if (Util.SDK_INT < 23 && tunneling) {
             maybeNotifyRenderedFirstFrame();
         }
@@ -427,6 +498,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
         }
 
         if (!renderedFirstFrame) {
+            onFrameRendered(bufferPresentationTimeUs);
             if (Util.SDK_INT >= 21) {
                 renderOutputBufferV21(codec, bufferIndex, System.nanoTime());
             } else {
@@ -439,6 +511,11 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
             return false;
         }
 
+        if (isAboveFrameRateCap(bufferPresentationTimeUs)) {
+            skipOutputBuffer(codec, bufferIndex);
+            return true;
+        }
+
         // Compute how many microseconds it is until the buffer's presentation time.
         long elapsedSinceStartOfLoopUs = (SystemClock.elapsedRealtime() * 1000) - elapsedRealtimeUs;
         long earlyUs = bufferPresentationTimeUs - positionUs - elapsedSinceStartOfLoopUs;
@@ -461,6 +538,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
         if (Util.SDK_INT >= 21) {
             // Let the underlying framework time the release.
             if (earlyUs < 50000) {
+                onFrameRendered(bufferPresentationTimeUs);
                 renderOutputBufferV21(codec, bufferIndex, adjustedReleaseTimeNs);
                 return true;
             }
@@ -477,6 +555,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
                         Thread.currentThread().interrupt();
                     }
                 }
+                onFrameRendered(bufferPresentationTimeUs);
                 renderOutputBuffer(codec, bufferIndex);
                 return true;
             }
@@ -541,6 +620,38 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
         maybeNotifyRenderedFirstFrame();
     }
 
+    /**
+     * Returns whether an output frame should be skipped because the display cannot show it, as it
+     * would follow the last rendered frame within a single vsync period at the current playback speed.
+     *
+     * @param bufferPresentationTimeUs The presentation time of the output frame, in microseconds.
+     */
+    /* package */ boolean isAboveFrameRateCap(long bufferPresentationTimeUs) {
+        return minFrameIntervalUs != 0 && lastRenderedOutputTimeUs != C.TIME_UNSET
+                && bufferPresentationTimeUs - lastRenderedOutputTimeUs < minFrameIntervalUs
+                && bufferPresentationTimeUs >= lastRenderedOutputTimeUs;
+    }
+
+    /**
+     * Called when an output frame is about to be rendered.
+     *
+     * @param bufferPresentationTimeUs The presentation time of the output frame, in microseconds.
+     */
+    /* package */ void onFrameRendered(long bufferPresentationTimeUs) {
+        lastRenderedOutputTimeUs = bufferPresentationTimeUs;
+    }
+
+    private void updateMinFrameInterval() {
+        long vsyncDurationNs = frameReleaseTimeHelper.getVsyncDurationNs();
+        if (!dropFramesForPlaybackSpeed || tunneling || playbackSpeed <= 1f
+                || vsyncDurationNs == C.TIME_UNSET) {
+            minFrameIntervalUs = 0;
+        } else {
+            // The media duration that elapses during one vsync period.
+            minFrameIntervalUs = (long) (vsyncDurationNs * (double) playbackSpeed / 1000);
+        }
+    }
+
     private void setJoiningDeadlineMs() {
         joiningDeadlineMs = allowedJoiningTimeMs > 0
                 ? (SystemClock.elapsedRealtime() + allowedJoiningTimeMs) : C.TIME_UNSET;
@@ -78,11 +78,24 @@ public final class VideoFrameReleaseTimeHelper {
       vsyncOffsetNs = (vsyncDurationNs * VSYNC_OFFSET_PERCENTAGE) / 100;
     } else {
       vsyncSampler = null;
-      vsyncDurationNs = -1; // Value unused.
+      vsyncDurationNs = C.TIME_UNSET;
       vsyncOffsetNs = -1; // Value unused.
     }
   }
 
+  /**
+   * Constructs an instance that reports the vsync duration of a display with the specified refresh
+   * rate, but does not align frame release timestamps with its vsync signal.
+   *
+   * @param displayRefreshRate The refresh rate of the display, in Hz.
+   */
+  /* package */ VideoFrameReleaseTimeHelper(double displayRefreshRate) {
+    useDefaultDisplayVsync = false;
+    vsyncSampler = null;
+    vsyncDurationNs = (long) (C.NANOS_PER_SECOND / displayRefreshRate);
+    vsyncOffsetNs = -1; // Value unused.
+  }
+
   /**
    * Enables the helper.
    */
@@ -102,6 +115,16 @@ public final class VideoFrameReleaseTimeHelper {
     }
   }
 
+  /**
+   * Returns the duration of a vsync period of the default display, or {@link C#TIME_UNSET} if the
+   * helper was constructed without a context.
+   *
+   * @return The vsync duration in nanoseconds, or {@link C#TIME_UNSET}.
+   */
+  public long getVsyncDurationNs() {
+    return vsyncDurationNs;
+  }
+
   /**
    * Adjusts a frame release timestamp.
    *
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTemplate;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTimeline;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DashManifestMerger}.
+ */
+public class DashManifestMergerTest extends TestCase {
+
+  private static final long TIMESCALE = 1000;
+  private static final long SEGMENT_DURATION = 2000;
+
+  public void testMergeWithoutPreviousManifest() {
+    DashManifest manifest = newDashManifest("1", 10, 10);
+    assertSame(manifest, DashManifestMerger.merge(null, manifest));
+  }
+
+  public void testMergeUnchangedManifest() {
+    DashManifest previousManifest = newDashManifest("1", 10, 10);
+    DashManifest manifest = newDashManifest("1", 10, 10);
+
+    DashManifest mergedManifest = DashManifestMerger.merge(previousManifest, manifest);
+
+    assertNotSame(previousManifest, mergedManifest);
+    assertEquals(manifest.availabilityStartTime, mergedManifest.availabilityStartTime);
+    assertEquals(1, mergedManifest.getPeriodCount());
+    assertSame(previousManifest.getPeriod(0), mergedManifest.getPeriod(0));
+  }
+
+  public void testMergeExtendedTimeline() {
+    DashManifest previousManifest = newDashManifest("1", 10, 10);
+    DashManifest manifest = newDashManifest("1", 11, 10);
+
+    DashManifest mergedManifest = DashManifestMerger.merge(previousManifest, manifest);
+
+    Period previousPeriod = previousManifest.getPeriod(0);
+    Period mergedPeriod = mergedManifest.getPeriod(0);
+    assertNotSame(previousPeriod, mergedPeriod);
+    assertNotSame(manifest.getPeriod(0), mergedPeriod);
+    // The video adaptation set's timeline has grown, so only its format is reused.
+    Representation previousVideo = previousPeriod.adaptationSets.get(0).representations.get(0);
+    Representation mergedVideo = mergedPeriod.adaptationSets.get(0).representations.get(0);
+    assertNotSame(previousVideo, mergedVideo);
+    assertSame(previousVideo.format, mergedVideo.format);
+    assertEquals(11, mergedVideo.getIndex().getSegmentCount(C.TIME_UNSET));
+    assertEquals(manifest.getPeriod(0).adaptationSets.get(0).representations.get(0).getIndex()
+        .getTimeUs(10), mergedVideo.getIndex().getTimeUs(10));
+    // The audio adaptation set is unchanged.
+    assertSame(previousPeriod.adaptationSets.get(1), mergedPeriod.adaptationSets.get(1));
+  }
+
+  public void testMergeNewPeriod() {
+    DashManifest previousManifest = newDashManifest("1", 10, 10);
+    DashManifest manifest = newDashManifest("2", 10, 10);
+    assertSame(manifest, DashManifestMerger.merge(previousManifest, manifest));
+  }
+
+  public void testMergeChangedFormat() {
+    DashManifest previousManifest = newDashManifest("1", 10, 10);
+    Representation audio = newRepresentation(
+        Format.createSampleFormat("audio", MimeTypes.AUDIO_AAC, null, 64000, null), 10);
+    DashManifest manifest = new DashManifest(0, C.TIME_UNSET, 1, true, 2, 3, 4, null, null,
+        Arrays.asList(new Period("1", 0, Arrays.asList(
+            newAdaptationSet(0, C.TRACK_TYPE_VIDEO, newVideoRepresentation(10)),
+            newAdaptationSet(1, C.TRACK_TYPE_AUDIO, audio)))));
+
+    DashManifest mergedManifest = DashManifestMerger.merge(previousManifest, manifest);
+
+    Period previousPeriod = previousManifest.getPeriod(0);
+    Period mergedPeriod = mergedManifest.getPeriod(0);
+    assertSame(previousPeriod.adaptationSets.get(0), mergedPeriod.adaptationSets.get(0));
+    assertSame(audio, mergedPeriod.adaptationSets.get(1).representations.get(0));
+  }
+
+  private static DashManifest newDashManifest(String periodId, int videoSegmentCount,
+      int audioSegmentCount) {
+    Period period = new Period(periodId, 0, Arrays.asList(
+        newAdaptationSet(0, C.TRACK_TYPE_VIDEO, newVideoRepresentation(videoSegmentCount)),
+        newAdaptationSet(1, C.TRACK_TYPE_AUDIO, newAudioRepresentation(audioSegmentCount))));
+    return new DashManifest(0, C.TIME_UNSET, 1, true, 2, 3, 4, null, null, Arrays.asList(period));
+  }
+
+  private static AdaptationSet newAdaptationSet(int id, int type,
+      Representation... representations) {
+    return new AdaptationSet(id, type, Arrays.asList(representations), null);
+  }
+
+  private static Representation newVideoRepresentation(int segmentCount) {
+    return newRepresentation(
+        Format.createSampleFormat("video", MimeTypes.VIDEO_H264, null, 1000000, null),
+        segmentCount);
+  }
+
+  private static Representation newAudioRepresentation(int segmentCount) {
+    return newRepresentation(
+        Format.createSampleFormat("audio", MimeTypes.AUDIO_AAC, null, 128000, null),
+        segmentCount);
+  }
+
+  private static Representation newRepresentation(Format format, int segmentCount) {
+    SegmentTimeline timeline = new SegmentTimeline(new long[] {0}, new long[] {SEGMENT_DURATION},
+        new int[] {segmentCount}, 1);
+    SegmentTemplate segmentTemplate = new SegmentTemplate(null, TIMESCALE, 0, 1, C.TIME_UNSET,
+        timeline, UrlTemplate.compile("$RepresentationID$/init.mp4"),
+        UrlTemplate.compile("$RepresentationID$/$Time$.m4s"));
+    return Representation.newInstance("", 0, format, "http://example.com/", segmentTemplate);
+  }
+
+}
@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.source.dash.manifest;
 
 import android.net.Uri;
 import android.test.InstrumentationTestCase;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import java.io.IOException;
@@ -64,6 +65,16 @@ public class DashManifestParserTest extends InstrumentationTestCase {
           RangedUri uri = multiSegmentRepresentation.getSegmentUrl(firstSegmentIndex);
           assertTrue(uri.resolveUriString(representation.baseUrl).contains(
               "redirector.googlevideo.com"));
+          // The timeline declares three segments of 2002ms from 6009ms, and two of other
+          // durations.
+          assertEquals(5, multiSegmentRepresentation.getSegmentCount(C.TIME_UNSET));
+          assertEquals(8011000, multiSegmentRepresentation.getTimeUs(firstSegmentIndex + 1));
+          assertEquals(12015000, multiSegmentRepresentation.getTimeUs(firstSegmentIndex + 3));
+          assertEquals(1985000,
+              multiSegmentRepresentation.getDurationUs(firstSegmentIndex + 3, C.TIME_UNSET));
+          assertEquals(14000000, multiSegmentRepresentation.getTimeUs(firstSegmentIndex + 4));
+          assertEquals(firstSegmentIndex + 3,
+              multiSegmentRepresentation.getSegmentNum(13000000, C.TIME_UNSET));
         }
       }
     }
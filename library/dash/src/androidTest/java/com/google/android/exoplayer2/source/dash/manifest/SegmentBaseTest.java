@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTemplate;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTimeline;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTimelineElement;
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link SegmentBase}.
+ */
+public class SegmentBaseTest extends TestCase {
+
+  private static final long TIMESCALE = 90000;
+  private static final long PRESENTATION_TIME_OFFSET = 45000;
+  private static final int START_NUMBER = 10;
+
+  // Two runs of 2s segments either side of a 1.5s segment, and a gap before a final run.
+  private static final long[] RUN_START_TIMES = new long[] {45000, 585000, 720000, 1260000};
+  private static final long[] RUN_DURATIONS = new long[] {180000, 135000, 180000, 90000};
+  private static final int[] RUN_SEGMENT_COUNTS = new int[] {3, 1, 2, 4};
+
+  private long[] segmentStartTimes;
+  private long[] segmentDurations;
+  private SegmentTemplate segmentTemplate;
+
+  @Override
+  protected void setUp() {
+    SegmentTimeline timeline = new SegmentTimeline(RUN_START_TIMES, RUN_DURATIONS,
+        RUN_SEGMENT_COUNTS, RUN_START_TIMES.length);
+    segmentTemplate = new SegmentTemplate(null, TIMESCALE, PRESENTATION_TIME_OFFSET, START_NUMBER,
+        C.TIME_UNSET, timeline, null, null);
+    int segmentCount = 0;
+    for (int count : RUN_SEGMENT_COUNTS) {
+      segmentCount += count;
+    }
+    segmentStartTimes = new long[segmentCount];
+    segmentDurations = new long[segmentCount];
+    int index = 0;
+    for (int i = 0; i < RUN_START_TIMES.length; i++) {
+      for (int j = 0; j < RUN_SEGMENT_COUNTS[i]; j++) {
+        segmentStartTimes[index] = RUN_START_TIMES[i] + j * RUN_DURATIONS[i];
+        segmentDurations[index] = RUN_DURATIONS[i];
+        index++;
+      }
+    }
+  }
+
+  public void testSegmentTimeline() {
+    SegmentTimeline timeline = segmentTemplate.segmentTimeline;
+    assertEquals(4, timeline.getRunCount());
+    assertEquals(segmentStartTimes.length, timeline.getSegmentCount());
+    for (int i = 0; i < segmentStartTimes.length; i++) {
+      assertEquals(segmentStartTimes[i], timeline.getStartTime(i));
+      assertEquals(segmentDurations[i], timeline.getDuration(i));
+      assertEquals(i, timeline.getSegmentIndex(segmentStartTimes[i]));
+      assertEquals(i, timeline.getSegmentIndex(segmentStartTimes[i] + segmentDurations[i] - 1));
+    }
+    assertEquals(0, timeline.getSegmentIndex(0));
+    // Times in the gap before the last run map to the segment before the gap.
+    assertEquals(5, timeline.getSegmentIndex(1200000));
+    assertEquals(segmentStartTimes.length - 1, timeline.getSegmentIndex(Long.MAX_VALUE / 2));
+  }
+
+  public void testSegmentTimesAndDurations() {
+    assertEquals(segmentStartTimes.length, segmentTemplate.getSegmentCount(C.TIME_UNSET));
+    for (int i = 0; i < segmentStartTimes.length; i++) {
+      int segmentNum = START_NUMBER + i;
+      assertEquals(getSegmentTimeUs(i), segmentTemplate.getSegmentTimeUs(segmentNum));
+      assertEquals(segmentDurations[i] * C.MICROS_PER_SECOND / TIMESCALE,
+          segmentTemplate.getSegmentDurationUs(segmentNum, C.TIME_UNSET));
+    }
+  }
+
+  public void testGetSegmentNum() {
+    long periodDurationUs = C.TIME_UNSET;
+    assertEquals(START_NUMBER, segmentTemplate.getSegmentNum(-1, periodDurationUs));
+    for (long timeUs = 0; timeUs < getSegmentTimeUs(segmentStartTimes.length - 1) + 5000000;
+        timeUs += 12345) {
+      assertEquals(getExpectedSegmentNum(timeUs),
+          segmentTemplate.getSegmentNum(timeUs, periodDurationUs));
+    }
+    for (int i = 0; i < segmentStartTimes.length; i++) {
+      long timeUs = getSegmentTimeUs(i);
+      assertEquals(START_NUMBER + i, segmentTemplate.getSegmentNum(timeUs, periodDurationUs));
+      if (i > 0) {
+        assertEquals(START_NUMBER + i - 1,
+            segmentTemplate.getSegmentNum(timeUs - 1, periodDurationUs));
+      }
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  public void testSegmentTimelineElements() {
+    List<SegmentTimelineElement> elements = new ArrayList<>();
+    for (int i = 0; i < segmentStartTimes.length; i++) {
+      elements.add(new SegmentTimelineElement(segmentStartTimes[i], segmentDurations[i]));
+    }
+    SegmentTemplate elementSegmentTemplate = new SegmentTemplate(null, TIMESCALE,
+        PRESENTATION_TIME_OFFSET, START_NUMBER, C.TIME_UNSET, elements, null, null);
+    // The elements are merged into the same runs.
+    assertEquals(4, elementSegmentTemplate.segmentTimeline.getRunCount());
+    assertEquals(segmentTemplate.segmentTimeline, elementSegmentTemplate.segmentTimeline);
+  }
+
+  private long getSegmentTimeUs(int index) {
+    return Util.scaleLargeTimestamp(segmentStartTimes[index] - PRESENTATION_TIME_OFFSET,
+        C.MICROS_PER_SECOND, TIMESCALE);
+  }
+
+  /**
+   * Returns the number of the last segment that starts at or before the given time, or the first
+   * segment if the time is before all segments.
+   */
+  private int getExpectedSegmentNum(long timeUs) {
+    int index = 0;
+    while (index + 1 < segmentStartTimes.length && getSegmentTimeUs(index + 1) <= timeUs) {
+      index++;
+    }
+    return START_NUMBER + index;
+  }
+
+}
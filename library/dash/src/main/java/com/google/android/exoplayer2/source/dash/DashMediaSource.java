@@ -29,6 +29,7 @@ import com.google.android.exoplayer2.source.AdaptiveMediaSourceEventListener.Eve
 import com.google.android.exoplayer2.source.MediaPeriod;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestMerger;
 import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
 import com.google.android.exoplayer2.source.dash.manifest.UtcTimingElement;
 import com.google.android.exoplayer2.upstream.Allocator;
@@ -404,8 +405,13 @@ public final class DashMediaSource implements MediaSource {
     synchronized (manifestUriLock) {
       manifestUri = this.manifestUri;
     }
-    startLoading(new ParsingLoadable<>(dataSource, manifestUri, C.DATA_TYPE_MANIFEST,
-        manifestParser), manifestCallback, minLoadableRetryCount);
+    ParsingLoadable.Parser<? extends DashManifest> parser = manifestParser;
+    if (manifest != null && manifest.dynamic) {
+      // Share the unchanged parts of the refreshed manifest with the current one.
+      parser = new MergingManifestParser(manifestParser, manifest);
+    }
+    startLoading(new ParsingLoadable<>(dataSource, manifestUri, C.DATA_TYPE_MANIFEST, parser),
+        manifestCallback, minLoadableRetryCount);
   }
 
   private void resolveUtcTimingElement(UtcTimingElement timingElement) {
@@ -795,4 +801,22 @@ public final class DashMediaSource implements MediaSource {
 
   }
 
+  private static final class MergingManifestParser implements ParsingLoadable.Parser<DashManifest> {
+
+    private final ParsingLoadable.Parser<? extends DashManifest> manifestParser;
+    private final DashManifest previousManifest;
+
+    public MergingManifestParser(ParsingLoadable.Parser<? extends DashManifest> manifestParser,
+        DashManifest previousManifest) {
+      this.manifestParser = manifestParser;
+      this.previousManifest = previousManifest;
+    }
+
+    @Override
+    public DashManifest parse(Uri uri, InputStream inputStream) throws IOException {
+      return DashManifestMerger.merge(previousManifest, manifestParser.parse(uri, inputStream));
+    }
+
+  }
+
 }
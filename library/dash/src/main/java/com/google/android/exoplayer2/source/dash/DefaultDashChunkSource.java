@@ -413,6 +413,11 @@ public class DefaultDashChunkSource implements DashChunkSource {
 
     public void updateRepresentation(long newPeriodDurationUs, Representation newRepresentation)
         throws BehindLiveWindowException{
+      if (newRepresentation == representation) {
+        // The representation was reused from the previous manifest, so nothing can have shifted.
+        periodDurationUs = newPeriodDurationUs;
+        return;
+      }
       DashSegmentIndex oldIndex = representation.getIndex();
       DashSegmentIndex newIndex = newRepresentation.getIndex();
 
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import com.google.android.exoplayer2.source.dash.manifest.Representation.MultiSegmentRepresentation;
+import com.google.android.exoplayer2.source.dash.manifest.Representation.SingleSegmentRepresentation;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.MultiSegmentBase;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentList;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTemplate;
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shares the unchanged parts of a refreshed {@link DashManifest} with the manifest it replaces.
+ * <p>
+ * A dynamic manifest is reloaded every few seconds, and a reload usually differs from the previous
+ * one only in the tails of its segment timelines. Merging replaces the periods, adaptation sets,
+ * representations and formats of the new manifest with the previous instances wherever they are
+ * equivalent. The newly parsed copies then become garbage straight away rather than replacing the
+ * retained graph, and consumers can skip work for representations that are returned unchanged.
+ */
+public final class DashManifestMerger {
+
+  private DashManifestMerger() {}
+
+  /**
+   * Returns a manifest equivalent to {@code manifest} that reuses the unchanged periods,
+   * adaptation sets, representations and formats of {@code previousManifest}.
+   *
+   * @param previousManifest The manifest being replaced. May be null.
+   * @param manifest The newly loaded manifest.
+   * @return {@code manifest} if nothing could be reused. Otherwise a new {@link DashManifest} with
+   *     the same attributes as {@code manifest}.
+   */
+  public static DashManifest merge(DashManifest previousManifest, DashManifest manifest) {
+    if (previousManifest == null) {
+      return manifest;
+    }
+    int periodCount = manifest.getPeriodCount();
+    ArrayList<Period> periods = new ArrayList<>(periodCount);
+    boolean reused = false;
+    for (int i = 0; i < periodCount; i++) {
+      Period period = manifest.getPeriod(i);
+      Period previousPeriod = findPeriod(previousManifest, period);
+      Period mergedPeriod = previousPeriod == null ? period : mergePeriod(previousPeriod, period);
+      reused |= mergedPeriod != period;
+      periods.add(mergedPeriod);
+    }
+    if (!reused) {
+      return manifest;
+    }
+    return new DashManifest(manifest.availabilityStartTime, manifest.duration,
+        manifest.minBufferTime, manifest.dynamic, manifest.minUpdatePeriod,
+        manifest.timeShiftBufferDepth, manifest.suggestedPresentationDelay, manifest.utcTiming,
+        manifest.location, periods);
+  }
+
+  private static Period findPeriod(DashManifest previousManifest, Period period) {
+    for (int i = 0; i < previousManifest.getPeriodCount(); i++) {
+      Period previousPeriod = previousManifest.getPeriod(i);
+      if (period.id != null ? period.id.equals(previousPeriod.id)
+          : previousPeriod.id == null && previousPeriod.startMs == period.startMs) {
+        return previousPeriod;
+      }
+    }
+    return null;
+  }
+
+  private static Period mergePeriod(Period previousPeriod, Period period) {
+    List<AdaptationSet> previousAdaptationSets = previousPeriod.adaptationSets;
+    int adaptationSetCount = period.adaptationSets.size();
+    ArrayList<AdaptationSet> adaptationSets = new ArrayList<>(adaptationSetCount);
+    boolean reused = false;
+    boolean unchanged = previousPeriod.startMs == period.startMs
+        && previousAdaptationSets.size() == adaptationSetCount;
+    for (int i = 0; i < adaptationSetCount; i++) {
+      AdaptationSet adaptationSet = period.adaptationSets.get(i);
+      AdaptationSet previousAdaptationSet =
+          findAdaptationSet(previousAdaptationSets, i, adaptationSet);
+      AdaptationSet mergedAdaptationSet = previousAdaptationSet == null ? adaptationSet
+          : mergeAdaptationSet(previousAdaptationSet, adaptationSet);
+      reused |= mergedAdaptationSet != adaptationSet;
+      unchanged = unchanged && mergedAdaptationSet == previousAdaptationSets.get(i);
+      adaptationSets.add(mergedAdaptationSet);
+    }
+    if (unchanged) {
+      return previousPeriod;
+    } else if (!reused) {
+      return period;
+    }
+    return new Period(period.id, period.startMs, adaptationSets);
+  }
+
+  private static AdaptationSet findAdaptationSet(List<AdaptationSet> previousAdaptationSets,
+      int index, AdaptationSet adaptationSet) {
+    if (index < previousAdaptationSets.size()
+        && isSameAdaptationSet(previousAdaptationSets.get(index), adaptationSet)) {
+      return previousAdaptationSets.get(index);
+    } else if (adaptationSet.id == AdaptationSet.ID_UNSET) {
+      return null;
+    }
+    for (int i = 0; i < previousAdaptationSets.size(); i++) {
+      if (isSameAdaptationSet(previousAdaptationSets.get(i), adaptationSet)) {
+        return previousAdaptationSets.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static boolean isSameAdaptationSet(AdaptationSet previousAdaptationSet,
+      AdaptationSet adaptationSet) {
+    return previousAdaptationSet.id == adaptationSet.id
+        && previousAdaptationSet.type == adaptationSet.type;
+  }
+
+  private static AdaptationSet mergeAdaptationSet(AdaptationSet previousAdaptationSet,
+      AdaptationSet adaptationSet) {
+    List<Representation> previousRepresentations = previousAdaptationSet.representations;
+    int representationCount = adaptationSet.representations.size();
+    ArrayList<Representation> representations = new ArrayList<>(representationCount);
+    boolean reused = false;
+    boolean unchanged = previousRepresentations.size() == representationCount
+        && previousAdaptationSet.accessibilityDescriptors.equals(
+            adaptationSet.accessibilityDescriptors);
+    for (int i = 0; i < representationCount; i++) {
+      Representation representation = adaptationSet.representations.get(i);
+      Representation previousRepresentation =
+          findRepresentation(previousRepresentations, i, representation);
+      Representation mergedRepresentation = previousRepresentation == null ? representation
+          : mergeRepresentation(previousRepresentation, representation);
+      reused |= mergedRepresentation != representation;
+      unchanged = unchanged && mergedRepresentation == previousRepresentations.get(i);
+      representations.add(mergedRepresentation);
+    }
+    if (unchanged) {
+      return previousAdaptationSet;
+    } else if (!reused) {
+      return adaptationSet;
+    }
+    return new AdaptationSet(adaptationSet.id, adaptationSet.type, representations,
+        adaptationSet.accessibilityDescriptors);
+  }
+
+  private static Representation findRepresentation(List<Representation> previousRepresentations,
+      int index, Representation representation) {
+    String formatId = representation.format.id;
+    if (index < previousRepresentations.size()
+        && Util.areEqual(previousRepresentations.get(index).format.id, formatId)) {
+      return previousRepresentations.get(index);
+    } else if (formatId == null) {
+      return null;
+    }
+    for (int i = 0; i < previousRepresentations.size(); i++) {
+      if (formatId.equals(previousRepresentations.get(i).format.id)) {
+        return previousRepresentations.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static Representation mergeRepresentation(Representation previousRepresentation,
+      Representation representation) {
+    if (!previousRepresentation.format.equals(representation.format)) {
+      return representation;
+    } else if (isEquivalent(previousRepresentation, representation)) {
+      return previousRepresentation;
+    } else if (representation.getClass() == MultiSegmentRepresentation.class) {
+      // Typically only the segment timeline has changed. Keep the previous format.
+      return new MultiSegmentRepresentation(representation.contentId, representation.revisionId,
+          previousRepresentation.format, representation.baseUrl,
+          ((MultiSegmentRepresentation) representation).segmentBase,
+          representation.inbandEventStreams);
+    }
+    return representation;
+  }
+
+  private static boolean isEquivalent(Representation previousRepresentation,
+      Representation representation) {
+    if (previousRepresentation.getClass() != representation.getClass()
+        || previousRepresentation.revisionId != representation.revisionId
+        || previousRepresentation.presentationTimeOffsetUs
+            != representation.presentationTimeOffsetUs
+        || !Util.areEqual(previousRepresentation.contentId, representation.contentId)
+        || !Util.areEqual(previousRepresentation.baseUrl, representation.baseUrl)
+        || !previousRepresentation.inbandEventStreams.equals(representation.inbandEventStreams)
+        || !Util.areEqual(previousRepresentation.getInitializationUri(),
+            representation.getInitializationUri())
+        || !Util.areEqual(previousRepresentation.getIndexUri(), representation.getIndexUri())
+        || !Util.areEqual(previousRepresentation.getCacheKey(), representation.getCacheKey())) {
+      return false;
+    }
+    if (representation.getClass() == SingleSegmentRepresentation.class) {
+      SingleSegmentRepresentation previousSingle =
+          (SingleSegmentRepresentation) previousRepresentation;
+      SingleSegmentRepresentation single = (SingleSegmentRepresentation) representation;
+      return previousSingle.contentLength == single.contentLength
+          && previousSingle.uri.equals(single.uri);
+    } else if (representation.getClass() == MultiSegmentRepresentation.class) {
+      return isEquivalent(((MultiSegmentRepresentation) previousRepresentation).segmentBase,
+          ((MultiSegmentRepresentation) representation).segmentBase);
+    }
+    return false;
+  }
+
+  private static boolean isEquivalent(MultiSegmentBase previousSegmentBase,
+      MultiSegmentBase segmentBase) {
+    if (previousSegmentBase.getClass() != segmentBase.getClass()
+        || previousSegmentBase.timescale != segmentBase.timescale
+        || previousSegmentBase.presentationTimeOffset != segmentBase.presentationTimeOffset
+        || previousSegmentBase.startNumber != segmentBase.startNumber
+        || previousSegmentBase.duration != segmentBase.duration
+        || !Util.areEqual(previousSegmentBase.initialization, segmentBase.initialization)
+        || !Util.areEqual(previousSegmentBase.segmentTimeline, segmentBase.segmentTimeline)) {
+      return false;
+    }
+    if (segmentBase.getClass() == SegmentTemplate.class) {
+      SegmentTemplate previousTemplate = (SegmentTemplate) previousSegmentBase;
+      SegmentTemplate template = (SegmentTemplate) segmentBase;
+      return Util.areEqual(previousTemplate.initializationTemplate,
+          template.initializationTemplate)
+          && Util.areEqual(previousTemplate.mediaTemplate, template.mediaTemplate);
+    } else if (segmentBase.getClass() == SegmentList.class) {
+      return Util.areEqual(((SegmentList) previousSegmentBase).mediaSegments,
+          ((SegmentList) segmentBase).mediaSegments);
+    }
+    return false;
+  }
+
+}
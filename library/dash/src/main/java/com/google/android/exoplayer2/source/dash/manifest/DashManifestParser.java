@@ -28,6 +28,7 @@ import com.google.android.exoplayer2.drm.DrmInitData.SchemeData;
 import com.google.android.exoplayer2.extractor.mp4.PsshAtomUtil;
 import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentList;
 import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTemplate;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTimeline;
 import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTimelineElement;
 import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SingleSegmentBase;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
@@ -39,6 +40,7 @@ import com.google.android.exoplayer2.util.XmlPullParserUtil;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 import java.util.regex.Matcher;
@@ -568,7 +570,7 @@ public class DashManifestParser extends DefaultHandler
     int startNumber = parseInt(xpp, "startNumber", parent != null ? parent.startNumber : 1);
 
     RangedUri initialization = null;
-    List<SegmentTimelineElement> timeline = null;
+    SegmentTimeline timeline = null;
     List<RangedUri> segments = null;
 
     do {
@@ -597,7 +599,7 @@ public class DashManifestParser extends DefaultHandler
 
   protected SegmentList buildSegmentList(RangedUri initialization, long timescale,
       long presentationTimeOffset, int startNumber, long duration,
-      List<SegmentTimelineElement> timeline, List<RangedUri> segments) {
+      SegmentTimeline timeline, List<RangedUri> segments) {
     return new SegmentList(initialization, timescale, presentationTimeOffset,
         startNumber, duration, timeline, segments);
   }
@@ -615,7 +617,7 @@ public class DashManifestParser extends DefaultHandler
         parent != null ? parent.initializationTemplate : null);
 
     RangedUri initialization = null;
-    List<SegmentTimelineElement> timeline = null;
+    SegmentTimeline timeline = null;
 
     do {
       xpp.next();
@@ -637,15 +639,20 @@ public class DashManifestParser extends DefaultHandler
 
   protected SegmentTemplate buildSegmentTemplate(RangedUri initialization, long timescale,
       long presentationTimeOffset, int startNumber, long duration,
-      List<SegmentTimelineElement> timeline, UrlTemplate initializationTemplate,
+      SegmentTimeline timeline, UrlTemplate initializationTemplate,
       UrlTemplate mediaTemplate) {
     return new SegmentTemplate(initialization, timescale, presentationTimeOffset,
         startNumber, duration, timeline, initializationTemplate, mediaTemplate);
   }
 
-  protected List<SegmentTimelineElement> parseSegmentTimeline(XmlPullParser xpp)
+  protected SegmentTimeline parseSegmentTimeline(XmlPullParser xpp)
       throws XmlPullParserException, IOException {
-    List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
+    // Each S element is a run of segments of equal duration. Runs that continue the previous run
+    // with the same duration are merged into it.
+    long[] runStartTimes = new long[4];
+    long[] runDurations = new long[4];
+    int[] runSegmentCounts = new int[4];
+    int runCount = 0;
     long elapsedTime = 0;
     do {
       xpp.next();
@@ -653,15 +660,40 @@ public class DashManifestParser extends DefaultHandler
         elapsedTime = parseLong(xpp, "t", elapsedTime);
         long duration = parseLong(xpp, "d", C.TIME_UNSET);
         int count = 1 + parseInt(xpp, "r", 0);
-        for (int i = 0; i < count; i++) {
-          segmentTimeline.add(buildSegmentTimelineElement(elapsedTime, duration));
-          elapsedTime += duration;
+        if (count <= 0) {
+          continue;
         }
+        if (runCount > 0 && runDurations[runCount - 1] == duration
+            && runStartTimes[runCount - 1] + runSegmentCounts[runCount - 1] * duration
+            == elapsedTime) {
+          runSegmentCounts[runCount - 1] += count;
+        } else {
+          if (runCount == runStartTimes.length) {
+            runStartTimes = Arrays.copyOf(runStartTimes, runCount * 2);
+            runDurations = Arrays.copyOf(runDurations, runCount * 2);
+            runSegmentCounts = Arrays.copyOf(runSegmentCounts, runCount * 2);
+          }
+          runStartTimes[runCount] = elapsedTime;
+          runDurations[runCount] = duration;
+          runSegmentCounts[runCount] = count;
+          runCount++;
+        }
+        elapsedTime += count * duration;
       }
     } while (!XmlPullParserUtil.isEndTag(xpp, "SegmentTimeline"));
-    return segmentTimeline;
+    return buildSegmentTimeline(runStartTimes, runDurations, runSegmentCounts, runCount);
   }
 
+  protected SegmentTimeline buildSegmentTimeline(long[] runStartTimes, long[] runDurations,
+      int[] runSegmentCounts, int runCount) {
+    return new SegmentTimeline(runStartTimes, runDurations, runSegmentCounts, runCount);
+  }
+
+  /**
+   * @deprecated No longer called by {@link #parseSegmentTimeline(XmlPullParser)}. Override
+   *     {@link #buildSegmentTimeline(long[], long[], int[], int)} instead.
+   */
+  @Deprecated
   protected SegmentTimelineElement buildSegmentTimelineElement(long elapsedTime, long duration) {
     return new SegmentTimelineElement(elapsedTime, duration);
   }
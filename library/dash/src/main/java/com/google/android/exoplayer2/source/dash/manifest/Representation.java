@@ -259,7 +259,7 @@ public abstract class Representation {
   public static class MultiSegmentRepresentation extends Representation
       implements DashSegmentIndex {
 
-    private final MultiSegmentBase segmentBase;
+    /* package */ final MultiSegmentBase segmentBase;
 
     /**
      * @param contentId Identifies the piece of content to which this representation belongs.
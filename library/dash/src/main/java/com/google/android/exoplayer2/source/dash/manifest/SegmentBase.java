@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.source.dash.manifest;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.source.dash.DashSegmentIndex;
 import com.google.android.exoplayer2.util.Util;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -101,7 +102,7 @@ public abstract class SegmentBase {
 
     /* package */ final int startNumber;
     /* package */ final long duration;
-    /* package */ final List<SegmentTimelineElement> segmentTimeline;
+    /* package */ final SegmentTimeline segmentTimeline;
 
     /**
      * @param initialization A {@link RangedUri} corresponding to initialization data, if such data
@@ -118,13 +119,23 @@ public abstract class SegmentBase {
      *     parameter.
      */
     public MultiSegmentBase(RangedUri initialization, long timescale, long presentationTimeOffset,
-        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline) {
+        int startNumber, long duration, SegmentTimeline segmentTimeline) {
       super(initialization, timescale, presentationTimeOffset);
       this.startNumber = startNumber;
       this.duration = duration;
       this.segmentTimeline = segmentTimeline;
     }
 
+    /**
+     * @deprecated Use {@link #MultiSegmentBase(RangedUri, long, long, int, long, SegmentTimeline)}.
+     */
+    @Deprecated
+    public MultiSegmentBase(RangedUri initialization, long timescale, long presentationTimeOffset,
+        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline) {
+      this(initialization, timescale, presentationTimeOffset, startNumber, duration,
+          SegmentTimeline.fromElements(segmentTimeline));
+    }
+
     /**
      * @see DashSegmentIndex#getSegmentNum(long, long)
      */
@@ -143,21 +154,21 @@ public abstract class SegmentBase {
             : segmentCount == DashSegmentIndex.INDEX_UNBOUNDED ? segmentNum
             : Math.min(segmentNum, firstSegmentNum + segmentCount - 1);
       } else {
-        // The index cannot be unbounded. Identify the segment using binary search.
-        int lowIndex = firstSegmentNum;
-        int highIndex = firstSegmentNum + segmentCount - 1;
-        while (lowIndex <= highIndex) {
-          int midIndex = lowIndex + (highIndex - lowIndex) / 2;
-          long midTimeUs = getSegmentTimeUs(midIndex);
-          if (midTimeUs < timeUs) {
-            lowIndex = midIndex + 1;
-          } else if (midTimeUs > timeUs) {
-            highIndex = midIndex - 1;
-          } else {
-            return midIndex;
-          }
+        // The index cannot be unbounded. Look up the segment in the timeline, and then correct
+        // for rounding, so that the segment is the last one whose start time in microseconds
+        // isn't after the requested time.
+        long time = Util.scaleLargeTimestamp(timeUs, timescale, C.MICROS_PER_SECOND)
+            + presentationTimeOffset;
+        int segmentNum = startNumber + segmentTimeline.getSegmentIndex(time);
+        int lastSegmentNum = firstSegmentNum + segmentCount - 1;
+        segmentNum = Math.max(firstSegmentNum, Math.min(segmentNum, lastSegmentNum));
+        while (segmentNum < lastSegmentNum && getSegmentTimeUs(segmentNum + 1) <= timeUs) {
+          segmentNum++;
+        }
+        while (segmentNum > firstSegmentNum && getSegmentTimeUs(segmentNum) > timeUs) {
+          segmentNum--;
         }
-        return lowIndex == firstSegmentNum ? lowIndex : highIndex;
+        return segmentNum;
       }
     }
 
@@ -166,7 +177,7 @@ public abstract class SegmentBase {
      */
     public final long getSegmentDurationUs(int sequenceNumber, long periodDurationUs) {
       if (segmentTimeline != null) {
-        long duration = segmentTimeline.get(sequenceNumber - startNumber).duration;
+        long duration = segmentTimeline.getDuration(sequenceNumber - startNumber);
         return (duration * C.MICROS_PER_SECOND) / timescale;
       } else {
         int segmentCount = getSegmentCount(periodDurationUs);
@@ -183,7 +194,7 @@ public abstract class SegmentBase {
     public final long getSegmentTimeUs(int sequenceNumber) {
       long unscaledSegmentTime;
       if (segmentTimeline != null) {
-        unscaledSegmentTime = segmentTimeline.get(sequenceNumber - startNumber).startTime
+        unscaledSegmentTime = segmentTimeline.getStartTime(sequenceNumber - startNumber)
             - presentationTimeOffset;
       } else {
         unscaledSegmentTime = (sequenceNumber - startNumber) * duration;
@@ -243,13 +254,25 @@ public abstract class SegmentBase {
      * @param mediaSegments A list of {@link RangedUri}s indicating the locations of the segments.
      */
     public SegmentList(RangedUri initialization, long timescale, long presentationTimeOffset,
-        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline,
+        int startNumber, long duration, SegmentTimeline segmentTimeline,
         List<RangedUri> mediaSegments) {
       super(initialization, timescale, presentationTimeOffset, startNumber, duration,
           segmentTimeline);
       this.mediaSegments = mediaSegments;
     }
 
+    /**
+     * @deprecated Use
+     *     {@link #SegmentList(RangedUri, long, long, int, long, SegmentTimeline, List)}.
+     */
+    @Deprecated
+    public SegmentList(RangedUri initialization, long timescale, long presentationTimeOffset,
+        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline,
+        List<RangedUri> mediaSegments) {
+      this(initialization, timescale, presentationTimeOffset, startNumber, duration,
+          SegmentTimeline.fromElements(segmentTimeline), mediaSegments);
+    }
+
     @Override
     public RangedUri getSegmentUrl(Representation representation, int sequenceNumber) {
       return mediaSegments.get(sequenceNumber - startNumber);
@@ -295,7 +318,7 @@ public abstract class SegmentBase {
      * @param mediaTemplate A template defining the location of each media segment.
      */
     public SegmentTemplate(RangedUri initialization, long timescale, long presentationTimeOffset,
-        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline,
+        int startNumber, long duration, SegmentTimeline segmentTimeline,
         UrlTemplate initializationTemplate, UrlTemplate mediaTemplate) {
       super(initialization, timescale, presentationTimeOffset, startNumber,
           duration, segmentTimeline);
@@ -303,6 +326,18 @@ public abstract class SegmentBase {
       this.mediaTemplate = mediaTemplate;
     }
 
+    /**
+     * @deprecated Use {@link #SegmentTemplate(RangedUri, long, long, int, long, SegmentTimeline,
+     *     UrlTemplate, UrlTemplate)}.
+     */
+    @Deprecated
+    public SegmentTemplate(RangedUri initialization, long timescale, long presentationTimeOffset,
+        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline,
+        UrlTemplate initializationTemplate, UrlTemplate mediaTemplate) {
+      this(initialization, timescale, presentationTimeOffset, startNumber, duration,
+          SegmentTimeline.fromElements(segmentTimeline), initializationTemplate, mediaTemplate);
+    }
+
     @Override
     public RangedUri getInitialization(Representation representation) {
       if (initializationTemplate != null) {
@@ -318,7 +353,7 @@ public abstract class SegmentBase {
     public RangedUri getSegmentUrl(Representation representation, int sequenceNumber) {
       long time;
       if (segmentTimeline != null) {
-        time = segmentTimeline.get(sequenceNumber - startNumber).startTime;
+        time = segmentTimeline.getStartTime(sequenceNumber - startNumber);
       } else {
         time = (sequenceNumber - startNumber) * duration;
       }
@@ -330,7 +365,7 @@ public abstract class SegmentBase {
     @Override
     public int getSegmentCount(long periodDurationUs) {
       if (segmentTimeline != null) {
-        return segmentTimeline.size();
+        return segmentTimeline.getSegmentCount();
       } else if (periodDurationUs != C.TIME_UNSET) {
         long durationUs = (duration * C.MICROS_PER_SECOND) / timescale;
         return (int) Util.ceilDivide(periodDurationUs, durationUs);
@@ -341,9 +376,164 @@ public abstract class SegmentBase {
 
   }
 
+  /**
+   * A timeline of segments from the MPD's SegmentTimeline element, run-length encoded.
+   * <p>
+   * Each run is a sequence of contiguous segments of equal duration, as declared by an S element
+   * with a repeat count, and is stored as three primitives. Looking up a segment by index or time
+   * takes a binary search over the runs, so long timelines of repeated segments take little
+   * memory and are fast to query.
+   */
+  public static final class SegmentTimeline {
+
+    private final int runCount;
+    private final long[] runStartTimes;
+    private final long[] runDurations;
+    private final int[] runFirstIndices;
+    private final int segmentCount;
+
+    /**
+     * @param runStartTimes The start time of the first segment of each run. The value in seconds
+     *     is the division of this value and the {@code timescale} of the enclosing element.
+     * @param runDurations The duration of each segment of each run. The value in seconds is the
+     *     division of this value and the {@code timescale} of the enclosing element.
+     * @param runSegmentCounts The number of segments in each run, which must be positive.
+     * @param runCount The number of runs. Elements of the arrays beyond it are ignored.
+     */
+    public SegmentTimeline(long[] runStartTimes, long[] runDurations, int[] runSegmentCounts,
+        int runCount) {
+      this.runCount = runCount;
+      this.runStartTimes = Arrays.copyOf(runStartTimes, runCount);
+      this.runDurations = Arrays.copyOf(runDurations, runCount);
+      runFirstIndices = new int[runCount];
+      int segmentCount = 0;
+      for (int i = 0; i < runCount; i++) {
+        runFirstIndices[i] = segmentCount;
+        segmentCount += runSegmentCounts[i];
+      }
+      this.segmentCount = segmentCount;
+    }
+
+    /**
+     * Returns the number of segments.
+     */
+    public int getSegmentCount() {
+      return segmentCount;
+    }
+
+    /**
+     * Returns the number of runs of contiguous segments of equal duration.
+     */
+    public int getRunCount() {
+      return runCount;
+    }
+
+    /**
+     * Returns the start time of a segment, in the timescale of the enclosing element.
+     *
+     * @param index The index of the segment.
+     */
+    public long getStartTime(int index) {
+      int run = getRunIndex(index);
+      return runStartTimes[run] + (index - runFirstIndices[run]) * runDurations[run];
+    }
+
+    /**
+     * Returns the duration of a segment, in the timescale of the enclosing element.
+     *
+     * @param index The index of the segment.
+     */
+    public long getDuration(int index) {
+      return runDurations[getRunIndex(index)];
+    }
+
+    /**
+     * Returns the index of the last segment that starts at or before a time, or 0 if the time is
+     * before the start of the first segment.
+     *
+     * @param time The time, in the timescale of the enclosing element.
+     */
+    public int getSegmentIndex(long time) {
+      if (runCount == 0) {
+        return 0;
+      }
+      int run = Util.binarySearchFloor(runStartTimes, time, true, true);
+      int runSegmentCount = (run + 1 < runCount ? runFirstIndices[run + 1] : segmentCount)
+          - runFirstIndices[run];
+      long offset = time - runStartTimes[run];
+      int indexInRun = offset <= 0 || runDurations[run] <= 0 ? 0
+          : (int) Math.min(offset / runDurations[run], runSegmentCount - 1);
+      return runFirstIndices[run] + indexInRun;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      SegmentTimeline other = (SegmentTimeline) obj;
+      return runCount == other.runCount
+          && segmentCount == other.segmentCount
+          && Arrays.equals(runStartTimes, other.runStartTimes)
+          && Arrays.equals(runDurations, other.runDurations)
+          && Arrays.equals(runFirstIndices, other.runFirstIndices);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = 17;
+      result = 31 * result + segmentCount;
+      result = 31 * result + Arrays.hashCode(runStartTimes);
+      result = 31 * result + Arrays.hashCode(runDurations);
+      return result;
+    }
+
+    /**
+     * Returns a timeline of the given elements, or null if {@code elements} is null.
+     */
+    /* package */ static SegmentTimeline fromElements(List<SegmentTimelineElement> elements) {
+      if (elements == null) {
+        return null;
+      }
+      int elementCount = elements.size();
+      long[] runStartTimes = new long[elementCount];
+      long[] runDurations = new long[elementCount];
+      int[] runSegmentCounts = new int[elementCount];
+      int runCount = 0;
+      for (int i = 0; i < elementCount; i++) {
+        SegmentTimelineElement element = elements.get(i);
+        if (runCount > 0 && runDurations[runCount - 1] == element.duration
+            && runStartTimes[runCount - 1] + runSegmentCounts[runCount - 1] * element.duration
+            == element.startTime) {
+          runSegmentCounts[runCount - 1]++;
+        } else {
+          runStartTimes[runCount] = element.startTime;
+          runDurations[runCount] = element.duration;
+          runSegmentCounts[runCount] = 1;
+          runCount++;
+        }
+      }
+      return new SegmentTimeline(runStartTimes, runDurations, runSegmentCounts, runCount);
+    }
+
+    private int getRunIndex(int index) {
+      if (index < 0 || index >= segmentCount) {
+        throw new IndexOutOfBoundsException("index=" + index + ", segmentCount=" + segmentCount);
+      }
+      return Util.binarySearchFloor(runFirstIndices, index, true, false);
+    }
+
+  }
+
   /**
    * Represents a timeline segment from the MPD's SegmentTimeline list.
+   *
+   * @deprecated Use {@link SegmentTimeline}, which holds a whole timeline.
    */
+  @Deprecated
   public static class SegmentTimelineElement {
 
     /* package */ final long startTime;
@@ -60,6 +60,12 @@ public class HlsMasterPlaylistParserTest extends TestCase {
       + "#EXT-X-STREAM-INF:BANDWIDTH=1280000,CODECS=\"mp4a.40.2,avc1.66.30\",RESOLUTION=304x128\n"
       + "http://example.com/low.m3u8\n";
 
+  private static final String MASTER_PLAYLIST_WITH_QUOTED_ATTRIBUTES = "#EXTM3U\n"
+      + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aud\",NAME=\"English, TYPE=VIDEO\",DEFAULT=YES\n"
+      + "#EXT-X-STREAM-INF:AVERAGE-BANDWIDTH=1000000,BANDWIDTH=1280000,"
+      + "CODECS=\"mp4a.40.2,avc1.66.30\"\n"
+      + "http://example.com/low.m3u8\n";
+
   public void testParseMasterPlaylist() throws IOException{
     HlsMasterPlaylist masterPlaylist = parseMasterPlaylist(PLAYLIST_URI, MASTER_PLAYLIST);
 
@@ -117,6 +123,18 @@ public class HlsMasterPlaylistParserTest extends TestCase {
     assertEquals("es", closedCaptionFormat.language);
   }
 
+  public void testPlaylistWithQuotedAttributes() throws IOException {
+    HlsMasterPlaylist playlist =
+        parseMasterPlaylist(PLAYLIST_URI, MASTER_PLAYLIST_WITH_QUOTED_ATTRIBUTES);
+    Format muxedAudioFormat = playlist.muxedAudioFormat;
+    assertNotNull(muxedAudioFormat);
+    assertEquals("English, TYPE=VIDEO", muxedAudioFormat.id);
+    assertEquals(C.SELECTION_FLAG_DEFAULT, muxedAudioFormat.selectionFlags);
+    assertEquals(1, playlist.variants.size());
+    assertEquals(1280000, playlist.variants.get(0).format.bitrate);
+    assertEquals("mp4a.40.2,avc1.66.30", playlist.variants.get(0).format.codecs);
+  }
+
   private static HlsMasterPlaylist parseMasterPlaylist(String uri, String playlistString)
       throws IOException {
     Uri playlistUri = Uri.parse(uri);
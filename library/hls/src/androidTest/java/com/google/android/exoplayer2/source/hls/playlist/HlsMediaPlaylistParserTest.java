@@ -140,4 +140,95 @@ public class HlsMediaPlaylistParserTest extends TestCase {
     }
   }
 
+  public void testParseMediaPlaylistInSmallReads() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    StringBuilder longUrl = new StringBuilder("https://example.com/");
+    for (int i = 0; i < 1000; i++) {
+      longUrl.append("path/");
+    }
+    longUrl.append("segment.ts");
+    String playlistString = "\uFEFF#EXTM3U\r\n"
+        + "#EXT-X-TARGETDURATION:8\r\n"
+        + "#EXTINF:7.975,\r\n"
+        + longUrl + "\r\n"
+        + "#EXTINF:7.941,title\r\n"
+        + "  https://example.com/segment2.ts  \r\n"
+        + "\r\n"
+        + "#EXT-X-ENDLIST";
+    final byte[] data = playlistString.getBytes(Charset.forName(C.UTF8_NAME));
+    // Deliver the playlist a byte at a time.
+    InputStream inputStream = new ByteArrayInputStream(data) {
+      @Override
+      public synchronized int read(byte[] buffer, int offset, int length) {
+        return super.read(buffer, offset, Math.min(length, 1));
+      }
+    };
+
+    HlsMediaPlaylist mediaPlaylist =
+        (HlsMediaPlaylist) new HlsPlaylistParser().parse(playlistUri, inputStream);
+
+    assertEquals(8000000, mediaPlaylist.targetDurationUs);
+    assertTrue(mediaPlaylist.hasEndTag);
+    List<Segment> segments = mediaPlaylist.segments;
+    assertEquals(2, segments.size());
+    assertEquals(7975000, segments.get(0).durationUs);
+    assertEquals(longUrl.toString(), segments.get(0).url);
+    assertEquals(7941000, segments.get(1).durationUs);
+    assertEquals("https://example.com/segment2.ts", segments.get(1).url);
+  }
+
+  public void testParseMediaPlaylistWithPreviousSnapshot() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    HlsPlaylistParser parser = new HlsPlaylistParser();
+    HlsMediaPlaylist previousPlaylist = parseLivePlaylist(parser, playlistUri, 10, 0, 4, null);
+
+    // Appended segments share the previous snapshot's prefix.
+    HlsMediaPlaylist playlist = parseLivePlaylist(parser, playlistUri, 10, 0, 6, previousPlaylist);
+    assertEquals(6, playlist.segments.size());
+    for (int i = 0; i < 4; i++) {
+      assertSame(previousPlaylist.segments.get(i), playlist.segments.get(i));
+    }
+    assertEquals("https://example.com/segment14.ts", playlist.segments.get(4).url);
+    assertEquals(16000000, playlist.segments.get(4).relativeStartTimeUs);
+
+    // A sliding window shifts the relative start times, so only the URIs can be shared.
+    HlsMediaPlaylist slidPlaylist =
+        parseLivePlaylist(parser, playlistUri, 12, 0, 4, previousPlaylist);
+    HlsMediaPlaylist expectedPlaylist = parseLivePlaylist(parser, playlistUri, 12, 0, 4, null);
+    assertEquals(12, slidPlaylist.mediaSequence);
+    for (int i = 0; i < 4; i++) {
+      Segment segment = slidPlaylist.segments.get(i);
+      Segment expectedSegment = expectedPlaylist.segments.get(i);
+      assertEquals(expectedSegment.url, segment.url);
+      assertEquals(expectedSegment.relativeStartTimeUs, segment.relativeStartTimeUs);
+      assertEquals(expectedSegment.durationUs, segment.durationUs);
+    }
+    assertSame(previousPlaylist.segments.get(2).url, slidPlaylist.segments.get(0).url);
+
+    // Segments whose URIs have changed aren't reused, even if their media sequence is known.
+    HlsMediaPlaylist renamedPlaylist =
+        parseLivePlaylist(parser, playlistUri, 10, 100, 4, previousPlaylist);
+    for (int i = 0; i < 4; i++) {
+      assertNotSame(previousPlaylist.segments.get(i), renamedPlaylist.segments.get(i));
+    }
+    assertEquals("https://example.com/segment110.ts", renamedPlaylist.segments.get(0).url);
+  }
+
+  private static HlsMediaPlaylist parseLivePlaylist(HlsPlaylistParser parser, Uri playlistUri,
+      int mediaSequence, int segmentNameOffset, int segmentCount,
+      HlsMediaPlaylist previousPlaylist) throws IOException {
+    StringBuilder playlistString = new StringBuilder("#EXTM3U\n"
+        + "#EXT-X-TARGETDURATION:4\n"
+        + "#EXT-X-MEDIA-SEQUENCE:" + mediaSequence + "\n");
+    for (int i = 0; i < segmentCount; i++) {
+      playlistString.append("#EXTINF:4.0,\n")
+          .append("https://example.com/segment")
+          .append(mediaSequence + segmentNameOffset + i)
+          .append(".ts\n");
+    }
+    InputStream inputStream = new ByteArrayInputStream(
+        playlistString.toString().getBytes(Charset.forName(C.UTF8_NAME)));
+    return (HlsMediaPlaylist) parser.parse(playlistUri, inputStream, previousPlaylist);
+  }
+
 }
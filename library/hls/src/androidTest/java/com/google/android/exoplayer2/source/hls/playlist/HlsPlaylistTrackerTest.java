@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import com.google.android.exoplayer2.source.AdaptiveMediaSourceEventListener.EventDispatcher;
+import com.google.android.exoplayer2.source.hls.HlsDataSourceFactory;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist.HlsUrl;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.FakeDataSource.FakeDataSet;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the variant playlist prefetching in {@link HlsPlaylistTracker}.
+ */
+public final class HlsPlaylistTrackerTest extends TestCase {
+
+  private static final long TIMEOUT_MS = 10000;
+  private static final long KEEPALIVE_MS = 500;
+
+  private static final String MASTER_PLAYLIST_URI = "https://example.com/master.m3u8";
+  private static final String URI_100K = "https://example.com/100k.m3u8";
+  private static final String URI_200K = "https://example.com/200k.m3u8";
+  private static final String URI_300K = "https://example.com/300k.m3u8";
+  private static final String URI_400K = "https://example.com/400k.m3u8";
+  private static final String URI_500K = "https://example.com/500k.m3u8";
+
+  // The first variant is the initial primary playlist.
+  private static final String MASTER_PLAYLIST = "#EXTM3U\n"
+      + "#EXT-X-STREAM-INF:BANDWIDTH=300000\n"
+      + URI_300K + "\n"
+      + "#EXT-X-STREAM-INF:BANDWIDTH=100000\n"
+      + URI_100K + "\n"
+      + "#EXT-X-STREAM-INF:BANDWIDTH=200000\n"
+      + URI_200K + "\n"
+      + "#EXT-X-STREAM-INF:BANDWIDTH=400000\n"
+      + URI_400K + "\n"
+      + "#EXT-X-STREAM-INF:BANDWIDTH=500000\n"
+      + URI_500K + "\n";
+
+  private static final String LIVE_MEDIA_PLAYLIST = "#EXTM3U\n"
+      + "#EXT-X-VERSION:3\n"
+      + "#EXT-X-TARGETDURATION:1\n"
+      + "#EXT-X-MEDIA-SEQUENCE:0\n"
+      + "#EXTINF:1.0,\n"
+      + "segment0.ts\n"
+      + "#EXTINF:1.0,\n"
+      + "segment1.ts\n";
+
+  private static final String ENDED_MEDIA_PLAYLIST = LIVE_MEDIA_PLAYLIST + "#EXT-X-ENDLIST\n";
+
+  private FakeDataSet fakeDataSet;
+  private OpenCountingDataSourceFactory dataSourceFactory;
+  private HandlerThread trackerThread;
+  private Handler handler;
+  private HlsPlaylistTracker tracker;
+  private CountDownLatch blacklistedCountDownLatch;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    fakeDataSet = new FakeDataSet().setData(MASTER_PLAYLIST_URI, getBytes(MASTER_PLAYLIST));
+    for (String uri : new String[] {URI_100K, URI_200K, URI_300K, URI_400K, URI_500K}) {
+      fakeDataSet.setData(uri, getBytes(LIVE_MEDIA_PLAYLIST));
+    }
+    dataSourceFactory = new OpenCountingDataSourceFactory(fakeDataSet);
+    trackerThread = new HandlerThread("HlsPlaylistTrackerTest thread");
+    trackerThread.start();
+    handler = new Handler(trackerThread.getLooper());
+    blacklistedCountDownLatch = new CountDownLatch(1);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    runOnTrackerThread(new Callable<Void>() {
+      @Override
+      public Void call() {
+        if (tracker != null) {
+          tracker.release();
+        }
+        return null;
+      }
+    });
+    trackerThread.quit();
+    trackerThread.join();
+    super.tearDown();
+  }
+
+  public void testPrefetchesClosestVariants() throws Exception {
+    startTracker(2, KEEPALIVE_MS);
+    blockUntilLoaded(URI_200K);
+    blockUntilLoaded(URI_400K);
+    assertEquals(0, dataSourceFactory.getOpenCount(URI_100K));
+    assertEquals(0, dataSourceFactory.getOpenCount(URI_500K));
+
+    // 300k is already loaded, so only 500k is fetched.
+    getPlaylistSnapshot(URI_400K);
+    blockUntilLoaded(URI_500K);
+    assertEquals(0, dataSourceFactory.getOpenCount(URI_100K));
+
+    getPlaylistSnapshot(URI_200K);
+    blockUntilLoaded(URI_100K);
+  }
+
+  public void testSkipsBlacklistedVariant() throws Exception {
+    fakeDataSet.newData(URI_400K)
+        .appendReadError(new InvalidResponseCodeException(404, null, null))
+        .appendReadData(getBytes(LIVE_MEDIA_PLAYLIST));
+    startTracker(1, KEEPALIVE_MS);
+    assertTrue(blacklistedCountDownLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertEquals(0, dataSourceFactory.getOpenCount(URI_200K));
+
+    // The next closest variant is prefetched instead of the blacklisted one.
+    getPlaylistSnapshot(URI_300K);
+    blockUntilLoaded(URI_200K);
+    assertEquals(1, dataSourceFactory.getOpenCount(URI_400K));
+    assertFalse(isSnapshotValid(URI_400K));
+  }
+
+  public void testStopsRefreshingWhenKeepaliveExpires() throws Exception {
+    startTracker(1, KEEPALIVE_MS);
+    // The prefetched playlist is refreshed once, after its keepalive has already expired.
+    blockUntilOpenCount(URI_400K, 2);
+    // Once the refresh has completed, no further refresh is scheduled.
+    blockUntilIdle(URI_400K);
+    assertEquals(2, dataSourceFactory.getOpenCount(URI_400K));
+    // The primary playlist keeps being refreshed.
+    assertTrue(isLoadingOrRefreshPending(URI_300K));
+    blockUntilOpenCount(URI_300K, dataSourceFactory.getOpenCount(URI_300K) + 1);
+  }
+
+  public void testDoesNotReloadEndedVariant() throws Exception {
+    fakeDataSet.setData(URI_400K, getBytes(ENDED_MEDIA_PLAYLIST));
+    startTracker(1, TIMEOUT_MS);
+    blockUntilLoaded(URI_400K);
+
+    getPlaylistSnapshot(URI_300K);
+    assertFalse(isLoadingOrRefreshPending(URI_400K));
+    assertEquals(1, dataSourceFactory.getOpenCount(URI_400K));
+  }
+
+  // Internal methods.
+
+  private void startTracker(final int prefetchVariantCount, final long prefetchedUrlKeepaliveMs)
+      throws Exception {
+    runOnTrackerThread(new Callable<Void>() {
+      @Override
+      public Void call() {
+        tracker = new HlsPlaylistTracker(Uri.parse(MASTER_PLAYLIST_URI), dataSourceFactory,
+            new EventDispatcher(null, null), 3, prefetchVariantCount, prefetchedUrlKeepaliveMs,
+            new HlsPlaylistTracker.PrimaryPlaylistListener() {
+              @Override
+              public void onPrimaryPlaylistRefreshed(HlsMediaPlaylist mediaPlaylist) {
+                // Do nothing.
+              }
+            });
+        tracker.addListener(new HlsPlaylistTracker.PlaylistEventListener() {
+          @Override
+          public void onPlaylistChanged() {
+            // Do nothing.
+          }
+
+          @Override
+          public void onPlaylistBlacklisted(HlsUrl url, long blacklistDurationMs) {
+            blacklistedCountDownLatch.countDown();
+          }
+        });
+        tracker.start();
+        return null;
+      }
+    });
+    blockUntilLoaded(URI_300K);
+  }
+
+  private HlsMediaPlaylist getPlaylistSnapshot(final String uri) throws Exception {
+    return runOnTrackerThread(new Callable<HlsMediaPlaylist>() {
+      @Override
+      public HlsMediaPlaylist call() {
+        return tracker.getPlaylistSnapshot(getVariant(uri));
+      }
+    });
+  }
+
+  private boolean isSnapshotValid(final String uri) throws Exception {
+    return runOnTrackerThread(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        // Unlike getPlaylistSnapshot, this doesn't cause adjacent variants to be prefetched.
+        return tracker.getMasterPlaylist() != null && tracker.isSnapshotValid(getVariant(uri));
+      }
+    });
+  }
+
+  private boolean isLoadingOrRefreshPending(final String uri) throws Exception {
+    return runOnTrackerThread(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return tracker.isLoadingOrRefreshPending(getVariant(uri));
+      }
+    });
+  }
+
+  private HlsUrl getVariant(String uri) {
+    for (HlsUrl variant : tracker.getMasterPlaylist().variants) {
+      if (variant.url.equals(uri)) {
+        return variant;
+      }
+    }
+    throw new IllegalArgumentException(uri);
+  }
+
+  private void blockUntilLoaded(String uri) throws Exception {
+    long deadlineMs = SystemClock.elapsedRealtime() + TIMEOUT_MS;
+    while (!isSnapshotValid(uri)) {
+      assertTrue("Timed out loading " + uri, SystemClock.elapsedRealtime() < deadlineMs);
+      Thread.sleep(10);
+    }
+  }
+
+  private void blockUntilIdle(String uri) throws Exception {
+    long deadlineMs = SystemClock.elapsedRealtime() + TIMEOUT_MS;
+    while (isLoadingOrRefreshPending(uri)) {
+      assertTrue("Timed out waiting for " + uri, SystemClock.elapsedRealtime() < deadlineMs);
+      Thread.sleep(10);
+    }
+  }
+
+  private void blockUntilOpenCount(String uri, int openCount) throws InterruptedException {
+    long deadlineMs = SystemClock.elapsedRealtime() + TIMEOUT_MS;
+    while (dataSourceFactory.getOpenCount(uri) < openCount) {
+      assertTrue("Timed out opening " + uri, SystemClock.elapsedRealtime() < deadlineMs);
+      Thread.sleep(10);
+    }
+  }
+
+  private <T> T runOnTrackerThread(Callable<T> callable) throws Exception {
+    FutureTask<T> task = new FutureTask<>(callable);
+    handler.post(task);
+    return task.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+  }
+
+  private static byte[] getBytes(String string) {
+    return string.getBytes(Charset.forName("UTF-8"));
+  }
+
+  /**
+   * Creates {@link FakeDataSource}s that count how many times each uri is opened.
+   */
+  private static final class OpenCountingDataSourceFactory implements HlsDataSourceFactory {
+
+    private final FakeDataSet fakeDataSet;
+    private final HashMap<String, Integer> openCounts;
+
+    public OpenCountingDataSourceFactory(FakeDataSet fakeDataSet) {
+      this.fakeDataSet = fakeDataSet;
+      openCounts = new HashMap<>();
+    }
+
+    public synchronized int getOpenCount(String uri) {
+      Integer openCount = openCounts.get(uri);
+      return openCount == null ? 0 : openCount;
+    }
+
+    @Override
+    public DataSource createDataSource(int dataType) {
+      final FakeDataSource dataSource = new FakeDataSource(fakeDataSet);
+      return new DataSource() {
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+          onOpen(dataSpec.uri.toString());
+          return dataSource.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+          return dataSource.read(buffer, offset, readLength);
+        }
+
+        @Override
+        public Uri getUri() {
+          return dataSource.getUri();
+        }
+
+        @Override
+        public void close() throws IOException {
+          dataSource.close();
+        }
+
+      };
+    }
+
+    private synchronized void onOpen(String uri) {
+      openCounts.put(uri, getOpenCount(uri) + 1);
+    }
+
+  }
+
+}
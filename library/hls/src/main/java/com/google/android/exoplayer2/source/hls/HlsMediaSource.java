@@ -46,6 +46,7 @@ public final class HlsMediaSource implements MediaSource,
   private final Uri manifestUri;
   private final HlsDataSourceFactory dataSourceFactory;
   private final int minLoadableRetryCount;
+  private final int prefetchVariantCount;
   private final EventDispatcher eventDispatcher;
 
   private HlsPlaylistTracker playlistTracker;
@@ -67,9 +68,29 @@ public final class HlsMediaSource implements MediaSource,
   public HlsMediaSource(Uri manifestUri, HlsDataSourceFactory dataSourceFactory,
       int minLoadableRetryCount, Handler eventHandler,
       AdaptiveMediaSourceEventListener eventListener) {
+    this(manifestUri, dataSourceFactory, minLoadableRetryCount, 0, eventHandler, eventListener);
+  }
+
+  /**
+   * @param manifestUri The {@link Uri} of the HLS manifest.
+   * @param dataSourceFactory An {@link HlsDataSourceFactory} for {@link DataSource}s for manifests,
+   *     segments and keys.
+   * @param minLoadableRetryCount The minimum number of times loads must be retried before errors
+   *     are propagated.
+   * @param prefetchVariantCount The number of variants closest in bitrate to the one being played
+   *     whose playlists are loaded and kept refreshed ahead of a switch to them. Zero disables
+   *     prefetching.
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener An {@link AdaptiveMediaSourceEventListener}. May be null if delivery of
+   *     events is not required.
+   */
+  public HlsMediaSource(Uri manifestUri, HlsDataSourceFactory dataSourceFactory,
+      int minLoadableRetryCount, int prefetchVariantCount, Handler eventHandler,
+      AdaptiveMediaSourceEventListener eventListener) {
     this.manifestUri = manifestUri;
     this.dataSourceFactory = dataSourceFactory;
     this.minLoadableRetryCount = minLoadableRetryCount;
+    this.prefetchVariantCount = prefetchVariantCount;
     eventDispatcher = new EventDispatcher(eventHandler, eventListener);
   }
 
@@ -77,7 +98,7 @@ public final class HlsMediaSource implements MediaSource,
   public void prepareSource(ExoPlayer player, boolean isTopLevelSource, Listener listener) {
     Assertions.checkState(playlistTracker == null);
     playlistTracker = new HlsPlaylistTracker(manifestUri, dataSourceFactory, eventDispatcher,
-        minLoadableRetryCount, this);
+        minLoadableRetryCount, prefetchVariantCount, this);
     sourceListener = listener;
     playlistTracker.start();
   }
@@ -24,16 +24,10 @@ import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segmen
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * HLS playlists parsing logic.
@@ -67,123 +61,101 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   private static final String METHOD_AES128 = "AES-128";
 
   private static final String BOOLEAN_TRUE = "YES";
-  private static final String BOOLEAN_FALSE = "NO";
 
-  private static final Pattern REGEX_BANDWIDTH = Pattern.compile("BANDWIDTH=(\\d+)\\b");
-  private static final Pattern REGEX_CODECS = Pattern.compile("CODECS=\"(.+?)\"");
-  private static final Pattern REGEX_RESOLUTION = Pattern.compile("RESOLUTION=(\\d+x\\d+)");
-  private static final Pattern REGEX_TARGET_DURATION = Pattern.compile(TAG_TARGET_DURATION
-      + ":(\\d+)\\b");
-  private static final Pattern REGEX_VERSION = Pattern.compile(TAG_VERSION + ":(\\d+)\\b");
-  private static final Pattern REGEX_PLAYLIST_TYPE = Pattern.compile(TAG_PLAYLIST_TYPE
-      + ":(.+)\\b");
-  private static final Pattern REGEX_MEDIA_SEQUENCE = Pattern.compile(TAG_MEDIA_SEQUENCE
-      + ":(\\d+)\\b");
-  private static final Pattern REGEX_MEDIA_DURATION = Pattern.compile(TAG_MEDIA_DURATION
-      + ":([\\d\\.]+)\\b");
-  private static final Pattern REGEX_TIME_OFFSET = Pattern.compile("TIME-OFFSET=(-?[\\d\\.]+)\\b");
-  private static final Pattern REGEX_BYTERANGE = Pattern.compile(TAG_BYTERANGE
-      + ":(\\d+(?:@\\d+)?)\\b");
-  private static final Pattern REGEX_ATTR_BYTERANGE =
-      Pattern.compile("BYTERANGE=\"(\\d+(?:@\\d+)?)\\b\"");
-  private static final Pattern REGEX_METHOD = Pattern.compile("METHOD=(" + METHOD_NONE + "|"
-      + METHOD_AES128 + ")");
-  private static final Pattern REGEX_URI = Pattern.compile("URI=\"(.+?)\"");
-  private static final Pattern REGEX_IV = Pattern.compile("IV=([^,.*]+)");
-  private static final Pattern REGEX_TYPE = Pattern.compile("TYPE=(" + TYPE_AUDIO + "|" + TYPE_VIDEO
-      + "|" + TYPE_SUBTITLES + "|" + TYPE_CLOSED_CAPTIONS + ")");
-  private static final Pattern REGEX_LANGUAGE = Pattern.compile("LANGUAGE=\"(.+?)\"");
-  private static final Pattern REGEX_NAME = Pattern.compile("NAME=\"(.+?)\"");
-  private static final Pattern REGEX_INSTREAM_ID =
-      Pattern.compile("INSTREAM-ID=\"((?:CC|SERVICE)\\d+)\"");
-  private static final Pattern REGEX_AUTOSELECT = compileBooleanAttrPattern("AUTOSELECT");
-  private static final Pattern REGEX_DEFAULT = compileBooleanAttrPattern("DEFAULT");
-  private static final Pattern REGEX_FORCED = compileBooleanAttrPattern("FORCED");
+  private static final String ATTR_BANDWIDTH = "BANDWIDTH";
+  private static final String ATTR_CODECS = "CODECS";
+  private static final String ATTR_RESOLUTION = "RESOLUTION";
+  private static final String ATTR_TIME_OFFSET = "TIME-OFFSET";
+  private static final String ATTR_BYTERANGE = "BYTERANGE";
+  private static final String ATTR_METHOD = "METHOD";
+  private static final String ATTR_URI = "URI";
+  private static final String ATTR_IV = "IV";
+  private static final String ATTR_TYPE = "TYPE";
+  private static final String ATTR_LANGUAGE = "LANGUAGE";
+  private static final String ATTR_NAME = "NAME";
+  private static final String ATTR_INSTREAM_ID = "INSTREAM-ID";
+  private static final String ATTR_AUTOSELECT = "AUTOSELECT";
+  private static final String ATTR_DEFAULT = "DEFAULT";
+  private static final String ATTR_FORCED = "FORCED";
+
+  private static final String INSTREAM_ID_CC = "CC";
+  private static final String INSTREAM_ID_SERVICE = "SERVICE";
 
   @Override
   public HlsPlaylist parse(Uri uri, InputStream inputStream) throws IOException {
-    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-    Queue<String> extraLines = new LinkedList<>();
-    String line;
+    return parse(uri, inputStream, null);
+  }
+
+  /**
+   * Parses a playlist, reusing what's already known from a previous snapshot of the same media
+   * playlist.
+   * <p>
+   * Segments are identified by their media sequence numbers. A segment that's in the previous
+   * snapshot with the same URI is returned as the same {@link Segment} instance if nothing else
+   * about it has changed, and otherwise shares its URI string. When a live playlist is refreshed,
+   * segments therefore only need to be created for the media sequence numbers that are new.
+   *
+   * @param uri The {@link Uri} of the playlist.
+   * @param inputStream The playlist data.
+   * @param previousMediaPlaylist A previous snapshot of the media playlist, or null.
+   * @return The parsed playlist.
+   * @throws IOException If an error occurs reading the data or the data is malformed.
+   */
+  public HlsPlaylist parse(Uri uri, InputStream inputStream,
+      HlsMediaPlaylist previousMediaPlaylist) throws IOException {
+    HlsPlaylistTokenizer tokenizer = new HlsPlaylistTokenizer(inputStream);
     try {
-      if (!checkPlaylistHeader(reader)) {
+      if (!checkPlaylistHeader(tokenizer)) {
         throw new UnrecognizedInputFormatException("Input does not start with the #EXTM3U header.",
             uri);
       }
-      while ((line = reader.readLine()) != null) {
-        line = line.trim();
-        if (line.isEmpty()) {
-          // Do nothing.
-        } else if (line.startsWith(TAG_STREAM_INF)) {
-          extraLines.add(line);
-          return parseMasterPlaylist(new LineIterator(extraLines, reader), uri.toString());
-        } else if (line.startsWith(TAG_TARGET_DURATION)
-            || line.startsWith(TAG_MEDIA_SEQUENCE)
-            || line.startsWith(TAG_MEDIA_DURATION)
-            || line.startsWith(TAG_KEY)
-            || line.startsWith(TAG_BYTERANGE)
-            || line.equals(TAG_DISCONTINUITY)
-            || line.equals(TAG_DISCONTINUITY_SEQUENCE)
-            || line.equals(TAG_ENDLIST)) {
-          extraLines.add(line);
-          return parseMediaPlaylist(new LineIterator(extraLines, reader), uri.toString());
-        } else {
-          extraLines.add(line);
+      // Look ahead for a tag that identifies the type of playlist, then parse from the header.
+      tokenizer.mark();
+      while (tokenizer.nextLine()) {
+        if (tokenizer.lineStartsWith(TAG_STREAM_INF)) {
+          tokenizer.reset();
+          return parseMasterPlaylist(tokenizer, uri.toString());
+        } else if (tokenizer.lineStartsWith(TAG_TARGET_DURATION)
+            || tokenizer.lineStartsWith(TAG_MEDIA_SEQUENCE)
+            || tokenizer.lineStartsWith(TAG_MEDIA_DURATION)
+            || tokenizer.lineStartsWith(TAG_KEY)
+            || tokenizer.lineStartsWith(TAG_BYTERANGE)
+            || tokenizer.lineEquals(TAG_DISCONTINUITY)
+            || tokenizer.lineEquals(TAG_DISCONTINUITY_SEQUENCE)
+            || tokenizer.lineEquals(TAG_ENDLIST)) {
+          tokenizer.reset();
+          return parseMediaPlaylist(tokenizer, uri.toString(), previousMediaPlaylist);
         }
       }
     } finally {
-      Util.closeQuietly(reader);
+      Util.closeQuietly(inputStream);
     }
     throw new ParserException("Failed to parse the playlist, could not identify any tags.");
   }
 
-  private static boolean checkPlaylistHeader(BufferedReader reader) throws IOException {
-    int last = reader.read();
-    if (last == 0xEF) {
-      if (reader.read() != 0xBB || reader.read() != 0xBF) {
-        return false;
-      }
-      // The playlist contains a Byte Order Mark, which gets discarded.
-      last = reader.read();
-    }
-    last = skipIgnorableWhitespace(reader, true, last);
-    int playlistHeaderLength = PLAYLIST_HEADER.length();
-    for (int i = 0; i < playlistHeaderLength; i++) {
-      if (last != PLAYLIST_HEADER.charAt(i)) {
-        return false;
-      }
-      last = reader.read();
-    }
-    last = skipIgnorableWhitespace(reader, false, last);
-    return Util.isLinebreak(last);
-  }
-
-  private static int skipIgnorableWhitespace(BufferedReader reader, boolean skipLinebreaks, int c)
-      throws IOException {
-    while (c != -1 && Character.isWhitespace(c) && (skipLinebreaks || !Util.isLinebreak(c))) {
-      c = reader.read();
-    }
-    return c;
+  private static boolean checkPlaylistHeader(HlsPlaylistTokenizer tokenizer) throws IOException {
+    // The playlist may start with a Byte Order Mark, which gets discarded.
+    return tokenizer.skipByteOrderMark() && tokenizer.nextLine()
+        && tokenizer.lineEquals(PLAYLIST_HEADER);
   }
 
-  private static HlsMasterPlaylist parseMasterPlaylist(LineIterator iterator, String baseUri)
-      throws IOException {
+  private static HlsMasterPlaylist parseMasterPlaylist(HlsPlaylistTokenizer tokenizer,
+      String baseUri) throws IOException {
     ArrayList<HlsMasterPlaylist.HlsUrl> variants = new ArrayList<>();
     ArrayList<HlsMasterPlaylist.HlsUrl> audios = new ArrayList<>();
     ArrayList<HlsMasterPlaylist.HlsUrl> subtitles = new ArrayList<>();
     Format muxedAudioFormat = null;
     ArrayList<Format> muxedCaptionFormats = new ArrayList<>();
-
-    String line;
-    while (iterator.hasNext()) {
-      line = iterator.next();
-      if (line.startsWith(TAG_MEDIA)) {
-        @C.SelectionFlags int selectionFlags = parseSelectionFlags(line);
-        String uri = parseOptionalStringAttr(line, REGEX_URI);
-        String id = parseStringAttr(line, REGEX_NAME);
-        String language = parseOptionalStringAttr(line, REGEX_LANGUAGE);
+    int[] resolution = new int[2];
+
+    while (tokenizer.nextLine()) {
+      if (tokenizer.lineStartsWith(TAG_MEDIA)) {
+        @C.SelectionFlags int selectionFlags = parseSelectionFlags(tokenizer);
+        String uri = parseOptionalStringAttr(tokenizer, ATTR_URI);
+        String id = parseStringAttr(tokenizer, ATTR_NAME);
+        String language = parseOptionalStringAttr(tokenizer, ATTR_LANGUAGE);
         Format format;
-        switch (parseStringAttr(line, REGEX_TYPE)) {
+        switch (parseStringAttr(tokenizer, ATTR_TYPE)) {
           case TYPE_AUDIO:
             format = Format.createAudioContainerFormat(id, MimeTypes.APPLICATION_M3U8, null, null,
                 Format.NO_VALUE, Format.NO_VALUE, Format.NO_VALUE, null, selectionFlags, language);
@@ -199,47 +171,49 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
             subtitles.add(new HlsMasterPlaylist.HlsUrl(uri, format));
             break;
           case TYPE_CLOSED_CAPTIONS:
-            String instreamId = parseStringAttr(line, REGEX_INSTREAM_ID);
+            findAttr(tokenizer, ATTR_INSTREAM_ID);
             String mimeType;
             int accessibilityChannel;
-            if (instreamId.startsWith("CC")) {
+            if (tokenizer.attributeValueStartsWith(INSTREAM_ID_CC)) {
               mimeType = MimeTypes.APPLICATION_CEA608;
-              accessibilityChannel = Integer.parseInt(instreamId.substring(2));
-            } else /* starts with SERVICE */ {
+              accessibilityChannel =
+                  (int) tokenizer.parseAttributeLong(INSTREAM_ID_CC.length());
+            } else if (tokenizer.attributeValueStartsWith(INSTREAM_ID_SERVICE)) {
               mimeType = MimeTypes.APPLICATION_CEA708;
-              accessibilityChannel = Integer.parseInt(instreamId.substring(7));
+              accessibilityChannel =
+                  (int) tokenizer.parseAttributeLong(INSTREAM_ID_SERVICE.length());
+            } else {
+              throw new ParserException("Invalid " + ATTR_INSTREAM_ID + " in "
+                  + tokenizer.getLine());
             }
             muxedCaptionFormats.add(Format.createTextContainerFormat(id, null, mimeType, null,
                 Format.NO_VALUE, selectionFlags, language, accessibilityChannel));
             break;
-          default:
+          case TYPE_VIDEO:
             // Do nothing.
             break;
+          default:
+            throw new ParserException("Invalid " + ATTR_TYPE + " in " + tokenizer.getLine());
         }
-      } else if (line.startsWith(TAG_STREAM_INF)) {
-        int bitrate = parseIntAttr(line, REGEX_BANDWIDTH);
-        String codecs = parseOptionalStringAttr(line, REGEX_CODECS);
-        String resolutionString = parseOptionalStringAttr(line, REGEX_RESOLUTION);
+      } else if (tokenizer.lineStartsWith(TAG_STREAM_INF)) {
+        findAttr(tokenizer, ATTR_BANDWIDTH);
+        int bitrate = (int) tokenizer.parseAttributeLong(0);
+        String codecs = parseOptionalStringAttr(tokenizer, ATTR_CODECS);
         int width;
         int height;
-        if (resolutionString != null) {
-          String[] widthAndHeight = resolutionString.split("x");
-          width = Integer.parseInt(widthAndHeight[0]);
-          height = Integer.parseInt(widthAndHeight[1]);
-          if (width <= 0 || height <= 0) {
-            // Resolution string is invalid.
-            width = Format.NO_VALUE;
-            height = Format.NO_VALUE;
-          }
+        if (tokenizer.findAttribute(ATTR_RESOLUTION)
+            && tokenizer.parseAttributeResolution(resolution)) {
+          width = resolution[0];
+          height = resolution[1];
         } else {
           width = Format.NO_VALUE;
           height = Format.NO_VALUE;
         }
-        line = iterator.next();
+        String url = tokenizer.nextLine() ? tokenizer.getLine() : null;
         Format format = Format.createVideoContainerFormat(Integer.toString(variants.size()),
             MimeTypes.APPLICATION_M3U8, null, codecs, bitrate, width, height, Format.NO_VALUE, null,
             0);
-        variants.add(new HlsMasterPlaylist.HlsUrl(line, format));
+        variants.add(new HlsMasterPlaylist.HlsUrl(url, format));
       }
     }
     return new HlsMasterPlaylist(baseUri, variants, audios, subtitles, muxedAudioFormat,
@@ -247,14 +221,14 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   }
 
   @C.SelectionFlags
-  private static int parseSelectionFlags(String line) {
-    return (parseBooleanAttribute(line, REGEX_DEFAULT, false) ? C.SELECTION_FLAG_DEFAULT : 0)
-        | (parseBooleanAttribute(line, REGEX_FORCED, false) ? C.SELECTION_FLAG_FORCED : 0)
-        | (parseBooleanAttribute(line, REGEX_AUTOSELECT, false) ? C.SELECTION_FLAG_AUTOSELECT : 0);
+  private static int parseSelectionFlags(HlsPlaylistTokenizer tokenizer) {
+    return (parseBooleanAttribute(tokenizer, ATTR_DEFAULT) ? C.SELECTION_FLAG_DEFAULT : 0)
+        | (parseBooleanAttribute(tokenizer, ATTR_FORCED) ? C.SELECTION_FLAG_FORCED : 0)
+        | (parseBooleanAttribute(tokenizer, ATTR_AUTOSELECT) ? C.SELECTION_FLAG_AUTOSELECT : 0);
   }
 
-  private static HlsMediaPlaylist parseMediaPlaylist(LineIterator iterator, String baseUri)
-      throws IOException {
+  private static HlsMediaPlaylist parseMediaPlaylist(HlsPlaylistTokenizer tokenizer,
+      String baseUri, HlsMediaPlaylist previousMediaPlaylist) throws IOException {
     @HlsMediaPlaylist.PlaylistType int playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_UNKNOWN;
     long startOffsetUs = C.TIME_UNSET;
     int mediaSequence = 0;
@@ -270,80 +244,69 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     int relativeDiscontinuitySequence = 0;
     long playlistStartTimeUs = 0;
     long segmentStartTimeUs = 0;
-    long segmentByteRangeOffset = 0;
-    long segmentByteRangeLength = C.LENGTH_UNSET;
+    // Holds the length and offset of byte ranges as they're parsed.
+    long[] segmentByteRange = new long[] {C.LENGTH_UNSET, 0};
     int segmentMediaSequence = 0;
 
     boolean isEncrypted = false;
     String encryptionKeyUri = null;
     String encryptionIV = null;
 
-    String line;
-    while (iterator.hasNext()) {
-      line = iterator.next();
-      if (line.startsWith(TAG_PLAYLIST_TYPE)) {
-        String playlistTypeString = parseStringAttr(line, REGEX_PLAYLIST_TYPE);
-        if ("VOD".equals(playlistTypeString)) {
+    while (tokenizer.nextLine()) {
+      if (tokenizer.lineStartsWith(TAG_PLAYLIST_TYPE)) {
+        if (tokenizer.tagValueEquals("VOD")) {
           playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_VOD;
-        } else if ("EVENT".equals(playlistTypeString)) {
+        } else if (tokenizer.tagValueEquals("EVENT")) {
           playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_EVENT;
         } else {
-          throw new ParserException("Illegal playlist type: " + playlistTypeString);
+          throw new ParserException("Illegal playlist type: " + tokenizer.getTagValue());
         }
-      } else if (line.startsWith(TAG_START)) {
-        startOffsetUs = (long) (parseDoubleAttr(line, REGEX_TIME_OFFSET) * C.MICROS_PER_SECOND);
-      } else if (line.startsWith(TAG_INIT_SEGMENT)) {
-        String uri = parseStringAttr(line, REGEX_URI);
-        String byteRange = parseOptionalStringAttr(line, REGEX_ATTR_BYTERANGE);
-        if (byteRange != null) {
-          String[] splitByteRange = byteRange.split("@");
-          segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
-          if (splitByteRange.length > 1) {
-            segmentByteRangeOffset = Long.parseLong(splitByteRange[1]);
-          }
+      } else if (tokenizer.lineStartsWith(TAG_START)) {
+        findAttr(tokenizer, ATTR_TIME_OFFSET);
+        startOffsetUs = (long) (tokenizer.parseAttributeDouble() * C.MICROS_PER_SECOND);
+      } else if (tokenizer.lineStartsWith(TAG_INIT_SEGMENT)) {
+        String uri = parseStringAttr(tokenizer, ATTR_URI);
+        if (tokenizer.findAttribute(ATTR_BYTERANGE)) {
+          tokenizer.parseAttributeByteRange(segmentByteRange);
         }
-        initializationSegment = new Segment(uri, segmentByteRangeOffset, segmentByteRangeLength);
-        segmentByteRangeOffset = 0;
-        segmentByteRangeLength = C.LENGTH_UNSET;
-      } else if (line.startsWith(TAG_TARGET_DURATION)) {
-        targetDurationUs = parseIntAttr(line, REGEX_TARGET_DURATION) * C.MICROS_PER_SECOND;
-      } else if (line.startsWith(TAG_MEDIA_SEQUENCE)) {
-        mediaSequence = parseIntAttr(line, REGEX_MEDIA_SEQUENCE);
+        initializationSegment = new Segment(uri, segmentByteRange[1], segmentByteRange[0]);
+        segmentByteRange[1] = 0;
+        segmentByteRange[0] = C.LENGTH_UNSET;
+      } else if (tokenizer.lineStartsWith(TAG_TARGET_DURATION)) {
+        targetDurationUs = tokenizer.parseTagLong() * C.MICROS_PER_SECOND;
+      } else if (tokenizer.lineStartsWith(TAG_MEDIA_SEQUENCE)) {
+        mediaSequence = (int) tokenizer.parseTagLong();
         segmentMediaSequence = mediaSequence;
-      } else if (line.startsWith(TAG_VERSION)) {
-        version = parseIntAttr(line, REGEX_VERSION);
-      } else if (line.startsWith(TAG_MEDIA_DURATION)) {
-        segmentDurationUs =
-            (long) (parseDoubleAttr(line, REGEX_MEDIA_DURATION) * C.MICROS_PER_SECOND);
-      } else if (line.startsWith(TAG_KEY)) {
-        String method = parseStringAttr(line, REGEX_METHOD);
-        isEncrypted = METHOD_AES128.equals(method);
-        if (isEncrypted) {
-          encryptionKeyUri = parseStringAttr(line, REGEX_URI);
-          encryptionIV = parseOptionalStringAttr(line, REGEX_IV);
-        } else {
+      } else if (tokenizer.lineStartsWith(TAG_VERSION)) {
+        version = (int) tokenizer.parseTagLong();
+      } else if (tokenizer.lineStartsWith(TAG_MEDIA_DURATION)) {
+        segmentDurationUs = (long) (tokenizer.parseTagDouble() * C.MICROS_PER_SECOND);
+      } else if (tokenizer.lineStartsWith(TAG_KEY)) {
+        findAttr(tokenizer, ATTR_METHOD);
+        if (tokenizer.attributeValueEquals(METHOD_AES128)) {
+          isEncrypted = true;
+          encryptionKeyUri = parseStringAttr(tokenizer, ATTR_URI);
+          encryptionIV = parseOptionalStringAttr(tokenizer, ATTR_IV);
+        } else if (tokenizer.attributeValueEquals(METHOD_NONE)) {
+          isEncrypted = false;
           encryptionKeyUri = null;
           encryptionIV = null;
+        } else {
+          throw new ParserException("Invalid " + ATTR_METHOD + " in " + tokenizer.getLine());
         }
-      } else if (line.startsWith(TAG_BYTERANGE)) {
-        String byteRange = parseStringAttr(line, REGEX_BYTERANGE);
-        String[] splitByteRange = byteRange.split("@");
-        segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
-        if (splitByteRange.length > 1) {
-          segmentByteRangeOffset = Long.parseLong(splitByteRange[1]);
-        }
-      } else if (line.startsWith(TAG_DISCONTINUITY_SEQUENCE)) {
+      } else if (tokenizer.lineStartsWith(TAG_BYTERANGE)) {
+        tokenizer.parseTagByteRange(segmentByteRange);
+      } else if (tokenizer.lineStartsWith(TAG_DISCONTINUITY_SEQUENCE)) {
         hasDiscontinuitySequence = true;
-        playlistDiscontinuitySequence = Integer.parseInt(line.substring(line.indexOf(':') + 1));
-      } else if (line.equals(TAG_DISCONTINUITY)) {
+        playlistDiscontinuitySequence = (int) tokenizer.parseTagLong();
+      } else if (tokenizer.lineEquals(TAG_DISCONTINUITY)) {
         relativeDiscontinuitySequence++;
-      } else if (line.startsWith(TAG_PROGRAM_DATE_TIME)) {
+      } else if (tokenizer.lineStartsWith(TAG_PROGRAM_DATE_TIME)) {
         if (playlistStartTimeUs == 0) {
-          long programDatetimeUs =
-              C.msToUs(Util.parseXsDateTime(line.substring(line.indexOf(':') + 1)));
+          long programDatetimeUs = C.msToUs(Util.parseXsDateTime(tokenizer.getTagValue()));
           playlistStartTimeUs = programDatetimeUs - segmentStartTimeUs;
         }
-      } else if (!line.startsWith("#")) {
+      } else if (!tokenizer.lineStartsWith("#")) {
         String segmentEncryptionIV;
         if (!isEncrypted) {
           segmentEncryptionIV = null;
@@ -352,20 +315,34 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         } else {
           segmentEncryptionIV = Integer.toHexString(segmentMediaSequence);
         }
+        if (segmentByteRange[0] == C.LENGTH_UNSET) {
+          segmentByteRange[1] = 0;
+        }
+        Segment previousSegment =
+            getPreviousSegment(previousMediaPlaylist, segmentMediaSequence, tokenizer);
         segmentMediaSequence++;
-        if (segmentByteRangeLength == C.LENGTH_UNSET) {
-          segmentByteRangeOffset = 0;
+        if (previousSegment != null && previousSegment.durationUs == segmentDurationUs
+            && previousSegment.relativeDiscontinuitySequence == relativeDiscontinuitySequence
+            && previousSegment.relativeStartTimeUs == segmentStartTimeUs
+            && previousSegment.isEncrypted == isEncrypted
+            && Util.areEqual(previousSegment.encryptionKeyUri, encryptionKeyUri)
+            && Util.areEqual(previousSegment.encryptionIV, segmentEncryptionIV)
+            && previousSegment.byterangeOffset == segmentByteRange[1]
+            && previousSegment.byterangeLength == segmentByteRange[0]) {
+          segments.add(previousSegment);
+        } else {
+          String url = previousSegment != null ? previousSegment.url : tokenizer.getLine();
+          segments.add(new Segment(url, segmentDurationUs, relativeDiscontinuitySequence,
+              segmentStartTimeUs, isEncrypted, encryptionKeyUri, segmentEncryptionIV,
+              segmentByteRange[1], segmentByteRange[0]));
         }
-        segments.add(new Segment(line, segmentDurationUs, relativeDiscontinuitySequence,
-            segmentStartTimeUs, isEncrypted, encryptionKeyUri, segmentEncryptionIV,
-            segmentByteRangeOffset, segmentByteRangeLength));
         segmentStartTimeUs += segmentDurationUs;
         segmentDurationUs = 0;
-        if (segmentByteRangeLength != C.LENGTH_UNSET) {
-          segmentByteRangeOffset += segmentByteRangeLength;
+        if (segmentByteRange[0] != C.LENGTH_UNSET) {
+          segmentByteRange[1] += segmentByteRange[0];
         }
-        segmentByteRangeLength = C.LENGTH_UNSET;
-      } else if (line.equals(TAG_ENDLIST)) {
+        segmentByteRange[0] = C.LENGTH_UNSET;
+      } else if (tokenizer.lineEquals(TAG_ENDLIST)) {
         hasEndTag = true;
       }
     }
@@ -374,80 +351,42 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         targetDurationUs, hasEndTag, playlistStartTimeUs != 0, initializationSegment, segments);
   }
 
-  private static String parseStringAttr(String line, Pattern pattern) throws ParserException {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find() && matcher.groupCount() == 1) {
-      return matcher.group(1);
+  /**
+   * Returns the segment with the given media sequence number in the previous snapshot, if it has
+   * the URI on the tokenizer's current line.
+   */
+  private static Segment getPreviousSegment(HlsMediaPlaylist previousMediaPlaylist,
+      int mediaSequence, HlsPlaylistTokenizer tokenizer) {
+    if (previousMediaPlaylist == null) {
+      return null;
     }
-    throw new ParserException("Couldn't match " + pattern.pattern() + " in " + line);
-  }
-
-  private static int parseIntAttr(String line, Pattern pattern) throws ParserException {
-    return Integer.parseInt(parseStringAttr(line, pattern));
-  }
-
-  private static double parseDoubleAttr(String line, Pattern pattern) throws ParserException {
-    return Double.parseDouble(parseStringAttr(line, pattern));
-  }
-
-  private static String parseOptionalStringAttr(String line, Pattern pattern) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return matcher.group(1);
+    int index = mediaSequence - previousMediaPlaylist.mediaSequence;
+    if (index < 0 || index >= previousMediaPlaylist.segments.size()) {
+      return null;
     }
-    return null;
+    Segment segment = previousMediaPlaylist.segments.get(index);
+    return tokenizer.lineEquals(segment.url) ? segment : null;
   }
 
-  private static boolean parseBooleanAttribute(String line, Pattern pattern, boolean defaultValue) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return matcher.group(1).equals(BOOLEAN_TRUE);
+  private static void findAttr(HlsPlaylistTokenizer tokenizer, String name)
+      throws ParserException {
+    if (!tokenizer.findAttribute(name)) {
+      throw new ParserException("Couldn't match " + name + " in " + tokenizer.getLine());
     }
-    return defaultValue;
   }
 
-  private static Pattern compileBooleanAttrPattern(String attribute) {
-    return Pattern.compile(attribute + "=(" + BOOLEAN_FALSE + "|" + BOOLEAN_TRUE + ")");
+  private static String parseStringAttr(HlsPlaylistTokenizer tokenizer, String name)
+      throws ParserException {
+    findAttr(tokenizer, name);
+    return tokenizer.getAttributeValue();
   }
 
-  private static class LineIterator {
-
-    private final BufferedReader reader;
-    private final Queue<String> extraLines;
-
-    private String next;
-
-    public LineIterator(Queue<String> extraLines, BufferedReader reader) {
-      this.extraLines = extraLines;
-      this.reader = reader;
-    }
-
-    public boolean hasNext() throws IOException {
-      if (next != null) {
-        return true;
-      }
-      if (!extraLines.isEmpty()) {
-        next = extraLines.poll();
-        return true;
-      }
-      while ((next = reader.readLine()) != null) {
-        next = next.trim();
-        if (!next.isEmpty()) {
-          return true;
-        }
-      }
-      return false;
-    }
-
-    public String next() throws IOException {
-      String result = null;
-      if (hasNext()) {
-        result = next;
-        next = null;
-      }
-      return result;
-    }
+  private static String parseOptionalStringAttr(HlsPlaylistTokenizer tokenizer, String name) {
+    return tokenizer.findAttribute(name) ? tokenizer.getAttributeValue() : null;
+  }
 
+  private static boolean parseBooleanAttribute(HlsPlaylistTokenizer tokenizer, String name) {
+    return tokenizer.findAttribute(name) && tokenizer.attributeValueEquals(BOOLEAN_TRUE);
   }
 
 }
@@ -0,0 +1,501 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ParserException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits a playlist into lines, and tag lines into their values and attributes, working directly
+ * on the bytes of the input.
+ * <p>
+ * The input is read through a buffer that only needs to hold the current line. Lines, tags and
+ * attributes are matched in place, and numeric values are parsed from the bytes, so that a
+ * {@link String} is only created for a value that the caller asks for.
+ */
+/* package */ final class HlsPlaylistTokenizer {
+
+  private static final int INITIAL_BUFFER_SIZE = 4096;
+  private static final Charset UTF8 = Charset.forName(C.UTF8_NAME);
+  // Powers of ten that are exactly representable as doubles.
+  private static final double[] POWERS_OF_TEN = new double[] {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6,
+      1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+  private static final long MAX_EXACT_DOUBLE_MANTISSA = 1L << 53;
+
+  private final InputStream inputStream;
+
+  private byte[] data;
+  private int limit;
+  private int position;
+  private int markPosition;
+  private boolean endOfInput;
+
+  private int lineStart;
+  private int lineEnd;
+  private int valueStart;
+  private int valueEnd;
+
+  /**
+   * @param inputStream The input to tokenize.
+   */
+  public HlsPlaylistTokenizer(InputStream inputStream) {
+    this.inputStream = inputStream;
+    data = new byte[INITIAL_BUFFER_SIZE];
+    markPosition = C.POSITION_UNSET;
+  }
+
+  /**
+   * Skips a UTF-8 byte order mark at the start of the input, if present.
+   *
+   * @return Whether the start of the input is valid. False if it starts with a partial byte order
+   *     mark.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  public boolean skipByteOrderMark() throws IOException {
+    while (limit < 3 && !endOfInput) {
+      fill();
+    }
+    if (limit == 0 || (data[0] & 0xFF) != 0xEF) {
+      return true;
+    } else if (limit < 3 || (data[1] & 0xFF) != 0xBB || (data[2] & 0xFF) != 0xBF) {
+      return false;
+    }
+    position = 3;
+    return true;
+  }
+
+  /**
+   * Advances to the next line that is not empty once leading and trailing whitespace is removed.
+   *
+   * @return Whether there was another line. False if the end of the input was reached.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  public boolean nextLine() throws IOException {
+    while (true) {
+      int end = position;
+      while (true) {
+        while (end < limit && data[end] != '\n' && data[end] != '\r') {
+          end++;
+        }
+        if (end < limit || endOfInput) {
+          break;
+        }
+        end -= fill();
+      }
+      if (position == end && end == limit) {
+        return false;
+      }
+      int start = position;
+      position = end < limit ? end + 1 : end;
+      while (start < end && isWhitespace(data[start])) {
+        start++;
+      }
+      while (end > start && isWhitespace(data[end - 1])) {
+        end--;
+      }
+      if (start < end) {
+        lineStart = start;
+        lineEnd = end;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Marks the position after the current line, so that {@link #reset()} can return to it. The
+   * input from the mark onwards is retained until the reset.
+   */
+  public void mark() {
+    markPosition = position;
+  }
+
+  /**
+   * Returns to the position of the last call to {@link #mark()}. The next call to
+   * {@link #nextLine()} returns the line that followed the current line at the time of the mark.
+   */
+  public void reset() {
+    position = markPosition;
+    markPosition = C.POSITION_UNSET;
+  }
+
+  /**
+   * Returns the current line.
+   */
+  public String getLine() {
+    return new String(data, lineStart, lineEnd - lineStart, UTF8);
+  }
+
+  /**
+   * Returns whether the current line starts with the given ASCII prefix.
+   */
+  public boolean lineStartsWith(String prefix) {
+    return regionStartsWith(lineStart, lineEnd, prefix);
+  }
+
+  /**
+   * Returns whether the current line is equal to the given ASCII string.
+   */
+  public boolean lineEquals(String value) {
+    return lineEnd - lineStart == value.length() && lineStartsWith(value);
+  }
+
+  /**
+   * Returns the value of the current tag line, which is everything after the first colon, or null
+   * if there's no colon.
+   */
+  public String getTagValue() {
+    int colon = indexOf(':', lineStart, lineEnd);
+    return colon == C.INDEX_UNSET ? null
+        : new String(data, colon + 1, lineEnd - colon - 1, UTF8);
+  }
+
+  /**
+   * Returns whether the value of the current tag line is equal to the given ASCII string.
+   */
+  public boolean tagValueEquals(String value) {
+    int colon = indexOf(':', lineStart, lineEnd);
+    return colon != C.INDEX_UNSET && lineEnd - colon - 1 == value.length()
+        && regionStartsWith(colon + 1, lineEnd, value);
+  }
+
+  /**
+   * Parses the leading digits of the value of the current tag line.
+   *
+   * @throws ParserException If the value doesn't start with a digit.
+   */
+  public long parseTagLong() throws ParserException {
+    int colon = indexOf(':', lineStart, lineEnd);
+    if (colon == C.INDEX_UNSET) {
+      throw new ParserException("Missing tag value in " + getLine());
+    }
+    return parseLong(colon + 1, lineEnd);
+  }
+
+  /**
+   * Parses the leading decimal number of the value of the current tag line.
+   *
+   * @throws ParserException If the value doesn't start with a number.
+   */
+  public double parseTagDouble() throws ParserException {
+    int colon = indexOf(':', lineStart, lineEnd);
+    if (colon == C.INDEX_UNSET) {
+      throw new ParserException("Missing tag value in " + getLine());
+    }
+    return parseDouble(colon + 1, lineEnd);
+  }
+
+  /**
+   * Parses a byte range of the form {@code <n>[@<o>]} from the value of the current tag line.
+   *
+   * @param byteRange An array of length two into which the length and, if present, offset are
+   *     written. The offset is left unchanged if absent.
+   * @throws ParserException If the value isn't a byte range.
+   */
+  public void parseTagByteRange(long[] byteRange) throws ParserException {
+    int colon = indexOf(':', lineStart, lineEnd);
+    if (colon == C.INDEX_UNSET) {
+      throw new ParserException("Missing tag value in " + getLine());
+    }
+    parseByteRange(colon + 1, lineEnd, byteRange);
+  }
+
+  /**
+   * Finds an attribute in the attribute list of the current tag line. If found, its value can then
+   * be read using the {@code *AttributeValue} methods.
+   *
+   * @param name The name of the attribute.
+   * @return Whether the attribute was found.
+   */
+  public boolean findAttribute(String name) {
+    int colon = indexOf(':', lineStart, lineEnd);
+    if (colon == C.INDEX_UNSET) {
+      return false;
+    }
+    int index = colon + 1;
+    while (index < lineEnd) {
+      while (index < lineEnd && data[index] == ' ') {
+        index++;
+      }
+      int nameStart = index;
+      while (index < lineEnd && data[index] != '=' && data[index] != ',') {
+        index++;
+      }
+      boolean nameMatches = index - nameStart == name.length()
+          && regionStartsWith(nameStart, index, name);
+      if (index == lineEnd || data[index] == ',') {
+        // An attribute without a value.
+        index++;
+        continue;
+      }
+      index++;
+      int start;
+      int end;
+      if (index < lineEnd && data[index] == '"') {
+        start = index + 1;
+        end = indexOf('"', start, lineEnd);
+        if (end == C.INDEX_UNSET) {
+          end = lineEnd;
+        }
+        index = indexOf(',', end, lineEnd);
+      } else {
+        start = index;
+        index = indexOf(',', start, lineEnd);
+        end = index == C.INDEX_UNSET ? lineEnd : index;
+      }
+      if (nameMatches) {
+        valueStart = start;
+        valueEnd = end;
+        return true;
+      }
+      if (index == C.INDEX_UNSET) {
+        break;
+      }
+      index++;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the value of the last attribute found by {@link #findAttribute(String)}.
+   */
+  public String getAttributeValue() {
+    return new String(data, valueStart, valueEnd - valueStart, UTF8);
+  }
+
+  /**
+   * Returns whether the value of the last attribute found by {@link #findAttribute(String)} is
+   * equal to the given ASCII string.
+   */
+  public boolean attributeValueEquals(String value) {
+    return valueEnd - valueStart == value.length()
+        && regionStartsWith(valueStart, valueEnd, value);
+  }
+
+  /**
+   * Returns whether the value of the last attribute found by {@link #findAttribute(String)} starts
+   * with the given ASCII prefix.
+   */
+  public boolean attributeValueStartsWith(String prefix) {
+    return regionStartsWith(valueStart, valueEnd, prefix);
+  }
+
+  /**
+   * Parses the leading digits of the value of the last attribute found by
+   * {@link #findAttribute(String)}, after skipping the given number of characters.
+   *
+   * @param offset The number of characters to skip.
+   * @throws ParserException If the value doesn't have a digit at the offset.
+   */
+  public long parseAttributeLong(int offset) throws ParserException {
+    return parseLong(valueStart + offset, valueEnd);
+  }
+
+  /**
+   * Parses the leading decimal number of the value of the last attribute found by
+   * {@link #findAttribute(String)}.
+   *
+   * @throws ParserException If the value doesn't start with a number.
+   */
+  public double parseAttributeDouble() throws ParserException {
+    return parseDouble(valueStart, valueEnd);
+  }
+
+  /**
+   * Parses a resolution of the form {@code <width>x<height>} from the value of the last attribute
+   * found by {@link #findAttribute(String)}.
+   *
+   * @param resolution An array of length two into which the width and height are written.
+   * @return Whether the value was a valid resolution.
+   */
+  public boolean parseAttributeResolution(int[] resolution) {
+    int separator = indexOf('x', valueStart, valueEnd);
+    if (separator == C.INDEX_UNSET) {
+      return false;
+    }
+    int width = parseDigits(valueStart, separator);
+    int height = parseDigits(separator + 1, valueEnd);
+    if (width <= 0 || height <= 0) {
+      return false;
+    }
+    resolution[0] = width;
+    resolution[1] = height;
+    return true;
+  }
+
+  /**
+   * Parses a byte range of the form {@code <n>[@<o>]} from the value of the last attribute found by
+   * {@link #findAttribute(String)}.
+   *
+   * @param byteRange An array of length two into which the length and, if present, offset are
+   *     written. The offset is left unchanged if absent.
+   * @throws ParserException If the value isn't a byte range.
+   */
+  public void parseAttributeByteRange(long[] byteRange) throws ParserException {
+    parseByteRange(valueStart, valueEnd, byteRange);
+  }
+
+  // Internal methods.
+
+  /**
+   * Reads more of the input, first discarding data before the current position or mark.
+   *
+   * @return The number of bytes by which the retained data was shifted towards the start of the
+   *     buffer.
+   */
+  private int fill() throws IOException {
+    int shift = markPosition == C.POSITION_UNSET ? position : markPosition;
+    if (shift > 0) {
+      System.arraycopy(data, shift, data, 0, limit - shift);
+      limit -= shift;
+      position -= shift;
+      if (markPosition != C.POSITION_UNSET) {
+        markPosition -= shift;
+      }
+    }
+    if (limit == data.length) {
+      data = Arrays.copyOf(data, data.length * 2);
+    }
+    int bytesRead = inputStream.read(data, limit, data.length - limit);
+    if (bytesRead == C.RESULT_END_OF_INPUT) {
+      endOfInput = true;
+    } else {
+      limit += bytesRead;
+    }
+    return shift;
+  }
+
+  private void parseByteRange(int start, int end, long[] byteRange) throws ParserException {
+    int separator = indexOf('@', start, end);
+    if (separator == C.INDEX_UNSET) {
+      byteRange[0] = parseLong(start, end);
+    } else {
+      byteRange[0] = parseLong(start, separator);
+      byteRange[1] = parseLong(separator + 1, end);
+    }
+  }
+
+  private long parseLong(int start, int end) throws ParserException {
+    if (start >= end || !isDigit(data[start])) {
+      throw new ParserException("Expected a number in " + getLine());
+    }
+    long value = 0;
+    for (int i = start; i < end && isDigit(data[i]); i++) {
+      if (value > (Long.MAX_VALUE - 9) / 10) {
+        throw new ParserException("Number too large in " + getLine());
+      }
+      value = value * 10 + (data[i] - '0');
+    }
+    return value;
+  }
+
+  private double parseDouble(int start, int end) throws ParserException {
+    int index = start;
+    boolean negative = index < end && data[index] == '-';
+    if (negative) {
+      index++;
+    }
+    long mantissa = 0;
+    int fractionDigits = 0;
+    boolean seenDigit = false;
+    boolean seenPoint = false;
+    boolean exact = true;
+    for (; index < end; index++) {
+      byte b = data[index];
+      if (isDigit(b)) {
+        seenDigit = true;
+        if (mantissa >= MAX_EXACT_DOUBLE_MANTISSA / 10) {
+          exact = false;
+        } else {
+          mantissa = mantissa * 10 + (b - '0');
+          if (seenPoint) {
+            fractionDigits++;
+          }
+        }
+      } else if (b == '.') {
+        if (seenPoint) {
+          exact = false;
+        }
+        seenPoint = true;
+      } else {
+        break;
+      }
+    }
+    if (!seenDigit) {
+      throw new ParserException("Expected a number in " + getLine());
+    }
+    if (!exact || fractionDigits >= POWERS_OF_TEN.length) {
+      // Values that can't be parsed exactly here are rare. Leave them to the platform.
+      try {
+        return Double.parseDouble(new String(data, start, index - start, UTF8));
+      } catch (NumberFormatException e) {
+        throw new ParserException(e);
+      }
+    }
+    // Both operands are exact, so the quotient is correctly rounded.
+    double value = mantissa / POWERS_OF_TEN[fractionDigits];
+    return negative ? -value : value;
+  }
+
+  private int parseDigits(int start, int end) {
+    if (start >= end || end - start > 9) {
+      return C.INDEX_UNSET;
+    }
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      if (!isDigit(data[i])) {
+        return C.INDEX_UNSET;
+      }
+      value = value * 10 + (data[i] - '0');
+    }
+    return value;
+  }
+
+  private boolean regionStartsWith(int start, int end, String prefix) {
+    int length = prefix.length();
+    if (end - start < length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (data[start + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int indexOf(char c, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (data[i] == c) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private static boolean isWhitespace(byte b) {
+    // Matches String.trim(). Bytes of multi-byte UTF-8 sequences are negative.
+    return b >= 0 && b <= ' ';
+  }
+
+}
@@ -30,7 +30,10 @@ import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.util.UriUtil;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.IdentityHashMap;
 import java.util.List;
 
@@ -81,10 +84,18 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
    */
   private static final long PRIMARY_URL_KEEPALIVE_MS = 15000;
 
+  /**
+   * The default number of milliseconds for which a prefetched variant playlist keeps being
+   * refreshed after the last {@link #getPlaylistSnapshot} call for an adjacent variant.
+   */
+  private static final long DEFAULT_PREFETCHED_URL_KEEPALIVE_MS = 15000;
+
   private final Uri initialPlaylistUri;
   private final HlsDataSourceFactory dataSourceFactory;
   private final HlsPlaylistParser playlistParser;
   private final int minRetryCount;
+  private final int prefetchVariantCount;
+  private final long prefetchedUrlKeepaliveMs;
   private final IdentityHashMap<HlsUrl, MediaPlaylistBundle> playlistBundles;
   private final Handler playlistRefreshHandler;
   private final PrimaryPlaylistListener primaryPlaylistListener;
@@ -93,6 +104,7 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
   private final EventDispatcher eventDispatcher;
 
   private HlsMasterPlaylist masterPlaylist;
+  private List<HlsUrl> variantsByBitrate;
   private HlsUrl primaryHlsUrl;
   private HlsMediaPlaylist primaryUrlSnapshot;
   private boolean isLive;
@@ -109,10 +121,39 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
   public HlsPlaylistTracker(Uri initialPlaylistUri, HlsDataSourceFactory dataSourceFactory,
       EventDispatcher eventDispatcher, int minRetryCount,
       PrimaryPlaylistListener primaryPlaylistListener) {
+    this(initialPlaylistUri, dataSourceFactory, eventDispatcher, minRetryCount, 0,
+        primaryPlaylistListener);
+  }
+
+  /**
+   * @param initialPlaylistUri Uri for the initial playlist of the stream. Can refer a media
+   *     playlist or a master playlist.
+   * @param dataSourceFactory A factory for {@link DataSource} instances.
+   * @param eventDispatcher A dispatcher to notify of events.
+   * @param minRetryCount The minimum number of times the load must be retried before blacklisting a
+   *     playlist.
+   * @param prefetchVariantCount The number of variants closest in bitrate to the one being read
+   *     whose playlists are loaded in parallel and kept refreshed, so that switching to them doesn't
+   *     wait for a playlist load. Zero disables prefetching.
+   * @param primaryPlaylistListener A callback for the primary playlist change events.
+   */
+  public HlsPlaylistTracker(Uri initialPlaylistUri, HlsDataSourceFactory dataSourceFactory,
+      EventDispatcher eventDispatcher, int minRetryCount, int prefetchVariantCount,
+      PrimaryPlaylistListener primaryPlaylistListener) {
+    this(initialPlaylistUri, dataSourceFactory, eventDispatcher, minRetryCount,
+        prefetchVariantCount, DEFAULT_PREFETCHED_URL_KEEPALIVE_MS, primaryPlaylistListener);
+  }
+
+  //@VisibleForTesting
+  /*package*/ HlsPlaylistTracker(Uri initialPlaylistUri, HlsDataSourceFactory dataSourceFactory,
+      EventDispatcher eventDispatcher, int minRetryCount, int prefetchVariantCount,
+      long prefetchedUrlKeepaliveMs, PrimaryPlaylistListener primaryPlaylistListener) {
     this.initialPlaylistUri = initialPlaylistUri;
     this.dataSourceFactory = dataSourceFactory;
     this.eventDispatcher = eventDispatcher;
     this.minRetryCount = minRetryCount;
+    this.prefetchVariantCount = prefetchVariantCount;
+    this.prefetchedUrlKeepaliveMs = prefetchedUrlKeepaliveMs;
     this.primaryPlaylistListener = primaryPlaylistListener;
     listeners = new ArrayList<>();
     initialPlaylistLoader = new Loader("HlsPlaylistTracker:MasterPlaylist");
@@ -170,6 +211,7 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
     HlsMediaPlaylist snapshot = playlistBundles.get(url).getPlaylistSnapshot();
     if (snapshot != null) {
       maybeSetPrimaryUrl(url);
+      maybePrefetchAdjacentVariants(url);
     }
     return snapshot;
   }
@@ -187,6 +229,16 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
     return playlistBundles.get(url).isSnapshotValid();
   }
 
+  /**
+   * Returns whether the playlist referenced by the provided {@link HlsUrl} is loading or has a
+   * refresh scheduled.
+   */
+  /* @VisibleForTesting */
+  /* package */ boolean isLoadingOrRefreshPending(HlsUrl url) {
+    MediaPlaylistBundle bundle = playlistBundles.get(url);
+    return bundle.pendingRefresh || bundle.mediaPlaylistLoader.isLoading();
+  }
+
   /**
    * Releases the playlist tracker.
    */
@@ -244,6 +296,13 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
       masterPlaylist = (HlsMasterPlaylist) result;
     }
     this.masterPlaylist = masterPlaylist;
+    variantsByBitrate = new ArrayList<>(masterPlaylist.variants);
+    Collections.sort(variantsByBitrate, new Comparator<HlsUrl>() {
+      @Override
+      public int compare(HlsUrl first, HlsUrl second) {
+        return first.format.bitrate - second.format.bitrate;
+      }
+    });
     primaryHlsUrl = masterPlaylist.variants.get(0);
     ArrayList<HlsUrl> urls = new ArrayList<>();
     urls.addAll(masterPlaylist.variants);
@@ -257,6 +316,7 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
     } else {
       primaryBundle.loadPlaylist();
     }
+    maybePrefetchAdjacentVariants(primaryHlsUrl);
     eventDispatcher.loadCompleted(loadable.dataSpec, C.DATA_TYPE_MANIFEST, elapsedRealtimeMs,
         loadDurationMs, loadable.bytesLoaded());
   }
@@ -310,6 +370,49 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
     }
   }
 
+  /**
+   * Loads the playlists of the variants closest in bitrate to {@code url}, and keeps them refreshed
+   * for {@link #prefetchedUrlKeepaliveMs} from now. Each bundle has its own {@link Loader}, so
+   * the playlists load in parallel with each other and with the playlist of {@code url}.
+   */
+  private void maybePrefetchAdjacentVariants(HlsUrl url) {
+    int index = prefetchVariantCount == 0 ? C.INDEX_UNSET : variantsByBitrate.indexOf(url);
+    if (index == C.INDEX_UNSET) {
+      return;
+    }
+    long currentTimeMs = SystemClock.elapsedRealtime();
+    long keepWarmUntilMs = currentTimeMs + prefetchedUrlKeepaliveMs;
+    int prefetchedCount = 0;
+    int variantCount = variantsByBitrate.size();
+    // Alternate between the next higher and the next lower bitrate, starting with the higher one.
+    for (int offset = 1; offset < variantCount && prefetchedCount < prefetchVariantCount;
+        offset++) {
+      if (prefetchVariant(index + offset, currentTimeMs, keepWarmUntilMs)) {
+        prefetchedCount++;
+      }
+      if (prefetchedCount < prefetchVariantCount
+          && prefetchVariant(index - offset, currentTimeMs, keepWarmUntilMs)) {
+        prefetchedCount++;
+      }
+    }
+  }
+
+  private boolean prefetchVariant(int index, long currentTimeMs, long keepWarmUntilMs) {
+    if (index < 0 || index >= variantsByBitrate.size()) {
+      return false;
+    }
+    MediaPlaylistBundle bundle = playlistBundles.get(variantsByBitrate.get(index));
+    if (currentTimeMs < bundle.blacklistUntilMs) {
+      return false;
+    }
+    bundle.keepWarmUntilMs = keepWarmUntilMs;
+    if (bundle.playlistSnapshot == null || !bundle.playlistSnapshot.hasEndTag) {
+      // Does nothing if the bundle is already loading or has a refresh scheduled.
+      bundle.loadPlaylist();
+    }
+    return true;
+  }
+
   private void createBundles(List<HlsUrl> urls) {
     int listSize = urls.size();
     long currentTimeMs = SystemClock.elapsedRealtime();
@@ -340,8 +443,11 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
     for (int i = 0; i < listenersSize; i++) {
       listeners.get(i).onPlaylistChanged();
     }
-    // If the primary playlist is not the final one, we should schedule a refresh.
-    return url == primaryHlsUrl && !newSnapshot.hasEndTag;
+    // If the primary playlist or a prefetched one is not the final one, we should schedule a
+    // refresh.
+    return (url == primaryHlsUrl
+        || SystemClock.elapsedRealtime() < playlistBundles.get(url).keepWarmUntilMs)
+        && !newSnapshot.hasEndTag;
   }
 
   private void notifyPlaylistBlacklisting(HlsUrl url, long blacklistMs) {
@@ -422,7 +528,7 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
    * Holds all information related to a specific Media Playlist.
    */
   private final class MediaPlaylistBundle implements Loader.Callback<ParsingLoadable<HlsPlaylist>>,
-      Runnable {
+      ParsingLoadable.Parser<HlsPlaylist>, Runnable {
 
     private final HlsUrl playlistUrl;
     private final Loader mediaPlaylistLoader;
@@ -432,6 +538,7 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
     private long lastSnapshotLoadMs;
     private long lastSnapshotAccessTimeMs;
     private long blacklistUntilMs;
+    private long keepWarmUntilMs;
     private boolean pendingRefresh;
 
     public MediaPlaylistBundle(HlsUrl playlistUrl, long initialLastSnapshotAccessTimeMs) {
@@ -441,7 +548,7 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
       mediaPlaylistLoadable = new ParsingLoadable<>(
           dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST),
           UriUtil.resolveToUri(masterPlaylist.baseUri, playlistUrl.url), C.DATA_TYPE_MANIFEST,
-          playlistParser);
+          this);
     }
 
     public HlsMediaPlaylist getPlaylistSnapshot() {
@@ -472,6 +579,15 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
       }
     }
 
+    // ParsingLoadable.Parser implementation.
+
+    @Override
+    public HlsPlaylist parse(Uri uri, InputStream inputStream) throws IOException {
+      // Called on the loading thread. The snapshot is only replaced after a load completes, so it
+      // can't change while the refreshed playlist is being parsed against it.
+      return playlistParser.parse(uri, inputStream, playlistSnapshot);
+    }
+
     // Loader.Callback implementation.
 
     @Override
@@ -534,7 +650,7 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
         if (onPlaylistUpdated(playlistUrl, playlistSnapshot)) {
           refreshDelayUs = playlistSnapshot.targetDurationUs;
         }
-      } else if (!playlistSnapshot.hasEndTag) {
+      } else if (!playlistSnapshot.hasEndTag && !isKeepWarmExpired()) {
         refreshDelayUs = playlistSnapshot.targetDurationUs / 2;
       }
       if (refreshDelayUs != C.TIME_UNSET) {
@@ -543,6 +659,15 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
       }
     }
 
+    /**
+     * Returns whether the playlist was prefetched, and is no longer the primary playlist or being
+     * kept refreshed for an adjacent variant.
+     */
+    private boolean isKeepWarmExpired() {
+      return keepWarmUntilMs != 0 && playlistUrl != primaryHlsUrl
+          && SystemClock.elapsedRealtime() >= keepWarmUntilMs;
+    }
+
   }
 
 }
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import com.google.android.exoplayer2.util.Assertions;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Replays a trace of cache accesses against a {@link CacheEvictor}, and reports the resulting hit
+ * ratio. The cache is simulated in memory, so no data is read or written.
+ * <p>
+ * Each access is to a whole span, identified by a cache key and a position. An access hits if a
+ * span of at least the accessed length is cached at that position, in which case the span is
+ * touched. Otherwise the accessed data is written to the cache as a new span, replacing any shorter
+ * span at the position.
+ * <p>
+ * A trace has one access per line, as the cache key, the position and the length of the accessed
+ * data, separated by whitespace. Empty lines and lines starting with '#' are ignored.
+ */
+public final class CacheEvictorSimulator {
+
+  private final SimulatedCache cache;
+
+  private long accessCount;
+  private long hitCount;
+  private long accessedBytes;
+  private long hitBytes;
+
+  /**
+   * @param evictor The evictor to simulate. It must not have been used by another cache.
+   */
+  public CacheEvictorSimulator(CacheEvictor evictor) {
+    cache = new SimulatedCache(evictor);
+    evictor.onCacheInitialized();
+  }
+
+  /**
+   * Replays a trace.
+   *
+   * @param trace The trace to replay.
+   * @throws IOException If an error occurs reading the trace.
+   */
+  public void replay(Reader trace) throws IOException {
+    BufferedReader reader = new BufferedReader(trace);
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\\s+");
+      if (fields.length != 3) {
+        throw new IOException("Malformed trace line: " + line);
+      }
+      try {
+        access(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+      } catch (NumberFormatException e) {
+        throw new IOException("Malformed trace line: " + line);
+      }
+    }
+  }
+
+  /**
+   * Simulates an access.
+   *
+   * @param key The cache key of the accessed data.
+   * @param position The position of the accessed data.
+   * @param length The length of the accessed data.
+   */
+  public void access(String key, long position, long length) {
+    accessCount++;
+    accessedBytes += length;
+    if (cache.access(key, position, length)) {
+      hitCount++;
+      hitBytes += length;
+    }
+  }
+
+  /**
+   * Returns the number of accesses that have been simulated.
+   */
+  public long getAccessCount() {
+    return accessCount;
+  }
+
+  /**
+   * Returns the fraction of accesses that were hits.
+   */
+  public double getHitRatio() {
+    return accessCount == 0 ? 0 : (double) hitCount / accessCount;
+  }
+
+  /**
+   * Returns the fraction of accessed bytes that were read from the cache.
+   */
+  public double getByteHitRatio() {
+    return accessedBytes == 0 ? 0 : (double) hitBytes / accessedBytes;
+  }
+
+  /**
+   * Returns the number of bytes in the simulated cache.
+   */
+  public long getCacheSpace() {
+    return cache.getCacheSpace();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("accesses=%d, hitRatio=%.4f, byteHitRatio=%.4f", accessCount,
+        getHitRatio(), getByteHitRatio());
+  }
+
+  /**
+   * A {@link Cache} that tracks spans in memory without storing any data. A file started by
+   * {@link #startFile(String, long, long)} is assumed to hold its maximum length when it's
+   * committed. Holes aren't locked, as the simulation is single threaded, and listeners are
+   * notified synchronously.
+   */
+  private static final class SimulatedCache implements Cache {
+
+    private final CacheEvictor evictor;
+    private final HashMap<String, TreeSet<CacheSpan>> spans;
+    private final HashMap<String, ArrayList<Listener>> listeners;
+    private final HashMap<String, Long> contentLengths;
+    private final HashMap<File, CacheSpan> startedFiles;
+
+    private long time;
+    private long cacheSpace;
+
+    public SimulatedCache(CacheEvictor evictor) {
+      this.evictor = evictor;
+      spans = new HashMap<>();
+      listeners = new HashMap<>();
+      contentLengths = new HashMap<>();
+      startedFiles = new HashMap<>();
+    }
+
+    public boolean access(String key, long position, long length) {
+      TreeSet<CacheSpan> keySpans = spans.get(key);
+      CacheSpan span = keySpans == null ? null : keySpans.floor(new CacheSpan(key, position, 0));
+      if (span != null && span.position == position) {
+        if (span.length >= length) {
+          touchSpan(span);
+          return true;
+        }
+        removeSpan(span);
+      }
+      commitFile(startFile(key, position, length));
+      return false;
+    }
+
+    @Override
+    public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+      ArrayList<Listener> keyListeners = listeners.get(key);
+      if (keyListeners == null) {
+        keyListeners = new ArrayList<>();
+        listeners.put(key, keyListeners);
+      }
+      keyListeners.add(listener);
+      return getCachedSpans(key);
+    }
+
+    @Override
+    public void removeListener(String key, Listener listener) {
+      ArrayList<Listener> keyListeners = listeners.get(key);
+      if (keyListeners != null) {
+        keyListeners.remove(listener);
+        if (keyListeners.isEmpty()) {
+          listeners.remove(key);
+        }
+      }
+    }
+
+    @Override
+    public NavigableSet<CacheSpan> getCachedSpans(String key) {
+      TreeSet<CacheSpan> keySpans = spans.get(key);
+      return keySpans == null ? null : new TreeSet<>(keySpans);
+    }
+
+    @Override
+    public Set<String> getKeys() {
+      return new HashSet<>(spans.keySet());
+    }
+
+    @Override
+    public long getCacheSpace() {
+      return cacheSpace;
+    }
+
+    @Override
+    public CacheSpan startReadWrite(String key, long position) {
+      return startReadWriteNonBlocking(key, position);
+    }
+
+    @Override
+    public CacheSpan startReadWriteNonBlocking(String key, long position) {
+      CacheSpan span = getSpan(key, position, C.LENGTH_UNSET);
+      return span.isCached ? touchSpan(span) : span;
+    }
+
+    @Override
+    public File startFile(String key, long position, long maxLength) {
+      evictor.onStartFile(this, key, position, maxLength);
+      File file = new File(key + "." + position + "." + ++time);
+      startedFiles.put(file, new CacheSpan(key, position, maxLength, time, file));
+      return file;
+    }
+
+    @Override
+    public void commitFile(File file) {
+      CacheSpan span = startedFiles.remove(file);
+      Assertions.checkState(span != null);
+      TreeSet<CacheSpan> keySpans = spans.get(span.key);
+      if (keySpans == null) {
+        keySpans = new TreeSet<>();
+        spans.put(span.key, keySpans);
+      }
+      Assertions.checkState(keySpans.add(span));
+      cacheSpace += span.length;
+      ArrayList<Listener> keyListeners = listeners.get(span.key);
+      if (keyListeners != null) {
+        for (int i = keyListeners.size() - 1; i >= 0; i--) {
+          keyListeners.get(i).onSpanAdded(this, span);
+        }
+      }
+      evictor.onSpanAdded(this, span);
+    }
+
+    @Override
+    public void releaseHoleSpan(CacheSpan holeSpan) {
+      // Do nothing. Holes aren't locked.
+    }
+
+    @Override
+    public void removeSpan(CacheSpan span) {
+      TreeSet<CacheSpan> keySpans = spans.get(span.key);
+      if (keySpans == null || keySpans.floor(span) != span) {
+        return;
+      }
+      keySpans.remove(span);
+      if (keySpans.isEmpty()) {
+        spans.remove(span.key);
+      }
+      cacheSpace -= span.length;
+      ArrayList<Listener> keyListeners = listeners.get(span.key);
+      if (keyListeners != null) {
+        for (int i = keyListeners.size() - 1; i >= 0; i--) {
+          keyListeners.get(i).onSpanRemoved(this, span);
+        }
+      }
+      evictor.onSpanRemoved(this, span);
+    }
+
+    @Override
+    public boolean isCached(String key, long position, long length) {
+      return getCachedBytes(key, position, length) >= length;
+    }
+
+    @Override
+    public long getCachedBytes(String key, long position, long length) {
+      CacheSpan span = getSpan(key, position, length);
+      if (!span.isCached) {
+        return -(span.isOpenEnded() ? length : span.length);
+      }
+      long endPosition = position + length;
+      long cachedEndPosition = span.position + span.length;
+      for (CacheSpan next : spans.get(key).tailSet(span, false)) {
+        if (next.position > cachedEndPosition || cachedEndPosition >= endPosition) {
+          break;
+        }
+        cachedEndPosition = Math.max(cachedEndPosition, next.position + next.length);
+      }
+      return Math.min(cachedEndPosition - position, length);
+    }
+
+    @Override
+    public void setContentLength(String key, long length) {
+      contentLengths.put(key, length);
+    }
+
+    @Override
+    public long getContentLength(String key) {
+      Long length = contentLengths.get(key);
+      return length == null ? C.LENGTH_UNSET : length;
+    }
+
+    /**
+     * Returns the cached span that contains {@code position}, or otherwise the hole that starts at
+     * {@code position}, ending at the next cached span or after {@code length} bytes, whichever is
+     * sooner.
+     */
+    private CacheSpan getSpan(String key, long position, long length) {
+      TreeSet<CacheSpan> keySpans = spans.get(key);
+      if (keySpans == null) {
+        return new CacheSpan(key, position, length);
+      }
+      CacheSpan lookupSpan = new CacheSpan(key, position, 0);
+      CacheSpan floorSpan = keySpans.floor(lookupSpan);
+      if (floorSpan != null && floorSpan.position + floorSpan.length > position) {
+        return floorSpan;
+      }
+      CacheSpan ceilingSpan = keySpans.ceiling(lookupSpan);
+      if (ceilingSpan == null) {
+        return new CacheSpan(key, position, length);
+      }
+      long holeLength = ceilingSpan.position - position;
+      return new CacheSpan(key, position,
+          length == C.LENGTH_UNSET ? holeLength : Math.min(holeLength, length));
+    }
+
+    private CacheSpan touchSpan(CacheSpan span) {
+      CacheSpan touchedSpan = new CacheSpan(span.key, span.position, span.length, ++time,
+          span.file);
+      TreeSet<CacheSpan> keySpans = spans.get(span.key);
+      keySpans.remove(span);
+      keySpans.add(touchedSpan);
+      ArrayList<Listener> keyListeners = listeners.get(span.key);
+      if (keyListeners != null) {
+        for (int i = keyListeners.size() - 1; i >= 0; i--) {
+          keyListeners.get(i).onSpanTouched(this, span, touchedSpan);
+        }
+      }
+      evictor.onSpanTouched(this, span, touchedSpan);
+      return touchedSpan;
+    }
+
+  }
+
+}
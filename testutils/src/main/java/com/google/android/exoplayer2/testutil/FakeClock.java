@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import com.google.android.exoplayer2.util.Clock;
+
+/**
+ * A fake {@link Clock} whose time only advances when {@link #advanceTime(long)} is called.
+ */
+public final class FakeClock implements Clock {
+
+  private long currentTimeNs;
+
+  /**
+   * @param initialTimeMs The initial elapsed real time, in milliseconds.
+   */
+  public FakeClock(long initialTimeMs) {
+    this.currentTimeNs = initialTimeMs * 1000000L;
+  }
+
+  /**
+   * Advances the clock.
+   *
+   * @param timeDiffMs The amount of time to advance, in milliseconds.
+   */
+  public void advanceTime(long timeDiffMs) {
+    advanceTimeNs(timeDiffMs * 1000000L);
+  }
+
+  /**
+   * Advances the clock.
+   *
+   * @param timeDiffNs The amount of time to advance, in nanoseconds.
+   */
+  public synchronized void advanceTimeNs(long timeDiffNs) {
+    currentTimeNs += timeDiffNs;
+  }
+
+  @Override
+  public synchronized long elapsedRealtime() {
+    return currentTimeNs / 1000000L;
+  }
+
+  @Override
+  public synchronized long nanoTime() {
+    return currentTimeNs;
+  }
+
+}
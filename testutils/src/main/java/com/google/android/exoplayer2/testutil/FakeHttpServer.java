@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal HTTP server on the loopback interface that serves fixed data, for testing code that
+ * reads from HTTP sources.
+ * <p>
+ * Only GET requests are supported. Single byte ranges are honored with a partial content
+ * response, and each connection serves a single request. The server records the requests it
+ * receives and the highest number of requests it was serving at once.
+ */
+public final class FakeHttpServer {
+
+  private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+  private final Map<String, byte[]> data;
+  private final List<String> requests;
+
+  private ServerSocket serverSocket;
+  private Thread acceptThread;
+  private long responseDelayMs;
+  private int activeRequestCount;
+  private int maxActiveRequestCount;
+
+  public FakeHttpServer() {
+    data = Collections.synchronizedMap(new HashMap<String, byte[]>());
+    requests = Collections.synchronizedList(new ArrayList<String>());
+  }
+
+  /**
+   * Sets the data served at a path.
+   *
+   * @param path The path, starting with '/'.
+   * @param data The data.
+   * @return This server.
+   */
+  public FakeHttpServer setData(String path, byte[] data) {
+    this.data.put(path, data);
+    return this;
+  }
+
+  /**
+   * Sets a delay before each response is sent, to make requests overlap in time.
+   *
+   * @param responseDelayMs The delay, in milliseconds.
+   * @return This server.
+   */
+  public synchronized FakeHttpServer setResponseDelayMs(long responseDelayMs) {
+    this.responseDelayMs = responseDelayMs;
+    return this;
+  }
+
+  /**
+   * Starts the server on a free port.
+   *
+   * @throws IOException If the server socket can't be opened.
+   */
+  public void start() throws IOException {
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    acceptThread = new Thread("FakeHttpServer") {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            final Socket socket = serverSocket.accept();
+            new Thread("FakeHttpServer:Connection") {
+              @Override
+              public void run() {
+                handleConnection(socket);
+              }
+            }.start();
+          }
+        } catch (IOException e) {
+          // The server socket has been closed.
+        }
+      }
+    };
+    acceptThread.start();
+  }
+
+  /**
+   * Stops the server. Connections that are being served are not interrupted.
+   */
+  public void release() throws InterruptedException {
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      // Ignore.
+    }
+    acceptThread.join();
+  }
+
+  /**
+   * Returns the {@link Uri} of a path on this server.
+   *
+   * @param path The path, starting with '/'.
+   */
+  public Uri getUri(String path) {
+    return Uri.parse("http://127.0.0.1:" + serverSocket.getLocalPort() + path);
+  }
+
+  /**
+   * Returns the request line and range of each request received so far, in the form
+   * {@code "GET /path bytes=0-99"}, or {@code "GET /path"} if no range was requested.
+   */
+  public List<String> getRequests() {
+    synchronized (requests) {
+      return new ArrayList<>(requests);
+    }
+  }
+
+  /**
+   * Returns the highest number of requests that were being served at once.
+   */
+  public synchronized int getMaxActiveRequestCount() {
+    return maxActiveRequestCount;
+  }
+
+  private void handleConnection(Socket socket) {
+    long delayMs;
+    synchronized (this) {
+      activeRequestCount++;
+      maxActiveRequestCount = Math.max(maxActiveRequestCount, activeRequestCount);
+      delayMs = responseDelayMs;
+    }
+    try {
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+      String requestLine = reader.readLine();
+      if (requestLine == null) {
+        return;
+      }
+      String range = null;
+      String line;
+      while ((line = reader.readLine()) != null && !line.isEmpty()) {
+        int colonIndex = line.indexOf(':');
+        if (colonIndex > 0 && "range".equalsIgnoreCase(line.substring(0, colonIndex).trim())) {
+          range = line.substring(colonIndex + 1).trim();
+        }
+      }
+      String[] requestParts = requestLine.split(" ");
+      String path = requestParts.length > 1 ? requestParts[1] : "";
+      requests.add(requestParts[0] + " " + path + (range != null ? " " + range : ""));
+      if (delayMs > 0) {
+        Thread.sleep(delayMs);
+      }
+      writeResponse(socket.getOutputStream(), requestParts[0], data.get(path), range);
+    } catch (IOException | InterruptedException e) {
+      // Drop the connection.
+    } finally {
+      synchronized (this) {
+        activeRequestCount--;
+      }
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Ignore.
+      }
+    }
+  }
+
+  private static void writeResponse(OutputStream output, String method, byte[] content,
+      String range) throws IOException {
+    if (!"GET".equals(method)) {
+      writeHeaders(output, "405 Method Not Allowed", 0, null);
+      return;
+    }
+    if (content == null) {
+      writeHeaders(output, "404 Not Found", 0, null);
+      return;
+    }
+    int start = 0;
+    int end = content.length;
+    String status = "200 OK";
+    String contentRange = null;
+    Matcher matcher = range != null ? RANGE_PATTERN.matcher(range) : null;
+    if (matcher != null && matcher.matches()) {
+      start = (int) Math.min(Long.parseLong(matcher.group(1)), Integer.MAX_VALUE);
+      if (!matcher.group(2).isEmpty()) {
+        end = (int) Math.min(Long.parseLong(matcher.group(2)) + 1, end);
+      }
+      if (start >= content.length || start >= end) {
+        writeHeaders(output, "416 Range Not Satisfiable", 0, "bytes */" + content.length);
+        return;
+      }
+      status = "206 Partial Content";
+      contentRange = "bytes " + start + "-" + (end - 1) + "/" + content.length;
+    }
+    writeHeaders(output, status, end - start, contentRange);
+    output.write(content, start, end - start);
+    output.flush();
+  }
+
+  private static void writeHeaders(OutputStream output, String status, int contentLength,
+      String contentRange) throws IOException {
+    StringBuilder headers = new StringBuilder();
+    headers.append("HTTP/1.1 ").append(status).append("\r\n");
+    headers.append("Content-Type: application/octet-stream\r\n");
+    headers.append("Content-Length: ").append(contentLength).append("\r\n");
+    if (contentRange != null) {
+      headers.append("Content-Range: ").append(contentRange).append("\r\n");
+    }
+    headers.append("Connection: close\r\n\r\n");
+    output.write(Util.getUtf8Bytes(headers.toString()));
+  }
+
+}